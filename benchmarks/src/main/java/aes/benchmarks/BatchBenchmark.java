@@ -0,0 +1,93 @@
+package aes.benchmarks;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import aes.AesFactory;
+import aes.Key;
+import aes.engines.Backend;
+import aes.modes.BlockCipherMode;
+import aes.modes.ecb.AesEcb;
+
+/**
+ * <p>
+ * Compares encrypting many 16-byte messages, each under its own pre-expanded key, one call per message with encrypting
+ * them in a single batch.
+ * </p>
+ *
+ * <p>
+ * Each invocation encrypts the same number of blocks both ways, so the ratio of the throughputs is the saving from
+ * batching.
+ * </p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class BatchBenchmark {
+    /**
+     * The backend to transform blocks with.
+     */
+    @Param({ "TABLE", "JDK" })
+    public Backend backend;
+
+    /**
+     * The number of messages, and keys, per invocation.
+     */
+    @Param({ "1024" })
+    public int messages;
+
+    private AesEcb ecb;
+    private Key[] keys;
+    private byte[] data;
+
+    /**
+     * Generates random keys and messages.
+     */
+    @Setup
+    public void setUp() {
+        ecb = (AesEcb) AesFactory.getCipher(BlockCipherMode.ECB, backend);
+        Random random = new Random(messages);
+        keys = new Key[messages];
+        for (int i = 0; i < messages; i++) {
+            byte[] raw = new byte[16];
+            random.nextBytes(raw);
+            keys[i] = Key.getKey(raw);
+        }
+        data = new byte[16 * messages];
+        random.nextBytes(data);
+    }
+
+    /**
+     * @return The encrypted messages.
+     */
+    @Benchmark
+    public byte[] encryptOneByOne() {
+        for (int i = 0; i < messages; i++) {
+            ecb.encrypt(data, 16 * i, 16, data, 16 * i, keys[i]);
+        }
+        return data;
+    }
+
+    /**
+     * @return The encrypted messages.
+     */
+    @Benchmark
+    public byte[] encryptBatch() {
+        ecb.encryptBatch(keys, data, 0, data, 0, messages);
+        return data;
+    }
+}
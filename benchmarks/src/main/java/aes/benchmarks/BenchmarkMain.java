@@ -0,0 +1,53 @@
+package aes.benchmarks;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <p>
+ * BenchmarkMain runs the benchmarks with the allocation profiler and writes the results as JSON, so runs of different
+ * versions can be compared.
+ * </p>
+ *
+ * <p>
+ * It accepts the usual JMH command line, for example a regular expression selecting the benchmarks to run. Results are
+ * written to jmh-result.json unless -rff names another file. The forked JVMs enable the incubating Vector API so the
+ * vector backend can be measured.
+ * </p>
+ */
+public class BenchmarkMain {
+    /**
+     * The file results are written to by default.
+     */
+    public static final String DEFAULT_RESULT_FILE = "jmh-result.json";
+
+    /**
+     * Do not allow instantiation.
+     */
+    private BenchmarkMain() {
+    }
+
+    /**
+     * Runs the benchmarks selected on the command line, or all of them.
+     *
+     * @param args JMH command line options.
+     * @throws CommandLineOptionException If the command line cannot be parsed.
+     * @throws RunnerException If a benchmark fails to run.
+     */
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        Options options = new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class)
+                .jvmArgsAppend("--add-modules=jdk.incubator.vector")
+                .resultFormat(commandLine.getResultFormat().orElse(ResultFormatType.JSON))
+                .result(commandLine.getResult().orElse(DEFAULT_RESULT_FILE))
+                .build();
+        new Runner(options).run();
+    }
+}
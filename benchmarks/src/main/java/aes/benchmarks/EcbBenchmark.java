@@ -0,0 +1,107 @@
+package aes.benchmarks;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import aes.AesFactory;
+import aes.Key;
+import aes.engines.Backend;
+import aes.modes.BlockCipherMode;
+import aes.modes.ecb.AesEcb;
+
+/**
+ * <p>
+ * Measures end-to-end ECB encryption and decryption for message sizes from a single block to 64 MB.
+ * </p>
+ *
+ * <p>
+ * The allocating methods include the cost of the result array, which the allocation profiler reports. The offset
+ * methods write into a preallocated array and measure the block transformation alone.
+ * </p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(Scope.Thread)
+public class EcbBenchmark {
+    /**
+     * The length of the message in bytes.
+     */
+    @Param({ "16", "256", "4096", "65536", "1048576", "16777216", "67108864" })
+    public int size;
+
+    /**
+     * The implementation of the block transformation.
+     */
+    @Param({ "TABLE", "BITSLICED", "VECTOR", "REFERENCE" })
+    public Backend backend;
+
+    private AesEcb cipher;
+    private Key key;
+    private byte[] plaintext;
+    private byte[] ciphertext;
+    private byte[] out;
+
+    /**
+     * Builds the cipher and a random message of the requested size.
+     */
+    @Setup
+    public void setUp() {
+        cipher = (AesEcb) AesFactory.getCipher(BlockCipherMode.ECB, backend);
+        byte[] raw = new byte[16];
+        Random random = new Random(size);
+        random.nextBytes(raw);
+        key = Key.getKey(raw);
+        plaintext = new byte[size];
+        random.nextBytes(plaintext);
+        ciphertext = cipher.encrypt(plaintext, key);
+        out = new byte[size];
+    }
+
+    /**
+     * @return The ciphertext of the message.
+     */
+    @Benchmark
+    public byte[] encrypt() {
+        return cipher.encrypt(plaintext, key);
+    }
+
+    /**
+     * @return The plaintext of the ciphertext.
+     */
+    @Benchmark
+    public byte[] decrypt() {
+        return cipher.decrypt(ciphertext, key);
+    }
+
+    /**
+     * @return The array the ciphertext was written to.
+     */
+    @Benchmark
+    public byte[] encryptInto() {
+        cipher.encrypt(plaintext, 0, size, out, 0, key);
+        return out;
+    }
+
+    /**
+     * @return The array the plaintext was written to.
+     */
+    @Benchmark
+    public byte[] decryptInto() {
+        cipher.decrypt(ciphertext, 0, size, out, 0, key);
+        return out;
+    }
+}
@@ -0,0 +1,76 @@
+package aes.benchmarks;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import utils.StringHelper;
+
+/**
+ * Measures the hex codec on payloads the size of a short ciphertext and of a bulk payload, both allocating a String and
+ * writing into reused arrays.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class HexBenchmark {
+    /**
+     * The number of bytes per payload.
+     */
+    @Param({ "64", "1048576" })
+    public int size;
+
+    private byte[] bytes;
+    private char[] chars;
+    private String hex;
+
+    /**
+     * Generates a random payload and its hex.
+     */
+    @Setup
+    public void setUp() {
+        bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        chars = new char[2 * size];
+        hex = StringHelper.bytesToHex(bytes);
+    }
+
+    /**
+     * @return The payload as a hex String.
+     */
+    @Benchmark
+    public String bytesToHex() {
+        return StringHelper.bytesToHex(bytes);
+    }
+
+    /**
+     * @return The hex digits written into a reused array.
+     */
+    @Benchmark
+    public char[] encodeIntoArray() {
+        StringHelper.encodeHex(bytes, 0, size, chars, 0);
+        return chars;
+    }
+
+    /**
+     * @return The payload decoded into a reused array.
+     */
+    @Benchmark
+    public byte[] decodeIntoArray() {
+        StringHelper.decodeHex(hex, 0, hex.length(), bytes, 0);
+        return bytes;
+    }
+}
@@ -0,0 +1,53 @@
+package aes.benchmarks;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import aes.Key;
+
+/**
+ * Measures expanding a raw key with {@link Key#getKey(byte[])} for each key length.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class KeyExpansionBenchmark {
+    /**
+     * The length of the key in bits.
+     */
+    @Param({ "128", "192", "256" })
+    public int keyBits;
+
+    private byte[] key;
+
+    /**
+     * Generates a random key of the requested length.
+     */
+    @Setup
+    public void setUp() {
+        key = new byte[keyBits / 8];
+        new Random(keyBits).nextBytes(key);
+    }
+
+    /**
+     * @return The expanded key.
+     */
+    @Benchmark
+    public Key getKey() {
+        return Key.getKey(key);
+    }
+}
@@ -0,0 +1,147 @@
+package aes.benchmarks;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import aes.SBox;
+import utils.Functions;
+
+/**
+ * Measures the byte-level building blocks of the reference cipher: the S-box, multiplication in GF(2^8) and the round
+ * functions of a {@link aes.State}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class PrimitivesBenchmark {
+    private byte a;
+    private byte b;
+    private aes.State state;
+    private byte[] roundKey;
+
+    /**
+     * Picks fresh operands before each iteration so the results cannot be constant folded.
+     */
+    @Setup(Level.Iteration)
+    public void setUp() {
+        a = (byte) System.nanoTime();
+        b = (byte) (System.nanoTime() >>> 8);
+        byte[] block = new byte[16];
+        roundKey = new byte[16];
+        for (int i = 0; i < 16; i++) {
+            block[i] = (byte) (a + i);
+            roundKey[i] = (byte) (b * i);
+        }
+        state = new aes.State(block);
+    }
+
+    /**
+     * @return The S-box applied to a byte.
+     */
+    @Benchmark
+    public byte sBoxApply() {
+        return SBox.apply(a);
+    }
+
+    /**
+     * @return The inverse S-box applied to a byte.
+     */
+    @Benchmark
+    public byte sBoxApplyInverse() {
+        return SBox.applyInverse(a);
+    }
+
+    /**
+     * @return The product of two bytes in GF(2^8).
+     */
+    @Benchmark
+    public byte functionsMul() {
+        return Functions.mul(a, b);
+    }
+
+    /**
+     * @return The product of a byte and {0e} in GF(2^8), as used by InvMixColumns.
+     */
+    @Benchmark
+    public byte functionsMul14() {
+        return Functions.mul14(a);
+    }
+
+    /**
+     * @return The multiplicative inverse of a byte in GF(2^8).
+     */
+    @Benchmark
+    public byte functionsMultInverse() {
+        return Functions.getMultInverse(a);
+    }
+
+    /**
+     * @return The state after SubBytes.
+     */
+    @Benchmark
+    public aes.State subBytes() {
+        state.subBytes();
+        return state;
+    }
+
+    /**
+     * @return The state after ShiftRows.
+     */
+    @Benchmark
+    public aes.State shiftRows() {
+        state.shiftRows();
+        return state;
+    }
+
+    /**
+     * @return The state after MixColumns.
+     */
+    @Benchmark
+    public aes.State mixColumns() {
+        state.mixColumns();
+        return state;
+    }
+
+    /**
+     * @return The state after InvMixColumns.
+     */
+    @Benchmark
+    public aes.State invMixColumns() {
+        state.invMixColumns();
+        return state;
+    }
+
+    /**
+     * @return The state after AddRoundKey.
+     */
+    @Benchmark
+    public aes.State addRoundKey() {
+        state.addRoundKey(roundKey);
+        return state;
+    }
+
+    /**
+     * @return The state after a full encryption round.
+     */
+    @Benchmark
+    public aes.State round() {
+        state.subBytes();
+        state.shiftRows();
+        state.mixColumns();
+        state.addRoundKey(roundKey);
+        return state;
+    }
+}
@@ -1,22 +1,154 @@
 package aes;
+import aes.engines.Backend;
+import aes.engines.BlockEngine;
+import aes.engines.bitsliced.BitslicedEngine;
+import aes.engines.jdk.JdkEngine;
+import aes.engines.reference.ReferenceEngine;
+import aes.engines.table.TableEngine;
 import aes.modes.BlockCipherMode;
+import aes.modes.Parallelism;
+import aes.modes.cbc.AesCbc;
+import aes.modes.ctr.AesCtr;
 import aes.modes.ecb.AesEcb;
+import aes.modes.gcm.AesGcm;
 
 /**
+ * <p>
  * AesFactory abstracts the instantiation of a {@link Cipher} implemented with a given {@link BlockCipherMode} that uses the
  * Advanced Encryption Standard (AES).
+ * </p>
+ *
+ * <p>
+ * Unless a {@link Backend} is named, ciphers use {@link Backend#TABLE}. {@link Backend#AUTO} must be asked for: it
+ * stands for the backend found fastest on this machine by a {@link Calibration} that runs once, on first use, and blocks
+ * that first caller for about half a second.
+ * </p>
  */
 public class AesFactory {
+    private static volatile Calibration calibration;
 
     /**
      * A static factory method that returns a {@link Cipher} implemented with a given {@link BlockCipherMode} that uses AES.
+     * Blocks are transformed by the {@link Backend#TABLE} backend.
      *
      * @param mode The block cipher mode of operation to use.
      * @return A {@link Cipher} implemented with a given {@link BlockCipherMode} that uses AES.
      */
     public static Cipher getCipher(BlockCipherMode mode) {
+        return getCipher(mode, Backend.TABLE);
+    }
+
+    /**
+     * A static factory method that returns a {@link Cipher} implemented with a given {@link BlockCipherMode} that uses AES
+     * and transforms blocks with the given {@link Backend}.
+     *
+     * @param mode The block cipher mode of operation to use.
+     * @param backend The implementation of the AES block transformation to use.
+     * @return A {@link Cipher} implemented with a given {@link BlockCipherMode} that uses AES.
+     */
+    public static Cipher getCipher(BlockCipherMode mode, Backend backend) {
+        return getCipher(mode, backend, null);
+    }
+
+    /**
+     * A static factory method that returns a {@link Cipher} implemented with a given {@link BlockCipherMode} that uses AES,
+     * transforms blocks with the given {@link Backend} and expands raw keys through a {@link KeyCache}.
+     *
+     * @param mode The block cipher mode of operation to use.
+     * @param backend The implementation of the AES block transformation to use.
+     * @param keyCache The cache to expand raw keys through, or null to expand them on every call.
+     * @return A {@link Cipher} implemented with a given {@link BlockCipherMode} that uses AES.
+     */
+    public static Cipher getCipher(BlockCipherMode mode, Backend backend, KeyCache keyCache) {
+        return getCipher(mode, backend, keyCache, Parallelism.SEQUENTIAL);
+    }
+
+    /**
+     * A static factory method that returns a {@link Cipher} implemented with a given {@link BlockCipherMode} that uses AES,
+     * transforms blocks with the given {@link Backend}, expands raw keys through a {@link KeyCache} and splits long
+     * messages across threads where the mode allows it.
+     *
+     * @param mode The block cipher mode of operation to use.
+     * @param backend The implementation of the AES block transformation to use.
+     * @param keyCache The cache to expand raw keys through, or null to expand them on every call.
+     * @param parallelism How to split long messages across threads.
+     * @return A {@link Cipher} implemented with a given {@link BlockCipherMode} that uses AES.
+     */
+    public static Cipher getCipher(BlockCipherMode mode, Backend backend, KeyCache keyCache, Parallelism parallelism) {
+        BlockEngine engine = getEngine(backend);
+        if (engine == null)
+            return null;
         if (mode == BlockCipherMode.ECB)
-            return new AesEcb();
+            return new AesEcb(engine, keyCache, parallelism);
+        if (mode == BlockCipherMode.CTR)
+            return new AesCtr(engine, keyCache, parallelism);
+        if (mode == BlockCipherMode.CBC)
+            return new AesCbc(engine, keyCache, parallelism);
+        if (mode == BlockCipherMode.GCM)
+            return new AesGcm(engine, keyCache, parallelism);
         return null;
     }
+
+    /**
+     * A static factory method that returns the {@link BlockEngine} for a given {@link Backend}.
+     *
+     * @param backend The implementation of the AES block transformation to use.
+     * @return A {@link BlockEngine} implemented by the given {@link Backend}.
+     */
+    public static BlockEngine getEngine(Backend backend) {
+        if (backend == Backend.REFERENCE)
+            return new ReferenceEngine();
+        if (backend == Backend.TABLE)
+            return new TableEngine();
+        if (backend == Backend.BITSLICED)
+            return new BitslicedEngine();
+        if (backend == Backend.VECTOR)
+            return getVectorEngine();
+        if (backend == Backend.JDK)
+            return new JdkEngine();
+        if (backend == Backend.AUTO)
+            return getEngine(getSelectedBackend());
+        return null;
+    }
+
+    /**
+     * @return The backend that {@link Backend#AUTO} stands for on this machine.
+     * @throws IllegalArgumentException If the system property {@value Calibration#PROPERTY} names no backend.
+     */
+    public static Backend getSelectedBackend() {
+        return getCalibration().getSelected();
+    }
+
+    /**
+     * Returns how {@link Backend#AUTO} was resolved, calibrating first if no cipher has used it yet.
+     *
+     * @return The backend chosen and the throughputs measured.
+     * @throws IllegalArgumentException If the system property {@value Calibration#PROPERTY} names no backend.
+     */
+    public static Calibration getCalibration() {
+        Calibration result = calibration;
+        if (result == null) {
+            synchronized (AesFactory.class) {
+                result = calibration;
+                if (result == null) {
+                    result = Calibration.calibrate(System.getProperty(Calibration.PROPERTY));
+                    calibration = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Loads the vector engine reflectively, so that this class does not depend on the incubating Vector API.
+     *
+     * @return The vector engine, or the table engine if the Vector API is unavailable or unsuitable.
+     */
+    private static BlockEngine getVectorEngine() {
+        try {
+            return (BlockEngine) Class.forName("aes.engines.vector.VectorEngine").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return new TableEngine();
+        }
+    }
 }
@@ -0,0 +1,16 @@
+package aes;
+
+/**
+ * AuthenticationException is thrown when an authenticated mode of operation finds that a ciphertext or its associated
+ * data has been modified, or was produced under a different key or nonce.
+ */
+public class AuthenticationException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @param message A description of the failure.
+     */
+    public AuthenticationException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,321 @@
+package aes;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import aes.engines.Backend;
+import aes.engines.BlockEngine;
+import aes.engines.reference.ReferenceEngine;
+
+import utils.StringHelper;
+
+/**
+ * <p>
+ * Calibration records which {@link Backend} {@link Backend#AUTO} stands for on this machine and why.
+ * </p>
+ *
+ * <p>
+ * Each candidate backend must first reproduce the known-answer vectors of FIPS-197 appendix C and agree with the
+ * {@link Backend#REFERENCE} backend on a buffer of random blocks in both directions. The reference backend is never a
+ * candidate, only the judge of correctness.
+ * </p>
+ *
+ * <p>
+ * Candidates that pass are timed in short rounds until their throughput stops improving, which takes a few hundred
+ * milliseconds while the JIT compiles them. Each round times calls of 1024 blocks and calls of a single block, because
+ * modes such as CBC encryption and GCM key setup call the engine once per block, each in both directions, because CBC
+ * and ECB decryption are as common as encryption. A candidate's score is the throughput of a workload split evenly
+ * between the two sizes of call and the two directions. Candidates are considered in a fixed order of
+ * preference, and a later candidate replaces the one chosen so far only if it scores at least {@value #MARGIN} times as
+ * high, so that measurement noise between close candidates does not change the choice from run to run.
+ * </p>
+ *
+ * <p>
+ * Calls whose key changes from block to block, such as the batches of {@link aes.modes.ecb.AesEcb}, are not timed. The
+ * JDK backend hands such blocks to the table engine, so on that workload it runs at the speed of {@link Backend#TABLE}
+ * whichever of the two is chosen.
+ * </p>
+ *
+ * <p>
+ * {@link Backend#BITSLICED} and {@link Backend#VECTOR} are never chosen, since both are slower than
+ * {@link Backend#TABLE}; name them with {@value #PROPERTY} where constant time or experiment matters more than speed.
+ * </p>
+ *
+ * <p>
+ * If the system property {@value #PROPERTY} names a backend, that backend is used without calibrating and no throughputs
+ * are recorded.
+ * </p>
+ */
+public final class Calibration {
+    /**
+     * The system property that overrides the calibrated backend.
+     */
+    public static final String PROPERTY = "aes.backend";
+
+    /**
+     * How many times higher a later candidate must score than the one chosen so far to replace it.
+     */
+    public static final double MARGIN = 1.25;
+
+    /**
+     * The backends that may be chosen, in order of preference.
+     */
+    private static final Backend[] CANDIDATES = { Backend.JDK, Backend.TABLE };
+
+    /**
+     * The number of blocks per bulk call.
+     */
+    private static final int BLOCKS = 1024;
+
+    /**
+     * The number of single block calls per bulk call in a round.
+     */
+    private static final int SINGLE_CALLS = 64;
+
+    /**
+     * How long each round lasts.
+     */
+    private static final long ROUND_NANOS = 10000000L;
+
+    /**
+     * A round improves on the best so far if it scores this many times as high.
+     */
+    private static final double IMPROVEMENT = 1.05;
+
+    /**
+     * The number of consecutive rounds without improvement after which a candidate's throughput is taken as stable.
+     */
+    private static final int STABLE_ROUNDS = 8;
+
+    /**
+     * The longest a single candidate is timed, stable or not.
+     */
+    private static final long MAX_NANOS = 1000000000L;
+
+    /**
+     * The cipher keys of FIPS-197 appendix C.1, C.2 and C.3.
+     */
+    private static final String[] KAT_KEYS = {
+        "000102030405060708090a0b0c0d0e0f",
+        "000102030405060708090a0b0c0d0e0f1011121314151617",
+        "000102030405060708090a0b0c0d0e0f101112131415161718191a1b1c1d1e1f"
+    };
+
+    /**
+     * The plaintext of FIPS-197 appendix C.
+     */
+    private static final String KAT_PLAINTEXT = "00112233445566778899aabbccddeeff";
+
+    /**
+     * The ciphertexts of FIPS-197 appendix C.1, C.2 and C.3.
+     */
+    private static final String[] KAT_CIPHERTEXTS = {
+        "69c4e0d86a7b0430d8cdb78070b4c55a",
+        "dda97ca4864cdfe06eaf70a0ec0d7191",
+        "8ea2b7ca516745bfeafc49904b496089"
+    };
+
+    private final Backend selected;
+    private final Map<Backend, Double> throughputs;
+    private final boolean overridden;
+
+    /**
+     * Do not allow public instantiation.
+     *
+     * @param selected The backend that was chosen.
+     * @param throughputs The measured throughput of each candidate that passed verification.
+     * @param overridden Whether the backend was named by {@value #PROPERTY}.
+     */
+    private Calibration(Backend selected, Map<Backend, Double> throughputs, boolean overridden) {
+        this.selected = selected;
+        this.throughputs = Collections.unmodifiableMap(throughputs);
+        this.overridden = overridden;
+    }
+
+    /**
+     * @return The backend that {@link Backend#AUTO} stands for, which is never {@link Backend#AUTO}.
+     */
+    public Backend getSelected() {
+        return selected;
+    }
+
+    /**
+     * <p>
+     * Returns the score of each candidate: its steady-state throughput, in megabytes (10^6 bytes) per second, on a
+     * workload of ECB encryption and decryption split evenly by bytes between the two directions and between calls of
+     * 1024 blocks and calls of one block.
+     * </p>
+     *
+     * <p>
+     * Candidates that failed verification, or that are not available on this machine, are absent. The map is empty when
+     * the backend was named by {@value #PROPERTY}.
+     * </p>
+     *
+     * @return The measured throughputs, which may not be modified.
+     */
+    public Map<Backend, Double> getThroughputs() {
+        return throughputs;
+    }
+
+    /**
+     * @return Whether the backend was named by {@value #PROPERTY} instead of being calibrated.
+     */
+    public boolean isOverridden() {
+        return overridden;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "Calibration[selected=" + selected + (overridden ? " (" + PROPERTY + ")" : "") + ", MB/s=" + throughputs + "]";
+    }
+
+    /**
+     * Chooses a backend, honouring an override if one is given.
+     *
+     * @param override The name of the backend to use, or null or {@link Backend#AUTO} to calibrate.
+     * @return The outcome.
+     * @throws IllegalArgumentException If the override names no backend.
+     */
+    static Calibration calibrate(String override) {
+        if (override != null && !override.trim().isEmpty()) {
+            Backend backend;
+            try {
+                backend = Backend.valueOf(override.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown backend in " + PROPERTY + ": " + override, e);
+            }
+            if (backend != Backend.AUTO) {
+                return new Calibration(backend, new EnumMap<Backend, Double>(Backend.class), true);
+            }
+        }
+
+        Key key = Key.getKey(new byte[16]);
+        byte[] plaintext = new byte[16 * BLOCKS];
+        new Random(197).nextBytes(plaintext);
+        byte[] expected = new byte[plaintext.length];
+        new ReferenceEngine().encryptBlocks(plaintext, 0, expected, 0, BLOCKS, key);
+
+        Map<Backend, BlockEngine> engines = new EnumMap<Backend, BlockEngine>(Backend.class);
+        for (Backend backend : CANDIDATES) {
+            BlockEngine engine = AesFactory.getEngine(backend);
+            if (verify(engine, key, plaintext, expected)) {
+                engines.put(backend, engine);
+            }
+        }
+        if (engines.isEmpty()) {
+            return new Calibration(Backend.REFERENCE, new EnumMap<Backend, Double>(Backend.class), false);
+        }
+
+        byte[] buffer = plaintext.clone();
+        Map<Backend, Double> throughputs = new EnumMap<Backend, Double>(Backend.class);
+        for (Map.Entry<Backend, BlockEngine> entry : engines.entrySet()) {
+            throughputs.put(entry.getKey(), measure(entry.getValue(), key, buffer));
+        }
+        return new Calibration(select(throughputs), throughputs, false);
+    }
+
+    /**
+     * Chooses among measured candidates: the first in order of preference, unless a later one scores at least
+     * {@link #MARGIN} times as high as the one chosen so far.
+     *
+     * @param throughputs The score of each candidate that passed verification.
+     * @return The chosen backend.
+     */
+    static Backend select(Map<Backend, Double> throughputs) {
+        Backend selected = null;
+        for (Backend backend : CANDIDATES) {
+            Double throughput = throughputs.get(backend);
+            if (throughput != null && (selected == null || throughput >= MARGIN * throughputs.get(selected))) {
+                selected = backend;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Checks an engine against the known-answer vectors and against the reference engine.
+     *
+     * @return Whether every check passed.
+     */
+    private static boolean verify(BlockEngine engine, Key key, byte[] plaintext, byte[] expected) {
+        try {
+            for (int i = 0; i < KAT_KEYS.length; i++) {
+                Key katKey = Key.getKey(StringHelper.hexStringToByteArray(KAT_KEYS[i]));
+                byte[] block = StringHelper.hexStringToByteArray(KAT_PLAINTEXT);
+                byte[] ciphertext = StringHelper.hexStringToByteArray(KAT_CIPHERTEXTS[i]);
+                byte[] actual = new byte[16];
+                engine.encryptBlocks(block, 0, actual, 0, 1, katKey);
+                if (!Arrays.equals(ciphertext, actual)) {
+                    return false;
+                }
+                engine.decryptBlocks(ciphertext, 0, actual, 0, 1, katKey);
+                if (!Arrays.equals(block, actual)) {
+                    return false;
+                }
+            }
+
+            byte[] actual = new byte[plaintext.length];
+            engine.encryptBlocks(plaintext, 0, actual, 0, BLOCKS, key);
+            if (!Arrays.equals(expected, actual)) {
+                return false;
+            }
+            engine.decryptBlocks(actual, 0, actual, 0, BLOCKS, key);
+            return Arrays.equals(plaintext, actual);
+        } catch (RuntimeException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Times rounds until the score has not improved for {@value #STABLE_ROUNDS} rounds in a row, or for at most
+     * {@link #MAX_NANOS}.
+     *
+     * @return The best score of any round.
+     */
+    private static double measure(BlockEngine engine, Key key, byte[] buffer) {
+        double best = 0;
+        int stale = 0;
+        long start = System.nanoTime();
+        while (stale < STABLE_ROUNDS && System.nanoTime() - start < MAX_NANOS) {
+            double score = round(engine, key, buffer);
+            stale = score > IMPROVEMENT * best ? 0 : stale + 1;
+            best = Math.max(best, score);
+        }
+        return best;
+    }
+
+    /**
+     * Alternates a bulk encryption and decryption with {@value #SINGLE_CALLS} single block encryptions and decryptions,
+     * transforming the buffer in place, for at least {@link #ROUND_NANOS}.
+     *
+     * @return The throughput in megabytes per second of a workload split evenly between the two kinds of call.
+     */
+    private static double round(BlockEngine engine, Key key, byte[] buffer) {
+        long bulkNanos = 0;
+        long singleNanos = 0;
+        long rounds = 0;
+        do {
+            long t0 = System.nanoTime();
+            engine.encryptBlocks(buffer, 0, buffer, 0, BLOCKS, key);
+            engine.decryptBlocks(buffer, 0, buffer, 0, BLOCKS, key);
+            long t1 = System.nanoTime();
+            for (int i = 0; i < SINGLE_CALLS; i++) {
+                engine.encryptBlocks(buffer, 16 * i, buffer, 16 * i, 1, key);
+                engine.decryptBlocks(buffer, 16 * i, buffer, 16 * i, 1, key);
+            }
+            long t2 = System.nanoTime();
+            bulkNanos += t1 - t0;
+            singleNanos += t2 - t1;
+            rounds++;
+        } while (bulkNanos + singleNanos < ROUND_NANOS);
+        double bulk = rounds * 32.0 * BLOCKS * 1000 / Math.max(1, bulkNanos);
+        double single = rounds * 32.0 * SINGLE_CALLS * 1000 / Math.max(1, singleNanos);
+        return 2 / (1 / bulk + 1 / single);
+    }
+}
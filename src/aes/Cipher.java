@@ -1,7 +1,32 @@
 package aes;
+import java.nio.ByteBuffer;
 
 /**
+ * <p>
  * Cipher represents an algorithm that can encrypt and decrypt data.
+ * </p>
+ *
+ * <p>
+ * Callers that use the same key for many messages should expand it once with {@link Key#getKey(byte[])} and pass the
+ * resulting {@link Key} to {@link #encrypt(byte[], Key)} and {@link #decrypt(byte[], Key)}. The methods that take a raw
+ * key expand it on every call.
+ * </p>
+ *
+ * <p>
+ * The methods that take offsets write into a caller-supplied array instead of allocating the result, which allows buffers
+ * to be reused across calls. The input and output may be the same region of the same array to transform data in place.
+ * </p>
+ *
+ * <p>
+ * The methods that take {@link ByteBuffer}s work the same way on heap or direct buffers. They transform the bytes between
+ * the source's position and limit and advance the position of both buffers. Direct buffers are read and written without
+ * being copied to the heap where the engine supports it.
+ * </p>
+ *
+ * <p>
+ * The ciphers returned by {@link AesFactory} keep no state between calls, and {@link Key} is immutable, so a single
+ * cipher and key may be shared by any number of threads at once.
+ * </p>
  */
 public interface Cipher {
 
@@ -22,4 +47,80 @@ public interface Cipher {
      * @return The resulting plaintext.
      */
     public byte[] decrypt(byte[] ciphertext, byte[] key);
+
+    /**
+     * Takes a message and returns the resulting ciphertext.
+     *
+     * @param plaintext A message to encrypt.
+     * @param key The expanded symmetric key to use.
+     * @return The resulting ciphertext.
+     */
+    public byte[] encrypt(byte[] plaintext, Key key);
+
+    /**
+     * Takes ciphertext and returns the resulting plaintext.
+     *
+     * @param ciphertext The ciphertext to decrypt.
+     * @param key The expanded symmetric key to use.
+     * @return The resulting plaintext.
+     */
+    public byte[] decrypt(byte[] ciphertext, Key key);
+
+    /**
+     * Encrypts len bytes of in starting at inOff and writes the ciphertext to out starting at outOff.
+     *
+     * @param in The array holding the message.
+     * @param inOff The offset of the message within in.
+     * @param len The length of the message.
+     * @param out The array to write the ciphertext to. It must have room for {@link #getEncryptOutputSize(int)} bytes.
+     * @param outOff The offset to write the ciphertext to.
+     * @param key The expanded symmetric key to use.
+     * @return The number of bytes written to out.
+     */
+    public int encrypt(byte[] in, int inOff, int len, byte[] out, int outOff, Key key);
+
+    /**
+     * Decrypts len bytes of in starting at inOff and writes the plaintext to out starting at outOff.
+     *
+     * @param in The array holding the ciphertext.
+     * @param inOff The offset of the ciphertext within in.
+     * @param len The length of the ciphertext.
+     * @param out The array to write the plaintext to. It must have room for {@link #getDecryptOutputSize(int)} bytes.
+     * @param outOff The offset to write the plaintext to.
+     * @param key The expanded symmetric key to use.
+     * @return The number of bytes written to out.
+     */
+    public int decrypt(byte[] in, int inOff, int len, byte[] out, int outOff, Key key);
+
+    /**
+     * @param plaintextLength The length of a message.
+     * @return The length of the ciphertext that encrypting the message produces.
+     */
+    public int getEncryptOutputSize(int plaintextLength);
+
+    /**
+     * @param ciphertextLength The length of a ciphertext.
+     * @return The maximum length of the plaintext that decrypting the ciphertext produces.
+     */
+    public int getDecryptOutputSize(int ciphertextLength);
+
+    /**
+     * Encrypts the remaining bytes of src and writes the ciphertext to dst.
+     *
+     * @param src The buffer holding the message between its position and limit.
+     * @param dst The buffer to write the ciphertext to. It must have room for {@link #getEncryptOutputSize(int)} bytes.
+     * @param key The expanded symmetric key to use.
+     * @return The number of bytes written to dst.
+     */
+    public int encrypt(ByteBuffer src, ByteBuffer dst, Key key);
+
+    /**
+     * Decrypts the remaining bytes of src and writes the plaintext to dst.
+     *
+     * @param src The buffer holding the ciphertext between its position and limit.
+     * @param dst The buffer to write the plaintext to. It must have room for {@link #getDecryptOutputSize(int)} bytes.
+     * @param key The expanded symmetric key to use.
+     * @return The number of bytes written to dst.
+     */
+    public int decrypt(ByteBuffer src, ByteBuffer dst, Key key);
 }
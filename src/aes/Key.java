@@ -1,10 +1,27 @@
 package aes;
 import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import aes.metrics.Instrumentation;
 
 import utils.Functions;
 
 /**
+ * <p>
  * Key represents an expanded key as outlined in FIPS-197 for the Advanced Encryption Standard.
+ * </p>
+ *
+ * <p>
+ * Expanding a key is far more expensive than encrypting a block with it. A Key should be created once with
+ * {@link #getKey(byte[])} and passed to every encrypt or decrypt call that uses the same key material.
+ * </p>
+ *
+ * <p>
+ * A Key is immutable once constructed and all of its fields are final, so it is safely published and may be shared by
+ * any number of threads and ciphers at once. Round keys are read by index with {@link #getRoundKey(int)} or directly
+ * from the shared schedules, which callers must not modify.
+ * </p>
  */
 public class Key {
     /**
@@ -28,8 +45,24 @@ public class Key {
      */
     public final int Nk;
 
-    private byte[] key;
-    private int keyCount;
+    /**
+     * The round constants {xPow}{00}{00}{00} for every power key expansion can use (1 to 10 for 128 bit keys).
+     */
+    private static final byte[][] RCON = new byte[11][];
+
+    static {
+        byte xPow = 0x01;
+        for (int pow = 1; pow < RCON.length; pow++) {
+            RCON[pow] = new byte[] { xPow, 0x00, 0x00, 0x00 };
+            xPow = Functions.xtime(xPow);
+        }
+    }
+
+    private final byte[] key;
+    private final int[] words;
+    private final byte[] decryptKey;
+    private final int[] decryptWords;
+    private final ConcurrentHashMap<Object, Object> derived = new ConcurrentHashMap<Object, Object>(4);
 
     /**
      * Do not allow public instantiation.
@@ -40,11 +73,13 @@ public class Key {
      */
     private Key(byte[] key, int Nr, int Nk) {
         this.key = new byte[4 * Nb * (Nr + 1)];
-        this.keyCount = 0;
         this.Nr = Nr;
         this.Nk = Nk;
 
         keyExpansion(key);
+        this.words = toWords(this.key);
+        this.decryptKey = equivalentInverseKey(this.key);
+        this.decryptWords = toWords(this.decryptKey);
     }
 
     /**
@@ -61,9 +96,12 @@ public class Key {
             System.exit(1);
         }
 
+        long start = Instrumentation.start();
         int Nk = key_len / 4;
         int Nr = Nk + 6;
-        return new Key(key, Nr, Nk);
+        Key expanded = new Key(key, Nr, Nk);
+        Instrumentation.keyExpanded(start, key_len);
+        return expanded;
     }
 
     /**
@@ -102,7 +140,13 @@ public class Key {
     }
 
     /**
+     * <p>
      * Returns the fully expanded key.
+     * </p>
+     *
+     * <p>
+     * The returned array is shared by every caller and must not be modified.
+     * </p>
      *
      * @return The fully expanded key.
      */
@@ -111,57 +155,167 @@ public class Key {
     }
 
     /**
-     * Returns the next 16 bytes of the expanded key.
+     * <p>
+     * Returns the fully expanded key as big-endian 32-bit words, one per column of each round key.
+     * </p>
+     *
+     * <p>
+     * The returned array is shared by every caller and must not be modified.
+     * </p>
      *
-     * @return The next 16 bytes of the expanded key.
+     * @return The fully expanded key as Nb * (Nr + 1) words.
      */
-    public byte[] getEncryptKey() {
-        byte[] keyPart = Arrays.copyOfRange(this.key, keyCount, keyCount + 16);
-        keyCount += 16;
-        return keyPart;
+    public int[] getExpandedWords() {
+        return this.words;
     }
 
     /**
-     * Returns the previous 16 bytes of the expanded key.
+     * <p>
+     * Returns the decryption key schedule for the equivalent inverse cipher outlined in section 5.3.5 of FIPS-197.
+     * </p>
+     *
+     * <p>
+     * The round keys are stored in the order decryption uses them: the last encryption round key first and the cipher key
+     * last. InvMixColumns has already been applied to every round key except those two, so decryption can apply
+     * InvMixColumns before AddRoundKey and keep the same round structure as encryption.
+     * </p>
      *
-     * @return The previous 16 bites of the expanded key.
+     * <p>
+     * The returned array is shared by every caller and must not be modified.
+     * </p>
+     *
+     * @return The decryption key schedule.
      */
-    public byte[] getDecryptKey() {
-        byte[] keyPart = Arrays.copyOfRange(this.key, keyCount - 16, keyCount);
-        keyCount -= 16;
-        return keyPart;
+    public byte[] getDecryptionKey() {
+        return this.decryptKey;
     }
 
     /**
-     * Resets the index counter so the key can be used again to encrypt the next 16-bytes.
+     * <p>
+     * Returns the decryption key schedule from {@link #getDecryptionKey()} as big-endian 32-bit words.
+     * </p>
+     *
+     * <p>
+     * The returned array is shared by every caller and must not be modified.
+     * </p>
+     *
+     * @return The decryption key schedule as Nb * (Nr + 1) words.
      */
-    public void resetCounter() {
-        keyCount = 0;
+    public int[] getDecryptionWords() {
+        return this.decryptWords;
     }
 
     /**
-     * Resets the index counter so the key can be used again to decrypt the next 16-bytes.
+     * <p>
+     * Returns data derived from this key, computing it the first time it is requested.
+     * </p>
+     *
+     * <p>
+     * Modes of operation use this to keep per-key precomputation, such as the GCM hash tables, alongside the expanded key
+     * so that it is shared by every cipher and cache that uses the same Key. The factory must always compute the same
+     * value for the same slot. It may run more than once if threads race for the same slot, and it may itself request
+     * other slots, as the GCM table does when the JDK backend transforms its hash subkey.
+     * </p>
+     *
+     * @param slot An object identifying the kind of data, compared by identity.
+     * @param factory Computes the data from this key.
+     * @return The data for the given slot.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getDerived(Object slot, Function<Key, T> factory) {
+        Object value = derived.get(slot);
+        if (value == null) {
+            // computed outside the map, which does not allow a computation to update the map again
+            value = factory.apply(this);
+            Object previous = derived.putIfAbsent(slot, value);
+            if (previous != null) {
+                value = previous;
+            }
+        }
+        return (T) value;
+    }
+
+    /**
+     * @return The number of round keys, Nr + 1.
      */
-    public void resetDecryptCounter() {
-        keyCount = 4 * Nb * (Nr + 1);
+    public int getRoundCount() {
+        return Nr + 1;
+    }
+
+    /**
+     * Returns a copy of an encryption round key. Round 0 is the cipher key, added before the first round.
+     *
+     * @param round The round, from 0 to Nr.
+     * @return A new array holding the 16 bytes of the round key.
+     */
+    public byte[] getRoundKey(int round) {
+        return copyRound(this.key, round);
+    }
+
+    /**
+     * Returns a copy of a round key of the decryption key schedule from {@link #getDecryptionKey()}, in the order
+     * decryption uses them.
+     *
+     * @param round The round, from 0 to Nr.
+     * @return A new array holding the 16 bytes of the round key.
+     */
+    public byte[] getDecryptionRoundKey(int round) {
+        return copyRound(this.decryptKey, round);
+    }
+
+    /**
+     * @return The 16 bytes of schedule for the given round.
+     */
+    private byte[] copyRound(byte[] schedule, int round) {
+        if (round < 0 || round > Nr) {
+            throw new IndexOutOfBoundsException("Invalid round: " + round);
+        }
+        return Arrays.copyOfRange(schedule, 4 * Nb * round, 4 * Nb * (round + 1));
     }
 
     /**
      * @param pow The power of x + 1.
-     * @return A word representing {xPow}{00}{00}{00}.
+     * @return A word representing {xPow}{00}{00}{00}. The returned array is shared and must not be modified.
      */
     private byte[] rCon(int pow) {
-        byte[] roundConstant = new byte[4];
-        byte xPow = 0x01;
-        for (int i = 0; i < (pow - 1); i++) {
-            xPow = Functions.xtime(xPow);
+        return RCON[pow];
+    }
+
+    /**
+     * Builds the decryption key schedule for the equivalent inverse cipher from an expanded key.
+     *
+     * @param expanded The expanded key.
+     * @return The round keys in reverse order with InvMixColumns applied to all but the first and last.
+     */
+    private byte[] equivalentInverseKey(byte[] expanded) {
+        byte[] dk = new byte[expanded.length];
+        for (int round = 0; round <= Nr; round++) {
+            System.arraycopy(expanded, 4 * Nb * (Nr - round), dk, 4 * Nb * round, 4 * Nb);
         }
-        roundConstant[0] = xPow;
-        roundConstant[1] = 0x00;
-        roundConstant[2] = 0x00;
-        roundConstant[3] = 0x00;
 
-        return roundConstant;
+        byte[] col = new byte[4];
+        for (int c = Nb; c < Nb * Nr; c++) {
+            System.arraycopy(dk, 4 * c, col, 0, 4);
+            for (int r = 0; r < 4; r++) {
+                dk[4 * c + r] = (byte) (Functions.mul14(col[r]) ^ Functions.mul11(col[(r + 1) % 4]) ^ Functions.mul13(col[(r + 2) % 4])
+                        ^ Functions.mul9(col[(r + 3) % 4]));
+            }
+        }
+        return dk;
+    }
+
+    /**
+     * Packs bytes into big-endian words.
+     *
+     * @param bytes An array whose length is a multiple of 4.
+     * @return A new array with words[i] = bytes[4i..4i+3].
+     */
+    private static int[] toWords(byte[] bytes) {
+        int[] words = new int[bytes.length / 4];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = ((bytes[4 * i] & 0xff) << 24) | ((bytes[4 * i + 1] & 0xff) << 16) | ((bytes[4 * i + 2] & 0xff) << 8) | (bytes[4 * i + 3] & 0xff);
+        }
+        return words;
     }
 
     /**
@@ -0,0 +1,196 @@
+package aes;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * KeyCache maps raw key material to expanded {@link Key} schedules so that hot keys are only expanded once.
+ * </p>
+ *
+ * <p>
+ * The cache holds at most a fixed number of keys and evicts the least recently used one when it is full. Entries are
+ * spread across independently locked stripes by the hash of the key material, so threads using different keys rarely
+ * contend. Each stripe enforces its share of the maximum size, which makes eviction approximately rather than globally
+ * least recently used.
+ * </p>
+ *
+ * <p>
+ * NOTE: the cache keeps a copy of the raw key material for every entry until it is evicted or {@link #clear()} is
+ * called.
+ * </p>
+ */
+public class KeyCache {
+    private static final int DEFAULT_STRIPES = 16;
+
+    private final Stripe[] stripes;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Constructs a cache that holds at most maxSize expanded keys.
+     *
+     * @param maxSize The maximum number of keys to hold.
+     */
+    public KeyCache(int maxSize) {
+        this(maxSize, DEFAULT_STRIPES);
+    }
+
+    /**
+     * Constructs a cache that holds at most maxSize expanded keys spread across the given number of stripes.
+     *
+     * @param maxSize The maximum number of keys to hold.
+     * @param stripeCount The number of independently locked stripes. It is reduced to maxSize if it is larger.
+     */
+    public KeyCache(int maxSize, int stripeCount) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Invalid cache size: " + maxSize);
+        }
+        if (stripeCount < 1) {
+            throw new IllegalArgumentException("Invalid stripe count: " + stripeCount);
+        }
+        stripeCount = Math.min(stripeCount, maxSize);
+
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            // spread the remainder so the stripe capacities add up to maxSize
+            int capacity = maxSize / stripeCount + (i < maxSize % stripeCount ? 1 : 0);
+            this.stripes[i] = new Stripe(capacity);
+        }
+    }
+
+    /**
+     * Returns the expanded key for the given key material, expanding and caching it if it is not already cached.
+     *
+     * @param key The key to use. Supported key lengths are 16, 24, and 32 bytes (128, 192, 256 bits)
+     * @return The expanded key object.
+     */
+    public Key get(byte[] key) {
+        int hash = Arrays.hashCode(key);
+        Stripe stripe = stripes[(spread(hash) & 0x7fffffff) % stripes.length];
+        KeyMaterial lookup = new KeyMaterial(key, hash);
+
+        Key expanded;
+        synchronized (stripe) {
+            expanded = stripe.get(lookup);
+        }
+        if (expanded != null) {
+            hits.increment();
+            return expanded;
+        }
+
+        // expand outside the lock so a miss does not stall other keys in the same stripe
+        misses.increment();
+        expanded = Key.getKey(key);
+        KeyMaterial material = new KeyMaterial(key.clone(), hash);
+        synchronized (stripe) {
+            Key raced = stripe.get(material);
+            if (raced != null) {
+                return raced;
+            }
+            stripe.put(material, expanded);
+        }
+        return expanded;
+    }
+
+    /**
+     * @return The number of keys currently cached.
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Removes every key from the cache. The hit, miss and eviction counts are not reset.
+     */
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+    }
+
+    /**
+     * @return The number of lookups that found an expanded key in the cache.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return The number of lookups that had to expand the key.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return The number of keys removed to make room for new ones.
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Mixes the high bits of a hash into the low bits used to pick a stripe.
+     */
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * A single stripe of the cache: an access ordered map that drops its least recently used entry when it grows past
+     * its capacity. All access must hold the stripe's monitor.
+     */
+    private final class Stripe extends LinkedHashMap<KeyMaterial, Key> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        Stripe(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<KeyMaterial, Key> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Raw key material compared by value.
+     */
+    private static final class KeyMaterial {
+        private final byte[] bytes;
+        private final int hash;
+
+        KeyMaterial(byte[] bytes, int hash) {
+            this.bytes = bytes;
+            this.hash = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof KeyMaterial && Arrays.equals(bytes, ((KeyMaterial) obj).bytes);
+        }
+    }
+}
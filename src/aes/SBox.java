@@ -8,14 +8,40 @@ import utils.Functions;
  * </p>
  *
  * <p>
- * The s-box and inverse s-box transformations in this implementation do not use look-up tables. Instead, they use the
- * mathematical definitions of the s-box and inverse s-box to dynamically derive the correct output.
+ * The s-box and inverse s-box are derived from their mathematical definitions once, when this class is initialized, and
+ * stored in 256-entry look-up tables. {@link #verify()} re-derives every entry to check the tables.
  * </p>
  */
 public class SBox {
+    private static final byte[] FORWARD = new byte[256];
+    private static final byte[] INVERSE = new byte[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            FORWARD[i] = derive((byte) i);
+            INVERSE[i] = deriveInverse((byte) i);
+        }
+    }
+
+    /**
+     * Do not allow instantiation.
+     */
+    private SBox() {
+    }
+
     /**
-     * <p>
      * Takes a byte and applies the S-box.
+     *
+     * @param in A single byte.
+     * @return The input passed through the S-box.
+     */
+    public static byte apply(byte in) {
+        return FORWARD[in & 0xff];
+    }
+
+    /**
+     * <p>
+     * Takes a byte and derives the S-box output.
      * </p>
      *
      * <p>
@@ -37,7 +63,7 @@ public class SBox {
      * @param in A single byte.
      * @return The input passed through the S-box.
      */
-    public static byte apply(byte in) {
+    public static byte derive(byte in) {
         byte inv = Functions.getMultInverse(in);
         byte val = inv;
         for (int i = 0; i < 8; i++) {
@@ -64,8 +90,18 @@ public class SBox {
     }
 
     /**
-     * <p>
      * Takes a byte and applies the inverse S-box.
+     *
+     * @param in A single byte.
+     * @return The input passed through the inverse S-box.
+     */
+    public static byte applyInverse(byte in) {
+        return INVERSE[in & 0xff];
+    }
+
+    /**
+     * <p>
+     * Takes a byte and derives the inverse S-box output.
      * </p>
      *
      * <p>
@@ -87,7 +123,7 @@ public class SBox {
      * @param in A single byte.
      * @return The input passed through the inverse S-box.
      */
-    public static byte applyInverse(byte in) {
+    public static byte deriveInverse(byte in) {
         byte val = 0x05;
         for (int i = 0; i < 8; i++) {
             if (Functions.isBitSet(in, (i + 2) % 8)) {
@@ -102,4 +138,18 @@ public class SBox {
         }
         return Functions.getMultInverse(val);
     }
+
+    /**
+     * Re-derives every entry of the s-box and inverse s-box and compares it with the look-up tables.
+     *
+     * @return True if the tables match the mathematical definitions; false otherwise.
+     */
+    public static boolean verify() {
+        for (int i = 0; i < 256; i++) {
+            if (FORWARD[i] != derive((byte) i) || INVERSE[i] != deriveInverse((byte) i)) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
@@ -102,15 +102,15 @@ public class State {
      * Each column is multiplied by a(x) = (03)x^3 + (01)x^2 +(01)^x + (02).
      */
     public void mixColumns() {
-        byte[] tmp = new byte[4];
         for (int c = 0; c < 4; c++) {
-            tmp[0] = (byte) ((Functions.mul((byte) 0x02, state[0][c])) ^ (Functions.mul((byte) 0x03, state[1][c])) ^ state[2][c] ^ state[3][c]);
-            tmp[1] = (byte) (state[0][c] ^ (Functions.mul((byte) 0x02, state[1][c])) ^ (Functions.mul((byte) 0x03, state[2][c])) ^ state[3][c]);
-            tmp[2] = (byte) (state[0][c] ^ state[1][c] ^ (Functions.mul((byte) 0x02, state[2][c])) ^ (Functions.mul((byte) 0x03, state[3][c])));
-            tmp[3] = (byte) ((Functions.mul((byte) 0x03, state[0][c])) ^ state[1][c] ^ state[2][c] ^ (Functions.mul((byte) 0x02, state[3][c])));
-            for (int i = 0; i < 4; i++) {
-                state[i][c] = tmp[i];
-            }
+            byte s0 = state[0][c];
+            byte s1 = state[1][c];
+            byte s2 = state[2][c];
+            byte s3 = state[3][c];
+            state[0][c] = (byte) (Functions.mul2(s0) ^ Functions.mul3(s1) ^ s2 ^ s3);
+            state[1][c] = (byte) (s0 ^ Functions.mul2(s1) ^ Functions.mul3(s2) ^ s3);
+            state[2][c] = (byte) (s0 ^ s1 ^ Functions.mul2(s2) ^ Functions.mul3(s3));
+            state[3][c] = (byte) (Functions.mul3(s0) ^ s1 ^ s2 ^ Functions.mul2(s3));
         }
     }
 
@@ -118,19 +118,15 @@ public class State {
      * Each column is multiplied by a^-1(x) = {0b}x^3 + {0d}x^2 + {09}x + {0e}.
      */
     public void invMixColumns() {
-        byte[] tmp = new byte[4];
         for (int c = 0; c < 4; c++) {
-            tmp[0] = (byte) ((Functions.mul((byte) 0x0e, state[0][c])) ^ (Functions.mul((byte) 0x0b, state[1][c])) ^ (Functions.mul((byte) 0x0d, state[2][c])) ^ (Functions
-                    .mul((byte) 0x09, state[3][c])));
-            tmp[1] = (byte) ((Functions.mul((byte) 0x09, state[0][c])) ^ (Functions.mul((byte) 0x0e, state[1][c])) ^ (Functions.mul((byte) 0x0b, state[2][c])) ^ (Functions
-                    .mul((byte) 0x0d, state[3][c])));
-            tmp[2] = (byte) ((Functions.mul((byte) 0x0d, state[0][c])) ^ (Functions.mul((byte) 0x09, state[1][c])) ^ (Functions.mul((byte) 0x0e, state[2][c])) ^ (Functions
-                    .mul((byte) 0x0b, state[3][c])));
-            tmp[3] = (byte) ((Functions.mul((byte) 0x0b, state[0][c])) ^ (Functions.mul((byte) 0x0d, state[1][c])) ^ (Functions.mul((byte) 0x09, state[2][c])) ^ (Functions
-                    .mul((byte) 0x0e, state[3][c])));
-            for (int i = 0; i < 4; i++) {
-                state[i][c] = tmp[i];
-            }
+            byte s0 = state[0][c];
+            byte s1 = state[1][c];
+            byte s2 = state[2][c];
+            byte s3 = state[3][c];
+            state[0][c] = (byte) (Functions.mul14(s0) ^ Functions.mul11(s1) ^ Functions.mul13(s2) ^ Functions.mul9(s3));
+            state[1][c] = (byte) (Functions.mul9(s0) ^ Functions.mul14(s1) ^ Functions.mul11(s2) ^ Functions.mul13(s3));
+            state[2][c] = (byte) (Functions.mul13(s0) ^ Functions.mul9(s1) ^ Functions.mul14(s2) ^ Functions.mul11(s3));
+            state[3][c] = (byte) (Functions.mul11(s0) ^ Functions.mul13(s1) ^ Functions.mul9(s2) ^ Functions.mul14(s3));
         }
     }
 
@@ -140,9 +136,19 @@ public class State {
      * @param key 2D array representing the key.
      */
     public void addRoundKey(byte[] key) {
+        addRoundKey(key, 0);
+    }
+
+    /**
+     * xor's each state index with it's corresponding index of a round key stored inside a larger key schedule.
+     *
+     * @param schedule A key schedule.
+     * @param offset The offset of the 16-byte round key within the schedule.
+     */
+    public void addRoundKey(byte[] schedule, int offset) {
         for (int i = 0; i < 4; i++) {
             for (int k = 0; k < 4; k++) {
-                state[k][i] = (byte) (state[k][i] ^ key[k + (4 * i)]);
+                state[k][i] = (byte) (state[k][i] ^ schedule[offset + k + (4 * i)]);
             }
         }
     }
@@ -0,0 +1,67 @@
+package aes.engines;
+import java.nio.ByteBuffer;
+
+import aes.Key;
+
+/**
+ * <p>
+ * AbstractBlockEngine implements the {@link ByteBuffer} methods of {@link BlockEngine} on top of the array methods.
+ * </p>
+ *
+ * <p>
+ * Buffers backed by an accessible array are transformed directly in that array. Other buffers, such as direct buffers,
+ * are copied through a small scratch array. Engines that can read and write buffers natively should override the
+ * {@link ByteBuffer} methods.
+ * </p>
+ */
+public abstract class AbstractBlockEngine implements BlockEngine {
+    /**
+     * The number of blocks copied through the scratch array at a time.
+     */
+    private static final int SCRATCH_BLOCKS = 256;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void encryptBlocks(ByteBuffer in, int inOff, ByteBuffer out, int outOff, int blocks, Key key) {
+        transform(in, inOff, out, outOff, blocks, key, true);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void decryptBlocks(ByteBuffer in, int inOff, ByteBuffer out, int outOff, int blocks, Key key) {
+        transform(in, inOff, out, outOff, blocks, key, false);
+    }
+
+    private void transform(ByteBuffer in, int inOff, ByteBuffer out, int outOff, int blocks, Key key, boolean encrypt) {
+        if (in.hasArray() && out.hasArray() && !out.isReadOnly()) {
+            transform(in.array(), in.arrayOffset() + inOff, out.array(), out.arrayOffset() + outOff, blocks, key, encrypt);
+            return;
+        }
+
+        byte[] scratch = new byte[16 * Math.min(blocks, SCRATCH_BLOCKS)];
+        for (int done = 0; done < blocks; done += SCRATCH_BLOCKS) {
+            int n = Math.min(blocks - done, SCRATCH_BLOCKS);
+            ByteBuffer src = in.duplicate();
+            src.position(inOff + 16 * done);
+            src.get(scratch, 0, 16 * n);
+
+            transform(scratch, 0, scratch, 0, n, key, encrypt);
+
+            ByteBuffer dst = out.duplicate();
+            dst.position(outOff + 16 * done);
+            dst.put(scratch, 0, 16 * n);
+        }
+    }
+
+    private void transform(byte[] in, int inOff, byte[] out, int outOff, int blocks, Key key, boolean encrypt) {
+        if (encrypt) {
+            encryptBlocks(in, inOff, out, outOff, blocks, key);
+        } else {
+            decryptBlocks(in, inOff, out, outOff, blocks, key);
+        }
+    }
+}
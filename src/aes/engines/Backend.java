@@ -0,0 +1,84 @@
+package aes.engines;
+
+/**
+ * Backend represents an implementation of the AES block transformation that a {@link BlockEngine} can provide.
+ */
+public enum Backend {
+    /**
+     * <p>
+     * The reference backend follows FIPS-197 literally.
+     * </p>
+     *
+     * <p>
+     * Each block is loaded into a {@link aes.State} and passed through separate SubBytes, ShiftRows, MixColumns and
+     * AddRoundKey steps. It is slow but easy to follow, which makes it useful for debugging and cross-checking.
+     * </p>
+     */
+    REFERENCE,
+
+    /**
+     * <p>
+     * The table backend represents the state as four 32-bit columns.
+     * </p>
+     *
+     * <p>
+     * SubBytes, ShiftRows and MixColumns are combined into four 256-entry lookup tables per direction, so a round costs
+     * sixteen table lookups and four key xor's.
+     * </p>
+     */
+    TABLE,
+
+    /**
+     * <p>
+     * The bitsliced backend transforms 64 blocks at once, one bit of each block per bit of a long.
+     * </p>
+     *
+     * <p>
+     * The S-box is evaluated as a boolean circuit instead of a table lookup, so no memory access depends on the key or
+     * data and the backend runs in constant time. It pays for that in speed: in bulk it runs at about half the speed of
+     * {@link #TABLE}, and a call with a single block costs as much as 64. {@link #AUTO} never chooses it.
+     * </p>
+     */
+    BITSLICED,
+
+    /**
+     * <p>
+     * The vector backend transforms as many blocks as fit in a vector register at once with the Java Vector API.
+     * </p>
+     *
+     * <p>
+     * It needs the incubating jdk.incubator.vector module, enabled with --add-modules jdk.incubator.vector. Without it,
+     * or on hardware whose vectors are narrower than a block, {@link aes.AesFactory} provides the {@link #TABLE} backend
+     * instead. It is experimental and slower than {@link #TABLE}, so {@link #AUTO} never chooses it.
+     * </p>
+     */
+    VECTOR,
+
+    /**
+     * <p>
+     * The JDK backend delegates each run of blocks to the JDK's own AES/ECB/NoPadding cipher.
+     * </p>
+     *
+     * <p>
+     * The JDK compiles its AES cipher to the processor's AES instructions where they exist, so this backend is usually
+     * the fastest on recent x86 and ARM processors and the slowest elsewhere, where every call pays for the delegation.
+     * </p>
+     */
+    JDK,
+
+    /**
+     * <p>
+     * The automatic backend is whichever other backend {@link aes.AesFactory} found fastest on this machine.
+     * </p>
+     *
+     * <p>
+     * The choice is made once, on first use, by checking {@link #JDK} and {@link #TABLE} against known answers and
+     * timing them on bulk and single block ECB encryption and decryption until their throughput is stable, which takes
+     * about half a second. {@link #JDK} is kept unless {@link #TABLE} is clearly faster; {@link #BITSLICED} and
+     * {@link #VECTOR} are never chosen. Setting the system property aes.backend to the name of a backend skips the
+     * calibration and uses that backend instead. {@link aes.AesFactory#getSelectedBackend()} and
+     * {@link aes.AesFactory#getCalibration()} report the outcome.
+     * </p>
+     */
+    AUTO
+}
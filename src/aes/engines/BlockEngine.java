@@ -0,0 +1,113 @@
+package aes.engines;
+import java.nio.ByteBuffer;
+
+import aes.Key;
+
+/**
+ * <p>
+ * BlockEngine represents an implementation of the AES forward and inverse cipher on 16-byte blocks.
+ * </p>
+ *
+ * <p>
+ * A BlockEngine knows nothing about block cipher modes of operation or padding. It transforms a run of whole blocks
+ * under an expanded {@link Key}. The input and output ranges may be the same region of the same array or buffer.
+ * </p>
+ *
+ * <p>
+ * The {@link ByteBuffer} methods use absolute offsets and leave the position and limit of both buffers unchanged.
+ * </p>
+ *
+ * <p>
+ * The batch methods transform each block under its own key. By default they transform one block per call to the
+ * single-key methods; engines that can overlap blocks under different keys override them.
+ * </p>
+ */
+public interface BlockEngine {
+
+    /**
+     * @return The backend this engine implements.
+     */
+    public Backend getBackend();
+
+    /**
+     * Encrypts consecutive 16-byte blocks.
+     *
+     * @param in The array holding the plaintext blocks.
+     * @param inOff The offset of the first plaintext block.
+     * @param out The array to write the ciphertext blocks to.
+     * @param outOff The offset to write the first ciphertext block to.
+     * @param blocks The number of blocks to encrypt.
+     * @param key The expanded key to use.
+     */
+    public void encryptBlocks(byte[] in, int inOff, byte[] out, int outOff, int blocks, Key key);
+
+    /**
+     * Decrypts consecutive 16-byte blocks.
+     *
+     * @param in The array holding the ciphertext blocks.
+     * @param inOff The offset of the first ciphertext block.
+     * @param out The array to write the plaintext blocks to.
+     * @param outOff The offset to write the first plaintext block to.
+     * @param blocks The number of blocks to decrypt.
+     * @param key The expanded key to use.
+     */
+    public void decryptBlocks(byte[] in, int inOff, byte[] out, int outOff, int blocks, Key key);
+
+    /**
+     * Encrypts consecutive 16-byte blocks held in a buffer, which may be a direct buffer.
+     *
+     * @param in The buffer holding the plaintext blocks.
+     * @param inOff The absolute index of the first plaintext block.
+     * @param out The buffer to write the ciphertext blocks to.
+     * @param outOff The absolute index to write the first ciphertext block to.
+     * @param blocks The number of blocks to encrypt.
+     * @param key The expanded key to use.
+     */
+    public void encryptBlocks(ByteBuffer in, int inOff, ByteBuffer out, int outOff, int blocks, Key key);
+
+    /**
+     * Decrypts consecutive 16-byte blocks held in a buffer, which may be a direct buffer.
+     *
+     * @param in The buffer holding the ciphertext blocks.
+     * @param inOff The absolute index of the first ciphertext block.
+     * @param out The buffer to write the plaintext blocks to.
+     * @param outOff The absolute index to write the first plaintext block to.
+     * @param blocks The number of blocks to decrypt.
+     * @param key The expanded key to use.
+     */
+    public void decryptBlocks(ByteBuffer in, int inOff, ByteBuffer out, int outOff, int blocks, Key key);
+
+    /**
+     * Encrypts consecutive 16-byte blocks, each under its own key.
+     *
+     * @param in The array holding the plaintext blocks.
+     * @param inOff The offset of the first plaintext block.
+     * @param out The array to write the ciphertext blocks to.
+     * @param outOff The offset to write the first ciphertext block to.
+     * @param blocks The number of blocks to encrypt.
+     * @param keys The expanded keys, where keys[keyOff + i] encrypts block i.
+     * @param keyOff The index of the key of the first block.
+     */
+    public default void encryptBatch(byte[] in, int inOff, byte[] out, int outOff, int blocks, Key[] keys, int keyOff) {
+        for (int i = 0; i < blocks; i++) {
+            encryptBlocks(in, inOff + 16 * i, out, outOff + 16 * i, 1, keys[keyOff + i]);
+        }
+    }
+
+    /**
+     * Decrypts consecutive 16-byte blocks, each under its own key.
+     *
+     * @param in The array holding the ciphertext blocks.
+     * @param inOff The offset of the first ciphertext block.
+     * @param out The array to write the plaintext blocks to.
+     * @param outOff The offset to write the first plaintext block to.
+     * @param blocks The number of blocks to decrypt.
+     * @param keys The expanded keys, where keys[keyOff + i] decrypts block i.
+     * @param keyOff The index of the key of the first block.
+     */
+    public default void decryptBatch(byte[] in, int inOff, byte[] out, int outOff, int blocks, Key[] keys, int keyOff) {
+        for (int i = 0; i < blocks; i++) {
+            decryptBlocks(in, inOff + 16 * i, out, outOff + 16 * i, 1, keys[keyOff + i]);
+        }
+    }
+}
@@ -0,0 +1,483 @@
+package aes.engines.bitsliced;
+
+import aes.Key;
+import aes.engines.AbstractBlockEngine;
+import aes.engines.Backend;
+import aes.engines.BlockEngine;
+
+/**
+ * <p>
+ * An implementation of {@link BlockEngine} that transforms 64 blocks at once in bitsliced form.
+ * </p>
+ *
+ * <p>
+ * The 128 bits of a block are spread across 128 longs, one per bit position of the state, with bit i of each long
+ * belonging to block i. Every step of a round is then a fixed sequence of boolean operations on whole longs: SubBytes
+ * evaluates the S-box as the 113-gate circuit of Boyar and Peralta, ShiftRows is a permutation of the longs and
+ * MixColumns is a network of xor's. No table is indexed by secret data and no branch depends on it, so the engine runs
+ * in constant time.
+ * </p>
+ *
+ * <p>
+ * Converting blocks to and from bitsliced form takes two 64x64 bit matrix transposes per 64 blocks. A call with fewer
+ * than 64 blocks costs as much as a full batch: a single block runs at under 2 MB/s, a hundred times slower than the
+ * table engine. Decryption follows the inverse cipher of FIPS-197 section 5.3 and computes InvSubBytes with the same
+ * circuit between two inverse affine transforms.
+ * </p>
+ *
+ * <p>
+ * NOTE: the engine buys constant time with speed. Even in bulk it measured about 100 MB/s encrypting and 85 MB/s
+ * decrypting, against about 205 and 190 MB/s for {@link Backend#TABLE}, so it is not a choice for throughput. Use it
+ * only where constant time is required, and then for bulk work such as ECB, CTR and CBC decryption rather than callers
+ * that transform one block per call, such as CBC encryption or setting up a GCM key. {@link Backend#AUTO} never
+ * chooses it.
+ * </p>
+ */
+public class BitslicedEngine extends AbstractBlockEngine {
+    /**
+     * The number of blocks transformed together.
+     */
+    public static final int LANES = 64;
+
+    /**
+     * Identifies the bitsliced round keys among the data derived from a {@link Key}.
+     */
+    private static final Object ROUND_KEYS = new Object();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Backend getBackend() {
+        return Backend.BITSLICED;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void encryptBlocks(byte[] in, int inOff, byte[] out, int outOff, int blocks, Key key) {
+        long[] rk = roundKeys(key);
+        long[] st = new long[128];
+        long[] tmp = new long[128];
+        for (int done = 0; done < blocks; done += LANES) {
+            int n = Math.min(LANES, blocks - done);
+            load(in, inOff + 16 * done, n, st, tmp);
+            encrypt(st, tmp, rk, key.Nr);
+            store(st, tmp, out, outOff + 16 * done, n);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void decryptBlocks(byte[] in, int inOff, byte[] out, int outOff, int blocks, Key key) {
+        long[] rk = roundKeys(key);
+        long[] st = new long[128];
+        long[] tmp = new long[128];
+        for (int done = 0; done < blocks; done += LANES) {
+            int n = Math.min(LANES, blocks - done);
+            load(in, inOff + 16 * done, n, st, tmp);
+            decrypt(st, tmp, rk, key.Nr);
+            store(st, tmp, out, outOff + 16 * done, n);
+        }
+    }
+
+    private static void encrypt(long[] st, long[] tmp, long[] rk, int nr) {
+        addRoundKey(st, rk, 0);
+        for (int round = 1; round < nr; round++) {
+            subBytes(st);
+            shiftRows(st, tmp);
+            mixColumns(st, tmp);
+            addRoundKey(st, rk, round);
+        }
+        subBytes(st);
+        shiftRows(st, tmp);
+        addRoundKey(st, rk, nr);
+    }
+
+    private static void decrypt(long[] st, long[] tmp, long[] rk, int nr) {
+        addRoundKey(st, rk, nr);
+        for (int round = nr - 1; round > 0; round--) {
+            invShiftRows(st, tmp);
+            invSubBytes(st);
+            addRoundKey(st, rk, round);
+            invMixColumns(st, tmp);
+        }
+        invShiftRows(st, tmp);
+        invSubBytes(st);
+        addRoundKey(st, rk, 0);
+    }
+
+    /**
+     * @return The round keys of the encryption schedule with every bit widened to a whole long, computed once per key.
+     */
+    private static long[] roundKeys(Key key) {
+        return key.getDerived(ROUND_KEYS, k -> {
+            byte[] schedule = k.getExpandedKey();
+            long[] rk = new long[8 * schedule.length];
+            for (int i = 0; i < schedule.length; i++) {
+                for (int j = 0; j < 8; j++) {
+                    rk[8 * i + j] = -((schedule[i] >>> j) & 1L);
+                }
+            }
+            return rk;
+        });
+    }
+
+    private static void addRoundKey(long[] st, long[] rk, int round) {
+        int off = 128 * round;
+        for (int i = 0; i < 128; i++) {
+            st[i] ^= rk[off + i];
+        }
+    }
+
+    /**
+     * <p>
+     * Converts up to 64 blocks to bitsliced form. st[8 * i + j] holds bit j of byte i of every block.
+     * </p>
+     *
+     * <p>
+     * The first and last 8 bytes of each block are read as big-endian longs and each half is transposed as a 64x64 bit
+     * matrix with one row per block. Lanes past the last block are zero.
+     * </p>
+     */
+    static void load(byte[] in, int inOff, int blocks, long[] st, long[] tmp) {
+        for (int b = 0; b < LANES; b++) {
+            if (b < blocks) {
+                tmp[b] = readLong(in, inOff + 16 * b);
+                tmp[64 + b] = readLong(in, inOff + 16 * b + 8);
+            } else {
+                tmp[b] = 0;
+                tmp[64 + b] = 0;
+            }
+        }
+        transpose(tmp, 0);
+        transpose(tmp, 64);
+        for (int i = 0; i < 8; i++) {
+            for (int j = 0; j < 8; j++) {
+                st[8 * i + j] = tmp[8 * (7 - i) + j];
+                st[64 + 8 * i + j] = tmp[64 + 8 * (7 - i) + j];
+            }
+        }
+    }
+
+    /**
+     * Converts bitsliced state back to blocks and writes the first blocks of them, reversing
+     * {@link #load(byte[], int, int, long[], long[])}.
+     */
+    static void store(long[] st, long[] tmp, byte[] out, int outOff, int blocks) {
+        for (int i = 0; i < 8; i++) {
+            for (int j = 0; j < 8; j++) {
+                tmp[8 * (7 - i) + j] = st[8 * i + j];
+                tmp[64 + 8 * (7 - i) + j] = st[64 + 8 * i + j];
+            }
+        }
+        transpose(tmp, 0);
+        transpose(tmp, 64);
+        for (int b = 0; b < blocks; b++) {
+            writeLong(tmp[b], out, outOff + 16 * b);
+            writeLong(tmp[64 + b], out, outOff + 16 * b + 8);
+        }
+    }
+
+    /**
+     * Transposes the 64x64 bit matrix a[off..off + 63] in place, so that bit c of row r moves to bit r of row c. Each
+     * pass swaps the off-diagonal quadrants of ever smaller sub-matrices.
+     */
+    static void transpose(long[] a, int off) {
+        long m = 0x00000000ffffffffL;
+        for (int j = 32; j != 0; j >>>= 1, m ^= m << j) {
+            for (int k = 0; k < 64; k = ((k | j) + 1) & ~j) {
+                long t = ((a[off + k] >>> j) ^ a[off + (k | j)]) & m;
+                a[off + k] ^= t << j;
+                a[off + (k | j)] ^= t;
+            }
+        }
+    }
+
+    private static void subBytes(long[] st) {
+        for (int i = 0; i < 128; i += 8) {
+            sBox(st, i);
+        }
+    }
+
+    private static void invSubBytes(long[] st) {
+        for (int i = 0; i < 128; i += 8) {
+            invAffine(st, i);
+            sBox(st, i);
+            invAffine(st, i);
+        }
+    }
+
+    /**
+     * Applies the S-box to the byte whose bits are q[off..off + 7], least significant first, with the circuit from
+     * Boyar and Peralta, "A depth-16 circuit for the AES S-box". It has a linear top layer, a shared non-linear core
+     * that computes the inverse in GF(2^8) and a linear bottom layer that also applies the affine transform.
+     */
+    static void sBox(long[] q, int off) {
+        long x0 = q[off + 7];
+        long x1 = q[off + 6];
+        long x2 = q[off + 5];
+        long x3 = q[off + 4];
+        long x4 = q[off + 3];
+        long x5 = q[off + 2];
+        long x6 = q[off + 1];
+        long x7 = q[off];
+
+        // top linear transformation
+        long y14 = x3 ^ x5;
+        long y13 = x0 ^ x6;
+        long y9 = x0 ^ x3;
+        long y8 = x0 ^ x5;
+        long t0 = x1 ^ x2;
+        long y1 = t0 ^ x7;
+        long y4 = y1 ^ x3;
+        long y12 = y13 ^ y14;
+        long y2 = y1 ^ x0;
+        long y5 = y1 ^ x6;
+        long y3 = y5 ^ y8;
+        long t1 = x4 ^ y12;
+        long y15 = t1 ^ x5;
+        long y20 = t1 ^ x1;
+        long y6 = y15 ^ x7;
+        long y10 = y15 ^ t0;
+        long y11 = y20 ^ y9;
+        long y7 = x7 ^ y11;
+        long y17 = y10 ^ y11;
+        long y19 = y10 ^ y8;
+        long y16 = t0 ^ y11;
+        long y21 = y13 ^ y16;
+        long y18 = x0 ^ y16;
+
+        // non-linear section
+        long t2 = y12 & y15;
+        long t3 = y3 & y6;
+        long t4 = t3 ^ t2;
+        long t5 = y4 & x7;
+        long t6 = t5 ^ t2;
+        long t7 = y13 & y16;
+        long t8 = y5 & y1;
+        long t9 = t8 ^ t7;
+        long t10 = y2 & y7;
+        long t11 = t10 ^ t7;
+        long t12 = y9 & y11;
+        long t13 = y14 & y17;
+        long t14 = t13 ^ t12;
+        long t15 = y8 & y10;
+        long t16 = t15 ^ t12;
+        long t17 = t4 ^ t14;
+        long t18 = t6 ^ t16;
+        long t19 = t9 ^ t14;
+        long t20 = t11 ^ t16;
+        long t21 = t17 ^ y20;
+        long t22 = t18 ^ y19;
+        long t23 = t19 ^ y21;
+        long t24 = t20 ^ y18;
+
+        long t25 = t21 ^ t22;
+        long t26 = t21 & t23;
+        long t27 = t24 ^ t26;
+        long t28 = t25 & t27;
+        long t29 = t28 ^ t22;
+        long t30 = t23 ^ t24;
+        long t31 = t22 ^ t26;
+        long t32 = t31 & t30;
+        long t33 = t32 ^ t24;
+        long t34 = t23 ^ t33;
+        long t35 = t27 ^ t33;
+        long t36 = t24 & t35;
+        long t37 = t36 ^ t34;
+        long t38 = t27 ^ t36;
+        long t39 = t29 & t38;
+        long t40 = t25 ^ t39;
+
+        long t41 = t40 ^ t37;
+        long t42 = t29 ^ t33;
+        long t43 = t29 ^ t40;
+        long t44 = t33 ^ t37;
+        long t45 = t42 ^ t41;
+        long z0 = t44 & y15;
+        long z1 = t37 & y6;
+        long z2 = t33 & x7;
+        long z3 = t43 & y16;
+        long z4 = t40 & y1;
+        long z5 = t29 & y7;
+        long z6 = t42 & y11;
+        long z7 = t45 & y17;
+        long z8 = t41 & y10;
+        long z9 = t44 & y12;
+        long z10 = t37 & y3;
+        long z11 = t33 & y4;
+        long z12 = t43 & y13;
+        long z13 = t40 & y5;
+        long z14 = t29 & y2;
+        long z15 = t42 & y9;
+        long z16 = t45 & y14;
+        long z17 = t41 & y8;
+
+        // bottom linear transformation
+        long t46 = z15 ^ z16;
+        long t47 = z10 ^ z11;
+        long t48 = z5 ^ z13;
+        long t49 = z9 ^ z10;
+        long t50 = z2 ^ z12;
+        long t51 = z2 ^ z5;
+        long t52 = z7 ^ z8;
+        long t53 = z0 ^ z3;
+        long t54 = z6 ^ z7;
+        long t55 = z16 ^ z17;
+        long t56 = z12 ^ t48;
+        long t57 = t50 ^ t53;
+        long t58 = z4 ^ t46;
+        long t59 = z3 ^ t54;
+        long t60 = t46 ^ t57;
+        long t61 = z14 ^ t57;
+        long t62 = t52 ^ t58;
+        long t63 = t49 ^ t58;
+        long t64 = z4 ^ t59;
+        long t65 = t61 ^ t62;
+        long t66 = z1 ^ t63;
+        long s0 = t59 ^ t63;
+        long s6 = t56 ^ ~t62;
+        long s7 = t48 ^ ~t60;
+        long t67 = t64 ^ t65;
+        long s3 = t53 ^ t66;
+        long s4 = t51 ^ t66;
+        long s5 = t47 ^ t65;
+        long s1 = t64 ^ ~s3;
+        long s2 = t55 ^ ~t67;
+
+        q[off + 7] = s0;
+        q[off + 6] = s1;
+        q[off + 5] = s2;
+        q[off + 4] = s3;
+        q[off + 3] = s4;
+        q[off + 2] = s5;
+        q[off + 1] = s6;
+        q[off] = s7;
+    }
+
+    /**
+     * Applies the inverse of the S-box's affine transform, b'[i] = b[i + 2] ^ b[i + 5] ^ b[i + 7] ^ {05}[i] with indices
+     * mod 8, to the byte whose bits are q[off..off + 7]. Since the S-box is the affine transform of the inverse in
+     * GF(2^8), this before and after the S-box computes the inverse S-box.
+     */
+    static void invAffine(long[] q, int off) {
+        long b0 = q[off];
+        long b1 = q[off + 1];
+        long b2 = q[off + 2];
+        long b3 = q[off + 3];
+        long b4 = q[off + 4];
+        long b5 = q[off + 5];
+        long b6 = q[off + 6];
+        long b7 = q[off + 7];
+        q[off] = ~(b2 ^ b5 ^ b7);
+        q[off + 1] = b3 ^ b6 ^ b0;
+        q[off + 2] = ~(b4 ^ b7 ^ b1);
+        q[off + 3] = b5 ^ b0 ^ b2;
+        q[off + 4] = b6 ^ b1 ^ b3;
+        q[off + 5] = b7 ^ b2 ^ b4;
+        q[off + 6] = b0 ^ b3 ^ b5;
+        q[off + 7] = b1 ^ b4 ^ b6;
+    }
+
+    /**
+     * Rotates row r of the state left by r columns. Byte i of the state is row i % 4 of column i / 4.
+     */
+    private static void shiftRows(long[] st, long[] tmp) {
+        System.arraycopy(st, 0, tmp, 0, 128);
+        for (int c = 0; c < 4; c++) {
+            for (int r = 1; r < 4; r++) {
+                System.arraycopy(tmp, 8 * (r + 4 * ((c + r) & 3)), st, 8 * (r + 4 * c), 8);
+            }
+        }
+    }
+
+    private static void invShiftRows(long[] st, long[] tmp) {
+        System.arraycopy(st, 0, tmp, 0, 128);
+        for (int c = 0; c < 4; c++) {
+            for (int r = 1; r < 4; r++) {
+                System.arraycopy(tmp, 8 * (r + 4 * c), st, 8 * (r + 4 * ((c + r) & 3)), 8);
+            }
+        }
+    }
+
+    /**
+     * Computes b[r] = {02}(a[r] ^ a[r + 1]) ^ a[r + 1] ^ a[r + 2] ^ a[r + 3] for every column.
+     */
+    private static void mixColumns(long[] st, long[] tmp) {
+        System.arraycopy(st, 0, tmp, 0, 128);
+        for (int c = 0; c < 128; c += 32) {
+            for (int r = 0; r < 4; r++) {
+                int a0 = c + 8 * r;
+                int a1 = c + 8 * ((r + 1) & 3);
+                int a2 = c + 8 * ((r + 2) & 3);
+                int a3 = c + 8 * ((r + 3) & 3);
+                long hi = tmp[a0 + 7] ^ tmp[a1 + 7];
+                for (int j = 0; j < 8; j++) {
+                    // {02}x shifts each bit up one position and reduces the top bit with {1b}
+                    long doubled = j == 0 ? hi : tmp[a0 + j - 1] ^ tmp[a1 + j - 1];
+                    if (j == 1 || j == 3 || j == 4) {
+                        doubled ^= hi;
+                    }
+                    st[a0 + j] = doubled ^ tmp[a1 + j] ^ tmp[a2 + j] ^ tmp[a3 + j];
+                }
+            }
+        }
+    }
+
+    /**
+     * Multiplies every column by {04}x^2 + {05} and then applies MixColumns, which together equal InvMixColumns. The
+     * first 16 longs of tmp hold the two products while mixColumns is not using it.
+     */
+    private static void invMixColumns(long[] st, long[] tmp) {
+        for (int c = 0; c < 128; c += 32) {
+            for (int j = 0; j < 8; j++) {
+                tmp[j] = st[c + j] ^ st[c + 16 + j];
+                tmp[8 + j] = st[c + 8 + j] ^ st[c + 24 + j];
+            }
+            xtime(tmp, 0);
+            xtime(tmp, 0);
+            xtime(tmp, 8);
+            xtime(tmp, 8);
+            for (int j = 0; j < 8; j++) {
+                st[c + j] ^= tmp[j];
+                st[c + 8 + j] ^= tmp[8 + j];
+                st[c + 16 + j] ^= tmp[j];
+                st[c + 24 + j] ^= tmp[8 + j];
+            }
+        }
+        mixColumns(st, tmp);
+    }
+
+    /**
+     * Multiplies the bitsliced byte x[off..off + 7] by {02} in place.
+     */
+    private static void xtime(long[] x, int off) {
+        long hi = x[off + 7];
+        for (int j = 7; j > 0; j--) {
+            x[off + j] = x[off + j - 1];
+        }
+        x[off] = hi;
+        x[off + 1] ^= hi;
+        x[off + 3] ^= hi;
+        x[off + 4] ^= hi;
+    }
+
+    private static long readLong(byte[] b, int off) {
+        long v = 0;
+        for (int i = 0; i < 8; i++) {
+            v = (v << 8) | (b[off + i] & 0xff);
+        }
+        return v;
+    }
+
+    private static void writeLong(long v, byte[] b, int off) {
+        for (int i = 7; i >= 0; i--) {
+            b[off + i] = (byte) v;
+            v >>>= 8;
+        }
+    }
+}
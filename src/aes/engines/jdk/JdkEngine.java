@@ -0,0 +1,185 @@
+package aes.engines.jdk;
+import java.security.GeneralSecurityException;
+import java.security.ProviderException;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+import aes.Key;
+import aes.engines.AbstractBlockEngine;
+import aes.engines.Backend;
+import aes.engines.BlockEngine;
+import aes.engines.table.TableEngine;
+
+/**
+ * <p>
+ * An implementation of {@link BlockEngine} that delegates to the AES/ECB/NoPadding cipher of the JDK.
+ * </p>
+ *
+ * <p>
+ * On processors with AES instructions the JDK's cipher is compiled to those instructions, which no Java implementation
+ * can match. Each thread keeps its own pair of JDK ciphers, since they are not thread-safe, and only initializes them
+ * again when it is passed a different {@link Key}.
+ * </p>
+ *
+ * <p>
+ * Initializing a JDK cipher costs about as much as transforming 60 blocks with it, so a batch whose key changes from
+ * block to block would run more than ten times slower than on the table engine. The batch methods therefore only hand
+ * runs of at least {@value #MIN_RUN} blocks under one key to the JDK's cipher and transform the rest with a
+ * {@link TableEngine}, which does not run in constant time.
+ * </p>
+ *
+ * <p>
+ * The ciphers are always taken from the {@value #PROVIDER} provider. Asking for the highest priority provider instead
+ * would find {@link aes.jca.AesProvider} if it had been installed first, and then this engine would time, or loop back
+ * into, this library's own code instead of the JDK's.
+ * </p>
+ */
+public class JdkEngine extends AbstractBlockEngine {
+    /**
+     * The slot under which the raw key is memoized as a {@link SecretKeySpec}.
+     */
+    private static final Object SECRET_KEY = new Object();
+
+    /**
+     * The JDK provider whose AES cipher is used.
+     */
+    static final String PROVIDER = "SunJCE";
+
+    /**
+     * The shortest run of blocks under one key in a batch that is worth initializing the JDK's cipher for.
+     */
+    static final int MIN_RUN = 16;
+
+    private final ThreadLocal<Ciphers> ciphers = ThreadLocal.withInitial(Ciphers::new);
+    private final TableEngine table = new TableEngine();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Backend getBackend() {
+        return Backend.JDK;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void encryptBlocks(byte[] in, int inOff, byte[] out, int outOff, int blocks, Key key) {
+        ciphers.get().transform(Cipher.ENCRYPT_MODE, in, inOff, out, outOff, blocks, key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void decryptBlocks(byte[] in, int inOff, byte[] out, int outOff, int blocks, Key key) {
+        ciphers.get().transform(Cipher.DECRYPT_MODE, in, inOff, out, outOff, blocks, key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void encryptBatch(byte[] in, int inOff, byte[] out, int outOff, int blocks, Key[] keys, int keyOff) {
+        transformBatch(Cipher.ENCRYPT_MODE, in, inOff, out, outOff, blocks, keys, keyOff);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void decryptBatch(byte[] in, int inOff, byte[] out, int outOff, int blocks, Key[] keys, int keyOff) {
+        transformBatch(Cipher.DECRYPT_MODE, in, inOff, out, outOff, blocks, keys, keyOff);
+    }
+
+    /**
+     * Transforms runs of at least {@link #MIN_RUN} blocks under one key with the JDK's cipher and the blocks between
+     * them with the table engine.
+     */
+    private void transformBatch(int opmode, byte[] in, int inOff, byte[] out, int outOff, int blocks, Key[] keys,
+            int keyOff) {
+        int done = 0;
+        int i = 0;
+        while (i < blocks) {
+            Key key = keys[keyOff + i];
+            int end = i + 1;
+            while (end < blocks && keys[keyOff + end] == key) {
+                end++;
+            }
+            if (end - i >= MIN_RUN) {
+                tableBatch(opmode, in, inOff, out, outOff, done, i, keys, keyOff);
+                ciphers.get().transform(opmode, in, inOff + 16 * i, out, outOff + 16 * i, end - i, key);
+                done = end;
+            }
+            i = end;
+        }
+        tableBatch(opmode, in, inOff, out, outOff, done, blocks, keys, keyOff);
+    }
+
+    /**
+     * Transforms blocks from up to but not including to of a batch with the table engine.
+     */
+    private void tableBatch(int opmode, byte[] in, int inOff, byte[] out, int outOff, int from, int to, Key[] keys,
+            int keyOff) {
+        if (from == to) {
+            return;
+        }
+        if (opmode == Cipher.ENCRYPT_MODE) {
+            table.encryptBatch(in, inOff + 16 * from, out, outOff + 16 * from, to - from, keys, keyOff + from);
+        } else {
+            table.decryptBatch(in, inOff + 16 * from, out, outOff + 16 * from, to - from, keys, keyOff + from);
+        }
+    }
+
+    /**
+     * Ciphers holds one thread's JDK ciphers and the keys they were last initialized with.
+     */
+    private static final class Ciphers {
+        private final Cipher encrypt = newCipher();
+        private final Cipher decrypt = newCipher();
+        private Key encryptKey;
+        private Key decryptKey;
+
+        void transform(int opmode, byte[] in, int inOff, byte[] out, int outOff, int blocks, Key key) {
+            if (blocks == 0) {
+                return;
+            }
+            try {
+                Cipher cipher = opmode == Cipher.ENCRYPT_MODE ? encrypt : decrypt;
+                Key current = opmode == Cipher.ENCRYPT_MODE ? encryptKey : decryptKey;
+                if (current != key) {
+                    cipher.init(opmode, key.getDerived(SECRET_KEY, JdkEngine::toSecretKey));
+                    if (opmode == Cipher.ENCRYPT_MODE) {
+                        encryptKey = key;
+                    } else {
+                        decryptKey = key;
+                    }
+                }
+                cipher.doFinal(in, inOff, 16 * blocks, out, outOff);
+            } catch (GeneralSecurityException e) {
+                throw new ProviderException("The JDK's AES cipher failed", e);
+            }
+        }
+    }
+
+    /**
+     * @return A new instance of the JDK's AES/ECB/NoPadding cipher.
+     */
+    private static Cipher newCipher() {
+        try {
+            return Cipher.getInstance("AES/ECB/NoPadding", PROVIDER);
+        } catch (GeneralSecurityException e) {
+            throw new ProviderException("The JDK provides no AES cipher", e);
+        }
+    }
+
+    /**
+     * @return The cipher key, which is the first Nk words of the expanded key.
+     */
+    private static SecretKeySpec toSecretKey(Key key) {
+        return new SecretKeySpec(Arrays.copyOf(key.getExpandedKey(), 4 * key.Nk), "AES");
+    }
+}
@@ -0,0 +1,85 @@
+package aes.engines.reference;
+import java.util.Arrays;
+
+import aes.Key;
+import aes.State;
+import aes.engines.AbstractBlockEngine;
+import aes.engines.Backend;
+import aes.engines.BlockEngine;
+
+/**
+ * An implementation of {@link BlockEngine} that runs each block through a {@link State} exactly as outlined in FIPS-197.
+ */
+public class ReferenceEngine extends AbstractBlockEngine {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Backend getBackend() {
+        return Backend.REFERENCE;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void encryptBlocks(byte[] in, int inOff, byte[] out, int outOff, int blocks, Key key) {
+        for (int i = 0; i < blocks; i++) {
+            State state = new State(Arrays.copyOfRange(in, inOff + 16 * i, inOff + 16 * i + 16));
+
+            byte[] stateBytes = encryptState(state, key).getBytes();
+            System.arraycopy(stateBytes, 0, out, outOff + 16 * i, 16);
+        }
+    }
+
+    private static State encryptState(State state, Key key) {
+        byte[] schedule = key.getExpandedKey();
+        state.addRoundKey(schedule, 0);
+        for (int k = 1; k < key.Nr; k++) {
+            state.subBytes();
+            state.shiftRows();
+            state.mixColumns();
+            state.addRoundKey(schedule, 16 * k);
+        }
+
+        // final round does not include mixColumns()
+        state.subBytes();
+        state.shiftRows();
+        state.addRoundKey(schedule, 16 * key.Nr);
+        return state;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void decryptBlocks(byte[] in, int inOff, byte[] out, int outOff, int blocks, Key key) {
+        for (int i = 0; i < blocks; i++) {
+            State state = new State(Arrays.copyOfRange(in, inOff + 16 * i, inOff + 16 * i + 16));
+
+            byte[] stateBytes = decryptState(state, key).getBytes();
+            System.arraycopy(stateBytes, 0, out, outOff + 16 * i, 16);
+        }
+    }
+
+    /**
+     * Decrypts a state with the equivalent inverse cipher, which mirrors the round structure of encryption.
+     */
+    private static State decryptState(State state, Key key) {
+        byte[] schedule = key.getDecryptionKey();
+        state.addRoundKey(schedule, 0);
+        for (int k = 1; k < key.Nr; k++) {
+            state.invSubBytes();
+            state.invShiftRows();
+            state.invMixColumns();
+            state.addRoundKey(schedule, 16 * k);
+        }
+
+        // final round does not include invMixColumns()
+        state.invSubBytes();
+        state.invShiftRows();
+        state.addRoundKey(schedule, 16 * key.Nr);
+        return state;
+    }
+}
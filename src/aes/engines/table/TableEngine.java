@@ -0,0 +1,194 @@
+package aes.engines.table;
+import static aes.engines.table.Tables.S;
+import static aes.engines.table.Tables.Si;
+import static aes.engines.table.Tables.Td0;
+import static aes.engines.table.Tables.Td1;
+import static aes.engines.table.Tables.Td2;
+import static aes.engines.table.Tables.Td3;
+import static aes.engines.table.Tables.Te0;
+import static aes.engines.table.Tables.Te1;
+import static aes.engines.table.Tables.Te2;
+import static aes.engines.table.Tables.Te3;
+
+import java.nio.ByteBuffer;
+
+import aes.Key;
+import aes.engines.Backend;
+import aes.engines.BlockEngine;
+
+/**
+ * <p>
+ * An implementation of {@link BlockEngine} that represents the state as four 32-bit columns and combines SubBytes,
+ * ShiftRows and MixColumns into lookups in {@link Tables}.
+ * </p>
+ *
+ * <p>
+ * Decryption uses the equivalent inverse cipher (FIPS-197 section 5.3.5) and the decryption key schedule from
+ * {@link Key#getDecryptionWords()}, so that it has the same round structure as encryption.
+ * </p>
+ *
+ * <p>
+ * Buffers are read and written a word at a time without copying them to the heap, so direct buffers are transformed in
+ * place.
+ * </p>
+ */
+public class TableEngine implements BlockEngine {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Backend getBackend() {
+        return Backend.TABLE;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void encryptBlocks(byte[] in, int inOff, byte[] out, int outOff, int blocks, Key key) {
+        int[] rk = key.getExpandedWords();
+        int[] s = new int[4];
+        for (int i = 0; i < blocks; i++) {
+            Tables.load(in, inOff + 16 * i, s);
+            encryptBlock(s, rk, key.Nr);
+            Tables.store(s, out, outOff + 16 * i);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void decryptBlocks(byte[] in, int inOff, byte[] out, int outOff, int blocks, Key key) {
+        int[] dk = key.getDecryptionWords();
+        int[] s = new int[4];
+        for (int i = 0; i < blocks; i++) {
+            Tables.load(in, inOff + 16 * i, s);
+            decryptBlock(s, dk, key.Nr);
+            Tables.store(s, out, outOff + 16 * i);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void encryptBatch(byte[] in, int inOff, byte[] out, int outOff, int blocks, Key[] keys, int keyOff) {
+        int[] s = new int[4];
+        for (int i = 0; i < blocks; i++) {
+            Key key = keys[keyOff + i];
+            Tables.load(in, inOff + 16 * i, s);
+            encryptBlock(s, key.getExpandedWords(), key.Nr);
+            Tables.store(s, out, outOff + 16 * i);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void decryptBatch(byte[] in, int inOff, byte[] out, int outOff, int blocks, Key[] keys, int keyOff) {
+        int[] s = new int[4];
+        for (int i = 0; i < blocks; i++) {
+            Key key = keys[keyOff + i];
+            Tables.load(in, inOff + 16 * i, s);
+            decryptBlock(s, key.getDecryptionWords(), key.Nr);
+            Tables.store(s, out, outOff + 16 * i);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void encryptBlocks(ByteBuffer in, int inOff, ByteBuffer out, int outOff, int blocks, Key key) {
+        int[] rk = key.getExpandedWords();
+        int[] s = new int[4];
+        for (int i = 0; i < blocks; i++) {
+            Tables.load(in, inOff + 16 * i, s);
+            encryptBlock(s, rk, key.Nr);
+            Tables.store(s, out, outOff + 16 * i);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void decryptBlocks(ByteBuffer in, int inOff, ByteBuffer out, int outOff, int blocks, Key key) {
+        int[] dk = key.getDecryptionWords();
+        int[] s = new int[4];
+        for (int i = 0; i < blocks; i++) {
+            Tables.load(in, inOff + 16 * i, s);
+            decryptBlock(s, dk, key.Nr);
+            Tables.store(s, out, outOff + 16 * i);
+        }
+    }
+
+    /**
+     * Encrypts the four columns of a state in place.
+     *
+     * @param state The columns of the state.
+     * @param rk The expanded key as words.
+     * @param Nr The number of rounds.
+     */
+    static void encryptBlock(int[] state, int[] rk, int Nr) {
+        int s0 = state[0] ^ rk[0];
+        int s1 = state[1] ^ rk[1];
+        int s2 = state[2] ^ rk[2];
+        int s3 = state[3] ^ rk[3];
+
+        int k = 4;
+        for (int round = 1; round < Nr; round++) {
+            int t0 = Te0[s0 >>> 24] ^ Te1[(s1 >>> 16) & 0xff] ^ Te2[(s2 >>> 8) & 0xff] ^ Te3[s3 & 0xff] ^ rk[k];
+            int t1 = Te0[s1 >>> 24] ^ Te1[(s2 >>> 16) & 0xff] ^ Te2[(s3 >>> 8) & 0xff] ^ Te3[s0 & 0xff] ^ rk[k + 1];
+            int t2 = Te0[s2 >>> 24] ^ Te1[(s3 >>> 16) & 0xff] ^ Te2[(s0 >>> 8) & 0xff] ^ Te3[s1 & 0xff] ^ rk[k + 2];
+            int t3 = Te0[s3 >>> 24] ^ Te1[(s0 >>> 16) & 0xff] ^ Te2[(s1 >>> 8) & 0xff] ^ Te3[s2 & 0xff] ^ rk[k + 3];
+            s0 = t0;
+            s1 = t1;
+            s2 = t2;
+            s3 = t3;
+            k += 4;
+        }
+
+        // final round does not include MixColumns
+        state[0] = (S[s0 >>> 24] << 24 | S[(s1 >>> 16) & 0xff] << 16 | S[(s2 >>> 8) & 0xff] << 8 | S[s3 & 0xff]) ^ rk[k];
+        state[1] = (S[s1 >>> 24] << 24 | S[(s2 >>> 16) & 0xff] << 16 | S[(s3 >>> 8) & 0xff] << 8 | S[s0 & 0xff]) ^ rk[k + 1];
+        state[2] = (S[s2 >>> 24] << 24 | S[(s3 >>> 16) & 0xff] << 16 | S[(s0 >>> 8) & 0xff] << 8 | S[s1 & 0xff]) ^ rk[k + 2];
+        state[3] = (S[s3 >>> 24] << 24 | S[(s0 >>> 16) & 0xff] << 16 | S[(s1 >>> 8) & 0xff] << 8 | S[s2 & 0xff]) ^ rk[k + 3];
+    }
+
+    /**
+     * Decrypts the four columns of a state in place with the equivalent inverse cipher.
+     *
+     * @param state The columns of the state.
+     * @param dk The decryption key schedule as words.
+     * @param Nr The number of rounds.
+     */
+    static void decryptBlock(int[] state, int[] dk, int Nr) {
+        int s0 = state[0] ^ dk[0];
+        int s1 = state[1] ^ dk[1];
+        int s2 = state[2] ^ dk[2];
+        int s3 = state[3] ^ dk[3];
+
+        int k = 4;
+        for (int round = 1; round < Nr; round++) {
+            int t0 = Td0[s0 >>> 24] ^ Td1[(s3 >>> 16) & 0xff] ^ Td2[(s2 >>> 8) & 0xff] ^ Td3[s1 & 0xff] ^ dk[k];
+            int t1 = Td0[s1 >>> 24] ^ Td1[(s0 >>> 16) & 0xff] ^ Td2[(s3 >>> 8) & 0xff] ^ Td3[s2 & 0xff] ^ dk[k + 1];
+            int t2 = Td0[s2 >>> 24] ^ Td1[(s1 >>> 16) & 0xff] ^ Td2[(s0 >>> 8) & 0xff] ^ Td3[s3 & 0xff] ^ dk[k + 2];
+            int t3 = Td0[s3 >>> 24] ^ Td1[(s2 >>> 16) & 0xff] ^ Td2[(s1 >>> 8) & 0xff] ^ Td3[s0 & 0xff] ^ dk[k + 3];
+            s0 = t0;
+            s1 = t1;
+            s2 = t2;
+            s3 = t3;
+            k += 4;
+        }
+
+        // final round does not include InvMixColumns
+        state[0] = (Si[s0 >>> 24] << 24 | Si[(s3 >>> 16) & 0xff] << 16 | Si[(s2 >>> 8) & 0xff] << 8 | Si[s1 & 0xff]) ^ dk[k];
+        state[1] = (Si[s1 >>> 24] << 24 | Si[(s0 >>> 16) & 0xff] << 16 | Si[(s3 >>> 8) & 0xff] << 8 | Si[s2 & 0xff]) ^ dk[k + 1];
+        state[2] = (Si[s2 >>> 24] << 24 | Si[(s1 >>> 16) & 0xff] << 16 | Si[(s0 >>> 8) & 0xff] << 8 | Si[s3 & 0xff]) ^ dk[k + 2];
+        state[3] = (Si[s3 >>> 24] << 24 | Si[(s2 >>> 16) & 0xff] << 16 | Si[(s1 >>> 8) & 0xff] << 8 | Si[s0 & 0xff]) ^ dk[k + 3];
+    }
+}
@@ -0,0 +1,121 @@
+package aes.engines.table;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import aes.SBox;
+import utils.Functions;
+
+/**
+ * <p>
+ * Tables holds the lookup tables used by the table-driven engines.
+ * </p>
+ *
+ * <p>
+ * Te0[x] is the column that results from passing a single byte x in row 0 through SubBytes and MixColumns, packed
+ * big-endian with row 0 in the most significant byte. Te1, Te2 and Te3 are Te0 rotated right by 8, 16 and 24 bits to
+ * account for the byte coming from rows 1, 2 and 3. Td0..Td3 are the same for InvSubBytes and InvMixColumns. The
+ * tables are derived from {@link SBox} and the constant multiplications of {@link Functions} once, when the class is
+ * initialized.
+ * </p>
+ */
+final class Tables {
+    static final int[] Te0 = new int[256];
+    static final int[] Te1 = new int[256];
+    static final int[] Te2 = new int[256];
+    static final int[] Te3 = new int[256];
+
+    static final int[] Td0 = new int[256];
+    static final int[] Td1 = new int[256];
+    static final int[] Td2 = new int[256];
+    static final int[] Td3 = new int[256];
+
+    /**
+     * The S-box, widened to int so it can be shifted into place without masking.
+     */
+    static final int[] S = new int[256];
+
+    /**
+     * The inverse S-box, widened to int so it can be shifted into place without masking.
+     */
+    static final int[] Si = new int[256];
+
+    static {
+        for (int x = 0; x < 256; x++) {
+            byte s = SBox.apply((byte) x);
+            byte si = SBox.applyInverse((byte) x);
+            S[x] = s & 0xff;
+            Si[x] = si & 0xff;
+
+            int te = word(Functions.mul2(s), s, s, Functions.mul3(s));
+            Te0[x] = te;
+            Te1[x] = Integer.rotateRight(te, 8);
+            Te2[x] = Integer.rotateRight(te, 16);
+            Te3[x] = Integer.rotateRight(te, 24);
+
+            int td = word(Functions.mul14(si), Functions.mul9(si), Functions.mul13(si), Functions.mul11(si));
+            Td0[x] = td;
+            Td1[x] = Integer.rotateRight(td, 8);
+            Td2[x] = Integer.rotateRight(td, 16);
+            Td3[x] = Integer.rotateRight(td, 24);
+        }
+    }
+
+    /**
+     * Do not allow instantiation.
+     */
+    private Tables() {
+    }
+
+    /**
+     * Packs 4 bytes into a big-endian word.
+     */
+    static int word(byte b0, byte b1, byte b2, byte b3) {
+        return ((b0 & 0xff) << 24) | ((b1 & 0xff) << 16) | ((b2 & 0xff) << 8) | (b3 & 0xff);
+    }
+
+    /**
+     * Reads big-endian columns from an array, four per block, until state is full.
+     */
+    static void load(byte[] b, int off, int[] state) {
+        for (int c = 0; c < state.length; c++) {
+            int i = off + 4 * c;
+            state[c] = ((b[i] & 0xff) << 24) | ((b[i + 1] & 0xff) << 16) | ((b[i + 2] & 0xff) << 8) | (b[i + 3] & 0xff);
+        }
+    }
+
+    /**
+     * Writes every column of state to an array, big-endian, four per block.
+     */
+    static void store(int[] state, byte[] b, int off) {
+        for (int c = 0; c < state.length; c++) {
+            int w = state[c];
+            int i = off + 4 * c;
+            b[i] = (byte) (w >>> 24);
+            b[i + 1] = (byte) (w >>> 16);
+            b[i + 2] = (byte) (w >>> 8);
+            b[i + 3] = (byte) w;
+        }
+    }
+
+    /**
+     * Reads big-endian columns from a buffer, four per block, until state is full, whatever the buffer's byte order.
+     */
+    static void load(ByteBuffer b, int off, int[] state) {
+        boolean swap = b.order() != ByteOrder.BIG_ENDIAN;
+        for (int c = 0; c < state.length; c++) {
+            int w = b.getInt(off + 4 * c);
+            state[c] = swap ? Integer.reverseBytes(w) : w;
+        }
+    }
+
+    /**
+     * Writes every column of state to a buffer, big-endian, four per block, whatever the buffer's byte order.
+     */
+    static void store(int[] state, ByteBuffer b, int off) {
+        boolean swap = b.order() != ByteOrder.BIG_ENDIAN;
+        for (int c = 0; c < state.length; c++) {
+            int w = state[c];
+            b.putInt(off + 4 * c, swap ? Integer.reverseBytes(w) : w);
+        }
+    }
+}
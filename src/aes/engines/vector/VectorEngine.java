@@ -0,0 +1,251 @@
+package aes.engines.vector;
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+import aes.Key;
+import aes.SBox;
+import aes.engines.AbstractBlockEngine;
+import aes.engines.Backend;
+import aes.engines.BlockEngine;
+
+/**
+ * <p>
+ * An implementation of {@link BlockEngine} that transforms several blocks per vector register with the incubating Java
+ * Vector API.
+ * </p>
+ *
+ * <p>
+ * A vector of the platform's preferred width holds as many whole blocks as fit, four with AVX-512. AddRoundKey is a
+ * vector xor with the round key repeated once per block, ShiftRows and the column rotations of MixColumns are lane
+ * shuffles, and multiplication by {02} is a vector shift and conditional xor with {1b}. SubBytes keeps the state in the
+ * vector: the S-box is split into pieces as wide as the vector, each byte's low bits select an entry of every piece
+ * with a lane permutation, and its high bits select the piece. Decryption follows the inverse cipher of FIPS-197 section
+ * 5.3 and computes InvMixColumns as a multiplication by {04}x^2 + {05} followed by MixColumns.
+ * </p>
+ *
+ * <p>
+ * This backend is experimental. On JDK 17 the incubating API does not compile these permutations to single
+ * instructions, and the engine is slower than the table engine: about 130 MB/s against 200 MB/s for bulk encryption,
+ * and between 15 and 30 MB/s against 200 MB/s for a single block, on a processor with AVX-512. It is kept for JDKs
+ * whose Vector API compiles better, and {@link Backend#AUTO} does not consider it until it beats the table engine.
+ * </p>
+ *
+ * <p>
+ * This class needs the jdk.incubator.vector module at compile time and run time. {@link aes.AesFactory} loads it
+ * reflectively and falls back to the table engine when the module is missing or the preferred vector is narrower than a
+ * block.
+ * </p>
+ */
+public class VectorEngine extends AbstractBlockEngine {
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+    /**
+     * The number of bytes in a vector, a multiple of 16.
+     */
+    private static final int LENGTH = SPECIES.length();
+
+    private static final VectorShuffle<Byte> SHIFT_ROWS = shuffle((r, c) -> r + 4 * ((c + r) & 3));
+    private static final VectorShuffle<Byte> INV_SHIFT_ROWS = shuffle((r, c) -> r + 4 * ((c - r) & 3));
+    private static final VectorShuffle<Byte> ROT1 = shuffle((r, c) -> ((r + 1) & 3) + 4 * c);
+    private static final VectorShuffle<Byte> ROT2 = shuffle((r, c) -> ((r + 2) & 3) + 4 * c);
+    private static final VectorShuffle<Byte> ROT3 = shuffle((r, c) -> ((r + 3) & 3) + 4 * c);
+
+    /**
+     * The number of table entries a single lookup covers: as many as a vector has lanes, up to the whole table.
+     */
+    private static final int PIECE = Math.min(LENGTH, 256);
+
+    /**
+     * The S-box and its inverse, split into 256 / {@link #PIECE} vectors of consecutive entries.
+     */
+    private static final ByteVector[] S = pieces(false);
+    private static final ByteVector[] SI = pieces(true);
+
+    /**
+     * Identifies the repeated round keys among the data derived from a {@link Key}.
+     */
+    private static final Object ROUND_KEYS = new Object();
+
+    /**
+     * Constructs a VectorEngine.
+     *
+     * @throws UnsupportedOperationException If the preferred vector cannot hold a whole block.
+     */
+    public VectorEngine() {
+        if (LENGTH < 16) {
+            throw new UnsupportedOperationException("Preferred vector is narrower than a block: " + LENGTH + " bytes");
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Backend getBackend() {
+        return Backend.VECTOR;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void encryptBlocks(byte[] in, int inOff, byte[] out, int outOff, int blocks, Key key) {
+        transform(in, inOff, out, outOff, blocks, key, true);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void decryptBlocks(byte[] in, int inOff, byte[] out, int outOff, int blocks, Key key) {
+        transform(in, inOff, out, outOff, blocks, key, false);
+    }
+
+    private void transform(byte[] in, int inOff, byte[] out, int outOff, int blocks, Key key, boolean encrypt) {
+        ByteVector[] rk = roundKeys(key);
+        int len = 16 * blocks;
+        int off = 0;
+        for (; off + LENGTH <= len; off += LENGTH) {
+            ByteVector v = ByteVector.fromArray(SPECIES, in, inOff + off);
+            v = encrypt ? encrypt(v, rk, key.Nr) : decrypt(v, rk, key.Nr);
+            v.intoArray(out, outOff + off);
+        }
+
+        // the blocks that do not fill a vector are loaded and stored under a mask, with the lanes past them zero
+        if (off < len) {
+            VectorMask<Byte> m = SPECIES.indexInRange(0, len - off);
+            ByteVector v = ByteVector.fromArray(SPECIES, in, inOff + off, m);
+            v = encrypt ? encrypt(v, rk, key.Nr) : decrypt(v, rk, key.Nr);
+            v.intoArray(out, outOff + off, m);
+        }
+    }
+
+    private static ByteVector encrypt(ByteVector v, ByteVector[] rk, int nr) {
+        v = v.lanewise(VectorOperators.XOR, rk[0]);
+        for (int round = 1; round < nr; round++) {
+            v = substitute(v, S).rearrange(SHIFT_ROWS);
+            v = mixColumns(v).lanewise(VectorOperators.XOR, rk[round]);
+        }
+        v = substitute(v, S).rearrange(SHIFT_ROWS);
+        return v.lanewise(VectorOperators.XOR, rk[nr]);
+    }
+
+    private static ByteVector decrypt(ByteVector v, ByteVector[] rk, int nr) {
+        v = v.lanewise(VectorOperators.XOR, rk[nr]);
+        for (int round = nr - 1; round > 0; round--) {
+            v = substitute(v.rearrange(INV_SHIFT_ROWS), SI);
+            v = invMixColumns(v.lanewise(VectorOperators.XOR, rk[round]));
+        }
+        v = substitute(v.rearrange(INV_SHIFT_ROWS), SI);
+        return v.lanewise(VectorOperators.XOR, rk[0]);
+    }
+
+    /**
+     * Looks every byte of v up in the table split into pieces. The low bits of a byte select an entry of every piece
+     * with a lane permutation, and the high bits select which piece's entry is kept, so the state never leaves the
+     * vector and no lookup depends on a memory address.
+     */
+    private static ByteVector substitute(ByteVector v, ByteVector[] pieces) {
+        VectorShuffle<Byte> index = v.lanewise(VectorOperators.AND, (byte) (PIECE - 1)).toShuffle();
+        ByteVector result = pieces[0].rearrange(index);
+        if (pieces.length > 1) {
+            ByteVector piece = v.lanewise(VectorOperators.LSHR, Integer.numberOfTrailingZeros(PIECE));
+            for (int p = 1; p < pieces.length; p++) {
+                result = result.blend(pieces[p].rearrange(index), piece.eq((byte) p));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Computes b[r] = {02}(a[r] ^ a[r + 1]) ^ a[r + 1] ^ a[r + 2] ^ a[r + 3] for every column of every block.
+     */
+    private static ByteVector mixColumns(ByteVector a) {
+        ByteVector a1 = a.rearrange(ROT1);
+        ByteVector rest = a1.lanewise(VectorOperators.XOR, a.rearrange(ROT2)).lanewise(VectorOperators.XOR, a.rearrange(ROT3));
+        return xtime(a.lanewise(VectorOperators.XOR, a1)).lanewise(VectorOperators.XOR, rest);
+    }
+
+    /**
+     * Multiplies every column by {04}x^2 + {05} and then applies MixColumns, which together equal InvMixColumns.
+     */
+    private static ByteVector invMixColumns(ByteVector a) {
+        ByteVector u = xtime(xtime(a.lanewise(VectorOperators.XOR, a.rearrange(ROT2))));
+        return mixColumns(a.lanewise(VectorOperators.XOR, u));
+    }
+
+    /**
+     * Multiplies every byte by {02}: shifts it left and xor's {1b} into the bytes whose top bit was set.
+     */
+    private static ByteVector xtime(ByteVector v) {
+        ByteVector reduce = v.lanewise(VectorOperators.ASHR, 7).lanewise(VectorOperators.AND, (byte) 0x1b);
+        return v.lanewise(VectorOperators.LSHL, 1).lanewise(VectorOperators.XOR, reduce);
+    }
+
+    /**
+     * @return The round keys of the encryption schedule, each repeated once per block of a vector, computed once per key.
+     */
+    private static ByteVector[] roundKeys(Key key) {
+        return key.getDerived(ROUND_KEYS, k -> {
+            byte[] schedule = k.getExpandedKey();
+            ByteVector[] rk = new ByteVector[k.Nr + 1];
+            byte[] repeated = new byte[LENGTH];
+            for (int round = 0; round <= k.Nr; round++) {
+                for (int off = 0; off < LENGTH; off += 16) {
+                    System.arraycopy(schedule, 16 * round, repeated, off, 16);
+                }
+                rk[round] = ByteVector.fromArray(SPECIES, repeated, 0);
+            }
+            return rk;
+        });
+    }
+
+    /**
+     * @param inverse True for the inverse S-box.
+     * @return The S-box as 256 / {@link #PIECE} vectors, each holding {@link #PIECE} consecutive entries repeated to fill
+     *         the vector.
+     */
+    private static ByteVector[] pieces(boolean inverse) {
+        ByteVector[] pieces = new ByteVector[256 / PIECE];
+        byte[] entries = new byte[LENGTH];
+        for (int p = 0; p < pieces.length; p++) {
+            for (int i = 0; i < LENGTH; i++) {
+                byte x = (byte) (p * PIECE + i % PIECE);
+                entries[i] = inverse ? SBox.applyInverse(x) : SBox.apply(x);
+            }
+            pieces[p] = ByteVector.fromArray(SPECIES, entries, 0);
+        }
+        return pieces;
+    }
+
+    /**
+     * Builds a shuffle that moves byte source(r, c) of each block to row r of column c of the same block.
+     */
+    private static VectorShuffle<Byte> shuffle(BytePosition source) {
+        int[] indexes = new int[LENGTH];
+        for (int block = 0; block < LENGTH; block += 16) {
+            for (int c = 0; c < 4; c++) {
+                for (int r = 0; r < 4; r++) {
+                    indexes[block + r + 4 * c] = block + source.index(r, c);
+                }
+            }
+        }
+        return VectorShuffle.fromArray(SPECIES, indexes, 0);
+    }
+
+    /**
+     * BytePosition maps a row and column of a block to the index of a byte within the block.
+     */
+    private interface BytePosition {
+
+        /**
+         * @param r The row, from 0 to 3.
+         * @param c The column, from 0 to 3.
+         * @return The index of the byte within the block.
+         */
+        public int index(int r, int c);
+    }
+}
@@ -0,0 +1,165 @@
+package aes.io;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import aes.modes.CipherOperation;
+
+/**
+ * <p>
+ * CipherInputStream reads from an underlying stream and returns the bytes transformed with a {@link CipherOperation}.
+ * </p>
+ *
+ * <p>
+ * The underlying stream is read a fixed-size chunk at a time, so the memory used does not depend on the length of the
+ * message. When the underlying stream ends the operation is finished and its final output, such as the last block of a
+ * padded message, is returned before end of stream. An invalid padding or authentication tag surfaces from that read as
+ * the exception thrown by the operation.
+ * </p>
+ */
+public class CipherInputStream extends FilterInputStream {
+    /**
+     * The default number of bytes read from the underlying stream at a time.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    private final CipherOperation operation;
+    private final byte[] input;
+    private final byte[] single = new byte[1];
+    private byte[] output = new byte[0];
+    private int outputPos;
+    private int outputLen;
+    private boolean finished;
+
+    /**
+     * @param in The stream to read the input from.
+     * @param operation The encryption or decryption to apply.
+     */
+    public CipherInputStream(InputStream in, CipherOperation operation) {
+        this(in, operation, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param in The stream to read the input from.
+     * @param operation The encryption or decryption to apply.
+     * @param chunkSize The number of bytes to read from the underlying stream at a time.
+     */
+    public CipherInputStream(InputStream in, CipherOperation operation, int chunkSize) {
+        super(in);
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+        }
+        this.operation = operation;
+        this.input = new byte[chunkSize];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read() throws IOException {
+        int n = read(single, 0, 1);
+        return n < 0 ? -1 : single[0] & 0xff;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (outputPos == outputLen) {
+            if (finished) {
+                return -1;
+            }
+            fill();
+        }
+        int n = Math.min(len, outputLen - outputPos);
+        System.arraycopy(output, outputPos, b, off, n);
+        outputPos += n;
+        return n;
+    }
+
+    /**
+     * Skips bytes of the transformed stream. They are still transformed, a chunk at a time, so that the operation sees
+     * the whole message and can check its padding or tag at the end.
+     *
+     * @param n The number of bytes to skip.
+     * @return The number of bytes skipped, which is less than n only at end of stream.
+     * @throws IOException If the underlying stream cannot be read.
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n) {
+            if (outputPos == outputLen) {
+                if (finished) {
+                    break;
+                }
+                fill();
+                continue;
+            }
+            int k = (int) Math.min(n - skipped, outputLen - outputPos);
+            outputPos += k;
+            skipped += k;
+        }
+        return skipped;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int available() {
+        return outputLen - outputPos;
+    }
+
+    /**
+     * Marking is not supported.
+     *
+     * @return false
+     */
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * Does nothing, since marking is not supported.
+     */
+    @Override
+    public void mark(int readlimit) {
+    }
+
+    /**
+     * Always throws, since marking is not supported.
+     */
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    /**
+     * Reads the next chunk of the underlying stream and transforms it. The operation is finished at end of stream.
+     */
+    private void fill() throws IOException {
+        int n = in.read(input, 0, input.length);
+        outputPos = 0;
+        if (n < 0) {
+            finished = true;
+            ensureOutput(operation.getFinalOutputSize(0));
+            outputLen = operation.doFinal(input, 0, 0, output, 0);
+        } else {
+            ensureOutput(operation.getUpdateOutputSize(n));
+            outputLen = operation.update(input, 0, n, output, 0);
+        }
+    }
+
+    private void ensureOutput(int size) {
+        if (output.length < size) {
+            output = new byte[size];
+        }
+    }
+}
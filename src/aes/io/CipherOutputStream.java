@@ -0,0 +1,113 @@
+package aes.io;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import aes.modes.CipherOperation;
+
+/**
+ * <p>
+ * CipherOutputStream transforms everything written to it with a {@link CipherOperation} and writes the result to an
+ * underlying stream.
+ * </p>
+ *
+ * <p>
+ * Writes are passed to the operation as they arrive, in pieces of at most a fixed chunk size, so the memory used is
+ * bounded by the chunk size and depends neither on the length of the message nor on the size of a single write.
+ * {@link #close()} finishes the operation, writes the final output, such as padding or an authentication tag, and
+ * closes the underlying stream. {@link #flush()} cannot write bytes the operation is still holding, such as a partial
+ * block.
+ * </p>
+ */
+public class CipherOutputStream extends FilterOutputStream {
+    /**
+     * The default number of bytes passed to the operation at a time.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    private final CipherOperation operation;
+    private final int chunkSize;
+    private final byte[] single = new byte[1];
+    private byte[] buffer = new byte[0];
+    private boolean closed;
+
+    /**
+     * @param out The stream to write the transformed bytes to.
+     * @param operation The encryption or decryption to apply.
+     */
+    public CipherOutputStream(OutputStream out, CipherOperation operation) {
+        this(out, operation, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param out The stream to write the transformed bytes to.
+     * @param operation The encryption or decryption to apply.
+     * @param chunkSize The largest number of bytes to pass to the operation at a time.
+     */
+    public CipherOutputStream(OutputStream out, CipherOperation operation, int chunkSize) {
+        super(out);
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+        }
+        this.operation = operation;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(int b) throws IOException {
+        single[0] = (byte) b;
+        write(single, 0, 1);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        while (len > 0) {
+            int piece = Math.min(len, chunkSize);
+            byte[] output = buffer(operation.getUpdateOutputSize(piece));
+            int n = operation.update(b, off, piece, output, 0);
+            out.write(output, 0, n);
+            off += piece;
+            len -= piece;
+        }
+    }
+
+    /**
+     * Finishes the operation, writes its final output and closes the underlying stream.
+     *
+     * @throws IOException If the underlying stream cannot be written or closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            byte[] output = buffer(operation.getFinalOutputSize(0));
+            int n = operation.doFinal(output, 0, 0, output, 0);
+            out.write(output, 0, n);
+            out.flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @return The output buffer, grown to at least size bytes.
+     */
+    private byte[] buffer(int size) {
+        if (buffer.length < size) {
+            buffer = new byte[size];
+        }
+        return buffer;
+    }
+}
@@ -0,0 +1,276 @@
+package aes.io;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import aes.Key;
+import aes.modes.cbc.AesCbc;
+import aes.modes.ctr.AesCtr;
+import aes.modes.ecb.AesEcb;
+
+/**
+ * <p>
+ * MappedFileCipher encrypts and decrypts files by mapping them into memory with {@link FileChannel#map} and running
+ * the block engine directly over the mapped regions.
+ * </p>
+ *
+ * <p>
+ * A file is processed one window at a time, so files larger than 2 GB, the limit of a single mapping, are handled by
+ * mapping each window in turn. The message is never copied to the heap. The target may be a separate file or the
+ * source itself, in which case the file is transformed in place. Like the modes' own methods, ECB and CBC encryption
+ * zero extend the message to a multiple of 16 bytes, so the target can be up to 15 bytes longer than the source.
+ * </p>
+ *
+ * <p>
+ * Windows are transformed concurrently in a {@link ForkJoinPool} for ECB, CTR and CBC decryption, whose windows are
+ * independent of each other. CBC encryption chains every block to the one before it and is always processed one window
+ * after another. The initialization vector is neither written to nor read from the file.
+ * </p>
+ *
+ * <p>
+ * NOTE: mapped windows are released when they are garbage collected, not when a method returns.
+ * </p>
+ */
+public class MappedFileCipher {
+    /**
+     * The default size of a window, in bytes.
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private final int windowSize;
+    private final ForkJoinPool pool;
+
+    /**
+     * Constructs a MappedFileCipher that processes windows of the default size on the calling thread.
+     */
+    public MappedFileCipher() {
+        this(DEFAULT_WINDOW_SIZE, null);
+    }
+
+    /**
+     * Constructs a MappedFileCipher.
+     *
+     * @param windowSize The size of a window, in bytes. It must be a positive multiple of 16.
+     * @param pool The pool to transform independent windows in, or null to process every window on the calling thread.
+     */
+    public MappedFileCipher(int windowSize, ForkJoinPool pool) {
+        if (windowSize <= 0 || windowSize % 16 != 0) {
+            throw new IllegalArgumentException("Invalid window size: " + windowSize);
+        }
+        this.windowSize = windowSize;
+        this.pool = pool;
+    }
+
+    /**
+     * Encrypts a file in ECB mode.
+     *
+     * @param ecb The cipher to use.
+     * @param key The expanded symmetric key to use.
+     * @param source The file holding the message.
+     * @param target The file to write the ciphertext to. It may be the source.
+     * @return The length of the ciphertext.
+     * @throws IOException If a file cannot be read, written or mapped.
+     */
+    public long encrypt(AesEcb ecb, Key key, Path source, Path target) throws IOException {
+        return transform(source, target, true, true, (src, dst, position) -> ecb.encrypt(src, dst, key));
+    }
+
+    /**
+     * Decrypts a file in ECB mode.
+     *
+     * @param ecb The cipher to use.
+     * @param key The expanded symmetric key to use.
+     * @param source The file holding the ciphertext.
+     * @param target The file to write the message to. It may be the source.
+     * @return The length of the message.
+     * @throws IOException If a file cannot be read, written or mapped.
+     */
+    public long decrypt(AesEcb ecb, Key key, Path source, Path target) throws IOException {
+        return transform(source, target, true, true, (src, dst, position) -> ecb.decrypt(src, dst, key));
+    }
+
+    /**
+     * Encrypts or decrypts a file in CTR mode.
+     *
+     * @param ctr The cipher to use.
+     * @param key The expanded symmetric key to use.
+     * @param iv The first counter block of the stream.
+     * @param source The file holding the input.
+     * @param target The file to write the output to. It may be the source.
+     * @return The length of the output, which is the length of the input.
+     * @throws IOException If a file cannot be read, written or mapped.
+     */
+    public long crypt(AesCtr ctr, Key key, byte[] iv, Path source, Path target) throws IOException {
+        return transform(source, target, false, true, (src, dst, position) -> ctr.crypt(src, dst, key, iv, position));
+    }
+
+    /**
+     * Encrypts a file in CBC mode. The windows are processed one after another.
+     *
+     * @param cbc The cipher to use.
+     * @param key The expanded symmetric key to use.
+     * @param iv The initialization vector.
+     * @param source The file holding the message.
+     * @param target The file to write the ciphertext to. It may be the source.
+     * @return The length of the ciphertext.
+     * @throws IOException If a file cannot be read, written or mapped.
+     */
+    public long encrypt(AesCbc cbc, Key key, byte[] iv, Path source, Path target) throws IOException {
+        byte[] chain = iv.clone();
+        return transform(source, target, true, false, (src, dst, position) -> {
+            int start = dst.position();
+            int n = cbc.encrypt(src, dst, key, chain);
+            for (int i = 0; i < 16 && n != 0; i++) {
+                chain[i] = dst.get(start + n - 16 + i);
+            }
+        });
+    }
+
+    /**
+     * Decrypts a file in CBC mode.
+     *
+     * @param cbc The cipher to use.
+     * @param key The expanded symmetric key to use.
+     * @param iv The initialization vector used to encrypt the message.
+     * @param source The file holding the ciphertext. Its length must be a multiple of 16.
+     * @param target The file to write the message to. It may be the source.
+     * @return The length of the message.
+     * @throws IOException If a file cannot be read, written or mapped.
+     */
+    public long decrypt(AesCbc cbc, Key key, byte[] iv, Path source, Path target) throws IOException {
+        long length = Files.size(source);
+        if (length % 16 != 0) {
+            throw new IllegalArgumentException("Ciphertext is not a multiple of 16 bytes: " + length);
+        }
+
+        // read the ciphertext block in front of every window before any window can be decrypted in place
+        int windows = windowCount(length);
+        byte[][] chains = new byte[windows][];
+        chains[0] = iv;
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            for (int w = 1; w < windows; w++) {
+                ByteBuffer block = ByteBuffer.allocate(16);
+                long position = (long) w * windowSize - 16;
+                while (block.hasRemaining()) {
+                    if (channel.read(block, position + block.position()) < 0) {
+                        throw new IOException("Unexpected end of file: " + source);
+                    }
+                }
+                chains[w] = block.array();
+            }
+        }
+        return transform(source, target, false, true, (src, dst, position) -> cbc.decrypt(src, dst, key, chains[(int) (position / windowSize)]));
+    }
+
+    /**
+     * Maps the source and target window by window and applies the transform to each window.
+     *
+     * @param source The file holding the input.
+     * @param target The file to write the output to.
+     * @param zeroExtend True if the output is the input zero extended to a multiple of 16 bytes; false if it is as long
+     *        as the input.
+     * @param independent True if windows may be transformed concurrently and in any order.
+     * @param transform The transform to apply to each window.
+     * @return The length of the output.
+     */
+    private long transform(Path source, Path target, boolean zeroExtend, boolean independent, WindowTransform transform) throws IOException {
+        boolean inPlace = Files.exists(target) && Files.isSameFile(source, target);
+        try (FileChannel in = FileChannel.open(source, inPlace ? new StandardOpenOption[] { StandardOpenOption.READ, StandardOpenOption.WRITE }
+                : new StandardOpenOption[] { StandardOpenOption.READ });
+                FileChannel out = inPlace ? null
+                        : FileChannel.open(target, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                                StandardOpenOption.TRUNCATE_EXISTING)) {
+            FileChannel output = inPlace ? in : out;
+            long length = in.size();
+            long outLength = zeroExtend ? (length + 15) / 16 * 16 : length;
+            if (output.size() < outLength) {
+                output.write(ByteBuffer.allocate(1), outLength - 1);
+            }
+
+            int windows = windowCount(length);
+            if (pool == null || !independent || windows == 1) {
+                for (int w = 0; w < windows; w++) {
+                    transformWindow(in, output, inPlace, length, w, transform);
+                }
+            } else {
+                List<Future<Void>> results = new ArrayList<>(windows);
+                for (int w = 0; w < windows; w++) {
+                    int window = w;
+                    results.add(pool.submit(() -> {
+                        transformWindow(in, output, inPlace, length, window, transform);
+                        return null;
+                    }));
+                }
+                join(results);
+            }
+            return outLength;
+        }
+    }
+
+    /**
+     * Maps window w of the input and output and transforms it.
+     */
+    private void transformWindow(FileChannel in, FileChannel out, boolean inPlace, long length, int w, WindowTransform transform) throws IOException {
+        long position = (long) w * windowSize;
+        int len = (int) Math.min(windowSize, length - position);
+        int outLen = (int) Math.min(windowSize, out.size() - position);
+        ByteBuffer dst = out.map(FileChannel.MapMode.READ_WRITE, position, outLen);
+        ByteBuffer src = inPlace ? dst.duplicate() : in.map(FileChannel.MapMode.READ_ONLY, position, len);
+        src.limit(len);
+        transform.apply(src, dst, position);
+    }
+
+    private int windowCount(long length) {
+        return (int) Math.max(1, (length + windowSize - 1) / windowSize);
+    }
+
+    /**
+     * Waits for every window, rethrowing the first failure.
+     */
+    private static void join(List<Future<Void>> results) throws IOException {
+        IOException failure = null;
+        for (Future<Void> result : results) {
+            try {
+                result.get();
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        failure = (IOException) cause;
+                    } else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    } else {
+                        failure = new IOException(cause);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while transforming a file", e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * WindowTransform transforms a single mapped window of a file.
+     */
+    private interface WindowTransform {
+
+        /**
+         * @param src The input of the window between its position and limit.
+         * @param dst The output of the window.
+         * @param position The offset of the window within the file.
+         */
+        public void apply(ByteBuffer src, ByteBuffer dst, long position);
+    }
+}
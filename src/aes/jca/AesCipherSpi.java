@@ -0,0 +1,463 @@
+package aes.jca;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.ProviderException;
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+import java.security.spec.InvalidParameterSpecException;
+import java.util.Arrays;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.CipherSpi;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+
+import aes.AesFactory;
+import aes.AuthenticationException;
+import aes.Key;
+import aes.engines.Backend;
+import aes.engines.BlockEngine;
+import aes.modes.BlockCipherMode;
+import aes.modes.CipherOperation;
+import aes.modes.Padding;
+import aes.modes.PaddingException;
+import aes.modes.Parallelism;
+import aes.modes.cbc.AesCbc;
+import aes.modes.ctr.AesCtr;
+import aes.modes.ecb.AesEcb;
+import aes.modes.gcm.AesGcm;
+import aes.modes.gcm.GcmOperation;
+
+/**
+ * <p>
+ * AesCipherSpi is the {@link CipherSpi} behind every transformation of {@link AesProvider}.
+ * </p>
+ *
+ * <p>
+ * Each initialization starts a {@link CipherOperation} from the mode's cipher, and update and doFinal pass data straight
+ * to it. The {@link ByteBuffer} methods pass the caller's buffers to the operation as well, so direct buffers are
+ * transformed without being copied to the heap for the modes that support it. After doFinal the cipher is ready to
+ * transform another message with the same key and IV, except GCM encryption, which must be initialized with a new IV.
+ * </p>
+ *
+ * <p>
+ * GCM decryption holds the ciphertext until doFinal and only releases plaintext once the tag has been checked, as the
+ * JDK does.
+ * </p>
+ */
+public final class AesCipherSpi extends CipherSpi {
+    private final BlockCipherMode mode;
+    private final Padding padding;
+    private final BlockEngine engine;
+    private final Object cipher;
+
+    private boolean encrypt;
+    private Key key;
+    private byte[] iv;
+    private int tagLength = AesGcm.TAG_LENGTH;
+    private CipherOperation operation;
+    private long processed;
+    private ByteArrayOutputStream aad;
+    private ByteArrayOutputStream held;
+
+    /**
+     * @param mode The block cipher mode of operation.
+     * @param padding The padding, which must be {@link Padding#NONE} for CTR and GCM.
+     * @param backend The implementation of the AES block transformation to use.
+     */
+    AesCipherSpi(BlockCipherMode mode, Padding padding, Backend backend) {
+        this.mode = mode;
+        this.padding = padding;
+        this.engine = AesFactory.getEngine(backend);
+        this.cipher = AesFactory.getCipher(mode, backend);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void engineSetMode(String mode) throws NoSuchAlgorithmException {
+        if (!this.mode.name().equalsIgnoreCase(mode)) {
+            throw new NoSuchAlgorithmException("Unsupported mode: " + mode);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void engineSetPadding(String padding) throws NoSuchPaddingException {
+        boolean none = "NoPadding".equalsIgnoreCase(padding);
+        boolean pkcs = "PKCS5Padding".equalsIgnoreCase(padding) || "PKCS7Padding".equalsIgnoreCase(padding);
+        if (this.padding == Padding.NONE ? !none : !pkcs) {
+            throw new NoSuchPaddingException("Unsupported padding: " + padding);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int engineGetBlockSize() {
+        return 16;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int engineGetOutputSize(int inputLen) {
+        if (operation == null) {
+            return inputLen + 2 * 16;
+        }
+        if (held != null) {
+            return Math.max(0, held.size() + inputLen - tagLength);
+        }
+        return operation.getFinalOutputSize(inputLen);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected byte[] engineGetIV() {
+        return iv == null ? null : iv.clone();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected AlgorithmParameters engineGetParameters() {
+        if (iv == null) {
+            return null;
+        }
+        try {
+            if (mode == BlockCipherMode.GCM) {
+                AlgorithmParameters parameters = AlgorithmParameters.getInstance("GCM");
+                parameters.init(new GCMParameterSpec(8 * tagLength, iv));
+                return parameters;
+            }
+            AlgorithmParameters parameters = AlgorithmParameters.getInstance("AES");
+            parameters.init(new IvParameterSpec(iv));
+            return parameters;
+        } catch (GeneralSecurityException e) {
+            throw new ProviderException("Cannot encode the IV", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int engineGetKeySize(java.security.Key key) throws InvalidKeyException {
+        return 8 * rawKey(key).length;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void engineInit(int opmode, java.security.Key key, SecureRandom random) throws InvalidKeyException {
+        try {
+            engineInit(opmode, key, (AlgorithmParameterSpec) null, random);
+        } catch (InvalidAlgorithmParameterException e) {
+            throw new InvalidKeyException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void engineInit(int opmode, java.security.Key key, AlgorithmParameters params, SecureRandom random)
+            throws InvalidKeyException, InvalidAlgorithmParameterException {
+        AlgorithmParameterSpec spec = null;
+        if (params != null) {
+            try {
+                spec = mode == BlockCipherMode.GCM ? params.getParameterSpec(GCMParameterSpec.class) : params.getParameterSpec(IvParameterSpec.class);
+            } catch (InvalidParameterSpecException e) {
+                throw new InvalidAlgorithmParameterException(e.getMessage(), e);
+            }
+        }
+        engineInit(opmode, key, spec, random);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void engineInit(int opmode, java.security.Key key, AlgorithmParameterSpec params, SecureRandom random)
+            throws InvalidKeyException, InvalidAlgorithmParameterException {
+        if (opmode != Cipher.ENCRYPT_MODE && opmode != Cipher.DECRYPT_MODE) {
+            throw new UnsupportedOperationException("Only ENCRYPT_MODE and DECRYPT_MODE are supported");
+        }
+        boolean encrypt = opmode == Cipher.ENCRYPT_MODE;
+        Key expanded = Key.getKey(rawKey(key));
+
+        byte[] iv = null;
+        int tagLength = AesGcm.TAG_LENGTH;
+        if (mode == BlockCipherMode.ECB) {
+            if (params != null) {
+                throw new InvalidAlgorithmParameterException("ECB mode takes no parameters");
+            }
+        } else if (params == null) {
+            if (!encrypt) {
+                throw new InvalidAlgorithmParameterException("Decryption requires an IV");
+            }
+            iv = new byte[mode == BlockCipherMode.GCM ? AesGcm.NONCE_LENGTH : 16];
+            (random == null ? new SecureRandom() : random).nextBytes(iv);
+        } else if (mode == BlockCipherMode.GCM) {
+            if (!(params instanceof GCMParameterSpec)) {
+                throw new InvalidAlgorithmParameterException("GCM requires a GCMParameterSpec");
+            }
+            GCMParameterSpec spec = (GCMParameterSpec) params;
+            tagLength = spec.getTLen() / 8;
+            if (spec.getTLen() % 8 != 0 || tagLength < 12 || tagLength > AesGcm.TAG_LENGTH) {
+                throw new InvalidAlgorithmParameterException("Unsupported tag length: " + spec.getTLen());
+            }
+            iv = spec.getIV();
+            if (iv.length == 0) {
+                throw new InvalidAlgorithmParameterException("Empty IV");
+            }
+        } else {
+            if (!(params instanceof IvParameterSpec)) {
+                throw new InvalidAlgorithmParameterException(mode + " requires an IvParameterSpec");
+            }
+            iv = ((IvParameterSpec) params).getIV();
+            if (iv.length != 16) {
+                throw new InvalidAlgorithmParameterException("Invalid IV size: " + iv.length);
+            }
+        }
+
+        this.encrypt = encrypt;
+        this.key = expanded;
+        this.iv = iv;
+        this.tagLength = tagLength;
+        start();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void engineUpdateAAD(byte[] src, int offset, int len) {
+        if (mode != BlockCipherMode.GCM) {
+            throw new IllegalStateException("Associated data is only supported in GCM mode");
+        }
+        checkStarted();
+        if (processed != 0) {
+            throw new IllegalStateException("Associated data must be supplied before the text");
+        }
+        if (held != null) {
+            aad.write(src, offset, len);
+        } else {
+            ((GcmOperation) operation).updateAAD(src, offset, len);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void engineUpdateAAD(ByteBuffer src) {
+        byte[] bytes = new byte[src.remaining()];
+        src.get(bytes);
+        engineUpdateAAD(bytes, 0, bytes.length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected byte[] engineUpdate(byte[] input, int inputOffset, int inputLen) {
+        checkStarted();
+        byte[] output = new byte[held != null ? 0 : operation.getUpdateOutputSize(inputLen)];
+        int n = update(input, inputOffset, inputLen, output, 0);
+        return n == output.length ? output : Arrays.copyOf(output, n);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int engineUpdate(byte[] input, int inputOffset, int inputLen, byte[] output, int outputOffset) throws ShortBufferException {
+        checkStarted();
+        if (held == null && output.length - outputOffset < operation.getUpdateOutputSize(inputLen)) {
+            throw new ShortBufferException("Output buffer too short");
+        }
+        return update(input, inputOffset, inputLen, output, outputOffset);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int engineUpdate(ByteBuffer input, ByteBuffer output) throws ShortBufferException {
+        checkStarted();
+        int len = input.remaining();
+        if (held != null) {
+            byte[] bytes = new byte[len];
+            input.get(bytes);
+            held.write(bytes, 0, len);
+            processed += len;
+            return 0;
+        }
+        if (output.remaining() < operation.getUpdateOutputSize(len)) {
+            throw new ShortBufferException("Output buffer too short");
+        }
+        processed += len;
+        return operation.update(input, output);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected byte[] engineDoFinal(byte[] input, int inputOffset, int inputLen) throws IllegalBlockSizeException, BadPaddingException {
+        checkStarted();
+        byte[] output = new byte[engineGetOutputSize(inputLen)];
+        int n = doFinal(ByteBuffer.wrap(input, inputOffset, inputLen), ByteBuffer.wrap(output));
+        return n == output.length ? output : Arrays.copyOf(output, n);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int engineDoFinal(byte[] input, int inputOffset, int inputLen, byte[] output, int outputOffset)
+            throws ShortBufferException, IllegalBlockSizeException, BadPaddingException {
+        checkStarted();
+        if (output.length - outputOffset < engineGetOutputSize(inputLen)) {
+            throw new ShortBufferException("Output buffer too short");
+        }
+        return doFinal(ByteBuffer.wrap(input, inputOffset, inputLen), ByteBuffer.wrap(output, outputOffset, output.length - outputOffset));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int engineDoFinal(ByteBuffer input, ByteBuffer output) throws ShortBufferException, IllegalBlockSizeException, BadPaddingException {
+        checkStarted();
+        if (output.remaining() < engineGetOutputSize(input.remaining())) {
+            throw new ShortBufferException("Output buffer too short");
+        }
+        return doFinal(input, output);
+    }
+
+    /**
+     * Passes text to the operation, or holds it if this is a GCM decryption.
+     */
+    private int update(byte[] input, int inputOffset, int inputLen, byte[] output, int outputOffset) {
+        processed += inputLen;
+        if (held != null) {
+            held.write(input, inputOffset, inputLen);
+            return 0;
+        }
+        return operation.update(input, inputOffset, inputLen, output, outputOffset);
+    }
+
+    /**
+     * Finishes the operation and starts the next one with the same key and IV.
+     */
+    private int doFinal(ByteBuffer input, ByteBuffer output) throws IllegalBlockSizeException, BadPaddingException {
+        long total = processed + input.remaining();
+        if (padding == Padding.NONE && mode != BlockCipherMode.CTR && mode != BlockCipherMode.GCM || padding == Padding.PKCS7 && !encrypt) {
+            if (total % 16 != 0 || padding == Padding.PKCS7 && total == 0) {
+                throw new IllegalBlockSizeException("Input length is not a multiple of 16 bytes: " + total);
+            }
+        }
+
+        try {
+            if (held != null) {
+                byte[] bytes = new byte[input.remaining()];
+                input.get(bytes);
+                held.write(bytes, 0, bytes.length);
+                byte[] plaintext = gcmCipher().decrypt(held.toByteArray(), key, iv, aad.toByteArray());
+                output.put(plaintext);
+                return plaintext.length;
+            }
+            return operation.doFinal(input, output);
+        } catch (AuthenticationException e) {
+            throw (AEADBadTagException) new AEADBadTagException(e.getMessage()).initCause(e);
+        } catch (PaddingException e) {
+            // any other failure of the mode is misuse or a bug, not a bad message, and propagates unchanged
+            throw (BadPaddingException) new BadPaddingException(e.getMessage()).initCause(e);
+        } finally {
+            if (mode == BlockCipherMode.GCM && encrypt) {
+                // a GCM nonce must not be used twice with the same key
+                operation = null;
+            } else {
+                start();
+            }
+        }
+    }
+
+    /**
+     * Starts an operation with the current key and IV.
+     */
+    private void start() {
+        processed = 0;
+        aad = null;
+        held = null;
+        if (mode == BlockCipherMode.ECB) {
+            AesEcb ecb = (AesEcb) cipher;
+            operation = encrypt ? ecb.newEncryption(key, padding) : ecb.newDecryption(key, padding);
+        } else if (mode == BlockCipherMode.CBC) {
+            AesCbc cbc = (AesCbc) cipher;
+            operation = encrypt ? cbc.newEncryption(key, iv, padding) : cbc.newDecryption(key, iv, padding);
+        } else if (mode == BlockCipherMode.CTR) {
+            AesCtr ctr = (AesCtr) cipher;
+            operation = encrypt ? ctr.newEncryption(key, iv) : ctr.newDecryption(key, iv);
+        } else if (encrypt) {
+            operation = gcmCipher().newEncryption(key, iv);
+        } else {
+            operation = gcmCipher().newDecryption(key, iv);
+            aad = new ByteArrayOutputStream();
+            held = new ByteArrayOutputStream();
+        }
+    }
+
+    /**
+     * @return The GCM cipher for the current tag length.
+     */
+    private AesGcm gcmCipher() {
+        AesGcm gcm = (AesGcm) cipher;
+        if (gcm.getTagLength() == tagLength) {
+            return gcm;
+        }
+        return new AesGcm(engine, null, Parallelism.SEQUENTIAL, tagLength);
+    }
+
+    private void checkStarted() {
+        if (operation == null) {
+            throw new IllegalStateException(key == null ? "Cipher not initialized" : "GCM encryption must be re-initialized with a new IV");
+        }
+    }
+
+    /**
+     * @return The raw bytes of an AES key.
+     * @throws InvalidKeyException If the key is not a raw 128, 192 or 256 bit key.
+     */
+    private static byte[] rawKey(java.security.Key key) throws InvalidKeyException {
+        if (key == null || !"RAW".equalsIgnoreCase(key.getFormat()) || key.getEncoded() == null) {
+            throw new InvalidKeyException("Key must be a raw AES key");
+        }
+        byte[] raw = key.getEncoded();
+        if (raw.length != 16 && raw.length != 24 && raw.length != 32) {
+            throw new InvalidKeyException("Invalid key size: " + raw.length);
+        }
+        return raw;
+    }
+}
@@ -0,0 +1,89 @@
+package aes.jca;
+import java.security.Provider;
+
+import aes.engines.Backend;
+import aes.modes.BlockCipherMode;
+import aes.modes.Padding;
+
+/**
+ * <p>
+ * AesProvider makes this AES implementation available through the Java Cryptography Architecture, so that code written
+ * against {@link javax.crypto.Cipher} can use it.
+ * </p>
+ *
+ * <p>
+ * It provides the transformations AES/ECB/NoPadding, AES/ECB/PKCS5Padding, AES/CBC/NoPadding, AES/CBC/PKCS5Padding,
+ * AES/CTR/NoPadding and AES/GCM/NoPadding, and AES alone as AES/ECB/PKCS5Padding, the same default as the JDK. Every
+ * cipher transforms blocks with the {@link Backend} the provider was constructed with. A provider can be passed to
+ * {@link javax.crypto.Cipher#getInstance(String, Provider)} directly or installed with
+ * {@link java.security.Security#addProvider(Provider)}.
+ * </p>
+ *
+ * <p>
+ * NOTE: some JDK builds only accept cipher providers from signed jars.
+ * </p>
+ */
+public final class AesProvider extends Provider {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The name of the provider.
+     */
+    public static final String NAME = "AesJava";
+
+    /**
+     * The backend the ciphers use.
+     */
+    private final Backend backend;
+
+    /**
+     * Constructs a provider whose ciphers use the {@link Backend#TABLE} backend.
+     */
+    public AesProvider() {
+        this(Backend.TABLE);
+    }
+
+    /**
+     * Constructs a provider whose ciphers use the given backend.
+     *
+     * @param backend The implementation of the AES block transformation to use.
+     */
+    public AesProvider(Backend backend) {
+        super(NAME, "1.0", "AES in ECB, CBC, CTR and GCM modes (" + backend + " backend)");
+        this.backend = backend;
+
+        putService(new CipherService("AES", BlockCipherMode.ECB, Padding.PKCS7));
+        putService(new CipherService("AES/ECB/NoPadding", BlockCipherMode.ECB, Padding.NONE));
+        putService(new CipherService("AES/ECB/PKCS5Padding", BlockCipherMode.ECB, Padding.PKCS7));
+        putService(new CipherService("AES/CBC/NoPadding", BlockCipherMode.CBC, Padding.NONE));
+        putService(new CipherService("AES/CBC/PKCS5Padding", BlockCipherMode.CBC, Padding.PKCS7));
+        putService(new CipherService("AES/CTR/NoPadding", BlockCipherMode.CTR, Padding.NONE));
+        putService(new CipherService("AES/GCM/NoPadding", BlockCipherMode.GCM, Padding.NONE));
+    }
+
+    /**
+     * @return The backend the ciphers use.
+     */
+    public Backend getBackend() {
+        return backend;
+    }
+
+    /**
+     * CipherService creates an {@link AesCipherSpi} for one transformation.
+     */
+    private final class CipherService extends Service {
+        private final BlockCipherMode mode;
+        private final Padding padding;
+
+        CipherService(String transformation, BlockCipherMode mode, Padding padding) {
+            super(AesProvider.this, "Cipher", transformation, AesCipherSpi.class.getName(), null, null);
+            this.mode = mode;
+            this.padding = padding;
+        }
+
+        @Override
+        public Object newInstance(Object constructorParameter) {
+            return new AesCipherSpi(mode, padding, backend);
+        }
+    }
+}
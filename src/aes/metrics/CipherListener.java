@@ -0,0 +1,36 @@
+package aes.metrics;
+import aes.engines.Backend;
+import aes.modes.BlockCipherMode;
+
+/**
+ * <p>
+ * CipherListener receives a callback for every message a cipher transforms and every key that is expanded, once it has
+ * been added with {@link Instrumentation#addListener(CipherListener)}.
+ * </p>
+ *
+ * <p>
+ * Callbacks run synchronously on the thread that did the work, so they must be fast, must not block and must be safe to
+ * call from many threads at once. An exception thrown by a listener propagates to the caller of the cipher.
+ * </p>
+ */
+public interface CipherListener {
+
+    /**
+     * Called after a cipher has encrypted or decrypted a message.
+     *
+     * @param mode The block cipher mode of operation.
+     * @param backend The backend that transformed the blocks.
+     * @param encrypt True if the message was encrypted; false if it was decrypted.
+     * @param bytes The length of the input in bytes.
+     * @param nanos The time the call took in nanoseconds.
+     */
+    public void cipherCompleted(BlockCipherMode mode, Backend backend, boolean encrypt, long bytes, long nanos);
+
+    /**
+     * Called after a key has been expanded.
+     *
+     * @param keyLength The length of the cipher key in bytes.
+     * @param nanos The time the expansion took in nanoseconds.
+     */
+    public void keyExpanded(int keyLength, long nanos);
+}
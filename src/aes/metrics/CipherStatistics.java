@@ -0,0 +1,237 @@
+package aes.metrics;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import aes.engines.Backend;
+import aes.modes.BlockCipherMode;
+
+/**
+ * <p>
+ * CipherStatistics is a {@link CipherListener} that keeps running totals of the work reported to it, including a
+ * latency histogram, and publishes them as a {@link CipherStatisticsMXBean}.
+ * </p>
+ *
+ * <p>
+ * Every counter is a {@link LongAdder} found by enum ordinal, so reporting neither hashes nor allocates and threads that
+ * report at once do not contend on a shared field. {@link #register()} is the usual way to turn it on.
+ * </p>
+ */
+public class CipherStatistics implements CipherListener, CipherStatisticsMXBean {
+    /**
+     * The name the statistics are registered under by {@link #register()}.
+     */
+    public static final String OBJECT_NAME = "aes:type=CipherStatistics";
+
+    /**
+     * The number of buckets in the latency histogram, enough for calls of up to about 18 minutes.
+     */
+    public static final int HISTOGRAM_BUCKETS = 40;
+
+    private final LongAdder encryptCount = new LongAdder();
+    private final LongAdder decryptCount = new LongAdder();
+    private final LongAdder bytesEncrypted = new LongAdder();
+    private final LongAdder bytesDecrypted = new LongAdder();
+    private final LongAdder blocks = new LongAdder();
+    private final LongAdder cipherNanos = new LongAdder();
+    private final LongAdder keyExpansions = new LongAdder();
+    private final LongAdder keyExpansionNanos = new LongAdder();
+    private final LongAdder[][] counts = new LongAdder[BlockCipherMode.values().length][Backend.values().length];
+    private final LongAdder[] histogram = new LongAdder[HISTOGRAM_BUCKETS];
+
+    /**
+     * Constructs statistics that are all zero. They only count once added with
+     * {@link Instrumentation#addListener(CipherListener)}.
+     */
+    public CipherStatistics() {
+        for (LongAdder[] row : counts) {
+            for (int i = 0; i < row.length; i++) {
+                row[i] = new LongAdder();
+            }
+        }
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Creates statistics, starts reporting to them and registers them with the platform MBean server under
+     * {@value #OBJECT_NAME}.
+     *
+     * @return The registered statistics.
+     * @throws IllegalStateException If statistics are already registered under that name.
+     */
+    public static CipherStatistics register() {
+        CipherStatistics statistics = new CipherStatistics();
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(statistics, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register " + OBJECT_NAME, e);
+        }
+        Instrumentation.addListener(statistics);
+        return statistics;
+    }
+
+    /**
+     * Stops reporting to statistics registered by {@link #register()} and removes them from the platform MBean server.
+     *
+     * @param statistics The statistics {@link #register()} returned.
+     */
+    public static void unregister(CipherStatistics statistics) {
+        Instrumentation.removeListener(statistics);
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot unregister " + OBJECT_NAME, e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void cipherCompleted(BlockCipherMode mode, Backend backend, boolean encrypt, long bytes, long nanos) {
+        if (encrypt) {
+            encryptCount.increment();
+            bytesEncrypted.add(bytes);
+        } else {
+            decryptCount.increment();
+            bytesDecrypted.add(bytes);
+        }
+        blocks.add((bytes + 15) >>> 4);
+        cipherNanos.add(nanos);
+        counts[mode.ordinal()][backend.ordinal()].increment();
+        // 63 - numberOfLeadingZeros is floor(log2(nanos)) for positive values
+        int bucket = 63 - Long.numberOfLeadingZeros(Math.max(nanos, 1));
+        histogram[Math.min(bucket, HISTOGRAM_BUCKETS - 1)].increment();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void keyExpanded(int keyLength, long nanos) {
+        keyExpansions.increment();
+        keyExpansionNanos.add(nanos);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getEncryptCount() {
+        return encryptCount.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getDecryptCount() {
+        return decryptCount.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getBytesEncrypted() {
+        return bytesEncrypted.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getBytesDecrypted() {
+        return bytesDecrypted.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getBlocks() {
+        return blocks.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getCipherNanos() {
+        return cipherNanos.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getKeyExpansions() {
+        return keyExpansions.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getKeyExpansionNanos() {
+        return keyExpansionNanos.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Long> getCountsByModeAndBackend() {
+        Map<String, Long> result = new TreeMap<String, Long>();
+        for (BlockCipherMode mode : BlockCipherMode.values()) {
+            for (Backend backend : Backend.values()) {
+                long count = counts[mode.ordinal()][backend.ordinal()].sum();
+                if (count != 0) {
+                    result.put(mode + "/" + backend, count);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long[] getLatencyHistogram() {
+        long[] result = new long[HISTOGRAM_BUCKETS];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = histogram[i].sum();
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void reset() {
+        for (LongAdder adder : new LongAdder[] { encryptCount, decryptCount, bytesEncrypted, bytesDecrypted, blocks, cipherNanos, keyExpansions, keyExpansionNanos }) {
+            adder.reset();
+        }
+        for (LongAdder[] row : counts) {
+            for (LongAdder adder : row) {
+                adder.reset();
+            }
+        }
+        for (LongAdder adder : histogram) {
+            adder.reset();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package aes.metrics;
+import java.util.Map;
+
+/**
+ * CipherStatisticsMXBean is the management interface through which {@link CipherStatistics} is published over JMX.
+ */
+public interface CipherStatisticsMXBean {
+
+    /**
+     * @return The number of messages encrypted.
+     */
+    public long getEncryptCount();
+
+    /**
+     * @return The number of messages decrypted.
+     */
+    public long getDecryptCount();
+
+    /**
+     * @return The number of bytes of plaintext encrypted.
+     */
+    public long getBytesEncrypted();
+
+    /**
+     * @return The number of bytes of ciphertext decrypted.
+     */
+    public long getBytesDecrypted();
+
+    /**
+     * @return The number of 16-byte blocks encrypted or decrypted, counting a partial final block as a whole one.
+     */
+    public long getBlocks();
+
+    /**
+     * @return The total time spent encrypting and decrypting in nanoseconds.
+     */
+    public long getCipherNanos();
+
+    /**
+     * @return The number of keys expanded.
+     */
+    public long getKeyExpansions();
+
+    /**
+     * @return The total time spent expanding keys in nanoseconds.
+     */
+    public long getKeyExpansionNanos();
+
+    /**
+     * Returns the number of messages transformed by each mode and backend, keyed like "CBC/TABLE". Pairs that have not
+     * been used are left out.
+     *
+     * @return The number of messages per mode and backend.
+     */
+    public Map<String, Long> getCountsByModeAndBackend();
+
+    /**
+     * Returns a histogram of the time each call took. Entry i counts the calls that took at least 2^i and less than
+     * 2^(i+1) nanoseconds, except that entry 0 also counts calls under a nanosecond and the last entry counts every
+     * longer call.
+     *
+     * @return The latency histogram.
+     */
+    public long[] getLatencyHistogram();
+
+    /**
+     * Sets every statistic back to zero.
+     */
+    public void reset();
+}
@@ -0,0 +1,134 @@
+package aes.metrics;
+import java.util.Arrays;
+
+import aes.engines.Backend;
+import aes.modes.BlockCipherMode;
+
+/**
+ * <p>
+ * Instrumentation holds the {@link CipherListener}s that ciphers and keys report to.
+ * </p>
+ *
+ * <p>
+ * Instrumentation is off until a listener is added. While it is off, each instrumented call costs one read of a volatile
+ * field and a comparison: {@link #start()} returns {@link #DISABLED} without reading the clock, and the report that
+ * follows returns at once.
+ * </p>
+ *
+ * <p>
+ * Instrumented code brackets its work like this:
+ * </p>
+ *
+ * <pre>
+ * long start = Instrumentation.start();
+ * // ... transform the message ...
+ * Instrumentation.cipherCompleted(start, mode, backend, true, len);
+ * </pre>
+ */
+public final class Instrumentation {
+    /**
+     * The start time returned when no listener is registered.
+     */
+    public static final long DISABLED = Long.MIN_VALUE;
+
+    private static final CipherListener[] NONE = new CipherListener[0];
+
+    private static volatile CipherListener[] listeners = NONE;
+
+    /**
+     * Do not allow instantiation.
+     */
+    private Instrumentation() {
+    }
+
+    /**
+     * Starts reporting to a listener. Adding a listener that is already registered has no effect.
+     *
+     * @param listener The listener to add.
+     */
+    public static synchronized void addListener(CipherListener listener) {
+        if (listener == null) {
+            throw new NullPointerException("listener");
+        }
+        if (indexOf(listener) < 0) {
+            CipherListener[] added = Arrays.copyOf(listeners, listeners.length + 1);
+            added[listeners.length] = listener;
+            listeners = added;
+        }
+    }
+
+    /**
+     * Stops reporting to a listener.
+     *
+     * @param listener The listener to remove.
+     */
+    public static synchronized void removeListener(CipherListener listener) {
+        int index = indexOf(listener);
+        if (index >= 0) {
+            CipherListener[] removed = new CipherListener[listeners.length - 1];
+            System.arraycopy(listeners, 0, removed, 0, index);
+            System.arraycopy(listeners, index + 1, removed, index, removed.length - index);
+            listeners = removed.length == 0 ? NONE : removed;
+        }
+    }
+
+    /**
+     * @return Whether any listener is registered.
+     */
+    public static boolean isEnabled() {
+        return listeners.length != 0;
+    }
+
+    /**
+     * Marks the start of an instrumented call.
+     *
+     * @return The current time from {@link System#nanoTime()}, or {@link #DISABLED} if no listener is registered.
+     */
+    public static long start() {
+        return listeners.length == 0 ? DISABLED : System.nanoTime();
+    }
+
+    /**
+     * Reports that a cipher has transformed a message.
+     *
+     * @param start The value {@link #start()} returned before the call.
+     * @param mode The block cipher mode of operation.
+     * @param backend The backend that transformed the blocks.
+     * @param encrypt True if the message was encrypted; false if it was decrypted.
+     * @param bytes The length of the input in bytes.
+     */
+    public static void cipherCompleted(long start, BlockCipherMode mode, Backend backend, boolean encrypt, long bytes) {
+        if (start == DISABLED) {
+            return;
+        }
+        long nanos = System.nanoTime() - start;
+        for (CipherListener listener : listeners) {
+            listener.cipherCompleted(mode, backend, encrypt, bytes, nanos);
+        }
+    }
+
+    /**
+     * Reports that a key has been expanded.
+     *
+     * @param start The value {@link #start()} returned before the expansion.
+     * @param keyLength The length of the cipher key in bytes.
+     */
+    public static void keyExpanded(long start, int keyLength) {
+        if (start == DISABLED) {
+            return;
+        }
+        long nanos = System.nanoTime() - start;
+        for (CipherListener listener : listeners) {
+            listener.keyExpanded(keyLength, nanos);
+        }
+    }
+
+    private static int indexOf(CipherListener listener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] == listener) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,107 @@
+package aes.metrics;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+import aes.engines.Backend;
+import aes.modes.BlockCipherMode;
+
+/**
+ * <p>
+ * JfrListener is a {@link CipherListener} that turns every report into a Java Flight Recorder event, so that time spent
+ * in AES can be attributed alongside the rest of a recording.
+ * </p>
+ *
+ * <p>
+ * It emits {@value #CIPHER_EVENT} for each message and {@value #KEY_EXPANSION_EVENT} for each key expansion. Both are
+ * disabled in the default recording settings and must be enabled by name, for example with
+ * {@code jfr configure +aes.Cipher#enabled=true}. Events that are not enabled are not populated.
+ * </p>
+ */
+public class JfrListener implements CipherListener {
+    /**
+     * The name of the event emitted for each message.
+     */
+    public static final String CIPHER_EVENT = "aes.Cipher";
+
+    /**
+     * The name of the event emitted for each key expansion.
+     */
+    public static final String KEY_EXPANSION_EVENT = "aes.KeyExpansion";
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void cipherCompleted(BlockCipherMode mode, Backend backend, boolean encrypt, long bytes, long nanos) {
+        CipherEvent event = new CipherEvent();
+        if (event.isEnabled()) {
+            event.mode = mode.name();
+            event.backend = backend.name();
+            event.encrypt = encrypt;
+            event.bytes = bytes;
+            event.blocks = (bytes + 15) >>> 4;
+            event.latency = nanos;
+            event.commit();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void keyExpanded(int keyLength, long nanos) {
+        KeyExpansionEvent event = new KeyExpansionEvent();
+        if (event.isEnabled()) {
+            event.keyBits = 8 * keyLength;
+            event.latency = nanos;
+            event.commit();
+        }
+    }
+
+    @Name(CIPHER_EVENT)
+    @Label("AES Cipher")
+    @Category("AES")
+    @Description("A message encrypted or decrypted")
+    @Enabled(false)
+    static class CipherEvent extends Event {
+        @Label("Mode")
+        String mode;
+
+        @Label("Backend")
+        String backend;
+
+        @Label("Encrypt")
+        boolean encrypt;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        @Label("Blocks")
+        long blocks;
+
+        @Label("Latency")
+        @Timespan
+        long latency;
+    }
+
+    @Name(KEY_EXPANSION_EVENT)
+    @Label("AES Key Expansion")
+    @Category("AES")
+    @Description("A cipher key expanded into its round keys")
+    @Enabled(false)
+    static class KeyExpansionEvent extends Event {
+        @Label("Key Bits")
+        int keyBits;
+
+        @Label("Latency")
+        @Timespan
+        long latency;
+    }
+}
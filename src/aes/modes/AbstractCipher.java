@@ -0,0 +1,273 @@
+package aes.modes;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import aes.Cipher;
+import aes.Key;
+import aes.KeyCache;
+import aes.engines.BlockEngine;
+import aes.metrics.Instrumentation;
+
+/**
+ * <p>
+ * AbstractCipher holds what every AES block cipher mode of operation shares: the {@link BlockEngine} that transforms
+ * blocks, an optional {@link KeyCache} for raw keys and the {@link Parallelism} to split long messages with.
+ * </p>
+ *
+ * <p>
+ * The methods that take a raw key expand it (through the cache if there is one) and delegate to the methods that take a
+ * {@link Key}. The methods that return a new array delegate to the offset methods.
+ * </p>
+ *
+ * <p>
+ * The offset and {@link ByteBuffer} methods report each call to {@link Instrumentation} and delegate the work to the
+ * doEncrypt and doDecrypt methods that each mode implements. Modes report their own public methods that bypass these
+ * with {@link #start()} and {@link #report(long, boolean, long)}.
+ * </p>
+ */
+public abstract class AbstractCipher implements Cipher {
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    protected final BlockEngine engine;
+    protected final KeyCache keyCache;
+    protected final Parallelism parallelism;
+
+    /**
+     * @param engine The engine to use.
+     * @param keyCache The cache to expand raw keys through, or null to expand them on every call.
+     * @param parallelism How to split long messages across threads.
+     */
+    protected AbstractCipher(BlockEngine engine, KeyCache keyCache, Parallelism parallelism) {
+        this.engine = engine;
+        this.keyCache = keyCache;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] encrypt(byte[] plaintext, byte[] key) {
+        return encrypt(plaintext, expand(key));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] encrypt(byte[] plaintext, Key key) {
+        byte[] encrypted = new byte[getEncryptOutputSize(plaintext.length)];
+        int len = encrypt(plaintext, 0, plaintext.length, encrypted, 0, key);
+        return trim(encrypted, len);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] decrypt(byte[] ciphertext, byte[] key) {
+        return decrypt(ciphertext, expand(key));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] decrypt(byte[] ciphertext, Key key) {
+        byte[] decrypted = new byte[getDecryptOutputSize(ciphertext.length)];
+        int len = decrypt(ciphertext, 0, ciphertext.length, decrypted, 0, key);
+        return trim(decrypted, len);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int encrypt(byte[] in, int inOff, int len, byte[] out, int outOff, Key key) {
+        long start = start();
+        int n = doEncrypt(in, inOff, len, out, outOff, key);
+        report(start, true, len);
+        return n;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int decrypt(byte[] in, int inOff, int len, byte[] out, int outOff, Key key) {
+        long start = start();
+        int n = doDecrypt(in, inOff, len, out, outOff, key);
+        report(start, false, len);
+        return n;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int encrypt(ByteBuffer src, ByteBuffer dst, Key key) {
+        long start = start();
+        int len = src.remaining();
+        int n = doEncrypt(src, dst, key);
+        report(start, true, len);
+        return n;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int decrypt(ByteBuffer src, ByteBuffer dst, Key key) {
+        long start = start();
+        int len = src.remaining();
+        int n = doDecrypt(src, dst, key);
+        report(start, false, len);
+        return n;
+    }
+
+    /**
+     * @return The block cipher mode of operation this cipher implements.
+     */
+    public abstract BlockCipherMode getMode();
+
+    /**
+     * Implements {@link #encrypt(byte[], int, int, byte[], int, Key)}.
+     *
+     * @param in The array holding the message.
+     * @param inOff The offset of the message in in.
+     * @param len The length of the message in bytes.
+     * @param out The array to write the ciphertext to.
+     * @param outOff The offset to write the ciphertext to.
+     * @param key The expanded symmetric key to use.
+     * @return The number of bytes written to out.
+     */
+    protected abstract int doEncrypt(byte[] in, int inOff, int len, byte[] out, int outOff, Key key);
+
+    /**
+     * Implements {@link #decrypt(byte[], int, int, byte[], int, Key)}.
+     *
+     * @param in The array holding the ciphertext.
+     * @param inOff The offset of the ciphertext in in.
+     * @param len The length of the ciphertext in bytes.
+     * @param out The array to write the plaintext to.
+     * @param outOff The offset to write the plaintext to.
+     * @param key The expanded symmetric key to use.
+     * @return The number of bytes written to out.
+     */
+    protected abstract int doDecrypt(byte[] in, int inOff, int len, byte[] out, int outOff, Key key);
+
+    /**
+     * Implements {@link #encrypt(ByteBuffer, ByteBuffer, Key)}.
+     *
+     * @param src The buffer holding the message between its position and limit.
+     * @param dst The buffer to write the ciphertext to.
+     * @param key The expanded symmetric key to use.
+     * @return The number of bytes written to dst.
+     */
+    protected abstract int doEncrypt(ByteBuffer src, ByteBuffer dst, Key key);
+
+    /**
+     * Implements {@link #decrypt(ByteBuffer, ByteBuffer, Key)}.
+     *
+     * @param src The buffer holding the ciphertext between its position and limit.
+     * @param dst The buffer to write the plaintext to.
+     * @param key The expanded symmetric key to use.
+     * @return The number of bytes written to dst.
+     */
+    protected abstract int doDecrypt(ByteBuffer src, ByteBuffer dst, Key key);
+
+    /**
+     * Marks the start of a call to report.
+     *
+     * @return The value to pass to {@link #report(long, boolean, long)}.
+     */
+    protected static long start() {
+        return Instrumentation.start();
+    }
+
+    /**
+     * Reports a call to {@link Instrumentation} with this cipher's mode and backend, if it is enabled.
+     *
+     * @param start The value {@link #start()} returned before the call.
+     * @param encrypt True if the message was encrypted; false if it was decrypted.
+     * @param len The length of the input in bytes.
+     */
+    protected final void report(long start, boolean encrypt, long len) {
+        if (start != Instrumentation.DISABLED) {
+            Instrumentation.cipherCompleted(start, getMode(), engine.getBackend(), encrypt, len);
+        }
+    }
+
+    /**
+     * @param key The raw key.
+     * @return The expanded key, taken from the cache if there is one.
+     */
+    protected Key expand(byte[] key) {
+        if (keyCache != null) {
+            return keyCache.get(key);
+        }
+        return Key.getKey(key);
+    }
+
+    /**
+     * <p>
+     * Implements the {@link ByteBuffer} methods with the offset methods.
+     * </p>
+     *
+     * <p>
+     * Buffers backed by an accessible array are transformed in that array. Other buffers are copied to and from a heap
+     * array, so modes that can work on direct buffers natively should not use this.
+     * </p>
+     *
+     * @param src The buffer holding the input between its position and limit.
+     * @param dst The buffer to write the output to.
+     * @param key The expanded symmetric key to use.
+     * @param encrypt True to encrypt; false to decrypt.
+     * @return The number of bytes written to dst.
+     */
+    protected int transformThroughArrays(ByteBuffer src, ByteBuffer dst, Key key, boolean encrypt) {
+        int len = src.remaining();
+        int outLen = encrypt ? getEncryptOutputSize(len) : getDecryptOutputSize(len);
+        if (dst.remaining() < outLen) {
+            throw new BufferOverflowException();
+        }
+
+        if (src.hasArray() && dst.hasArray() && !dst.isReadOnly()) {
+            int inOff = src.arrayOffset() + src.position();
+            int outOff = dst.arrayOffset() + dst.position();
+            int n = encrypt ? doEncrypt(src.array(), inOff, len, dst.array(), outOff, key) : doDecrypt(src.array(), inOff, len, dst.array(), outOff, key);
+            src.position(src.limit());
+            dst.position(dst.position() + n);
+            return n;
+        }
+
+        byte[] in = new byte[len];
+        src.duplicate().get(in);
+        byte[] out = new byte[outLen];
+        int n = encrypt ? doEncrypt(in, 0, len, out, 0, key) : doDecrypt(in, 0, len, out, 0, key);
+        src.position(src.limit());
+        dst.put(out, 0, n);
+        return n;
+    }
+
+    /**
+     * Generates a random initialization vector or nonce.
+     *
+     * @param len The length of the initialization vector in bytes.
+     * @return A new array of len bytes from a {@link SecureRandom}.
+     */
+    protected static byte[] newIv(int len) {
+        byte[] iv = new byte[len];
+        RANDOM.nextBytes(iv);
+        return iv;
+    }
+
+    private static byte[] trim(byte[] b, int len) {
+        if (len == b.length) {
+            return b;
+        }
+        return Arrays.copyOf(b, len);
+    }
+}
@@ -13,5 +13,41 @@ public enum BlockCipherMode {
      * A message is divided into blocks of equal size. Each block is encrypted separately.
      * </p>
      */
-    ECB
+    ECB,
+
+    /**
+     * <p>
+     * Counter (CTR) mode turns the block cipher into a stream cipher.
+     * </p>
+     *
+     * <p>
+     * Successive values of a counter are encrypted to produce a keystream that is xor'ed with the message. Every block of
+     * keystream can be computed independently, so CTR parallelizes and can start at any offset of the message.
+     * </p>
+     */
+    CTR,
+
+    /**
+     * <p>
+     * Cipher Block Chaining (CBC) mode chains each block to the one before it.
+     * </p>
+     *
+     * <p>
+     * Every block of the message is xor'ed with the previous block of ciphertext before it is encrypted. Encryption is
+     * serial, but decryption only needs two consecutive ciphertext blocks and parallelizes.
+     * </p>
+     */
+    CBC,
+
+    /**
+     * <p>
+     * Galois/Counter Mode (GCM) provides authenticated encryption with associated data.
+     * </p>
+     *
+     * <p>
+     * The message is encrypted in CTR mode and the ciphertext and associated data are authenticated with a polynomial
+     * hash over GF(2^128). Decryption fails if either has been modified.
+     * </p>
+     */
+    GCM
 }
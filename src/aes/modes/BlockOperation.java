@@ -0,0 +1,211 @@
+package aes.modes;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * BlockOperation is a {@link CipherOperation} for modes that transform whole 16-byte blocks.
+ * </p>
+ *
+ * <p>
+ * It carries a partial block over from one update to the next and hands every whole block to
+ * {@link #processBlocks(ByteBuffer, int, int, ByteBuffer, int)}, straight from the caller's arrays or buffers where it
+ * can. doFinal applies the {@link Padding}. A decryption with PKCS#7 padding holds back the last whole block until
+ * doFinal, since only then is it known to hold the padding.
+ * </p>
+ */
+public abstract class BlockOperation implements CipherOperation {
+    private final boolean encrypt;
+    private final Padding padding;
+    private final byte[] buffer = new byte[16];
+    private final ByteBuffer bufferView = ByteBuffer.wrap(buffer);
+    private int buffered;
+    private boolean done;
+
+    /**
+     * @param encrypt True if this operation encrypts; false if it decrypts.
+     * @param padding How the message is extended to a multiple of 16 bytes.
+     */
+    protected BlockOperation(boolean encrypt, Padding padding) {
+        this.encrypt = encrypt;
+        this.padding = padding;
+    }
+
+    /**
+     * Transforms one or more whole blocks at absolute positions of the buffers. The input and output may be the same
+     * region of the same memory, but do not otherwise overlap.
+     *
+     * @param in The buffer holding the input.
+     * @param inOff The index of the input in in.
+     * @param blocks The number of blocks to transform.
+     * @param out The buffer to write the output to.
+     * @param outOff The index to write the output to in out.
+     */
+    protected abstract void processBlocks(ByteBuffer in, int inOff, int blocks, ByteBuffer out, int outOff);
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int update(byte[] in, int inOff, int len, byte[] out, int outOff) {
+        return update(ByteBuffer.wrap(in, inOff, len), ByteBuffer.wrap(out, outOff, out.length - outOff));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int update(ByteBuffer src, ByteBuffer dst) {
+        if (done) {
+            throw new IllegalStateException("Operation already finished");
+        }
+        int len = src.remaining();
+        int blocks = outputBlocks(len);
+        if (blocks == 0) {
+            src.get(buffer, buffered, len);
+            buffered += len;
+            return 0;
+        }
+        if (dst.remaining() < 16 * blocks) {
+            throw new BufferOverflowException();
+        }
+
+        // blocks are written behind the input when bytes are buffered, which would overwrite input not yet read
+        if (overlaps(src, dst, 16 * blocks) && (src.arrayOffset() + src.position() != dst.arrayOffset() + dst.position() || buffered != 0)) {
+            byte[] copy = new byte[len];
+            src.get(copy);
+            src = ByteBuffer.wrap(copy);
+        }
+
+        int outPos = dst.position();
+        if (buffered != 0) {
+            src.get(buffer, buffered, 16 - buffered);
+            processBlocks(bufferView, 0, 1, dst, outPos);
+            outPos += 16;
+            buffered = 0;
+            blocks--;
+        }
+        if (blocks != 0) {
+            processBlocks(src, src.position(), blocks, dst, outPos);
+            src.position(src.position() + 16 * blocks);
+            outPos += 16 * blocks;
+        }
+
+        buffered = src.remaining();
+        src.get(buffer, 0, buffered);
+        int written = outPos - dst.position();
+        dst.position(outPos);
+        return written;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalArgumentException If the message is not a multiple of 16 bytes and cannot be padded.
+     * @throws PaddingException If PKCS#7 padding is invalid.
+     */
+    @Override
+    public int doFinal(byte[] in, int inOff, int len, byte[] out, int outOff) {
+        return doFinal(ByteBuffer.wrap(in, inOff, len), ByteBuffer.wrap(out, outOff, out.length - outOff));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalArgumentException If the message is not a multiple of 16 bytes and cannot be padded.
+     * @throws PaddingException If PKCS#7 padding is invalid.
+     */
+    @Override
+    public int doFinal(ByteBuffer src, ByteBuffer dst) {
+        if (dst.remaining() < getFinalOutputSize(src.remaining())) {
+            throw new BufferOverflowException();
+        }
+        int n = update(src, dst);
+        done = true;
+
+        if (encrypt) {
+            if (padding == Padding.PKCS7 || padding == Padding.ZERO && buffered != 0) {
+                byte pad = padding == Padding.PKCS7 ? (byte) (16 - buffered) : 0;
+                Arrays.fill(buffer, buffered, 16, pad);
+                processBlocks(bufferView, 0, 1, dst, dst.position());
+                dst.position(dst.position() + 16);
+                return n + 16;
+            }
+            checkWholeBlocks();
+            return n;
+        }
+
+        if (padding != Padding.PKCS7) {
+            checkWholeBlocks();
+            return n;
+        }
+        if (buffered != 16) {
+            throw new IllegalArgumentException("Ciphertext is not a non-empty multiple of 16 bytes");
+        }
+        processBlocks(bufferView, 0, 1, bufferView, 0);
+        int pad = buffer[15] & 0xff;
+        int bad = pad == 0 || pad > 16 ? 1 : 0;
+        for (int i = 16 - Math.max(1, Math.min(pad, 16)); i < 16; i++) {
+            bad |= buffer[i] ^ pad;
+        }
+        if (bad != 0) {
+            throw new PaddingException("Invalid PKCS#7 padding");
+        }
+        dst.put(buffer, 0, 16 - pad);
+        return n + 16 - pad;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getUpdateOutputSize(int len) {
+        return 16 * outputBlocks(len);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getFinalOutputSize(int len) {
+        int total = buffered + len;
+        if (!encrypt || padding == Padding.NONE) {
+            return total;
+        }
+        if (padding == Padding.PKCS7) {
+            return total - total % 16 + 16;
+        }
+        return (total + 15) / 16 * 16;
+    }
+
+    /**
+     * @return The number of whole blocks update can write after taking len more bytes.
+     */
+    private int outputBlocks(int len) {
+        int total = buffered + len;
+        int keep = total % 16;
+        if (keep == 0 && total != 0 && !encrypt && padding == Padding.PKCS7) {
+            keep = 16;
+        }
+        return (total - keep) / 16;
+    }
+
+    /**
+     * @return True if the remaining bytes of src and the first outLen bytes of dst are in the same array and overlap.
+     */
+    private static boolean overlaps(ByteBuffer src, ByteBuffer dst, int outLen) {
+        if (!src.hasArray() || !dst.hasArray() || src.array() != dst.array()) {
+            return false;
+        }
+        int in = src.arrayOffset() + src.position();
+        int out = dst.arrayOffset() + dst.position();
+        return in < out + outLen && out < in + src.remaining();
+    }
+
+    private void checkWholeBlocks() {
+        if (buffered != 0) {
+            throw new IllegalArgumentException("Message is not a multiple of 16 bytes");
+        }
+    }
+}
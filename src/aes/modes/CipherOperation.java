@@ -0,0 +1,78 @@
+package aes.modes;
+import java.nio.ByteBuffer;
+
+/**
+ * <p>
+ * CipherOperation is a single encryption or decryption of one message that is supplied in pieces.
+ * </p>
+ *
+ * <p>
+ * The message is passed to {@link #update(byte[], int, int, byte[], int)} in pieces of any length and
+ * {@link #doFinal(byte[], int, int, byte[], int)} finishes it. An operation only keeps the bytes it cannot transform
+ * yet, such as a partial block, so the memory it uses does not depend on the length of the message. Output may lag
+ * behind input: update writes what it can and doFinal writes the rest, including any padding or tag.
+ * </p>
+ *
+ * <p>
+ * The input and output may be the same array, even when the regions overlap. The {@link ByteBuffer} methods read from
+ * the source's position to its limit, advance the position of both buffers and transform direct buffers without copying
+ * them to the heap where the mode supports it; a source and destination that are not backed by the same array must not
+ * overlap. An operation is not thread-safe and cannot be reused once doFinal has been called.
+ * </p>
+ */
+public interface CipherOperation {
+
+    /**
+     * Transforms the next piece of the message.
+     *
+     * @param in The array holding the input.
+     * @param inOff The offset of the input.
+     * @param len The length of the input.
+     * @param out The array to write the output to. It must have room for {@link #getUpdateOutputSize(int)} bytes.
+     * @param outOff The offset to write the output to.
+     * @return The number of bytes written to out.
+     */
+    public int update(byte[] in, int inOff, int len, byte[] out, int outOff);
+
+    /**
+     * Transforms the last piece of the message and finishes the operation.
+     *
+     * @param in The array holding the input.
+     * @param inOff The offset of the input.
+     * @param len The length of the input, which may be 0.
+     * @param out The array to write the output to. It must have room for {@link #getFinalOutputSize(int)} bytes.
+     * @param outOff The offset to write the output to.
+     * @return The number of bytes written to out.
+     */
+    public int doFinal(byte[] in, int inOff, int len, byte[] out, int outOff);
+
+    /**
+     * Transforms the remaining bytes of src as the next piece of the message.
+     *
+     * @param src The buffer holding the input between its position and limit.
+     * @param dst The buffer to write the output to. It must have room for {@link #getUpdateOutputSize(int)} bytes.
+     * @return The number of bytes written to dst.
+     */
+    public int update(ByteBuffer src, ByteBuffer dst);
+
+    /**
+     * Transforms the remaining bytes of src as the last piece of the message and finishes the operation.
+     *
+     * @param src The buffer holding the input between its position and limit.
+     * @param dst The buffer to write the output to. It must have room for {@link #getFinalOutputSize(int)} bytes.
+     * @return The number of bytes written to dst.
+     */
+    public int doFinal(ByteBuffer src, ByteBuffer dst);
+
+    /**
+     * @param len The length of the next input.
+     * @return The maximum number of bytes {@link #update(byte[], int, int, byte[], int)} writes for it.
+     */
+    public int getUpdateOutputSize(int len);
+
+    /**
+     * @param len The length of the last input.
+     * @return The maximum number of bytes {@link #doFinal(byte[], int, int, byte[], int)} writes for it.
+     */
+    public int getFinalOutputSize(int len);
+}
@@ -0,0 +1,36 @@
+package aes.modes;
+
+/**
+ * Padding describes how a {@link BlockOperation} extends a message to a multiple of 16 bytes.
+ */
+public enum Padding {
+    /**
+     * <p>
+     * The message must already be a multiple of 16 bytes.
+     * </p>
+     */
+    NONE,
+
+    /**
+     * <p>
+     * The last block is extended with zero bytes, as {@link aes.Cipher#encrypt(byte[], aes.Key)} does for ECB and CBC.
+     * </p>
+     *
+     * <p>
+     * The padding cannot be told apart from the message, so decryption returns it along with the message.
+     * </p>
+     */
+    ZERO,
+
+    /**
+     * <p>
+     * PKCS#7 padding, as described in RFC 5652 section 6.3, appends n bytes of value n where n is from 1 to 16. A message
+     * that is already a multiple of 16 bytes gets a whole block of padding.
+     * </p>
+     *
+     * <p>
+     * Decryption checks the padding and removes it.
+     * </p>
+     */
+    PKCS7
+}
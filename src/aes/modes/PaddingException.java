@@ -0,0 +1,17 @@
+package aes.modes;
+
+/**
+ * PaddingException is thrown when a decrypted message does not end in valid padding, which usually means it was
+ * modified or decrypted under the wrong key or IV. It is the only failure of a {@link BlockOperation} that depends on
+ * the content of the message rather than on how the operation was called.
+ */
+public class PaddingException extends IllegalArgumentException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @param message A description of the failure.
+     */
+    public PaddingException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,150 @@
+package aes.modes;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <p>
+ * Parallelism describes how a block cipher mode of operation spreads independent blocks across threads.
+ * </p>
+ *
+ * <p>
+ * Messages shorter than a threshold are processed on the calling thread. Longer messages are split into chunks of a
+ * fixed size, a multiple of 16 bytes that is small enough to stay in cache, and the chunks are processed by a
+ * {@link ForkJoinPool}. The split never changes the output: each chunk produces exactly the bytes the sequential path
+ * would have produced for that range.
+ * </p>
+ */
+public class Parallelism {
+    /**
+     * The default size of a chunk, in bytes.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * The default length below which a message is processed on the calling thread, in bytes.
+     */
+    public static final int DEFAULT_THRESHOLD = 256 * 1024;
+
+    /**
+     * Processes every message on the calling thread.
+     */
+    public static final Parallelism SEQUENTIAL = new Parallelism(null, Integer.MAX_VALUE, DEFAULT_CHUNK_SIZE);
+
+    private final ForkJoinPool pool;
+    private final int threshold;
+    private final int chunkSize;
+
+    /**
+     * Constructs a Parallelism that runs chunks in the given pool.
+     *
+     * @param pool The pool to run chunks in, or null to process every message on the calling thread.
+     * @param threshold The length below which a message is processed on the calling thread, in bytes.
+     * @param chunkSize The size of a chunk, in bytes. It must be a positive multiple of 16.
+     */
+    public Parallelism(ForkJoinPool pool, int threshold, int chunkSize) {
+        if (chunkSize <= 0 || chunkSize % 16 != 0) {
+            throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+        }
+        this.pool = pool;
+        this.threshold = threshold;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Returns a Parallelism that runs chunks in the common {@link ForkJoinPool} with the default threshold and chunk
+     * size.
+     *
+     * @return A Parallelism backed by the common pool.
+     */
+    public static Parallelism commonPool() {
+        return new Parallelism(ForkJoinPool.commonPool(), DEFAULT_THRESHOLD, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @return The size of a chunk, in bytes.
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @param len The length of a message.
+     * @return True if a message of the given length is split across threads; false otherwise.
+     */
+    public boolean isParallel(int len) {
+        return pool != null && len >= threshold && len > chunkSize;
+    }
+
+    /**
+     * <p>
+     * Splits the range [0, len) into chunks and runs the task once for each chunk.
+     * </p>
+     *
+     * <p>
+     * Every chunk but the last is exactly {@link #getChunkSize()} bytes long. The chunks run in the pool if
+     * {@link #isParallel(int)} is true for len and on the calling thread otherwise. This method returns once every chunk
+     * has finished.
+     * </p>
+     *
+     * @param len The length of the range to split.
+     * @param task The task to run for each chunk.
+     */
+    public void forEachChunk(int len, ChunkTask task) {
+        int chunks = (int) (((long) len + chunkSize - 1) / chunkSize);
+        if (!isParallel(len)) {
+            for (int i = 0; i < chunks; i++) {
+                runChunk(i, len, task);
+            }
+            return;
+        }
+        pool.invoke(new ChunkAction(0, chunks, len, task));
+    }
+
+    private void runChunk(int index, int len, ChunkTask task) {
+        int off = index * chunkSize;
+        task.run(off, Math.min(chunkSize, len - off));
+    }
+
+    /**
+     * ChunkTask is the work done for a single chunk of a message.
+     */
+    public interface ChunkTask {
+
+        /**
+         * Processes the bytes [off, off + len) of a message.
+         *
+         * @param off The offset of the chunk within the message.
+         * @param len The length of the chunk.
+         */
+        public void run(int off, int len);
+    }
+
+    /**
+     * Splits a range of chunks in half until a single chunk remains.
+     */
+    private final class ChunkAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final int len;
+        private final ChunkTask task;
+
+        ChunkAction(int from, int to, int len, ChunkTask task) {
+            this.from = from;
+            this.to = to;
+            this.len = len;
+            this.task = task;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                runChunk(from, len, task);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new ChunkAction(from, mid, len, task), new ChunkAction(mid, to, len, task));
+        }
+    }
+}
@@ -0,0 +1,416 @@
+package aes.modes.cbc;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import aes.Key;
+import aes.KeyCache;
+import aes.engines.BlockEngine;
+import aes.modes.AbstractCipher;
+import aes.modes.BlockCipherMode;
+import aes.modes.BlockOperation;
+import aes.modes.CipherOperation;
+import aes.modes.Padding;
+import aes.modes.Parallelism;
+
+/**
+ * <p>
+ * An implementation of AES CBC mode as outlined in NIST SP 800-38A.
+ * </p>
+ *
+ * <p>
+ * Each block of the message is xor'ed with the previous block of ciphertext, or with the initialization vector for the
+ * first block, before it is encrypted. Encryption is therefore serial. Decrypting block i only needs ciphertext blocks i
+ * and i - 1, so decryption hands the engine runs of many blocks at once and splits long ciphertexts across threads with
+ * {@link Parallelism}.
+ * </p>
+ *
+ * <p>
+ * NOTE: if the message is not a multiple of 16-bytes, this will zero extend the end of the message to a multiple of 16
+ * bytes, the same as {@link aes.modes.ecb.AesEcb}.
+ * </p>
+ *
+ * <p>
+ * The methods inherited from {@link aes.Cipher} generate a random initialization vector and prefix it to the ciphertext.
+ * Decryption reads it back from the first 16 bytes. For these methods a source and destination {@link ByteBuffer} must
+ * not share memory unless they are backed by the same array.
+ * </p>
+ *
+ * <p>
+ * Messages too long to hold in memory can be supplied in pieces to the operations returned by
+ * {@link #newEncryption(Key, byte[], Padding)} and {@link #newDecryption(Key, byte[], Padding)}, which also offer PKCS#7
+ * padding. They carry the last ciphertext block from one piece to the next as the chaining value.
+ * </p>
+ */
+public class AesCbc extends AbstractCipher {
+    /**
+     * The length of the initialization vector in bytes.
+     */
+    public static final int IV_LENGTH = 16;
+
+    /**
+     * The number of blocks decrypted with a single call to the engine.
+     */
+    private static final int DECRYPT_BLOCKS = 64;
+
+    /**
+     * Constructs a CBC cipher.
+     *
+     * @param engine The engine to use.
+     * @param keyCache The cache to expand raw keys through, or null to expand them on every call.
+     * @param parallelism How to split long ciphertexts across threads when decrypting.
+     */
+    public AesCbc(BlockEngine engine, KeyCache keyCache, Parallelism parallelism) {
+        super(engine, keyCache, parallelism);
+    }
+
+    /**
+     * Encrypts a message with a caller-supplied initialization vector. The initialization vector is not included in the
+     * result.
+     *
+     * @param plaintext A message to encrypt.
+     * @param key The expanded symmetric key to use.
+     * @param iv The initialization vector. It should be unpredictable and never reused with the same key.
+     * @return The resulting ciphertext.
+     */
+    public byte[] encrypt(byte[] plaintext, Key key, byte[] iv) {
+        long start = start();
+        byte[] encrypted = new byte[paddedLength(plaintext.length)];
+        encrypt(ByteBuffer.wrap(plaintext), 0, plaintext.length, ByteBuffer.wrap(encrypted), 0, key, iv);
+        report(start, true, plaintext.length);
+        return encrypted;
+    }
+
+    /**
+     * Decrypts a ciphertext produced with a caller-supplied initialization vector.
+     *
+     * @param ciphertext The ciphertext to decrypt. Its length must be a multiple of 16 bytes.
+     * @param key The expanded symmetric key to use.
+     * @param iv The initialization vector used to encrypt the message.
+     * @return The resulting plaintext.
+     */
+    public byte[] decrypt(byte[] ciphertext, Key key, byte[] iv) {
+        long start = start();
+        byte[] decrypted = new byte[ciphertext.length];
+        decrypt(ByteBuffer.wrap(ciphertext), 0, ciphertext.length, ByteBuffer.wrap(decrypted), 0, key, iv);
+        report(start, false, ciphertext.length);
+        return decrypted;
+    }
+
+    /**
+     * Encrypts the remaining bytes of src, zero extended to a multiple of 16, with a caller-supplied initialization
+     * vector and writes the ciphertext to dst, advancing both buffers. The initialization vector is not written. src
+     * and dst may be views of the same memory if the ciphertext starts where the message does.
+     *
+     * @param src The buffer holding the message between its position and limit.
+     * @param dst The buffer to write the ciphertext to.
+     * @param key The expanded symmetric key to use.
+     * @param iv The initialization vector, or the last ciphertext block when continuing a longer message.
+     * @return The number of bytes written to dst.
+     */
+    public int encrypt(ByteBuffer src, ByteBuffer dst, Key key, byte[] iv) {
+        long start = start();
+        int len = src.remaining();
+        int outLen = paddedLength(len);
+        if (dst.remaining() < outLen) {
+            throw new BufferOverflowException();
+        }
+        encrypt(src, src.position(), len, dst, dst.position(), key, iv);
+        src.position(src.limit());
+        dst.position(dst.position() + outLen);
+        report(start, true, len);
+        return outLen;
+    }
+
+    /**
+     * Decrypts the remaining bytes of src with a caller-supplied initialization vector and writes the plaintext to dst,
+     * advancing both buffers. src and dst may be views of the same memory if the plaintext starts where the ciphertext
+     * does.
+     *
+     * @param src The buffer holding the ciphertext between its position and limit. Its length must be a multiple of 16.
+     * @param dst The buffer to write the plaintext to.
+     * @param key The expanded symmetric key to use.
+     * @param iv The initialization vector, or the ciphertext block in front of src when continuing a longer message.
+     * @return The number of bytes written to dst.
+     */
+    public int decrypt(ByteBuffer src, ByteBuffer dst, Key key, byte[] iv) {
+        long start = start();
+        int len = src.remaining();
+        if (dst.remaining() < len) {
+            throw new BufferOverflowException();
+        }
+        decrypt(src, src.position(), len, dst, dst.position(), key, iv);
+        src.position(src.limit());
+        dst.position(dst.position() + len);
+        report(start, false, len);
+        return len;
+    }
+
+    /**
+     * Starts encrypting a message that will be supplied in pieces. The initialization vector is not written to the
+     * output.
+     *
+     * @param key The expanded symmetric key to use.
+     * @param iv The initialization vector. It should be unpredictable and never reused with the same key.
+     * @param padding How to extend the message to a multiple of 16 bytes.
+     * @return The operation to feed the message to.
+     */
+    public CipherOperation newEncryption(Key key, byte[] iv, Padding padding) {
+        checkIv(iv);
+        return new BlockOperation(true, padding) {
+            private byte[] chain = iv.clone();
+
+            @Override
+            protected void processBlocks(ByteBuffer in, int inOff, int blocks, ByteBuffer out, int outOff) {
+                encrypt(in, inOff, 16 * blocks, out, outOff, key, chain);
+                for (int t = 0; t < 16; t++) {
+                    chain[t] = out.get(outOff + 16 * blocks - 16 + t);
+                }
+            }
+        };
+    }
+
+    /**
+     * Starts decrypting a ciphertext that will be supplied in pieces.
+     *
+     * @param key The expanded symmetric key to use.
+     * @param iv The initialization vector used to encrypt the message.
+     * @param padding How the message was extended to a multiple of 16 bytes.
+     * @return The operation to feed the ciphertext to.
+     */
+    public CipherOperation newDecryption(Key key, byte[] iv, Padding padding) {
+        checkIv(iv);
+        return new BlockOperation(false, padding) {
+            private byte[] chain = iv.clone();
+            private byte[] next = new byte[16];
+
+            @Override
+            protected void processBlocks(ByteBuffer in, int inOff, int blocks, ByteBuffer out, int outOff) {
+                // keep the last ciphertext block before it can be overwritten by decrypting in place
+                for (int t = 0; t < 16; t++) {
+                    next[t] = in.get(inOff + 16 * blocks - 16 + t);
+                }
+                decrypt(in, inOff, 16 * blocks, out, outOff, key, chain);
+                byte[] swap = chain;
+                chain = next;
+                next = swap;
+            }
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BlockCipherMode getMode() {
+        return BlockCipherMode.CBC;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int doEncrypt(byte[] in, int inOff, int len, byte[] out, int outOff, Key key) {
+        return encrypt(ByteBuffer.wrap(in), inOff, len, ByteBuffer.wrap(out), outOff, key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int doDecrypt(byte[] in, int inOff, int len, byte[] out, int outOff, Key key) {
+        return decrypt(ByteBuffer.wrap(in), inOff, len, ByteBuffer.wrap(out), outOff, key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int doEncrypt(ByteBuffer src, ByteBuffer dst, Key key) {
+        int len = src.remaining();
+        int outLen = getEncryptOutputSize(len);
+        if (dst.remaining() < outLen) {
+            throw new BufferOverflowException();
+        }
+        encrypt(src, src.position(), len, dst, dst.position(), key);
+        src.position(src.limit());
+        dst.position(dst.position() + outLen);
+        return outLen;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int doDecrypt(ByteBuffer src, ByteBuffer dst, Key key) {
+        int len = src.remaining();
+        int outLen = getDecryptOutputSize(len);
+        if (dst.remaining() < outLen) {
+            throw new BufferOverflowException();
+        }
+        decrypt(src, src.position(), len, dst, dst.position(), key);
+        src.position(src.limit());
+        dst.position(dst.position() + outLen);
+        return outLen;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getEncryptOutputSize(int plaintextLength) {
+        return IV_LENGTH + paddedLength(plaintextLength);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getDecryptOutputSize(int ciphertextLength) {
+        return Math.max(0, ciphertextLength - IV_LENGTH);
+    }
+
+    /**
+     * Encrypts with a random initialization vector and writes it in front of the ciphertext.
+     */
+    private int encrypt(ByteBuffer in, int inOff, int len, ByteBuffer out, int outOff, Key key) {
+        byte[] iv = newIv(IV_LENGTH);
+        int outLen = paddedLength(len);
+        if (moveIfShared(in, inOff, len, out, outOff + IV_LENGTH)) {
+            in = out;
+            inOff = outOff + IV_LENGTH;
+        }
+        encrypt(in, inOff, len, out, outOff + IV_LENGTH, key, iv);
+        for (int i = 0; i < IV_LENGTH; i++) {
+            out.put(outOff + i, iv[i]);
+        }
+        return IV_LENGTH + outLen;
+    }
+
+    /**
+     * Decrypts a ciphertext whose first 16 bytes are the initialization vector.
+     */
+    private int decrypt(ByteBuffer in, int inOff, int len, ByteBuffer out, int outOff, Key key) {
+        if (len < IV_LENGTH) {
+            throw new IllegalArgumentException("Ciphertext is shorter than the initialization vector: " + len);
+        }
+        byte[] iv = new byte[IV_LENGTH];
+        for (int i = 0; i < IV_LENGTH; i++) {
+            iv[i] = in.get(inOff + i);
+        }
+        if (moveIfShared(in, inOff + IV_LENGTH, len - IV_LENGTH, out, outOff)) {
+            in = out;
+            inOff = outOff - IV_LENGTH;
+        }
+        decrypt(in, inOff + IV_LENGTH, len - IV_LENGTH, out, outOff, key, iv);
+        return len - IV_LENGTH;
+    }
+
+    /**
+     * Encrypts len bytes of in, zero extended to a multiple of 16, one block after another. The output may be the same
+     * region as the input.
+     */
+    private void encrypt(ByteBuffer in, int inOff, int len, ByteBuffer out, int outOff, Key key, byte[] iv) {
+        checkIv(iv);
+        int prev = -1;
+        for (int off = 0; off < len; off += 16) {
+            int q = outOff + off;
+            for (int t = 0; t < 16; t++) {
+                byte b = off + t < len ? in.get(inOff + off + t) : 0;
+                byte chain = prev < 0 ? iv[t] : out.get(prev + t);
+                out.put(q + t, (byte) (b ^ chain));
+            }
+            engine.encryptBlocks(out, q, out, q, 1, key);
+            prev = q;
+        }
+    }
+
+    /**
+     * Decrypts len bytes of in. The output may be the same region as the input.
+     */
+    private void decrypt(ByteBuffer in, int inOff, int len, ByteBuffer out, int outOff, Key key, byte[] iv) {
+        checkIv(iv);
+        if (len % 16 != 0) {
+            throw new IllegalArgumentException("Ciphertext is not a multiple of 16 bytes: " + len);
+        }
+
+        // capture the ciphertext block in front of every chunk before any chunk can overwrite it
+        int chunkSize = parallelism.getChunkSize();
+        int chunks = (len + chunkSize - 1) / chunkSize;
+        byte[] chain = new byte[16 * Math.max(chunks, 1)];
+        System.arraycopy(iv, 0, chain, 0, 16);
+        for (int c = 1; c < chunks; c++) {
+            for (int t = 0; t < 16; t++) {
+                chain[16 * c + t] = in.get(inOff + c * chunkSize - 16 + t);
+            }
+        }
+
+        parallelism.forEachChunk(len, (off, n) -> decryptChunk(in, inOff + off, n, out, outOff + off, key, chain, 16 * (off / chunkSize)));
+    }
+
+    /**
+     * Decrypts a chunk of whole blocks, chaining the first block to the 16 bytes of chain at chainOff.
+     */
+    private void decryptChunk(ByteBuffer in, int inOff, int len, ByteBuffer out, int outOff, Key key, byte[] chain, int chainOff) {
+        int blocks = len / 16;
+        ByteBuffer scratch = ByteBuffer.allocate(16 * Math.min(blocks, DECRYPT_BLOCKS));
+        byte[] prev = new byte[16];
+        byte[] next = new byte[16];
+        System.arraycopy(chain, chainOff, prev, 0, 16);
+
+        for (int done = 0; done < blocks; done += DECRYPT_BLOCKS) {
+            int n = Math.min(DECRYPT_BLOCKS, blocks - done);
+            engine.decryptBlocks(in, inOff + 16 * done, scratch, 0, n, key);
+
+            for (int i = 0; i < n; i++) {
+                int p = inOff + 16 * (done + i);
+                int q = outOff + 16 * (done + i);
+                // read the ciphertext block before the plaintext can overwrite it
+                for (int t = 0; t < 16; t++) {
+                    next[t] = in.get(p + t);
+                }
+                for (int t = 0; t < 16; t++) {
+                    out.put(q + t, (byte) (scratch.get(16 * i + t) ^ prev[t]));
+                }
+                byte[] swap = prev;
+                prev = next;
+                next = swap;
+            }
+        }
+    }
+
+    /**
+     * The output of the IV prefixed methods is shifted 16 bytes from the input. If the input and output share a backing
+     * array, this moves the input to where the output goes so that it can be transformed in place.
+     *
+     * @return True if the input was moved to out at outOff; false if the buffers do not share an array.
+     */
+    private static boolean moveIfShared(ByteBuffer in, int inOff, int len, ByteBuffer out, int outOff) {
+        boolean shared = in == out || in.hasArray() && out.hasArray() && in.array() == out.array();
+        if (!shared) {
+            return false;
+        }
+        ByteBuffer message = in.duplicate();
+        message.limit(inOff + len).position(inOff);
+        ByteBuffer target = out.duplicate();
+        target.position(outOff);
+        target.put(message);
+        return true;
+    }
+
+    private static void checkIv(byte[] iv) {
+        if (iv.length != IV_LENGTH) {
+            throw new IllegalArgumentException("Invalid IV size: " + iv.length);
+        }
+    }
+
+    /**
+     * @param length The length of a message.
+     * @return The length of the message zero extended to a multiple of 16 bytes.
+     */
+    private static int paddedLength(int length) {
+        if ((length % 16) == 0) {
+            return length;
+        }
+        return length + 16 - (length % 16);
+    }
+}
@@ -0,0 +1,448 @@
+package aes.modes.ctr;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import aes.Key;
+import aes.KeyCache;
+import aes.engines.BlockEngine;
+import aes.modes.AbstractCipher;
+import aes.modes.BlockCipherMode;
+import aes.modes.CipherOperation;
+import aes.modes.Parallelism;
+
+/**
+ * <p>
+ * An implementation of AES CTR mode as outlined in NIST SP 800-38A.
+ * </p>
+ *
+ * <p>
+ * A keystream is produced by encrypting successive counter blocks and xor'ed with the message, so encryption and
+ * decryption are the same operation and the message does not need to be a multiple of 16 bytes. The first counter block
+ * is the initialization vector. Each following block increments the low counterBits bits of the previous one and leaves
+ * the remaining high bits, typically a nonce, unchanged.
+ * </p>
+ *
+ * <p>
+ * Every counter block can be computed from its index, so the keystream for any byte offset can be generated without
+ * processing the blocks before it. {@link #crypt(byte[], int, int, byte[], int, Key, byte[], long)} uses this to start at
+ * an arbitrary position and {@link Parallelism} uses it to split long messages across threads.
+ * </p>
+ *
+ * <p>
+ * The methods inherited from {@link aes.Cipher} generate a random initialization vector and prefix it to the ciphertext.
+ * Decryption reads it back from the first 16 bytes. For these methods a source and destination {@link ByteBuffer} must
+ * not share memory, since the ciphertext is 16 bytes longer than the message.
+ * </p>
+ */
+public class AesCtr extends AbstractCipher {
+    /**
+     * The length of the initialization vector (the first counter block) in bytes.
+     */
+    public static final int IV_LENGTH = 16;
+
+    /**
+     * The number of keystream blocks generated with a single call to the engine.
+     */
+    private static final int KEYSTREAM_BLOCKS = 64;
+
+    private final int counterBits;
+    private final long hiMask;
+    private final long loMask;
+
+    /**
+     * Constructs a CTR cipher that increments the whole 128-bit counter block.
+     *
+     * @param engine The engine to use.
+     * @param keyCache The cache to expand raw keys through, or null to expand them on every call.
+     * @param parallelism How to split long messages across threads.
+     */
+    public AesCtr(BlockEngine engine, KeyCache keyCache, Parallelism parallelism) {
+        this(engine, keyCache, parallelism, 128);
+    }
+
+    /**
+     * Constructs a CTR cipher that increments the low counterBits bits of the counter block.
+     *
+     * @param engine The engine to use.
+     * @param keyCache The cache to expand raw keys through, or null to expand them on every call.
+     * @param parallelism How to split long messages across threads.
+     * @param counterBits The width of the counter in bits, from 1 to 128.
+     */
+    public AesCtr(BlockEngine engine, KeyCache keyCache, Parallelism parallelism, int counterBits) {
+        super(engine, keyCache, parallelism);
+        if (counterBits < 1 || counterBits > 128) {
+            throw new IllegalArgumentException("Invalid counter width: " + counterBits);
+        }
+        this.counterBits = counterBits;
+        if (counterBits >= 64) {
+            this.loMask = -1L;
+            this.hiMask = counterBits == 128 ? -1L : (1L << (counterBits - 64)) - 1;
+        } else {
+            this.loMask = (1L << counterBits) - 1;
+            this.hiMask = 0;
+        }
+    }
+
+    /**
+     * @return The width of the counter in bits.
+     */
+    public int getCounterBits() {
+        return counterBits;
+    }
+
+    /**
+     * Encrypts a message with a caller-supplied initialization vector. The initialization vector is not included in the
+     * result.
+     *
+     * @param plaintext A message to encrypt.
+     * @param key The expanded symmetric key to use.
+     * @param iv The first counter block. It must never be reused with the same key.
+     * @return The resulting ciphertext, which is as long as the message.
+     */
+    public byte[] encrypt(byte[] plaintext, Key key, byte[] iv) {
+        long start = start();
+        byte[] encrypted = new byte[plaintext.length];
+        crypt(plaintext, 0, plaintext.length, encrypted, 0, key, iv, 0);
+        report(start, true, plaintext.length);
+        return encrypted;
+    }
+
+    /**
+     * Decrypts a ciphertext produced with a caller-supplied initialization vector.
+     *
+     * @param ciphertext The ciphertext to decrypt.
+     * @param key The expanded symmetric key to use.
+     * @param iv The first counter block used to encrypt the message.
+     * @return The resulting plaintext, which is as long as the ciphertext.
+     */
+    public byte[] decrypt(byte[] ciphertext, Key key, byte[] iv) {
+        long start = start();
+        byte[] decrypted = new byte[ciphertext.length];
+        crypt(ciphertext, 0, ciphertext.length, decrypted, 0, key, iv, 0);
+        report(start, false, ciphertext.length);
+        return decrypted;
+    }
+
+    /**
+     * Starts encrypting a message that will be supplied in pieces. The initialization vector is not written to the
+     * output.
+     *
+     * @param key The expanded symmetric key to use.
+     * @param iv The first counter block. It must never be reused with the same key.
+     * @return The operation to feed the message to.
+     */
+    public CipherOperation newEncryption(Key key, byte[] iv) {
+        return newOperation(key, iv);
+    }
+
+    /**
+     * Starts decrypting a ciphertext that will be supplied in pieces.
+     *
+     * @param key The expanded symmetric key to use.
+     * @param iv The first counter block used to encrypt the message.
+     * @return The operation to feed the ciphertext to.
+     */
+    public CipherOperation newDecryption(Key key, byte[] iv) {
+        return newOperation(key, iv);
+    }
+
+    /**
+     * <p>
+     * xor's len bytes of in with the keystream starting at byte position of the stream and writes the result to out.
+     * This both encrypts and decrypts.
+     * </p>
+     *
+     * <p>
+     * Decrypting bytes [position, position + len) of a long ciphertext this way only generates the keystream for those
+     * bytes. The input and output may be the same region of the same array.
+     * </p>
+     *
+     * @param in The array holding the input.
+     * @param inOff The offset of the input within in.
+     * @param len The number of bytes to transform.
+     * @param out The array to write the output to.
+     * @param outOff The offset to write the output to.
+     * @param key The expanded symmetric key to use.
+     * @param iv The first counter block of the stream.
+     * @param position The offset of in[inOff] within the stream.
+     */
+    public void crypt(byte[] in, int inOff, int len, byte[] out, int outOff, Key key, byte[] iv, long position) {
+        checkLength(iv, position, len);
+        long ivHi = readLong(iv, 0);
+        long ivLo = readLong(iv, 8);
+        parallelism.forEachChunk(len, (off, n) -> xorKeystream(in, inOff + off, n, out, outOff + off, key, ivHi, ivLo, position + off));
+    }
+
+    /**
+     * xor's the remaining bytes of src with the keystream starting at byte position of the stream and writes the result
+     * to dst, advancing both buffers. This both encrypts and decrypts.
+     *
+     * @param src The buffer holding the input between its position and limit.
+     * @param dst The buffer to write the output to.
+     * @param key The expanded symmetric key to use.
+     * @param iv The first counter block of the stream.
+     * @param position The offset of the first remaining byte of src within the stream.
+     */
+    public void crypt(ByteBuffer src, ByteBuffer dst, Key key, byte[] iv, long position) {
+        int len = src.remaining();
+        if (dst.remaining() < len) {
+            throw new BufferOverflowException();
+        }
+        checkLength(iv, position, len);
+        long ivHi = readLong(iv, 0);
+        long ivLo = readLong(iv, 8);
+
+        int inPos = src.position();
+        int outPos = dst.position();
+        parallelism.forEachChunk(len, (off, n) -> xorKeystream(src, inPos + off, n, dst, outPos + off, key, ivHi, ivLo, position + off));
+        src.position(inPos + len);
+        dst.position(outPos + len);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BlockCipherMode getMode() {
+        return BlockCipherMode.CTR;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int doEncrypt(byte[] in, int inOff, int len, byte[] out, int outOff, Key key) {
+        byte[] iv = newIv(IV_LENGTH);
+        // move the message into place first; arraycopy copes with the output overlapping the input
+        System.arraycopy(in, inOff, out, outOff + IV_LENGTH, len);
+        crypt(out, outOff + IV_LENGTH, len, out, outOff + IV_LENGTH, key, iv, 0);
+        System.arraycopy(iv, 0, out, outOff, IV_LENGTH);
+        return IV_LENGTH + len;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int doDecrypt(byte[] in, int inOff, int len, byte[] out, int outOff, Key key) {
+        if (len < IV_LENGTH) {
+            throw new IllegalArgumentException("Ciphertext is shorter than the initialization vector: " + len);
+        }
+        byte[] iv = new byte[IV_LENGTH];
+        System.arraycopy(in, inOff, iv, 0, IV_LENGTH);
+        if (in == out) {
+            // chunks run concurrently would overwrite the ciphertext of the chunk before them, so move it into place first
+            System.arraycopy(in, inOff + IV_LENGTH, out, outOff, len - IV_LENGTH);
+            in = out;
+            inOff = outOff - IV_LENGTH;
+        }
+        crypt(in, inOff + IV_LENGTH, len - IV_LENGTH, out, outOff, key, iv, 0);
+        return len - IV_LENGTH;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int doEncrypt(ByteBuffer src, ByteBuffer dst, Key key) {
+        int len = src.remaining();
+        if (dst.remaining() < getEncryptOutputSize(len)) {
+            throw new BufferOverflowException();
+        }
+        byte[] iv = newIv(IV_LENGTH);
+        dst.put(iv);
+        crypt(src, dst, key, iv, 0);
+        return IV_LENGTH + len;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int doDecrypt(ByteBuffer src, ByteBuffer dst, Key key) {
+        int len = src.remaining() - IV_LENGTH;
+        if (len < 0) {
+            throw new IllegalArgumentException("Ciphertext is shorter than the initialization vector: " + src.remaining());
+        }
+        byte[] iv = new byte[IV_LENGTH];
+        src.get(iv);
+        crypt(src, dst, key, iv, 0);
+        return len;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getEncryptOutputSize(int plaintextLength) {
+        return IV_LENGTH + plaintextLength;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getDecryptOutputSize(int ciphertextLength) {
+        return Math.max(0, ciphertextLength - IV_LENGTH);
+    }
+
+    /**
+     * @return An operation that xor's each piece with the keystream following the previous piece. It writes every byte
+     *         as soon as it is supplied.
+     */
+    private CipherOperation newOperation(Key key, byte[] iv) {
+        checkLength(iv, 0, 0);
+        byte[] counter = iv.clone();
+        return new CipherOperation() {
+            private long position;
+            private boolean done;
+
+            @Override
+            public int update(byte[] in, int inOff, int len, byte[] out, int outOff) {
+                if (done) {
+                    throw new IllegalStateException("Operation already finished");
+                }
+                // chunks may run on other threads, so a shifted overlap must not be transformed in place
+                if (in == out && inOff != outOff && inOff < outOff + len && outOff < inOff + len) {
+                    in = Arrays.copyOfRange(in, inOff, inOff + len);
+                    inOff = 0;
+                }
+                crypt(in, inOff, len, out, outOff, key, counter, position);
+                position += len;
+                return len;
+            }
+
+            @Override
+            public int doFinal(byte[] in, int inOff, int len, byte[] out, int outOff) {
+                int n = update(in, inOff, len, out, outOff);
+                done = true;
+                return n;
+            }
+
+            @Override
+            public int update(ByteBuffer src, ByteBuffer dst) {
+                if (done) {
+                    throw new IllegalStateException("Operation already finished");
+                }
+                if (src.hasArray() && dst.hasArray() && src.array() == dst.array()) {
+                    int len = src.remaining();
+                    int n = update(src.array(), src.arrayOffset() + src.position(), len, dst.array(), dst.arrayOffset() + dst.position());
+                    src.position(src.limit());
+                    dst.position(dst.position() + n);
+                    return n;
+                }
+                int len = src.remaining();
+                crypt(src, dst, key, counter, position);
+                position += len;
+                return len;
+            }
+
+            @Override
+            public int doFinal(ByteBuffer src, ByteBuffer dst) {
+                int n = update(src, dst);
+                done = true;
+                return n;
+            }
+
+            @Override
+            public int getUpdateOutputSize(int len) {
+                return len;
+            }
+
+            @Override
+            public int getFinalOutputSize(int len) {
+                return len;
+            }
+        };
+    }
+
+    /**
+     * xor's len bytes of in with the keystream starting at byte position of the stream.
+     */
+    private void xorKeystream(byte[] in, int inOff, int len, byte[] out, int outOff, Key key, long ivHi, long ivLo, long position) {
+        byte[] keystream = new byte[16 * Math.min(KEYSTREAM_BLOCKS, (len + 31) / 16)];
+        long block = position >>> 4;
+        int skip = (int) (position & 15);
+
+        for (int done = 0; done < len;) {
+            int blocks = Math.min(KEYSTREAM_BLOCKS, (skip + len - done + 15) / 16);
+            fillKeystream(keystream, blocks, key, ivHi, ivLo, block);
+
+            int n = Math.min(16 * blocks - skip, len - done);
+            for (int i = 0; i < n; i++) {
+                out[outOff + done + i] = (byte) (in[inOff + done + i] ^ keystream[skip + i]);
+            }
+            done += n;
+            block += blocks;
+            skip = 0;
+        }
+    }
+
+    /**
+     * xor's len bytes of in with the keystream starting at byte position of the stream, using absolute buffer indices.
+     */
+    private void xorKeystream(ByteBuffer in, int inOff, int len, ByteBuffer out, int outOff, Key key, long ivHi, long ivLo, long position) {
+        byte[] keystream = new byte[16 * Math.min(KEYSTREAM_BLOCKS, (len + 31) / 16)];
+        long block = position >>> 4;
+        int skip = (int) (position & 15);
+
+        for (int done = 0; done < len;) {
+            int blocks = Math.min(KEYSTREAM_BLOCKS, (skip + len - done + 15) / 16);
+            fillKeystream(keystream, blocks, key, ivHi, ivLo, block);
+
+            int n = Math.min(16 * blocks - skip, len - done);
+            for (int i = 0; i < n; i++) {
+                out.put(outOff + done + i, (byte) (in.get(inOff + done + i) ^ keystream[skip + i]));
+            }
+            done += n;
+            block += blocks;
+            skip = 0;
+        }
+    }
+
+    /**
+     * Writes the counter blocks for blocks [block, block + blocks) of the stream into keystream and encrypts them.
+     */
+    private void fillKeystream(byte[] keystream, int blocks, Key key, long ivHi, long ivLo, long block) {
+        for (int i = 0; i < blocks; i++) {
+            long lo = ivLo + block + i;
+            long carry = Long.compareUnsigned(lo, ivLo) < 0 ? 1 : 0;
+            writeLong((ivHi & ~hiMask) | ((ivHi + carry) & hiMask), keystream, 16 * i);
+            writeLong((ivLo & ~loMask) | (lo & loMask), keystream, 16 * i + 8);
+        }
+        engine.encryptBlocks(keystream, 0, keystream, 0, blocks, key);
+    }
+
+    /**
+     * Checks the initialization vector and that bytes [position, position + len) of the stream do not need more counter blocks than the counter can
+     * count without repeating.
+     */
+    private void checkLength(byte[] iv, long position, int len) {
+        if (iv.length != IV_LENGTH) {
+            throw new IllegalArgumentException("Invalid IV size: " + iv.length);
+        }
+        if (position < 0) {
+            throw new IllegalArgumentException("Invalid stream position: " + position);
+        }
+        long blocks = (position + len + 15) >>> 4;
+        if (counterBits < 63 && blocks > (1L << counterBits)) {
+            throw new IllegalArgumentException("Message too long for a " + counterBits + "-bit counter");
+        }
+    }
+
+    private static long readLong(byte[] b, int off) {
+        long v = 0;
+        for (int i = 0; i < 8; i++) {
+            v = (v << 8) | (b[off + i] & 0xff);
+        }
+        return v;
+    }
+
+    private static void writeLong(long v, byte[] b, int off) {
+        for (int i = 7; i >= 0; i--) {
+            b[off + i] = (byte) v;
+            v >>>= 8;
+        }
+    }
+}
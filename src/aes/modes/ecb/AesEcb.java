@@ -1,9 +1,17 @@
 package aes.modes.ecb;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
-import aes.Cipher;
 import aes.Key;
-import aes.State;
+import aes.KeyCache;
+import aes.engines.BlockEngine;
+import aes.modes.AbstractCipher;
+import aes.modes.BlockCipherMode;
+import aes.modes.BlockOperation;
+import aes.modes.CipherOperation;
+import aes.modes.Padding;
+import aes.modes.Parallelism;
 
 /**
  * <p>
@@ -15,96 +23,296 @@ import aes.State;
  * bytes. For instance, if the message is 00112233, it will be decrypted as 0011223300000000. This is not a problem with
  * printing ASCII as '00' represents the null character and signifies the end of a string anyways.
  * </p>
+ *
+ * <p>
+ * Blocks are independent of each other in ECB mode, so long messages can be split across threads with a
+ * {@link Parallelism}. The output is the same whether or not a message is split.
+ * </p>
+ *
+ * <p>
+ * Messages too long to hold in memory can be supplied in pieces to the operations returned by
+ * {@link #newEncryption(Key, Padding)} and {@link #newDecryption(Key, Padding)}, which also offer PKCS#7 padding.
+ * </p>
  */
-public class AesEcb implements Cipher {
+public class AesEcb extends AbstractCipher {
 
     /**
-     * {@inheritDoc}
+     * Constructs an ECB cipher that transforms each block with the given engine.
+     *
+     * @param engine The engine to use.
      */
-    @Override
-    public byte[] encrypt(byte[] plaintext, byte[] key) {
-        int encryptedLength;
-        if ((plaintext.length % 16) == 0) {
-            encryptedLength = plaintext.length;
-        } else {
-            encryptedLength = plaintext.length + 16 - (plaintext.length % 16);
-        }
-        byte[] encrypted = new byte[encryptedLength];
+    public AesEcb(BlockEngine engine) {
+        this(engine, null);
+    }
 
-        Key m_key = Key.getKey(key);
+    /**
+     * Constructs an ECB cipher that transforms each block with the given engine and looks raw keys up in a cache.
+     *
+     * @param engine The engine to use.
+     * @param keyCache The cache to expand raw keys through, or null to expand them on every call.
+     */
+    public AesEcb(BlockEngine engine, KeyCache keyCache) {
+        this(engine, keyCache, Parallelism.SEQUENTIAL);
+    }
 
-        // break up the byte array into 16-byte 2d arrays
-        for (int i = 0; i < plaintext.length; i += 16) {
-            State state = new State(Arrays.copyOfRange(plaintext, i, i + 16));
+    /**
+     * Constructs an ECB cipher that transforms each block with the given engine, looks raw keys up in a cache and splits
+     * long messages across threads.
+     *
+     * @param engine The engine to use.
+     * @param keyCache The cache to expand raw keys through, or null to expand them on every call.
+     * @param parallelism How to split long messages across threads.
+     */
+    public AesEcb(BlockEngine engine, KeyCache keyCache, Parallelism parallelism) {
+        super(engine, keyCache, parallelism);
+    }
 
-            byte[] stateBytes = encryptState(state, m_key).getBytes();
-            for (int n = 0; n < 16; n++) {
-                encrypted[i + n] = stateBytes[n];
+    /**
+     * Starts encrypting a message that will be supplied in pieces.
+     *
+     * @param key The expanded symmetric key to use.
+     * @param padding How to extend the message to a multiple of 16 bytes.
+     * @return The operation to feed the message to.
+     */
+    public CipherOperation newEncryption(Key key, Padding padding) {
+        return new BlockOperation(true, padding) {
+            @Override
+            protected void processBlocks(ByteBuffer in, int inOff, int blocks, ByteBuffer out, int outOff) {
+                transformBlocks(in, inOff, blocks, out, outOff, key, true);
             }
-            if ((i + 16) != encryptedLength) {
-                m_key.resetCounter();
+        };
+    }
+
+    /**
+     * Starts decrypting a ciphertext that will be supplied in pieces.
+     *
+     * @param key The expanded symmetric key to use.
+     * @param padding How the message was extended to a multiple of 16 bytes.
+     * @return The operation to feed the ciphertext to.
+     */
+    public CipherOperation newDecryption(Key key, Padding padding) {
+        return new BlockOperation(false, padding) {
+            @Override
+            protected void processBlocks(ByteBuffer in, int inOff, int blocks, ByteBuffer out, int outOff) {
+                transformBlocks(in, inOff, blocks, out, outOff, key, false);
             }
-        }
+        };
+    }
+
+    /**
+     * <p>
+     * Encrypts a batch of single blocks, each under its own key. Block i is read from in at inOff + 16 * i, encrypted
+     * under keys[i] and written to out at outOff + 16 * i.
+     * </p>
+     *
+     * <p>
+     * For 16-byte messages the work of a call is dominated by its overhead, and a run of blocks under one key keeps the
+     * engine busier than a single block. A batch pays the overhead once. Keys should be expanded once and reused across
+     * batches.
+     * </p>
+     *
+     * @param keys The expanded keys, one per block.
+     * @param in The array holding the plaintext blocks.
+     * @param inOff The offset of the first plaintext block.
+     * @param out The array to write the ciphertext blocks to. It may be in, with outOff equal to inOff.
+     * @param outOff The offset to write the first ciphertext block to.
+     * @param count The number of blocks, which must not exceed the number of keys.
+     */
+    public void encryptBatch(Key[] keys, byte[] in, int inOff, byte[] out, int outOff, int count) {
+        long start = start();
+        transformBatch(keys, in, inOff, out, outOff, count, true);
+        report(start, true, 16L * count);
+    }
 
-        return encrypted;
+    /**
+     * Decrypts a batch of single blocks, each under its own key. Block i is read from in at inOff + 16 * i, decrypted
+     * under keys[i] and written to out at outOff + 16 * i.
+     *
+     * @param keys The expanded keys, one per block.
+     * @param in The array holding the ciphertext blocks.
+     * @param inOff The offset of the first ciphertext block.
+     * @param out The array to write the plaintext blocks to. It may be in, with outOff equal to inOff.
+     * @param outOff The offset to write the first plaintext block to.
+     * @param count The number of blocks, which must not exceed the number of keys.
+     */
+    public void decryptBatch(Key[] keys, byte[] in, int inOff, byte[] out, int outOff, int count) {
+        long start = start();
+        transformBatch(keys, in, inOff, out, outOff, count, false);
+        report(start, false, 16L * count);
     }
 
-    private static State encryptState(State state, Key key) {
-        state.addRoundKey(key.getEncryptKey());
-        for (int k = 0; k < (key.Nr - 1); k++) {
-            state.subBytes();
-            state.shiftRows();
-            state.mixColumns();
-            state.addRoundKey(key.getEncryptKey());
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BlockCipherMode getMode() {
+        return BlockCipherMode.ECB;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int doEncrypt(byte[] in, int inOff, int len, byte[] out, int outOff, Key key) {
+        transformBlocks(in, inOff, len / 16, out, outOff, key, true);
+
+        int tail = zeroExtendTail(in, inOff, len, out, outOff);
+        if (tail >= 0) {
+            engine.encryptBlocks(out, tail, out, tail, 1, key);
+        }
+        return paddedLength(len);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int doDecrypt(byte[] in, int inOff, int len, byte[] out, int outOff, Key key) {
+        transformBlocks(in, inOff, len / 16, out, outOff, key, false);
+
+        int tail = zeroExtendTail(in, inOff, len, out, outOff);
+        if (tail >= 0) {
+            engine.decryptBlocks(out, tail, out, tail, 1, key);
         }
+        return paddedLength(len);
+    }
 
-        // final round does not include mixColumns()
-        state.subBytes();
-        state.shiftRows();
-        state.addRoundKey(key.getEncryptKey());
-        return state;
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int doEncrypt(ByteBuffer src, ByteBuffer dst, Key key) {
+        return transform(src, dst, key, true);
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public byte[] decrypt(byte[] ciphertext, byte[] key) {
-        int decryptedLength = ciphertext.length;
-        byte[] decrypted = new byte[decryptedLength];
+    protected int doDecrypt(ByteBuffer src, ByteBuffer dst, Key key) {
+        return transform(src, dst, key, false);
+    }
+
+    /**
+     * Transforms a batch of blocks under their own keys, split across threads when there are enough of them.
+     */
+    private void transformBatch(Key[] keys, byte[] in, int inOff, byte[] out, int outOff, int count, boolean encrypt) {
+        if (count < 0 || count > keys.length) {
+            throw new IllegalArgumentException("Batch of " + count + " blocks has " + keys.length + " keys");
+        }
+        if (inOff < 0 || in.length - inOff < 16 * count) {
+            throw new IllegalArgumentException("Input is shorter than the batch of " + count + " blocks");
+        }
+        if (outOff < 0 || out.length - outOff < 16 * count) {
+            throw new BufferOverflowException();
+        }
+        parallelism.forEachChunk(16 * count, (off, n) -> {
+            if (encrypt) {
+                engine.encryptBatch(in, inOff + off, out, outOff + off, n / 16, keys, off / 16);
+            } else {
+                engine.decryptBatch(in, inOff + off, out, outOff + off, n / 16, keys, off / 16);
+            }
+        });
+    }
+
+    /**
+     * Transforms whole blocks, split across threads when there are enough of them.
+     */
+    private void transformBlocks(byte[] in, int inOff, int blocks, byte[] out, int outOff, Key key, boolean encrypt) {
+        parallelism.forEachChunk(16 * blocks, (off, n) -> {
+            if (encrypt) {
+                engine.encryptBlocks(in, inOff + off, out, outOff + off, n / 16, key);
+            } else {
+                engine.decryptBlocks(in, inOff + off, out, outOff + off, n / 16, key);
+            }
+        });
+    }
+
+    /**
+     * Transforms whole blocks at absolute positions of the buffers, split across threads when there are enough of them.
+     */
+    private void transformBlocks(ByteBuffer in, int inOff, int blocks, ByteBuffer out, int outOff, Key key, boolean encrypt) {
+        parallelism.forEachChunk(16 * blocks, (off, n) -> {
+            if (encrypt) {
+                engine.encryptBlocks(in, inOff + off, out, outOff + off, n / 16, key);
+            } else {
+                engine.decryptBlocks(in, inOff + off, out, outOff + off, n / 16, key);
+            }
+        });
+    }
 
-        Key m_key = Key.getKey(key);
-        m_key.resetDecryptCounter();
+    private int transform(ByteBuffer src, ByteBuffer dst, Key key, boolean encrypt) {
+        int len = src.remaining();
+        int outLen = paddedLength(len);
+        if (dst.remaining() < outLen) {
+            throw new BufferOverflowException();
+        }
+        int inPos = src.position();
+        int outPos = dst.position();
 
-        // break up the byte array into 16-byte 2d arrays
-        for (int i = 0; i < ciphertext.length; i += 16) {
-            State state = new State(Arrays.copyOfRange(ciphertext, i, i + 16));
+        int blocks = len / 16;
+        transformBlocks(src, inPos, blocks, dst, outPos, key, encrypt);
 
-            byte[] stateBytes = decryptState(state, m_key).getBytes();
-            for (int n = 0; n < 16; n++) {
-                decrypted[i + n] = stateBytes[n];
+        // zero extend the bytes after the last whole block inside dst and transform them in place
+        int remainder = len % 16;
+        if (remainder != 0) {
+            int tail = outPos + 16 * blocks;
+            for (int i = 0; i < 16; i++) {
+                dst.put(tail + i, i < remainder ? src.get(inPos + 16 * blocks + i) : 0);
             }
-            if ((i + 16) != decryptedLength) {
-                m_key.resetDecryptCounter();
+            if (encrypt) {
+                engine.encryptBlocks(dst, tail, dst, tail, 1, key);
+            } else {
+                engine.decryptBlocks(dst, tail, dst, tail, 1, key);
             }
         }
 
-        return decrypted;
+        src.position(inPos + len);
+        dst.position(outPos + outLen);
+        return outLen;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getEncryptOutputSize(int plaintextLength) {
+        return paddedLength(plaintextLength);
     }
 
-    private static State decryptState(State state, Key key) {
-        state.addRoundKey(key.getDecryptKey());
-        for (int k = 0; k < (key.Nr - 1); k++) {
-            state.invShiftRows();
-            state.invSubBytes();
-            state.addRoundKey(key.getDecryptKey());
-            state.invMixColumns();
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getDecryptOutputSize(int ciphertextLength) {
+        return paddedLength(ciphertextLength);
+    }
+
+    /**
+     * Copies the bytes after the last whole block into out and zero extends them to a block, so the final block can be
+     * transformed in place without allocating.
+     *
+     * @return The offset of the zero extended block in out, or -1 if len is a multiple of 16.
+     */
+    private static int zeroExtendTail(byte[] in, int inOff, int len, byte[] out, int outOff) {
+        int remainder = len % 16;
+        if (remainder == 0) {
+            return -1;
         }
+        int tail = outOff + len - remainder;
+        System.arraycopy(in, inOff + len - remainder, out, tail, remainder);
+        Arrays.fill(out, tail + remainder, tail + 16, (byte) 0);
+        return tail;
+    }
 
-        // final round does not include mixColumns()
-        state.invShiftRows();
-        state.invSubBytes();
-        state.addRoundKey(key.getDecryptKey());
-        return state;
+    /**
+     * @param length The length of a message.
+     * @return The length of the message zero extended to a multiple of 16 bytes.
+     */
+    private static int paddedLength(int length) {
+        if ((length % 16) == 0) {
+            return length;
+        }
+        return length + 16 - (length % 16);
     }
 }
@@ -0,0 +1,294 @@
+package aes.modes.gcm;
+import java.nio.ByteBuffer;
+
+import aes.AuthenticationException;
+import aes.Key;
+import aes.KeyCache;
+import aes.engines.BlockEngine;
+import aes.modes.AbstractCipher;
+import aes.modes.BlockCipherMode;
+import aes.modes.Parallelism;
+import aes.modes.ctr.AesCtr;
+
+/**
+ * <p>
+ * An implementation of AES GCM mode, authenticated encryption with associated data, as outlined in NIST SP 800-38D.
+ * </p>
+ *
+ * <p>
+ * The message is encrypted in CTR mode with a 32-bit counter, reusing the block engine and {@link Parallelism} of
+ * {@link AesCtr}. The associated data and ciphertext are authenticated with GHASH, a polynomial hash keyed by the
+ * encryption of the zero block. The hash multiplies by that subkey with a per-key {@link GHashTable}, which is computed
+ * once and kept alongside the expanded {@link Key} with {@link Key#getDerived(Object, java.util.function.Function)}.
+ * </p>
+ *
+ * <p>
+ * The methods inherited from {@link aes.Cipher} generate a random 12-byte nonce, prefix it to the ciphertext and append
+ * the tag. Decryption checks the tag before writing any plaintext and throws {@link AuthenticationException} if it does
+ * not match. {@link #encrypt(byte[], int, int, byte[], int, Key, byte[])} and
+ * {@link #decrypt(byte[], int, int, byte[], int, Key, byte[])} do the same with associated data. Messages fed in pieces
+ * use {@link #newEncryption(Key, byte[])} and {@link #newDecryption(Key, byte[])}.
+ * </p>
+ */
+public class AesGcm extends AbstractCipher {
+    /**
+     * The length of the nonce generated by the methods inherited from {@link aes.Cipher}, in bytes.
+     */
+    public static final int NONCE_LENGTH = 12;
+
+    /**
+     * The length of a full authentication tag, in bytes.
+     */
+    public static final int TAG_LENGTH = 16;
+
+    private static final byte[] NO_AAD = new byte[0];
+
+    /**
+     * Identifies the GHASH table among the data derived from a {@link Key}.
+     */
+    private static final Object GHASH_TABLE = new Object();
+
+    private final AesCtr ctr;
+    private final int tagLength;
+
+    /**
+     * Constructs a GCM cipher that produces 16-byte tags.
+     *
+     * @param engine The engine to use.
+     * @param keyCache The cache to expand raw keys through, or null to expand them on every call.
+     * @param parallelism How to split long messages across threads for the CTR keystream.
+     */
+    public AesGcm(BlockEngine engine, KeyCache keyCache, Parallelism parallelism) {
+        this(engine, keyCache, parallelism, TAG_LENGTH);
+    }
+
+    /**
+     * Constructs a GCM cipher that produces tags of the given length.
+     *
+     * @param engine The engine to use.
+     * @param keyCache The cache to expand raw keys through, or null to expand them on every call.
+     * @param parallelism How to split long messages across threads for the CTR keystream.
+     * @param tagLength The length of the authentication tag in bytes, from 12 to 16.
+     */
+    public AesGcm(BlockEngine engine, KeyCache keyCache, Parallelism parallelism, int tagLength) {
+        super(engine, keyCache, parallelism);
+        if (tagLength < 12 || tagLength > TAG_LENGTH) {
+            throw new IllegalArgumentException("Invalid tag length: " + tagLength);
+        }
+        this.ctr = new AesCtr(engine, keyCache, parallelism, 32);
+        this.tagLength = tagLength;
+    }
+
+    /**
+     * @return The length of the authentication tag in bytes.
+     */
+    public int getTagLength() {
+        return tagLength;
+    }
+
+    /**
+     * Starts encrypting a message that will be supplied in pieces.
+     *
+     * @param key The expanded symmetric key to use.
+     * @param iv The nonce. It must never be reused with the same key; 12 bytes is recommended.
+     * @return The operation to feed the associated data and message to.
+     */
+    public GcmOperation newEncryption(Key key, byte[] iv) {
+        return new GcmOperation(this, key, iv, true);
+    }
+
+    /**
+     * Starts decrypting a ciphertext, followed by its tag, that will be supplied in pieces.
+     *
+     * @param key The expanded symmetric key to use.
+     * @param iv The nonce used to encrypt the message.
+     * @return The operation to feed the associated data and ciphertext to.
+     */
+    public GcmOperation newDecryption(Key key, byte[] iv) {
+        return new GcmOperation(this, key, iv, false);
+    }
+
+    /**
+     * Encrypts and authenticates a message with a caller-supplied nonce.
+     *
+     * @param plaintext A message to encrypt.
+     * @param key The expanded symmetric key to use.
+     * @param iv The nonce. It must never be reused with the same key; 12 bytes is recommended.
+     * @param aad Associated data to authenticate but not encrypt. It may be empty.
+     * @return The ciphertext followed by the tag.
+     */
+    public byte[] encrypt(byte[] plaintext, Key key, byte[] iv, byte[] aad) {
+        long start = start();
+        GcmOperation operation = newEncryption(key, iv);
+        operation.updateAAD(aad, 0, aad.length);
+        byte[] encrypted = new byte[plaintext.length + tagLength];
+        operation.doFinal(plaintext, 0, plaintext.length, encrypted, 0);
+        report(start, true, plaintext.length);
+        return encrypted;
+    }
+
+    /**
+     * Checks and decrypts a ciphertext produced with a caller-supplied nonce.
+     *
+     * @param ciphertext The ciphertext followed by the tag.
+     * @param key The expanded symmetric key to use.
+     * @param iv The nonce used to encrypt the message.
+     * @param aad The associated data the message was encrypted with.
+     * @return The resulting plaintext.
+     * @throws AuthenticationException If the ciphertext, tag or associated data have been modified.
+     */
+    public byte[] decrypt(byte[] ciphertext, Key key, byte[] iv, byte[] aad) {
+        long start = start();
+        GcmOperation operation = newDecryption(key, iv);
+        operation.updateAAD(aad, 0, aad.length);
+        byte[] decrypted = new byte[Math.max(0, ciphertext.length - tagLength)];
+        operation.decryptVerified(ciphertext, 0, ciphertext.length, decrypted, 0);
+        report(start, false, ciphertext.length);
+        return decrypted;
+    }
+
+    /**
+     * Encrypts and authenticates a message with associated data under a random nonce, laid out like
+     * {@link #encrypt(byte[], int, int, byte[], int, Key)}: the nonce, then the ciphertext, then the tag.
+     *
+     * @param in The array holding the plaintext.
+     * @param inOff The offset of the plaintext in in.
+     * @param len The length of the plaintext in bytes.
+     * @param out The array to write the output to. It must have room for {@link #getEncryptOutputSize(int)} bytes.
+     * @param outOff The offset to write the output to.
+     * @param key The expanded symmetric key to use.
+     * @param aad Associated data to authenticate but not encrypt. It may be empty.
+     * @return The number of bytes written to out.
+     */
+    public int encrypt(byte[] in, int inOff, int len, byte[] out, int outOff, Key key, byte[] aad) {
+        long start = start();
+        int n = seal(in, inOff, len, out, outOff, key, aad);
+        report(start, true, len);
+        return n;
+    }
+
+    /**
+     * Checks and decrypts the output of {@link #encrypt(byte[], int, int, byte[], int, Key, byte[])}. No plaintext is
+     * written unless the tag matches.
+     *
+     * @param in The array holding the nonce, ciphertext and tag.
+     * @param inOff The offset of the nonce in in.
+     * @param len The length of the nonce, ciphertext and tag in bytes.
+     * @param out The array to write the plaintext to. It must have room for {@link #getDecryptOutputSize(int)} bytes.
+     * @param outOff The offset to write the plaintext to.
+     * @param key The expanded symmetric key to use.
+     * @param aad The associated data the message was encrypted with.
+     * @return The number of bytes written to out.
+     * @throws AuthenticationException If the ciphertext, tag or associated data have been modified.
+     */
+    public int decrypt(byte[] in, int inOff, int len, byte[] out, int outOff, Key key, byte[] aad) {
+        long start = start();
+        int n = open(in, inOff, len, out, outOff, key, aad);
+        report(start, false, len);
+        return n;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BlockCipherMode getMode() {
+        return BlockCipherMode.GCM;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int doEncrypt(byte[] in, int inOff, int len, byte[] out, int outOff, Key key) {
+        return seal(in, inOff, len, out, outOff, key, NO_AAD);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws AuthenticationException If the ciphertext or tag have been modified.
+     */
+    @Override
+    protected int doDecrypt(byte[] in, int inOff, int len, byte[] out, int outOff, Key key) {
+        return open(in, inOff, len, out, outOff, key, NO_AAD);
+    }
+
+    private int seal(byte[] in, int inOff, int len, byte[] out, int outOff, Key key, byte[] aad) {
+        byte[] nonce = newIv(NONCE_LENGTH);
+        if (in == out) {
+            // the output is shifted by the nonce, so move the message into place first to encrypt it in place
+            System.arraycopy(in, inOff, out, outOff + NONCE_LENGTH, len);
+            inOff = outOff + NONCE_LENGTH;
+        }
+        GcmOperation operation = newEncryption(key, nonce);
+        operation.updateAAD(aad, 0, aad.length);
+        int n = operation.doFinal(in, inOff, len, out, outOff + NONCE_LENGTH);
+        System.arraycopy(nonce, 0, out, outOff, NONCE_LENGTH);
+        return NONCE_LENGTH + n;
+    }
+
+    private int open(byte[] in, int inOff, int len, byte[] out, int outOff, Key key, byte[] aad) {
+        if (len < NONCE_LENGTH + tagLength) {
+            throw new AuthenticationException("Ciphertext is shorter than the nonce and tag: " + len);
+        }
+        byte[] nonce = new byte[NONCE_LENGTH];
+        System.arraycopy(in, inOff, nonce, 0, NONCE_LENGTH);
+        GcmOperation operation = newDecryption(key, nonce);
+        operation.updateAAD(aad, 0, aad.length);
+        return operation.decryptVerified(in, inOff + NONCE_LENGTH, len - NONCE_LENGTH, out, outOff);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int doEncrypt(ByteBuffer src, ByteBuffer dst, Key key) {
+        return transformThroughArrays(src, dst, key, true);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws AuthenticationException If the ciphertext or tag have been modified.
+     */
+    @Override
+    protected int doDecrypt(ByteBuffer src, ByteBuffer dst, Key key) {
+        return transformThroughArrays(src, dst, key, false);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getEncryptOutputSize(int plaintextLength) {
+        return NONCE_LENGTH + plaintextLength + tagLength;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getDecryptOutputSize(int ciphertextLength) {
+        return Math.max(0, ciphertextLength - NONCE_LENGTH - tagLength);
+    }
+
+    BlockEngine engine() {
+        return engine;
+    }
+
+    AesCtr ctr() {
+        return ctr;
+    }
+
+    /**
+     * @return The GHASH table for the key's hash subkey, computed the first time it is needed.
+     */
+    GHashTable table(Key key) {
+        return key.getDerived(GHASH_TABLE, k -> {
+            byte[] h = new byte[16];
+            engine.encryptBlocks(h, 0, h, 0, 1, k);
+            return new GHashTable(h);
+        });
+    }
+}
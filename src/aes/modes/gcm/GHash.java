@@ -0,0 +1,83 @@
+package aes.modes.gcm;
+
+/**
+ * <p>
+ * GHash computes the GHASH function outlined in NIST SP 800-38D over data supplied in arbitrary pieces.
+ * </p>
+ *
+ * <p>
+ * Bytes are gathered into 16-byte blocks; every complete block is xor'ed into the accumulator, which is then multiplied
+ * by H. {@link #pad()} zero extends a partial block, which separates the associated data from the ciphertext.
+ * </p>
+ */
+final class GHash {
+    private final GHashTable table;
+    private final long[] y = new long[2];
+    private final byte[] partial = new byte[16];
+    private int partialLen;
+
+    /**
+     * @param table The multiplication table for the key's hash subkey.
+     */
+    GHash(GHashTable table) {
+        this.table = table;
+    }
+
+    /**
+     * Hashes len bytes of b starting at off.
+     */
+    void update(byte[] b, int off, int len) {
+        int end = off + len;
+        if (partialLen > 0) {
+            int n = Math.min(16 - partialLen, len);
+            System.arraycopy(b, off, partial, partialLen, n);
+            partialLen += n;
+            off += n;
+            if (partialLen < 16) {
+                return;
+            }
+            block(partial, 0);
+            partialLen = 0;
+        }
+        for (; off + 16 <= end; off += 16) {
+            block(b, off);
+        }
+        partialLen = end - off;
+        System.arraycopy(b, off, partial, 0, partialLen);
+    }
+
+    /**
+     * Zero extends and hashes a partial block, if there is one.
+     */
+    void pad() {
+        if (partialLen > 0) {
+            for (int i = partialLen; i < 16; i++) {
+                partial[i] = 0;
+            }
+            block(partial, 0);
+            partialLen = 0;
+        }
+    }
+
+    /**
+     * Pads, hashes the length block and writes the final hash.
+     *
+     * @param aadLength The length of the associated data in bytes.
+     * @param textLength The length of the ciphertext in bytes.
+     * @param out A 16-byte array to write the hash to.
+     */
+    void finish(long aadLength, long textLength, byte[] out) {
+        pad();
+        y[0] ^= aadLength * 8;
+        y[1] ^= textLength * 8;
+        table.multiply(y);
+        GHashTable.writeLong(y[0], out, 0);
+        GHashTable.writeLong(y[1], out, 8);
+    }
+
+    private void block(byte[] b, int off) {
+        y[0] ^= GHashTable.readLong(b, off);
+        y[1] ^= GHashTable.readLong(b, off + 8);
+        table.multiply(y);
+    }
+}
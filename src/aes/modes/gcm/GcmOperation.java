@@ -0,0 +1,319 @@
+package aes.modes.gcm;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import aes.AuthenticationException;
+import aes.Key;
+import aes.modes.CipherOperation;
+
+/**
+ * <p>
+ * GcmOperation is a single GCM encryption or decryption of one message, fed in pieces.
+ * </p>
+ *
+ * <p>
+ * Associated data is passed to {@link #updateAAD(byte[], int, int)} before any text. The text is then passed to
+ * {@link #update(byte[], int, int, byte[], int)} in pieces of any length, and {@link #doFinal(byte[], int, int, byte[], int)}
+ * finishes the message. When encrypting, doFinal appends the authentication tag. When decrypting, the last tag-length
+ * bytes of the input are the tag, so update holds back that many bytes until it knows they are not the end of the message,
+ * and doFinal throws {@link AuthenticationException} if the tag does not match.
+ * </p>
+ *
+ * <p>
+ * NOTE: decryption releases plaintext before the tag has been checked. The plaintext must not be used until doFinal has
+ * returned.
+ * </p>
+ *
+ * <p>
+ * A GcmOperation is not thread-safe and cannot be reused once doFinal has been called.
+ * </p>
+ */
+public final class GcmOperation implements CipherOperation {
+    private static final int AAD = 0;
+    private static final int TEXT = 1;
+    private static final int DONE = 2;
+
+    private final AesGcm gcm;
+    private final Key key;
+    private final boolean encrypt;
+    private final byte[] counter;
+    private final byte[] tagMask;
+    private final GHash ghash;
+    private final byte[] held;
+    private int heldLen;
+    private long aadLength;
+    private long textLength;
+    private int state;
+
+    /**
+     * Use {@link AesGcm#newEncryption(Key, byte[])} or {@link AesGcm#newDecryption(Key, byte[])}.
+     */
+    GcmOperation(AesGcm gcm, Key key, byte[] iv, boolean encrypt) {
+        if (iv.length == 0) {
+            throw new IllegalArgumentException("Invalid IV size: " + iv.length);
+        }
+        this.gcm = gcm;
+        this.key = key;
+        this.encrypt = encrypt;
+
+        GHashTable table = gcm.table(key);
+        byte[] j0 = new byte[16];
+        if (iv.length == AesGcm.NONCE_LENGTH) {
+            System.arraycopy(iv, 0, j0, 0, AesGcm.NONCE_LENGTH);
+            j0[15] = 1;
+        } else {
+            GHash ivHash = new GHash(table);
+            ivHash.update(iv, 0, iv.length);
+            ivHash.finish(0, iv.length, j0);
+        }
+
+        this.tagMask = new byte[16];
+        gcm.engine().encryptBlocks(j0, 0, tagMask, 0, 1, key);
+        this.counter = inc32(j0);
+        this.ghash = new GHash(table);
+        this.held = encrypt ? null : new byte[gcm.getTagLength()];
+        this.state = AAD;
+    }
+
+    /**
+     * Authenticates associated data that is not encrypted. All associated data must be supplied before any text.
+     *
+     * @param aad The array holding the associated data.
+     * @param off The offset of the associated data.
+     * @param len The length of the associated data.
+     */
+    public void updateAAD(byte[] aad, int off, int len) {
+        if (state != AAD) {
+            throw new IllegalStateException("Associated data must be supplied before the text");
+        }
+        ghash.update(aad, off, len);
+        aadLength += len;
+    }
+
+    /**
+     * Encrypts or decrypts the next piece of the message.
+     *
+     * @param in The array holding the input.
+     * @param inOff The offset of the input.
+     * @param len The length of the input.
+     * @param out The array to write the output to. It must have room for {@link #getUpdateOutputSize(int)} bytes.
+     * @param outOff The offset to write the output to.
+     * @return The number of bytes written to out.
+     */
+    @Override
+    public int update(byte[] in, int inOff, int len, byte[] out, int outOff) {
+        startText();
+        if (in == out && overlaps(inOff, outOff, len) && (!encrypt || inOff != outOff)) {
+            in = Arrays.copyOfRange(in, inOff, inOff + len);
+            inOff = 0;
+        }
+        if (encrypt) {
+            encryptText(in, inOff, len, out, outOff);
+            return len;
+        }
+
+        int release = heldLen + len - held.length;
+        if (release <= 0) {
+            System.arraycopy(in, inOff, held, heldLen, len);
+            heldLen += len;
+            return 0;
+        }
+        int fromHeld = Math.min(heldLen, release);
+        int fromIn = release - fromHeld;
+        decryptText(held, 0, fromHeld, out, outOff);
+        decryptText(in, inOff, fromIn, out, outOff + fromHeld);
+
+        System.arraycopy(held, fromHeld, held, 0, heldLen - fromHeld);
+        heldLen -= fromHeld;
+        System.arraycopy(in, inOff + fromIn, held, heldLen, len - fromIn);
+        heldLen += len - fromIn;
+        return release;
+    }
+
+    /**
+     * Encrypts or decrypts the last piece of the message and finishes the operation. Encryption appends the tag.
+     * Decryption checks it.
+     *
+     * @param in The array holding the input.
+     * @param inOff The offset of the input.
+     * @param len The length of the input, which may be 0.
+     * @param out The array to write the output to. It must have room for {@link #getFinalOutputSize(int)} bytes.
+     * @param outOff The offset to write the output to.
+     * @return The number of bytes written to out.
+     * @throws AuthenticationException If decrypting and the tag does not match.
+     */
+    @Override
+    public int doFinal(byte[] in, int inOff, int len, byte[] out, int outOff) {
+        int n = update(in, inOff, len, out, outOff);
+        byte[] tag = finish();
+        if (encrypt) {
+            System.arraycopy(tag, 0, out, outOff + n, tag.length);
+            return n + tag.length;
+        }
+        if (heldLen != held.length || !MessageDigest.isEqual(tag, held)) {
+            throw new AuthenticationException("GCM tag mismatch");
+        }
+        return n;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * GHASH works on arrays, so buffers that are not backed by an accessible array are copied through the heap.
+     * </p>
+     */
+    @Override
+    public int update(ByteBuffer src, ByteBuffer dst) {
+        return transform(src, dst, false);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * GHASH works on arrays, so buffers that are not backed by an accessible array are copied through the heap.
+     * </p>
+     *
+     * @throws AuthenticationException If decrypting and the tag does not match.
+     */
+    @Override
+    public int doFinal(ByteBuffer src, ByteBuffer dst) {
+        return transform(src, dst, true);
+    }
+
+    /**
+     * @param len The length of the next input.
+     * @return The maximum number of bytes {@link #update(byte[], int, int, byte[], int)} writes for it.
+     */
+    @Override
+    public int getUpdateOutputSize(int len) {
+        if (encrypt) {
+            return len;
+        }
+        return Math.max(0, heldLen + len - held.length);
+    }
+
+    /**
+     * @param len The length of the last input.
+     * @return The maximum number of bytes {@link #doFinal(byte[], int, int, byte[], int)} writes for it.
+     */
+    @Override
+    public int getFinalOutputSize(int len) {
+        if (encrypt) {
+            return len + gcm.getTagLength();
+        }
+        return getUpdateOutputSize(len);
+    }
+
+    /**
+     * Decrypts a whole ciphertext followed by its tag, checking the tag before any plaintext is written.
+     *
+     * @return The number of bytes written to out.
+     * @throws AuthenticationException If the tag does not match; out is left unchanged.
+     */
+    int decryptVerified(byte[] in, int inOff, int len, byte[] out, int outOff) {
+        if (encrypt || state != AAD) {
+            throw new IllegalStateException("Not a fresh decryption");
+        }
+        int textLen = len - held.length;
+        if (textLen < 0) {
+            throw new AuthenticationException("Ciphertext is shorter than the tag: " + len);
+        }
+        startText();
+        ghash.update(in, inOff, textLen);
+        textLength = textLen;
+        byte[] tag = finish();
+        if (!MessageDigest.isEqual(tag, Arrays.copyOfRange(in, inOff + textLen, inOff + len))) {
+            throw new AuthenticationException("GCM tag mismatch");
+        }
+        if (in == out) {
+            // chunks run concurrently would overwrite the ciphertext of the chunk before them, so move it into place first
+            System.arraycopy(in, inOff, out, outOff, textLen);
+            inOff = outOff;
+        }
+        gcm.ctr().crypt(in, inOff, textLen, out, outOff, key, counter, 0);
+        return textLen;
+    }
+
+    private int transform(ByteBuffer src, ByteBuffer dst, boolean last) {
+        int len = src.remaining();
+        int outLen = last ? getFinalOutputSize(len) : getUpdateOutputSize(len);
+        if (dst.remaining() < outLen) {
+            throw new BufferOverflowException();
+        }
+        if (src.hasArray() && dst.hasArray() && !dst.isReadOnly()) {
+            byte[] in = src.array();
+            int inOff = src.arrayOffset() + src.position();
+            byte[] out = dst.array();
+            int outOff = dst.arrayOffset() + dst.position();
+            int n = last ? doFinal(in, inOff, len, out, outOff) : update(in, inOff, len, out, outOff);
+            src.position(src.limit());
+            dst.position(dst.position() + n);
+            return n;
+        }
+
+        byte[] in = new byte[len];
+        src.get(in);
+        byte[] out = new byte[outLen];
+        int n = last ? doFinal(in, 0, len, out, 0) : update(in, 0, len, out, 0);
+        dst.put(out, 0, n);
+        return n;
+    }
+
+    private void startText() {
+        if (state == DONE) {
+            throw new IllegalStateException("Operation already finished");
+        }
+        if (state == AAD) {
+            ghash.pad();
+            state = TEXT;
+        }
+    }
+
+    private void encryptText(byte[] in, int inOff, int len, byte[] out, int outOff) {
+        gcm.ctr().crypt(in, inOff, len, out, outOff, key, counter, textLength);
+        ghash.update(out, outOff, len);
+        textLength += len;
+    }
+
+    private void decryptText(byte[] in, int inOff, int len, byte[] out, int outOff) {
+        // hash the ciphertext before decrypting it, in case it is decrypted in place
+        ghash.update(in, inOff, len);
+        gcm.ctr().crypt(in, inOff, len, out, outOff, key, counter, textLength);
+        textLength += len;
+    }
+
+    /**
+     * @return The tag for the message so far, truncated to the tag length.
+     */
+    private byte[] finish() {
+        startText();
+        state = DONE;
+        byte[] s = new byte[16];
+        ghash.finish(aadLength, textLength, s);
+        for (int i = 0; i < 16; i++) {
+            s[i] ^= tagMask[i];
+        }
+        return Arrays.copyOf(s, gcm.getTagLength());
+    }
+
+    private static boolean overlaps(int inOff, int outOff, int len) {
+        return inOff < outOff + len && outOff < inOff + len;
+    }
+
+    /**
+     * @return A copy of the block with its last 32 bits incremented modulo 2^32.
+     */
+    private static byte[] inc32(byte[] block) {
+        byte[] next = block.clone();
+        for (int i = 15; i >= 12; i--) {
+            if (++next[i] != 0) {
+                break;
+            }
+        }
+        return next;
+    }
+}
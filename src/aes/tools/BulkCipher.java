@@ -0,0 +1,180 @@
+package aes.tools;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+
+import aes.AesFactory;
+import aes.AuthenticationException;
+import aes.Key;
+import aes.engines.Backend;
+import aes.modes.BlockCipherMode;
+
+import utils.StringHelper;
+
+/**
+ * <p>
+ * BulkCipher is the command line entry point for encrypting and decrypting files and directory trees with a
+ * {@link Pipeline}.
+ * </p>
+ *
+ * <pre>
+ * java aes.tools.BulkCipher encrypt|decrypt --key-file &lt;path&gt; [options] &lt;source&gt; &lt;target&gt;
+ * </pre>
+ *
+ * <p>
+ * The key file holds the key as 32, 48 or 64 hex digits. The key is never taken from the command line, where other
+ * users could read it. When the run completes, the number of files and bytes and the throughput are printed. The exit
+ * status is 0 on success, 1 if the run failed and 2 if the command line could not be parsed.
+ * </p>
+ */
+public class BulkCipher {
+    /**
+     * The command line summary printed when the arguments cannot be parsed.
+     */
+    public static final String USAGE = String.join(System.lineSeparator(),
+            "usage: java aes.tools.BulkCipher encrypt|decrypt --key-file <path> [options] <source> <target>",
+            "  --key-file <path>      file holding the key as 32, 48 or 64 hex digits",
+            "  --mode <mode>          ECB, CBC, CTR or GCM (default GCM)",
+            "  --backend <backend>    block transformation to use (default AUTO)",
+            "  --threads <n>          cipher workers (default: one per processor)",
+            "  --readers <n>          threads reading files (default 2)",
+            "  --writers <n>          threads writing files (default 2)",
+            "  --segment-size <n>     bytes per segment when encrypting (default " + Pipeline.DEFAULT_SEGMENT_SIZE + ")",
+            "  --queue-depth <n>      segments in flight at once (default: four per cipher worker)",
+            "  --check                decrypt every segment again and compare it with the source before writing it");
+
+    /**
+     * Do not allow instantiation.
+     */
+    private BulkCipher() {
+    }
+
+    /**
+     * Runs the command line and exits with its status.
+     *
+     * @param args The command line.
+     */
+    public static void main(String[] args) {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    /**
+     * Runs the command line.
+     *
+     * @param args The command line.
+     * @param out The stream to print the report to.
+     * @param err The stream to print errors and usage to.
+     * @return 0 on success, 1 if the run failed and 2 if the command line could not be parsed.
+     */
+    public static int run(String[] args, PrintStream out, PrintStream err) {
+        Boolean encrypt = null;
+        Path keyFile = null;
+        Path source = null;
+        Path target = null;
+        BlockCipherMode mode = BlockCipherMode.GCM;
+        Backend backend = Backend.AUTO;
+        int workers = Runtime.getRuntime().availableProcessors();
+        int readers = 2;
+        int writers = 2;
+        int segmentSize = Pipeline.DEFAULT_SEGMENT_SIZE;
+        int depth = 0;
+        boolean check = false;
+
+        Pipeline pipeline;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.equals("--key-file")) {
+                    keyFile = Paths.get(value(args, ++i, arg));
+                } else if (arg.equals("--mode")) {
+                    mode = BlockCipherMode.valueOf(value(args, ++i, arg).toUpperCase(Locale.ROOT));
+                } else if (arg.equals("--backend")) {
+                    backend = Backend.valueOf(value(args, ++i, arg).toUpperCase(Locale.ROOT));
+                } else if (arg.equals("--threads")) {
+                    workers = Integer.parseInt(value(args, ++i, arg));
+                } else if (arg.equals("--readers")) {
+                    readers = Integer.parseInt(value(args, ++i, arg));
+                } else if (arg.equals("--writers")) {
+                    writers = Integer.parseInt(value(args, ++i, arg));
+                } else if (arg.equals("--segment-size")) {
+                    segmentSize = Integer.parseInt(value(args, ++i, arg));
+                } else if (arg.equals("--queue-depth")) {
+                    depth = Integer.parseInt(value(args, ++i, arg));
+                } else if (arg.equals("--check")) {
+                    check = true;
+                } else if (arg.startsWith("--")) {
+                    throw new IllegalArgumentException("Unknown option: " + arg);
+                } else if (encrypt == null) {
+                    if (!arg.equals("encrypt") && !arg.equals("decrypt")) {
+                        throw new IllegalArgumentException("Unknown command: " + arg);
+                    }
+                    encrypt = arg.equals("encrypt");
+                } else if (source == null) {
+                    source = Paths.get(arg);
+                } else if (target == null) {
+                    target = Paths.get(arg);
+                } else {
+                    throw new IllegalArgumentException("Unexpected argument: " + arg);
+                }
+            }
+            if (encrypt == null || source == null || target == null) {
+                throw new IllegalArgumentException("Missing command, source or target");
+            }
+            if (keyFile == null) {
+                throw new IllegalArgumentException("Missing --key-file");
+            }
+            if (check && !encrypt) {
+                throw new IllegalArgumentException("--check only applies to encrypt");
+            }
+            pipeline = new Pipeline(mode, backend, readKey(keyFile), readers, workers, writers, segmentSize, depth);
+        } catch (IllegalArgumentException | IOException e) {
+            err.println(e.getMessage());
+            err.println(USAGE);
+            return 2;
+        }
+
+        try {
+            Pipeline.Report report = encrypt ? pipeline.encrypt(source, target, check) : pipeline.decrypt(source, target);
+            Backend used = backend == Backend.AUTO ? AesFactory.getSelectedBackend() : backend;
+            out.println((encrypt ? "Encrypted " : "Decrypted ") + report + " in " + mode + " mode with " + workers
+                    + (workers == 1 ? " worker" : " workers") + " on the " + used + " backend"
+                    + (check ? ", round trips checked" : ""));
+            return 0;
+        } catch (IOException | AuthenticationException | IllegalStateException e) {
+            err.println("Failed: " + e);
+            return 1;
+        }
+    }
+
+    /**
+     * @return The argument after an option.
+     * @throws IllegalArgumentException If the option is the last argument.
+     */
+    private static String value(String[] args, int i, String option) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[i];
+    }
+
+    /**
+     * Reads and expands the key held in a file as hex digits.
+     *
+     * @param keyFile The file holding the key.
+     * @return The expanded key.
+     * @throws IOException If the file cannot be read.
+     * @throws IllegalArgumentException If the file does not hold a 128, 192 or 256 bit key in hex.
+     */
+    static Key readKey(Path keyFile) throws IOException {
+        String hex = new String(Files.readAllBytes(keyFile), StandardCharsets.US_ASCII).trim();
+        byte[] key = StringHelper.hexStringToByteArray(hex);
+        if (key.length != 16 && key.length != 24 && key.length != 32) {
+            throw new IllegalArgumentException("Invalid key size in " + keyFile + ": " + key.length + " bytes");
+        }
+        return Key.getKey(key);
+    }
+}
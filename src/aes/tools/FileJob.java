@@ -0,0 +1,128 @@
+package aes.tools;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+
+/**
+ * <p>
+ * FileJob is a single file being transformed by a {@link Pipeline}: where it is read from, where it is written to and
+ * which of its segments have been written so far.
+ * </p>
+ *
+ * <p>
+ * Segments of the same file are transformed by different workers and reach the writers in any order. A segment that
+ * arrives early is held until every segment before it has been written, so the target is always written front to back.
+ * The target is opened when the first segment is written and closed after the last.
+ * </p>
+ */
+final class FileJob {
+    final Path source;
+    final Path target;
+    final long size;
+
+    /**
+     * The header of the encrypted file. The reader sets it before it passes on the first segment.
+     */
+    byte[] header;
+
+    private final Map<Integer, Segment> pending = new HashMap<Integer, Segment>();
+    private FileChannel channel;
+    private int next;
+    private boolean done;
+
+    /**
+     * @param source The file to read.
+     * @param target The file to write.
+     * @param size The length of the source, in bytes.
+     */
+    FileJob(Path source, Path target, long size) {
+        this.source = source;
+        this.target = target;
+        this.size = size;
+    }
+
+    /**
+     * Accepts a transformed segment and writes it, and every held segment that follows it, if it is next in order.
+     *
+     * @param segment The transformed segment.
+     * @param records True to write the file header and then each segment as a record, with its header, as encryption
+     *            does; false to write the plaintext alone, as decryption does.
+     * @param free The pool to return written segments to.
+     * @return The number of plaintext bytes written.
+     * @throws IOException If the target cannot be written.
+     */
+    synchronized long write(Segment segment, boolean records, Queue<Segment> free) throws IOException {
+        pending.put(segment.index, segment);
+        long written = 0;
+        Segment current;
+        while ((current = pending.remove(next)) != null) {
+            if (channel == null) {
+                open(records ? header : null);
+            }
+            if (records) {
+                current.header.clear();
+                current.header.putInt(current.inputLength).putInt(current.outputLength).flip();
+                writeFully(current.header);
+                writeFully(ByteBuffer.wrap(current.output, 0, current.outputLength));
+                written += current.inputLength;
+            } else {
+                writeFully(ByteBuffer.wrap(current.output, 0, current.plainLength));
+                written += current.plainLength;
+            }
+            next++;
+            boolean last = current.last;
+            current.job = null;
+            free.offer(current);
+            if (last) {
+                channel.close();
+                done = true;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Closes the target if it is open and deletes it, unless every segment has been written or it is the source of a
+     * job.
+     *
+     * @param sources The source of every job in the run, which must never be deleted.
+     */
+    synchronized void abort(Set<Path> sources) {
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+            if (channel != null && !done && !sources.contains(target)) {
+                Files.deleteIfExists(target);
+            }
+        } catch (IOException e) {
+            // The pipeline has already failed; report that failure instead.
+        }
+        pending.clear();
+    }
+
+    private void open(byte[] fileHeader) throws IOException {
+        Path parent = target.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        if (fileHeader != null) {
+            writeFully(ByteBuffer.wrap(fileHeader));
+        }
+    }
+
+    private void writeFully(ByteBuffer src) throws IOException {
+        while (src.hasRemaining()) {
+            channel.write(src);
+        }
+    }
+}
@@ -0,0 +1,652 @@
+package aes.tools;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import aes.AesFactory;
+import aes.Cipher;
+import aes.Key;
+import aes.engines.Backend;
+import aes.modes.BlockCipherMode;
+import aes.modes.gcm.AesGcm;
+
+/**
+ * <p>
+ * Pipeline encrypts and decrypts files and directory trees with three stages of threads: readers that split files into
+ * segments, a pool of workers that encrypt or decrypt segments, and writers that put the segments of each file back
+ * together in order.
+ * </p>
+ *
+ * <p>
+ * The stages are connected by bounded queues, and a fixed number of segments circulate between them. A reader that
+ * finds no free segment waits until a writer returns one, so a slow disk or a slow cipher holds the other stages back
+ * instead of filling the heap. Segment buffers are reused for the whole run.
+ * </p>
+ *
+ * <p>
+ * Files are handed to the readers largest first, and every segment of every file goes through one queue that all
+ * workers take from. A worker that finishes early takes the next segment of whichever file is still being read, so a
+ * few large files among many small ones keep every worker busy until the end.
+ * </p>
+ *
+ * <p>
+ * Each segment is encrypted as a message of its own with {@link Cipher#encrypt(byte[], int, int, byte[], int, Key)}, so
+ * the segments of a file are independent for every mode, including CBC, and each gets its own IV, and for GCM its own
+ * tag. An encrypted file starts with a {@value #FILE_HEADER_LENGTH} byte header that names the mode and segment size
+ * and holds a random id for the file, followed by one record per segment: the length of the plaintext and of the
+ * ciphertext as 4 byte big-endian integers, then the ciphertext.
+ * </p>
+ *
+ * <p>
+ * In GCM mode each record is also bound to its place. Its tag covers, as associated data, the file header, the index of
+ * the segment and whether it is the last one. A record moved to another position or another file, a dropped record, and
+ * a file cut short or extended at a record boundary all fail to authenticate, so a file only decrypts if it ends with
+ * the record that was encrypted as its last. The other modes do not authenticate anything and detect none of this.
+ * </p>
+ *
+ * <p>
+ * A Pipeline keeps no state between runs and may be used again, but not by two threads at once.
+ * </p>
+ */
+public class Pipeline {
+    /**
+     * The default size of a segment, in bytes.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 1024 * 1024;
+
+    /**
+     * The largest segment a file may be encrypted with, in bytes.
+     */
+    public static final int MAX_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * The length of the header an encrypted file starts with: the magic number, a version, the mode, two reserved
+     * bytes, the segment size and a random 16 byte file id.
+     */
+    public static final int FILE_HEADER_LENGTH = 28;
+
+    /**
+     * The length of the header each record starts with.
+     */
+    static final int RECORD_HEADER_LENGTH = 8;
+
+    /**
+     * "AESP" in ASCII.
+     */
+    private static final int MAGIC = 0x41455350;
+    private static final int VERSION = 2;
+    private static final int FILE_ID_LENGTH = 16;
+
+    /**
+     * The length of the associated data of a GCM record: the file header, the segment index and the last segment flag.
+     */
+    private static final int AAD_LENGTH = FILE_HEADER_LENGTH + 5;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final BlockCipherMode mode;
+    private final Cipher cipher;
+    private final AesGcm gcm;
+    private final Key key;
+    private final int readers;
+    private final int workers;
+    private final int writers;
+    private final int segmentSize;
+    private final int depth;
+
+    /**
+     * Constructs a Pipeline with a worker for each processor, two readers, two writers and segments of the default size.
+     *
+     * @param mode The block cipher mode of operation to use.
+     * @param backend The implementation of the AES block transformation to use.
+     * @param key The expanded symmetric key to use.
+     */
+    public Pipeline(BlockCipherMode mode, Backend backend, Key key) {
+        this(mode, backend, key, 2, Runtime.getRuntime().availableProcessors(), 2, DEFAULT_SEGMENT_SIZE, 0);
+    }
+
+    /**
+     * Constructs a Pipeline.
+     *
+     * @param mode The block cipher mode of operation to use.
+     * @param backend The implementation of the AES block transformation to use.
+     * @param key The expanded symmetric key to use.
+     * @param readers The number of threads that read files.
+     * @param workers The number of threads that encrypt and decrypt segments.
+     * @param writers The number of threads that write files.
+     * @param segmentSize The size of a segment when encrypting, in bytes. When decrypting, the size recorded in each file
+     *            is used.
+     * @param depth The number of segments in flight at once, or 0 for four per worker. It bounds the memory a run uses
+     *            to about twice depth times the segment size.
+     */
+    public Pipeline(BlockCipherMode mode, Backend backend, Key key, int readers, int workers, int writers,
+            int segmentSize, int depth) {
+        if (readers <= 0 || workers <= 0 || writers <= 0) {
+            throw new IllegalArgumentException("Invalid number of threads: " + readers + ", " + workers + ", " + writers);
+        }
+        if (segmentSize <= 0 || segmentSize > MAX_SEGMENT_SIZE) {
+            throw new IllegalArgumentException("Invalid segment size: " + segmentSize);
+        }
+        if (depth < 0) {
+            throw new IllegalArgumentException("Invalid depth: " + depth);
+        }
+        this.mode = mode;
+        this.cipher = AesFactory.getCipher(mode, backend);
+        if (cipher == null) {
+            throw new IllegalArgumentException("Unsupported mode: " + mode);
+        }
+        this.gcm = cipher instanceof AesGcm ? (AesGcm) cipher : null;
+        this.key = key;
+        this.readers = readers;
+        this.workers = workers;
+        this.writers = writers;
+        this.segmentSize = segmentSize;
+        this.depth = depth == 0 ? 4 * workers : depth;
+    }
+
+    /**
+     * Encrypts a file, or every file in a directory tree.
+     *
+     * @param source A file, or a directory whose files are all encrypted.
+     * @param target The file to write the ciphertext to, or the directory to write the tree to. Missing directories are
+     *            created and existing files overwritten.
+     * @param check True to decrypt every segment again and compare it with the source before it is written.
+     * @return How much was encrypted and how long it took.
+     * @throws IOException If a file cannot be read or written, or the target is or lies inside the source.
+     * @throws IllegalStateException If check is true and a segment does not decrypt to its source.
+     */
+    public Report encrypt(Path source, Path target, boolean check) throws IOException {
+        return run(source, target, true, check);
+    }
+
+    /**
+     * Decrypts a file, or every file in a directory tree, written by {@link #encrypt(Path, Path, boolean)}.
+     *
+     * @param source A file, or a directory whose files are all decrypted.
+     * @param target The file to write the plaintext to, or the directory to write the tree to. Missing directories are
+     *            created and existing files overwritten.
+     * @return How much was decrypted and how long it took.
+     * @throws IOException If a file cannot be read or written, or was not encrypted with this mode, or the target is or
+     *             lies inside the source.
+     * @throws aes.AuthenticationException If a GCM record has been modified, moved, dropped or encrypted under another
+     *             key, or the file does not end with its last record.
+     */
+    public Report decrypt(Path source, Path target) throws IOException {
+        return run(source, target, false, false);
+    }
+
+    private Report run(Path source, Path target, boolean encrypt, boolean check) throws IOException {
+        long start = System.nanoTime();
+        List<FileJob> jobs = listJobs(source, target);
+        Run run = new Run(jobs, encrypt, check);
+        run.execute();
+        return new Report(jobs.size(), run.bytes.get(), System.nanoTime() - start);
+    }
+
+    /**
+     * Lists the files to transform, with their sources and targets resolved through any symbolic links, and checks that
+     * no target would overwrite a source.
+     *
+     * @return A job for each regular file under source, largest first.
+     * @throws IOException If the target is the source or lies inside it, or a target file is also a source file.
+     */
+    private static List<FileJob> listJobs(Path source, Path target) throws IOException {
+        if (!Files.exists(source)) {
+            throw new NoSuchFileException(source.toString());
+        }
+        source = source.toRealPath();
+        target = realPath(target);
+        List<FileJob> jobs = new ArrayList<FileJob>();
+        if (Files.isRegularFile(source)) {
+            jobs.add(new FileJob(source, target, Files.size(source)));
+        } else if (Files.isDirectory(source)) {
+            if (target.startsWith(source)) {
+                throw new IOException("Target " + target + " is inside the source " + source);
+            }
+            try (Stream<Path> files = Files.walk(source)) {
+                for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                    Path to = realPath(target.resolve(source.relativize(file).toString()));
+                    jobs.add(new FileJob(file.toRealPath(), to, Files.size(file)));
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        } else {
+            throw new NoSuchFileException(source.toString());
+        }
+        Set<Path> sources = sources(jobs);
+        for (FileJob job : jobs) {
+            if (sources.contains(job.target)) {
+                throw new IOException("Target " + job.target + " is also a source");
+            }
+        }
+        jobs.sort(Comparator.comparingLong((FileJob job) -> job.size).reversed());
+        return jobs;
+    }
+
+    /**
+     * @return The path with every part that exists resolved through symbolic links, and the rest appended as given.
+     */
+    private static Path realPath(Path path) throws IOException {
+        Path absolute = path.toAbsolutePath().normalize();
+        if (Files.exists(absolute)) {
+            return absolute.toRealPath();
+        }
+        Path parent = absolute.getParent();
+        return parent == null ? absolute : realPath(parent).resolve(absolute.getFileName().toString());
+    }
+
+    /**
+     * @return The source of every job.
+     */
+    private static Set<Path> sources(List<FileJob> jobs) {
+        Set<Path> sources = new HashSet<Path>();
+        for (FileJob job : jobs) {
+            sources.add(job.source);
+        }
+        return sources;
+    }
+
+    /**
+     * @return The header an encrypted file starts with, with a new file id.
+     */
+    private byte[] fileHeader() {
+        byte[] id = new byte[FILE_ID_LENGTH];
+        RANDOM.nextBytes(id);
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_LENGTH);
+        header.putInt(MAGIC).put((byte) VERSION).put((byte) mode.ordinal()).putShort((short) 0).putInt(segmentSize);
+        header.put(id);
+        return header.array();
+    }
+
+    /**
+     * Reads the header of an encrypted file into the job and checks that it was written with this pipeline's mode.
+     *
+     * @return The segment size the file was encrypted with.
+     */
+    private int readFileHeader(FileJob job, FileChannel in) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_LENGTH);
+        if (job.size < FILE_HEADER_LENGTH || readFully(in, header) < FILE_HEADER_LENGTH || header.getInt(0) != MAGIC
+                || header.get(4) != VERSION) {
+            throw new IOException("Not an encrypted file: " + job.source);
+        }
+        int fileMode = header.get(5);
+        if (fileMode != mode.ordinal()) {
+            String name = fileMode >= 0 && fileMode < BlockCipherMode.values().length ? BlockCipherMode.values()[fileMode].name()
+                    : "unknown";
+            throw new IOException("File was encrypted in " + name + " mode, not " + mode + ": " + job.source);
+        }
+        int fileSegmentSize = header.getInt(8);
+        if (fileSegmentSize <= 0 || fileSegmentSize > MAX_SEGMENT_SIZE) {
+            throw new IOException("Invalid segment size " + fileSegmentSize + ": " + job.source);
+        }
+        job.header = header.array();
+        return fileSegmentSize;
+    }
+
+    /**
+     * Fills in the associated data that binds a GCM record to its place in its file.
+     *
+     * @param segment The segment being encrypted or decrypted.
+     * @param aad A buffer of {@value #AAD_LENGTH} bytes to fill.
+     * @return The array backing aad.
+     */
+    private static byte[] associatedData(Segment segment, ByteBuffer aad) {
+        aad.clear();
+        aad.put(segment.job.header).putInt(segment.index).put((byte) (segment.last ? 1 : 0));
+        return aad.array();
+    }
+
+    /**
+     * @return The number of bytes read, which is less than requested only at the end of the file.
+     */
+    private static int readFully(FileChannel in, ByteBuffer dst) throws IOException {
+        int total = 0;
+        while (dst.hasRemaining()) {
+            int n = in.read(dst);
+            if (n < 0) {
+                break;
+            }
+            total += n;
+        }
+        return total;
+    }
+
+    /**
+     * Report describes a completed run of a {@link Pipeline}.
+     */
+    public static final class Report {
+        private final int files;
+        private final long bytes;
+        private final long nanos;
+
+        /**
+         * @param files The number of files transformed.
+         * @param bytes The number of plaintext bytes transformed.
+         * @param nanos The time the run took, in nanoseconds.
+         */
+        public Report(int files, long bytes, long nanos) {
+            this.files = files;
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+
+        /**
+         * @return The number of files transformed.
+         */
+        public int getFiles() {
+            return files;
+        }
+
+        /**
+         * @return The number of plaintext bytes transformed.
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * @return The time the run took, in nanoseconds, including listing the files.
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * @return The plaintext bytes transformed per second, in megabytes (10^6 bytes).
+         */
+        public double getThroughput() {
+            return nanos == 0 ? 0 : bytes * 1e3 / nanos;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d files, %d bytes in %.3f s (%.1f MB/s)", files, bytes, nanos / 1e9,
+                    getThroughput());
+        }
+    }
+
+    /**
+     * Run holds the queues and threads of a single run.
+     */
+    private final class Run {
+        private final List<FileJob> jobs;
+        private final boolean encrypt;
+        private final boolean check;
+
+        private final ConcurrentLinkedQueue<FileJob> files;
+        private final BlockingQueue<Segment> free = new ArrayBlockingQueue<Segment>(depth);
+        private final BlockingQueue<Segment> toWorkers = new ArrayBlockingQueue<Segment>(depth);
+        private final BlockingQueue<Segment> toWriters = new ArrayBlockingQueue<Segment>(depth);
+        private final AtomicInteger readersLeft = new AtomicInteger(readers);
+        private final AtomicInteger workersLeft = new AtomicInteger(workers);
+        private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        private final AtomicLong bytes = new AtomicLong();
+        private final List<Thread> threads = new ArrayList<Thread>();
+
+        Run(List<FileJob> jobs, boolean encrypt, boolean check) {
+            this.jobs = jobs;
+            this.encrypt = encrypt;
+            this.check = check;
+            this.files = new ConcurrentLinkedQueue<FileJob>(jobs);
+            for (int i = 0; i < depth; i++) {
+                free.add(new Segment());
+            }
+        }
+
+        /**
+         * Starts every thread, waits for them all to finish and rethrows the first failure.
+         */
+        void execute() throws IOException {
+            for (int i = 0; i < readers; i++) {
+                add("aes-reader-" + i, this::read);
+            }
+            for (int i = 0; i < workers; i++) {
+                add("aes-worker-" + i, this::work);
+            }
+            for (int i = 0; i < writers; i++) {
+                add("aes-writer-" + i, this::write);
+            }
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            boolean interrupted = false;
+            for (Thread thread : threads) {
+                while (thread.isAlive()) {
+                    try {
+                        thread.join();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                        fail(e);
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            Throwable t = failure.get();
+            if (t == null) {
+                return;
+            }
+            Set<Path> sources = sources(jobs);
+            for (FileJob job : jobs) {
+                job.abort(sources);
+            }
+            if (t instanceof IOException) {
+                throw (IOException) t;
+            }
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            }
+            if (t instanceof Error) {
+                throw (Error) t;
+            }
+            throw new IOException(t);
+        }
+
+        private void add(String name, Stage stage) {
+            Thread thread = new Thread(() -> {
+                try {
+                    stage.run();
+                } catch (Throwable t) {
+                    fail(t);
+                }
+            }, name);
+            thread.setDaemon(true);
+            threads.add(thread);
+        }
+
+        /**
+         * Records the first failure and interrupts every thread, so that none is left waiting on a queue.
+         */
+        private void fail(Throwable t) {
+            if (failure.compareAndSet(null, t)) {
+                for (Thread thread : threads) {
+                    thread.interrupt();
+                }
+            }
+        }
+
+        /**
+         * Reads files into segments until none are left, then, if it is the last reader, tells the workers to stop.
+         */
+        private void read() throws IOException, InterruptedException {
+            FileJob job;
+            while ((job = files.poll()) != null) {
+                try (FileChannel in = FileChannel.open(job.source, StandardOpenOption.READ)) {
+                    if (encrypt) {
+                        readPlaintext(job, in);
+                    } else {
+                        readRecords(job, in);
+                    }
+                }
+            }
+            if (readersLeft.decrementAndGet() == 0) {
+                for (int i = 0; i < workers; i++) {
+                    toWorkers.put(Segment.END);
+                }
+            }
+        }
+
+        private void readPlaintext(FileJob job, FileChannel in) throws IOException, InterruptedException {
+            long count = Math.max(1, (job.size + segmentSize - 1) / segmentSize);
+            if (count > Integer.MAX_VALUE) {
+                throw new IOException("File too large for segment size " + segmentSize + ": " + job.source);
+            }
+            job.header = fileHeader();
+            for (int i = 0; i < count; i++) {
+                Segment segment = free.take();
+                segment.reset(job, i, i == count - 1);
+                int len = (int) Math.min(segmentSize, job.size - (long) i * segmentSize);
+                if (readFully(in, ByteBuffer.wrap(segment.input(len), 0, len)) < len) {
+                    throw new EOFException("File shrank while being read: " + job.source);
+                }
+                segment.inputLength = len;
+                toWorkers.put(segment);
+            }
+        }
+
+        private void readRecords(FileJob job, FileChannel in) throws IOException, InterruptedException {
+            int maxPlain = readFileHeader(job, in);
+            int maxCipher = cipher.getEncryptOutputSize(maxPlain);
+            long position = FILE_HEADER_LENGTH;
+            int index = 0;
+            do {
+                Segment segment = free.take();
+                ByteBuffer header = segment.header;
+                header.clear();
+                if (readFully(in, header) < RECORD_HEADER_LENGTH) {
+                    throw new EOFException("Truncated record header: " + job.source);
+                }
+                int plainLength = header.getInt(0);
+                int len = header.getInt(4);
+                if (plainLength < 0 || plainLength > maxPlain || len < 0 || len > maxCipher) {
+                    throw new IOException("Invalid record " + index + ": " + job.source);
+                }
+                if (readFully(in, ByteBuffer.wrap(segment.input(len), 0, len)) < len) {
+                    throw new EOFException("Truncated record " + index + ": " + job.source);
+                }
+                position += RECORD_HEADER_LENGTH + len;
+                segment.reset(job, index++, position >= job.size);
+                segment.inputLength = len;
+                segment.plainLength = plainLength;
+                toWorkers.put(segment);
+            } while (position < job.size);
+        }
+
+        /**
+         * Transforms segments until told to stop, then, if it is the last worker, tells the writers to stop.
+         */
+        private void work() throws IOException, InterruptedException {
+            byte[] scratch = new byte[0];
+            ByteBuffer aad = ByteBuffer.allocate(AAD_LENGTH);
+            Segment segment;
+            while ((segment = toWorkers.take()) != Segment.END) {
+                if (encrypt) {
+                    byte[] out = segment.output(cipher.getEncryptOutputSize(segment.inputLength));
+                    segment.outputLength = encrypt(segment, segment.input, segment.inputLength, out, aad);
+                    if (check) {
+                        int size = cipher.getDecryptOutputSize(segment.outputLength);
+                        if (scratch.length < size) {
+                            scratch = new byte[size];
+                        }
+                        int n = decrypt(segment, out, segment.outputLength, scratch, aad);
+                        if (n < segment.inputLength
+                                || !Arrays.equals(scratch, 0, segment.inputLength, segment.input, 0, segment.inputLength)) {
+                            throw new IllegalStateException("Segment " + segment.index + " of " + segment.job.source
+                                    + " did not decrypt to its plaintext");
+                        }
+                    }
+                } else {
+                    byte[] out = segment.output(cipher.getDecryptOutputSize(segment.inputLength));
+                    int n;
+                    try {
+                        n = decrypt(segment, segment.input, segment.inputLength, out, aad);
+                    } catch (IllegalArgumentException e) {
+                        // a mode rejects a malformed ciphertext, such as a CBC record that is not whole blocks
+                        throw new IOException("Invalid record " + segment.index + ": " + segment.job.source, e);
+                    }
+                    // the plaintext length in the record header is not authenticated, so GCM must match it exactly
+                    if (n < segment.plainLength || gcm != null && n != segment.plainLength) {
+                        throw new IOException("Invalid record " + segment.index + ": " + segment.job.source);
+                    }
+                }
+                toWriters.put(segment);
+            }
+            if (workersLeft.decrementAndGet() == 0) {
+                for (int i = 0; i < writers; i++) {
+                    toWriters.put(Segment.END);
+                }
+            }
+        }
+
+        /**
+         * Encrypts a segment, binding it to its place in its file in GCM mode.
+         *
+         * @return The number of bytes written to out.
+         */
+        private int encrypt(Segment segment, byte[] in, int len, byte[] out, ByteBuffer aad) {
+            if (gcm == null) {
+                return cipher.encrypt(in, 0, len, out, 0, key);
+            }
+            return gcm.encrypt(in, 0, len, out, 0, key, associatedData(segment, aad));
+        }
+
+        /**
+         * Decrypts a segment, checking in GCM mode that it was encrypted for its place in its file.
+         *
+         * @return The number of bytes written to out.
+         */
+        private int decrypt(Segment segment, byte[] in, int len, byte[] out, ByteBuffer aad) {
+            if (gcm == null) {
+                return cipher.decrypt(in, 0, len, out, 0, key);
+            }
+            return gcm.decrypt(in, 0, len, out, 0, key, associatedData(segment, aad));
+        }
+
+        /**
+         * Writes segments in order until told to stop.
+         */
+        private void write() throws IOException, InterruptedException {
+            Segment segment;
+            while ((segment = toWriters.take()) != Segment.END) {
+                bytes.addAndGet(segment.job.write(segment, encrypt, free));
+            }
+        }
+    }
+
+    /**
+     * Stage is the loop a single thread of a {@link Run} executes.
+     */
+    private interface Stage {
+
+        /**
+         * Runs the loop until its input is exhausted.
+         */
+        public void run() throws IOException, InterruptedException;
+    }
+}
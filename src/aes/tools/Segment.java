@@ -0,0 +1,78 @@
+package aes.tools;
+import java.nio.ByteBuffer;
+
+/**
+ * <p>
+ * Segment is a piece of a file on its way through a {@link Pipeline}, together with the buffers it is read into and
+ * transformed into.
+ * </p>
+ *
+ * <p>
+ * Segments are pooled. A reader takes a free segment, fills it and passes it to the cipher workers, which pass it to the
+ * writers, which return it to the pool once it has been written. The buffers grow to the largest segment they have held
+ * and are reused from then on.
+ * </p>
+ */
+final class Segment {
+    /**
+     * Marks the end of a queue. The thread that takes it stops.
+     */
+    static final Segment END = new Segment();
+
+    /**
+     * The record header: the length of the plaintext, then the length of the ciphertext.
+     */
+    final ByteBuffer header = ByteBuffer.allocate(Pipeline.RECORD_HEADER_LENGTH);
+
+    FileJob job;
+    int index;
+    boolean last;
+
+    byte[] input = new byte[0];
+    int inputLength;
+    byte[] output = new byte[0];
+    int outputLength;
+
+    /**
+     * The length of the plaintext, as read from the record header when decrypting.
+     */
+    int plainLength;
+
+    /**
+     * Prepares the segment to hold a piece of a file.
+     *
+     * @param job The file the piece belongs to.
+     * @param index The position of the piece within the file, from 0.
+     * @param last True if no piece follows this one.
+     */
+    void reset(FileJob job, int index, boolean last) {
+        this.job = job;
+        this.index = index;
+        this.last = last;
+        this.inputLength = 0;
+        this.outputLength = 0;
+        this.plainLength = 0;
+    }
+
+    /**
+     * @param length The number of bytes the input buffer must hold.
+     * @return The input buffer.
+     */
+    byte[] input(int length) {
+        if (input.length < length) {
+            input = new byte[length];
+        }
+        return input;
+    }
+
+    /**
+     * @param length The number of bytes the output buffer must hold.
+     * @return The output buffer.
+     */
+    byte[] output(int length) {
+        if (output.length < length) {
+            output = new byte[length];
+        }
+        return output;
+    }
+}
@@ -1,9 +1,67 @@
 package utils;
 
 /**
- * Functions contains various static functions to assist with bit-manipulation.
+ * <p>
+ * Functions contains various static functions to assist with bit-manipulation and arithmetic in the finite field
+ * GF(2^8) used by AES.
+ * </p>
+ *
+ * <p>
+ * Multiplication and inversion are table lookups. Every non-zero element of the field is a power of the generator {03},
+ * so a product is the antilog of the sum of the logs and an inverse is the antilog of 255 minus the log. The constant
+ * multiplications of MixColumns and InvMixColumns ({02}, {03}, {09}, {0b}, {0d} and {0e}) have a table each. The tables
+ * are built once with {@link #xtime(byte)} when the class is loaded.
+ * </p>
+ *
+ * <p>
+ * NOTE: the lookups are indexed by the operands, so their timing can depend on secret data through the cache. They serve
+ * the reference State path, key expansion and table generation, not the constant-time bitsliced backend.
+ * </p>
  */
 public class Functions {
+    /**
+     * LOG[x] is the power of {03} that equals x, for x from 1 to 255. LOG[0] is unused.
+     */
+    private static final int[] LOG = new int[256];
+
+    /**
+     * EXP[i] is {03} to the power i. It is written out twice so that the sum of two logs needs no reduction mod 255.
+     */
+    private static final byte[] EXP = new byte[2 * 255];
+
+    private static final byte[] INVERSE = new byte[256];
+    private static final byte[] MUL2 = new byte[256];
+    private static final byte[] MUL3 = new byte[256];
+    private static final byte[] MUL9 = new byte[256];
+    private static final byte[] MUL11 = new byte[256];
+    private static final byte[] MUL13 = new byte[256];
+    private static final byte[] MUL14 = new byte[256];
+
+    static {
+        byte power = 0x01;
+        for (int i = 0; i < 255; i++) {
+            EXP[i] = power;
+            EXP[i + 255] = power;
+            LOG[power & 0xff] = i;
+            // multiply by the generator {03} = x + 1
+            power = (byte) (xtime(power) ^ power);
+        }
+        for (int x = 1; x < 256; x++) {
+            INVERSE[x] = EXP[255 - LOG[x]];
+        }
+        for (int x = 0; x < 256; x++) {
+            byte b = (byte) x;
+            byte b2 = xtime(b);
+            byte b4 = xtime(b2);
+            byte b8 = xtime(b4);
+            MUL2[x] = b2;
+            MUL3[x] = (byte) (b2 ^ b);
+            MUL9[x] = (byte) (b8 ^ b);
+            MUL11[x] = (byte) (b8 ^ b2 ^ b);
+            MUL13[x] = (byte) (b8 ^ b4 ^ b);
+            MUL14[x] = (byte) (b8 ^ b4 ^ b2);
+        }
+    }
 
     /**
      * Do not allow instantiation.
@@ -19,13 +77,9 @@ public class Functions {
      * @return The highest bit set.
      */
     public static int findHighestBitSet(int algMatrix, int n) {
-        int highestBit = 0;
-        for (int i = 0; i < n; i++) {
-            if (isBitSet(algMatrix, i)) {
-                highestBit = i;
-            }
-        }
-        return highestBit;
+        int bits = n >= 32 ? algMatrix : algMatrix & ((1 << n) - 1);
+        // 31 - numberOfLeadingZeros is the index of the highest set bit; no bits set gives 0 as before
+        return bits == 0 ? 0 : 31 - Integer.numberOfLeadingZeros(bits);
     }
 
     /**
@@ -46,53 +100,7 @@ public class Functions {
      * @return A byte representing the inverse of the polynomial passed in.
      */
     public static byte getMultInverse(int poly) {
-        if (poly == 0) {
-            return 0;
-        }
-        int[][] algMatrix = new int[2][3];
-
-        algMatrix[0][0] = 0x011b;
-        algMatrix[0][1] = 1;
-        algMatrix[0][2] = 0;
-
-        algMatrix[1][0] = poly;
-        algMatrix[1][1] = 0;
-        algMatrix[1][2] = 1;
-
-        while (algMatrix[0][0] != 1 && algMatrix[1][0] != 1) {
-            int highestBit0 = findHighestBitSet(algMatrix[0][0], 9);
-            int highestBit1 = findHighestBitSet(algMatrix[1][0], 8);
-            int diff = highestBit0 - highestBit1;
-
-            if (diff > 0) {
-                algMatrix[0][0] ^= xtimes(algMatrix[1][0], diff);
-                algMatrix[0][1] ^= xtimes(algMatrix[1][1], diff);
-                algMatrix[0][2] ^= xtimes(algMatrix[1][2], diff);
-            } else if (diff < 0) {
-                algMatrix[1][0] ^= xtimes(algMatrix[0][0], (diff * -1));
-                algMatrix[1][1] ^= xtimes(algMatrix[0][1], (diff * -1));
-                algMatrix[1][2] ^= xtimes(algMatrix[0][2], (diff * -1));
-            } else { // diff == 0
-                if (algMatrix[0][0] > algMatrix[1][0]) {
-                    algMatrix[0][0] ^= algMatrix[1][0];
-                    algMatrix[0][1] ^= algMatrix[1][1];
-                    algMatrix[0][2] ^= algMatrix[1][2];
-                } else {
-                    algMatrix[1][0] ^= algMatrix[0][0];
-                    algMatrix[1][1] ^= algMatrix[0][1];
-                    algMatrix[1][2] ^= algMatrix[0][2];
-                }
-            }
-
-            algMatrix[0][0] &= 0xff; // fixes java's impulsive nature to sign extend
-            algMatrix[1][0] &= 0xff;
-        }
-
-        if (algMatrix[0][0] == 1) {
-            return (byte) algMatrix[0][2];
-        }
-
-        return (byte) algMatrix[1][2];
+        return INVERSE[poly & 0xff];
     }
 
     /**
@@ -121,16 +129,12 @@ public class Functions {
      * @return A byte representing (poly)(x) in finite field 2^8.
      */
     public static byte xtime(byte poly) {
-        byte b = (byte) (poly << 1);
-        byte mask = 0x1b;
-        if (isBitSet(poly, 7)) {
-            b = (byte) (b ^ mask);
-        }
-        return b;
+        // poly >> 7 sign extends the high bit to all ones or all zeros, which selects the reduction without a branch
+        return (byte) ((poly << 1) ^ ((poly >> 7) & 0x1b));
     }
 
     /**
-     * Multiplies a polynomial by 'x' n times This is used for getting the multiplicative inverse and does not need to reduce with respect to the mod.
+     * Multiplies a polynomial by 'x' n times without reducing it with respect to the mod.
      *
      * @param poly A polynomial to multiply.
      * @param n The number of times to multiply the polynomial by 'x'.
@@ -141,27 +145,64 @@ public class Functions {
     }
 
     /**
-     * Multiplies 2 bytes modulo x^4 + 1.
+     * Multiplies 2 bytes in the finite field 2^8.
      *
      * @param a A single byte.
      * @param s A single byte.
-     * @return (a)(s) (mod x^4 + 1).
+     * @return (a)(s) in finite field 2^8.
      */
     public static byte mul(byte a, byte s) {
-        byte product = 0;
-        byte temp;
-
-        while (a != 0) {
-            if ((a & 0x01) != 0) {
-                product = (byte) (product ^ s);
-            }
-            temp = (byte) (s & 0x80);
-            s = (byte) (s << 0x01);
-            if (temp != 0) {
-                s = (byte) (s ^ 0x1b);
-            }
-            a = (byte) ((a & 0xff) >> 1);
+        if (a == 0 || s == 0) {
+            return 0;
         }
-        return product;
+        return EXP[LOG[a & 0xff] + LOG[s & 0xff]];
+    }
+
+    /**
+     * @param b A single byte.
+     * @return ({02})(b) in finite field 2^8.
+     */
+    public static byte mul2(byte b) {
+        return MUL2[b & 0xff];
+    }
+
+    /**
+     * @param b A single byte.
+     * @return ({03})(b) in finite field 2^8.
+     */
+    public static byte mul3(byte b) {
+        return MUL3[b & 0xff];
+    }
+
+    /**
+     * @param b A single byte.
+     * @return ({09})(b) in finite field 2^8.
+     */
+    public static byte mul9(byte b) {
+        return MUL9[b & 0xff];
+    }
+
+    /**
+     * @param b A single byte.
+     * @return ({0b})(b) in finite field 2^8.
+     */
+    public static byte mul11(byte b) {
+        return MUL11[b & 0xff];
+    }
+
+    /**
+     * @param b A single byte.
+     * @return ({0d})(b) in finite field 2^8.
+     */
+    public static byte mul13(byte b) {
+        return MUL13[b & 0xff];
+    }
+
+    /**
+     * @param b A single byte.
+     * @return ({0e})(b) in finite field 2^8.
+     */
+    public static byte mul14(byte b) {
+        return MUL14[b & 0xff];
     }
 }
@@ -1,9 +1,54 @@
 package utils;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 
 /**
+ * <p>
  * StringHelper contains static functions to convert between byte arrays and hex strings.
+ * </p>
+ *
+ * <p>
+ * Encoding and decoding are table lookups with no per-byte allocation. The methods that take offsets write into a
+ * caller-supplied char[] or byte[], where a byte[] holds ASCII digits, and the {@link ByteBuffer} methods work the same
+ * way on heap or direct buffers. The stream methods convert payloads of any length through a fixed buffer.
+ * </p>
+ *
+ * <p>
+ * Hex is written in upper case. Both cases are accepted when decoding, and anything other than an even number of hex
+ * digits is rejected with an {@link IllegalArgumentException}.
+ * </p>
  */
 public class StringHelper {
+    /**
+     * The number of bytes converted per read by the stream methods.
+     */
+    private static final int STREAM_CHUNK = 8192;
+
+    /**
+     * DIGITS[b] holds the two hex digits of the byte b, high digit first.
+     */
+    private static final char[] DIGITS = new char[512];
+
+    /**
+     * VALUES[c] is the value of the hex digit c, or -1 if c is not a hex digit, for every ASCII character c.
+     */
+    private static final byte[] VALUES = new byte[128];
+
+    static {
+        String digits = "0123456789ABCDEF";
+        for (int b = 0; b < 256; b++) {
+            DIGITS[2 * b] = digits.charAt(b >>> 4);
+            DIGITS[2 * b + 1] = digits.charAt(b & 0x0f);
+        }
+        for (int c = 0; c < VALUES.length; c++) {
+            VALUES[c] = (byte) Character.digit(c, 16);
+        }
+    }
 
     /**
      * Do not allow instantiation.
@@ -18,11 +63,9 @@ public class StringHelper {
      * @return Hex representation of the provided bytes.
      */
     public static String bytesToHex(byte[] bytes) {
-        StringBuffer result = new StringBuffer();
-        for (byte b : bytes) {
-            result.append(String.format("%02X", b));
-        }
-        return result.toString();
+        char[] hex = new char[2 * bytes.length];
+        encodeHex(bytes, 0, bytes.length, hex, 0);
+        return new String(hex);
     }
 
     /**
@@ -30,30 +73,266 @@ public class StringHelper {
      *
      * @param s Hex string to convert.
      * @return Byte array representation of the hex string.
+     * @throws IllegalArgumentException If the string has an odd length or a character that is not a hex digit.
      */
     public static byte[] hexStringToByteArray(String s) {
-        int len = s.length();
-        byte[] data = new byte[len / 2];
+        byte[] data = new byte[s.length() / 2];
+        decodeHex(s, 0, s.length(), data, 0);
+        return data;
+    }
+
+    /**
+     * Writes the hex digits of a range of bytes as chars.
+     *
+     * @param src The array holding the bytes.
+     * @param srcOff The offset of the first byte.
+     * @param len The number of bytes to encode.
+     * @param dst The array to write 2 * len hex digits to.
+     * @param dstOff The offset to write the first digit to.
+     * @return The number of chars written.
+     */
+    public static int encodeHex(byte[] src, int srcOff, int len, char[] dst, int dstOff) {
+        checkRange(src.length, srcOff, len);
+        if (dstOff < 0 || dst.length - dstOff < 2 * len) {
+            throw new BufferOverflowException();
+        }
+        for (int i = 0; i < len; i++) {
+            int pair = 2 * (src[srcOff + i] & 0xff);
+            dst[dstOff + 2 * i] = DIGITS[pair];
+            dst[dstOff + 2 * i + 1] = DIGITS[pair + 1];
+        }
+        return 2 * len;
+    }
+
+    /**
+     * Writes the hex digits of a range of bytes as ASCII bytes.
+     *
+     * @param src The array holding the bytes.
+     * @param srcOff The offset of the first byte.
+     * @param len The number of bytes to encode.
+     * @param dst The array to write 2 * len ASCII hex digits to. It must not overlap the bytes being encoded.
+     * @param dstOff The offset to write the first digit to.
+     * @return The number of bytes written.
+     */
+    public static int encodeHex(byte[] src, int srcOff, int len, byte[] dst, int dstOff) {
+        checkRange(src.length, srcOff, len);
+        if (dstOff < 0 || dst.length - dstOff < 2 * len) {
+            throw new BufferOverflowException();
+        }
+        for (int i = 0; i < len; i++) {
+            int pair = 2 * (src[srcOff + i] & 0xff);
+            dst[dstOff + 2 * i] = (byte) DIGITS[pair];
+            dst[dstOff + 2 * i + 1] = (byte) DIGITS[pair + 1];
+        }
+        return 2 * len;
+    }
+
+    /**
+     * Writes the hex digits of the remaining bytes of src to dst as ASCII bytes, advancing both buffers.
+     *
+     * @param src The buffer holding the bytes between its position and limit.
+     * @param dst The buffer to write the ASCII hex digits to.
+     * @return The number of bytes written to dst.
+     */
+    public static int encodeHex(ByteBuffer src, ByteBuffer dst) {
+        int len = src.remaining();
+        if (dst.remaining() < 2 * len) {
+            throw new BufferOverflowException();
+        }
+        for (int i = 0; i < len; i++) {
+            int pair = 2 * (src.get() & 0xff);
+            dst.put((byte) DIGITS[pair]);
+            dst.put((byte) DIGITS[pair + 1]);
+        }
+        return 2 * len;
+    }
+
+    /**
+     * Decodes a range of hex digits held as chars.
+     *
+     * @param src The hex digits, for example a String or a StringBuilder.
+     * @param srcOff The index of the first digit.
+     * @param len The number of digits, which must be even.
+     * @param dst The array to write len / 2 bytes to.
+     * @param dstOff The offset to write the first byte to.
+     * @return The number of bytes written.
+     * @throws IllegalArgumentException If len is odd or the range holds a character that is not a hex digit.
+     */
+    public static int decodeHex(CharSequence src, int srcOff, int len, byte[] dst, int dstOff) {
+        checkRange(src.length(), srcOff, len);
+        checkEven(len);
+        if (dstOff < 0 || dst.length - dstOff < len / 2) {
+            throw new BufferOverflowException();
+        }
         for (int i = 0; i < len; i += 2) {
-            data[i / 2] = (byte) ((Character.digit(s.charAt(i), 16) << 4) + Character.digit(s.charAt(i + 1), 16));
+            dst[dstOff + i / 2] = decodePair(src.charAt(srcOff + i), src.charAt(srcOff + i + 1), srcOff + i);
         }
-        return data;
+        return len / 2;
+    }
+
+    /**
+     * Decodes a range of hex digits held in a char[].
+     *
+     * @param src The array holding the hex digits.
+     * @param srcOff The offset of the first digit.
+     * @param len The number of digits, which must be even.
+     * @param dst The array to write len / 2 bytes to.
+     * @param dstOff The offset to write the first byte to.
+     * @return The number of bytes written.
+     * @throws IllegalArgumentException If len is odd or the range holds a character that is not a hex digit.
+     */
+    public static int decodeHex(char[] src, int srcOff, int len, byte[] dst, int dstOff) {
+        checkRange(src.length, srcOff, len);
+        checkEven(len);
+        if (dstOff < 0 || dst.length - dstOff < len / 2) {
+            throw new BufferOverflowException();
+        }
+        for (int i = 0; i < len; i += 2) {
+            dst[dstOff + i / 2] = decodePair(src[srcOff + i], src[srcOff + i + 1], srcOff + i);
+        }
+        return len / 2;
+    }
+
+    /**
+     * Decodes a range of hex digits held as ASCII bytes.
+     *
+     * @param src The array holding the ASCII hex digits.
+     * @param srcOff The offset of the first digit.
+     * @param len The number of digits, which must be even.
+     * @param dst The array to write len / 2 bytes to. It may be src with dstOff at most srcOff, to decode in place.
+     * @param dstOff The offset to write the first byte to.
+     * @return The number of bytes written.
+     * @throws IllegalArgumentException If len is odd or the range holds a byte that is not a hex digit.
+     */
+    public static int decodeHex(byte[] src, int srcOff, int len, byte[] dst, int dstOff) {
+        checkRange(src.length, srcOff, len);
+        checkEven(len);
+        if (dstOff < 0 || dst.length - dstOff < len / 2) {
+            throw new BufferOverflowException();
+        }
+        for (int i = 0; i < len; i += 2) {
+            dst[dstOff + i / 2] = decodePair((char) (src[srcOff + i] & 0xff), (char) (src[srcOff + i + 1] & 0xff), srcOff + i);
+        }
+        return len / 2;
+    }
+
+    /**
+     * Decodes the remaining ASCII hex digits of src into dst, advancing both buffers. Nothing is consumed or written if
+     * the input is invalid.
+     *
+     * @param src The buffer holding the ASCII hex digits between its position and limit.
+     * @param dst The buffer to write the bytes to.
+     * @return The number of bytes written to dst.
+     * @throws IllegalArgumentException If the number of digits is odd or one of them is not a hex digit.
+     */
+    public static int decodeHex(ByteBuffer src, ByteBuffer dst) {
+        int len = src.remaining();
+        checkEven(len);
+        if (dst.remaining() < len / 2) {
+            throw new BufferOverflowException();
+        }
+        int inPos = src.position();
+        int outPos = dst.position();
+        for (int i = 0; i < len; i += 2) {
+            char hi = (char) (src.get(inPos + i) & 0xff);
+            char lo = (char) (src.get(inPos + i + 1) & 0xff);
+            dst.put(outPos + i / 2, decodePair(hi, lo, i));
+        }
+        src.position(inPos + len);
+        dst.position(outPos + len / 2);
+        return len / 2;
+    }
+
+    /**
+     * Writes the hex digits of every byte read from in to out. Neither stream is closed.
+     *
+     * @param in The stream to read bytes from until it ends.
+     * @param out The writer to write the hex digits to.
+     * @return The number of bytes encoded.
+     * @throws IOException If reading or writing fails.
+     */
+    public static long encodeHex(InputStream in, Writer out) throws IOException {
+        byte[] bytes = new byte[STREAM_CHUNK];
+        char[] hex = new char[2 * STREAM_CHUNK];
+        long total = 0;
+        int n;
+        while ((n = in.read(bytes)) != -1) {
+            out.write(hex, 0, encodeHex(bytes, 0, n, hex, 0));
+            total += n;
+        }
+        return total;
+    }
+
+    /**
+     * Decodes every hex digit read from in and writes the bytes to out. Neither stream is closed.
+     *
+     * @param in The reader to read hex digits from until it ends.
+     * @param out The stream to write the bytes to.
+     * @return The number of bytes decoded.
+     * @throws IOException If reading or writing fails.
+     * @throws IllegalArgumentException If the input has an odd number of digits or a character that is not a hex digit.
+     */
+    public static long decodeHex(Reader in, OutputStream out) throws IOException {
+        char[] hex = new char[2 * STREAM_CHUNK];
+        byte[] bytes = new byte[STREAM_CHUNK];
+        long total = 0;
+        int pending = 0;
+        int n;
+        while ((n = in.read(hex, pending, hex.length - pending)) != -1) {
+            int available = pending + n;
+            int even = available & ~1;
+            int decoded = decodeHex(hex, 0, even, bytes, 0);
+            out.write(bytes, 0, decoded);
+            total += decoded;
+            // a digit whose partner has not been read yet is carried to the front of the next read
+            pending = available - even;
+            if (pending != 0) {
+                hex[0] = hex[even];
+            }
+        }
+        checkEven(pending);
+        return total;
     }
 
     /**
      * Returns a pretty hex representation of a 2D array.
      */
     public static String prettify2DArrayAsHex(byte[][] arr) {
-        StringBuffer buff = new StringBuffer();
+        StringBuilder buff = new StringBuilder();
         buff.append("_______________\n");
         for (byte[] element : arr) {
             buff.append("| ");
             for (byte element2 : element) {
-                buff.append(String.format("%02X", element2) + " ");
+                int pair = 2 * (element2 & 0xff);
+                buff.append(DIGITS[pair]).append(DIGITS[pair + 1]).append(' ');
             }
             buff.append("|\n");
         }
         buff.append("|_____________|\n");
         return buff.toString();
     }
+
+    /**
+     * @param index The index of hi in the input, for the error message.
+     * @return The byte whose hex digits are hi and lo.
+     */
+    private static byte decodePair(char hi, char lo, int index) {
+        // chars outside ASCII are rejected by the range check before the table is read
+        if ((hi | lo) >= VALUES.length || (VALUES[hi] | VALUES[lo]) < 0) {
+            throw new IllegalArgumentException("Invalid hex digits at index " + index + ": '" + hi + lo + "'");
+        }
+        return (byte) (VALUES[hi] << 4 | VALUES[lo]);
+    }
+
+    private static void checkEven(int len) {
+        if ((len & 1) != 0) {
+            throw new IllegalArgumentException("Hex input has an odd number of digits");
+        }
+    }
+
+    private static void checkRange(int length, int off, int len) {
+        if (off < 0 || len < 0 || off > length - len) {
+            throw new IndexOutOfBoundsException("Range [" + off + ", " + off + " + " + len + ") out of bounds for length " + length);
+        }
+    }
 }
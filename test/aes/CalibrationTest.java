@@ -0,0 +1,92 @@
+package aes;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import aes.engines.Backend;
+
+/**
+ * Tests for the calibration that resolves {@link Backend#AUTO}.
+ */
+public class CalibrationTest {
+
+    /**
+     * Test that calibration verifies and scores the candidates, never offers the bitsliced backend, and picks a backend
+     * that no other candidate beats by the margin.
+     */
+    @Test
+    public void testCalibrate() {
+        Calibration calibration = Calibration.calibrate(null);
+        Assert.assertFalse(calibration.isOverridden());
+        Assert.assertTrue(calibration.getThroughputs().containsKey(Backend.TABLE));
+        Assert.assertTrue(calibration.getThroughputs().containsKey(Backend.JDK));
+        Assert.assertFalse(calibration.getThroughputs().containsKey(Backend.REFERENCE));
+        Assert.assertFalse(calibration.getThroughputs().containsKey(Backend.BITSLICED));
+        Assert.assertFalse(calibration.getThroughputs().containsKey(Backend.VECTOR));
+
+        double selected = calibration.getThroughputs().get(calibration.getSelected());
+        for (double throughput : calibration.getThroughputs().values()) {
+            Assert.assertTrue(throughput < Calibration.MARGIN * selected);
+        }
+    }
+
+    /**
+     * Test that repeated calibrations on the same machine make the same choice.
+     */
+    @Test
+    public void testStable() {
+        Backend first = Calibration.calibrate(null).getSelected();
+        for (int i = 0; i < 2; i++) {
+            Assert.assertEquals(first, Calibration.calibrate(null).getSelected());
+        }
+    }
+
+    /**
+     * Test that close scores go to the preferred backend and only a clear win displaces it.
+     */
+    @Test
+    public void testSelect() {
+        Map<Backend, Double> throughputs = new EnumMap<Backend, Double>(Backend.class);
+        throughputs.put(Backend.TABLE, 100.0);
+        Assert.assertEquals(Backend.TABLE, Calibration.select(throughputs));
+        throughputs.put(Backend.JDK, 100.0);
+        Assert.assertEquals(Backend.JDK, Calibration.select(throughputs));
+        throughputs.put(Backend.TABLE, 120.0);
+        Assert.assertEquals(Backend.JDK, Calibration.select(throughputs));
+        throughputs.put(Backend.TABLE, 130.0);
+        Assert.assertEquals(Backend.TABLE, Calibration.select(throughputs));
+    }
+
+    /**
+     * Test that naming a backend skips calibration, and that AUTO does not.
+     */
+    @Test
+    public void testOverride() {
+        Calibration calibration = Calibration.calibrate(" bitsliced");
+        Assert.assertTrue(calibration.isOverridden());
+        Assert.assertEquals(Backend.BITSLICED, calibration.getSelected());
+        Assert.assertTrue(calibration.getThroughputs().isEmpty());
+
+        Assert.assertFalse(Calibration.calibrate("AUTO").isOverridden());
+    }
+
+    /**
+     * Test that an override that names no backend is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownOverride() {
+        Calibration.calibrate("fastest");
+    }
+
+    /**
+     * Test that the factory resolves AUTO to the calibrated backend.
+     */
+    @Test
+    public void testFactory() {
+        Backend selected = AesFactory.getSelectedBackend();
+        Assert.assertNotEquals(Backend.AUTO, selected);
+        Assert.assertEquals(AesFactory.getEngine(selected).getClass(), AesFactory.getEngine(Backend.AUTO).getClass());
+    }
+}
@@ -0,0 +1,64 @@
+package aes;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for caching expanded keys.
+ */
+public class KeyCacheTest {
+
+    /**
+     * Test that a cached key is only expanded once and is equal to a freshly expanded key.
+     */
+    @Test
+    public void testHit() {
+        KeyCache cache = new KeyCache(4);
+        byte[] seed = seed(1);
+
+        Key first = cache.get(seed);
+        Key second = cache.get(seed.clone());
+        Assert.assertSame(first, second);
+        Assert.assertArrayEquals(Key.getKey(seed).getExpandedKey(), first.getExpandedKey());
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+    }
+
+    /**
+     * Test that modifying the caller's array after a lookup does not corrupt the cache.
+     */
+    @Test
+    public void testKeyMaterialIsCopied() {
+        KeyCache cache = new KeyCache(4);
+        byte[] seed = seed(1);
+        Key first = cache.get(seed);
+
+        seed[0] ^= 0x01;
+        Assert.assertNotSame(first, cache.get(seed));
+        Assert.assertEquals(2, cache.getMissCount());
+    }
+
+    /**
+     * Test that the least recently used key is evicted when the cache is full.
+     */
+    @Test
+    public void testEviction() {
+        KeyCache cache = new KeyCache(2, 1);
+        Key first = cache.get(seed(1));
+        cache.get(seed(2));
+        cache.get(seed(1)); // seed 2 is now the least recently used
+        cache.get(seed(3));
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(1, cache.getEvictionCount());
+        Assert.assertSame(first, cache.get(seed(1)));
+        cache.get(seed(2));
+        Assert.assertEquals(4, cache.getMissCount());
+    }
+
+    private static byte[] seed(int n) {
+        byte[] seed = new byte[16];
+        seed[15] = (byte) n;
+        return seed;
+    }
+}
@@ -1,5 +1,7 @@
 package aes;
 
+import java.util.Arrays;
+
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -107,4 +109,64 @@ public class KeyTest {
         Key key = Key.getKey(seed);
         Assert.assertArrayEquals(expandedKey, key.getExpandedKey());
     }
+
+    /**
+     * Test that the decryption key schedule holds the round keys in reverse order with InvMixColumns applied to the
+     * middle rounds.
+     */
+    @Test
+    public void testDecryptionKeySchedule() {
+        byte[] seed = new byte[] { (byte) 0x00, (byte) 0x01, (byte) 0x02, (byte) 0x03, (byte) 0x04, (byte) 0x05, (byte) 0x06, (byte) 0x07, (byte) 0x08, (byte) 0x09,
+                (byte) 0x0a, (byte) 0x0b, (byte) 0x0c, (byte) 0x0d, (byte) 0x0e, (byte) 0x0f, (byte) 0x10, (byte) 0x11, (byte) 0x12, (byte) 0x13, (byte) 0x14,
+                (byte) 0x15, (byte) 0x16, (byte) 0x17 };
+
+        Key key = Key.getKey(seed);
+        byte[] expanded = key.getExpandedKey();
+        byte[] decryptKey = key.getDecryptionKey();
+        for (int round = 0; round <= key.Nr; round++) {
+            byte[] roundKey = Arrays.copyOfRange(expanded, 16 * (key.Nr - round), 16 * (key.Nr - round) + 16);
+            if (round != 0 && round != key.Nr) {
+                State state = new State(roundKey);
+                state.invMixColumns();
+                roundKey = state.getBytes();
+            }
+            Assert.assertArrayEquals(roundKey, Arrays.copyOfRange(decryptKey, 16 * round, 16 * round + 16));
+        }
+    }
+
+    /**
+     * Test that indexed round keys are copies of the expanded key and decryption schedule.
+     */
+    @Test
+    public void testRoundKeys() {
+        byte[] seed = new byte[32];
+        for (int i = 0; i < seed.length; i++) {
+            seed[i] = (byte) i;
+        }
+        Key key = Key.getKey(seed);
+        Assert.assertEquals(15, key.getRoundCount());
+        for (int round = 0; round < key.getRoundCount(); round++) {
+            Assert.assertArrayEquals(Arrays.copyOfRange(key.getExpandedKey(), 16 * round, 16 * round + 16), key.getRoundKey(round));
+            Assert.assertArrayEquals(Arrays.copyOfRange(key.getDecryptionKey(), 16 * round, 16 * round + 16), key.getDecryptionRoundKey(round));
+        }
+        key.getRoundKey(3)[0] ^= 1;
+        Assert.assertEquals(key.getExpandedKey()[48], key.getRoundKey(3)[0]);
+        Assert.assertArrayEquals(key.getRoundKey(key.Nr), key.getDecryptionRoundKey(0));
+    }
+
+    /**
+     * Test that derived data may be computed from other derived data of the same key, as the GCM table is when the JDK
+     * backend transforms its hash subkey.
+     */
+    @Test
+    public void testNestedDerived() {
+        Key key = Key.getKey(new byte[16]);
+        for (int i = 0; i < 64; i++) {
+            Object outer = new Object();
+            Object inner = new Object();
+            Integer value = i;
+            Assert.assertSame(value, key.getDerived(outer, k -> k.getDerived(inner, k2 -> value)));
+            Assert.assertSame(value, key.getDerived(outer, k -> null));
+        }
+    }
 }
@@ -0,0 +1,39 @@
+package aes;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the S-box and inverse S-box look-up tables.
+ */
+public class SBoxTest {
+
+    /**
+     * Test that the look-up tables match the mathematical definitions of the S-box and inverse S-box.
+     */
+    @Test
+    public void testTablesMatchDerivation() {
+        Assert.assertTrue(SBox.verify());
+    }
+
+    /**
+     * Test the S-box against values from FIPS-197 figure 7.
+     */
+    @Test
+    public void testKnownValues() {
+        Assert.assertEquals((byte) 0x63, SBox.apply((byte) 0x00));
+        Assert.assertEquals((byte) 0xed, SBox.apply((byte) 0x53));
+        Assert.assertEquals((byte) 0x16, SBox.apply((byte) 0xff));
+        Assert.assertEquals((byte) 0x53, SBox.applyInverse((byte) 0xed));
+    }
+
+    /**
+     * Test that the inverse S-box undoes the S-box for every byte.
+     */
+    @Test
+    public void testInverse() {
+        for (int i = 0; i < 256; i++) {
+            Assert.assertEquals((byte) i, SBox.applyInverse(SBox.apply((byte) i)));
+        }
+    }
+}
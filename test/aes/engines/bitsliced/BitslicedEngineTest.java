@@ -0,0 +1,94 @@
+package aes.engines.bitsliced;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import aes.Key;
+import aes.SBox;
+import aes.engines.BlockEngine;
+import aes.engines.reference.ReferenceEngine;
+
+/**
+ * Cross-checks the bitsliced engine against the reference engine and its S-box circuit against {@link SBox}.
+ */
+public class BitslicedEngineTest {
+
+    /**
+     * Test the S-box circuit and the inverse S-box built from it on all 256 inputs.
+     */
+    @Test
+    public void testSBoxCircuit() {
+        for (int base = 0; base < 256; base += 64) {
+            long[] forward = new long[8];
+            for (int lane = 0; lane < 64; lane++) {
+                for (int j = 0; j < 8; j++) {
+                    forward[j] |= (long) (((base + lane) >>> j) & 1) << lane;
+                }
+            }
+            long[] inverse = forward.clone();
+            BitslicedEngine.sBox(forward, 0);
+            BitslicedEngine.invAffine(inverse, 0);
+            BitslicedEngine.sBox(inverse, 0);
+            BitslicedEngine.invAffine(inverse, 0);
+
+            for (int lane = 0; lane < 64; lane++) {
+                byte in = (byte) (base + lane);
+                Assert.assertEquals(SBox.apply(in), bits(forward, lane));
+                Assert.assertEquals(SBox.applyInverse(in), bits(inverse, lane));
+            }
+        }
+    }
+
+    /**
+     * Test that converting blocks to bitsliced form and back gives the blocks back.
+     */
+    @Test
+    public void testLoadStore() {
+        byte[] blocks = new byte[16 * 64];
+        new Random(20).nextBytes(blocks);
+        long[] st = new long[128];
+        long[] tmp = new long[128];
+        BitslicedEngine.load(blocks, 0, 64, st, tmp);
+        Assert.assertEquals(blocks[16 * 5 + 3] >>> 6 & 1, st[8 * 3 + 6] >>> 5 & 1);
+
+        byte[] out = new byte[blocks.length];
+        BitslicedEngine.store(st, tmp, out, 0, 64);
+        Assert.assertArrayEquals(blocks, out);
+    }
+
+    /**
+     * Test that both engines produce the same ciphertext and plaintext for every key length, including a partial batch.
+     */
+    @Test
+    public void testMatchesReference() {
+        BlockEngine reference = new ReferenceEngine();
+        BlockEngine bitsliced = new BitslicedEngine();
+        for (int keyLength = 16; keyLength <= 32; keyLength += 8) {
+            Random random = new Random(keyLength);
+            byte[] seed = new byte[keyLength];
+            random.nextBytes(seed);
+            Key key = Key.getKey(seed);
+
+            int blocks = 2 * BitslicedEngine.LANES + 7;
+            byte[] plaintext = new byte[16 * blocks];
+            random.nextBytes(plaintext);
+            byte[] expected = new byte[plaintext.length];
+            byte[] actual = new byte[plaintext.length];
+            reference.encryptBlocks(plaintext, 0, expected, 0, blocks, key);
+            bitsliced.encryptBlocks(plaintext, 0, actual, 0, blocks, key);
+            Assert.assertArrayEquals(expected, actual);
+
+            bitsliced.decryptBlocks(actual, 0, actual, 0, blocks, key);
+            Assert.assertArrayEquals(plaintext, actual);
+        }
+    }
+
+    private static byte bits(long[] slices, int lane) {
+        int b = 0;
+        for (int j = 0; j < 8; j++) {
+            b |= (int) ((slices[j] >>> lane) & 1) << j;
+        }
+        return (byte) b;
+    }
+}
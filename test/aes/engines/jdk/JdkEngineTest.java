@@ -0,0 +1,134 @@
+package aes.engines.jdk;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.Security;
+import java.util.Random;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import aes.Key;
+import aes.engines.Backend;
+import aes.engines.BlockEngine;
+import aes.engines.reference.ReferenceEngine;
+import aes.jca.AesProvider;
+
+/**
+ * Cross-checks the JDK engine against the reference engine using keys of 128, 192, and 256 bits.
+ */
+public class JdkEngineTest {
+
+    /**
+     * Test that both engines produce the same ciphertext and plaintext as the key changes between calls.
+     */
+    @Test
+    public void testMatchesReference() {
+        BlockEngine reference = new ReferenceEngine();
+        BlockEngine jdk = new JdkEngine();
+        for (int keyLength = 16; keyLength <= 32; keyLength += 8) {
+            Random random = new Random(keyLength);
+            byte[] seed = new byte[keyLength];
+            random.nextBytes(seed);
+            Key key = Key.getKey(seed);
+
+            for (int blocks = 0; blocks <= 5; blocks++) {
+                byte[] plaintext = new byte[16 * blocks];
+                random.nextBytes(plaintext);
+                byte[] expected = new byte[plaintext.length];
+                byte[] actual = new byte[plaintext.length];
+                reference.encryptBlocks(plaintext, 0, expected, 0, blocks, key);
+                jdk.encryptBlocks(plaintext, 0, actual, 0, blocks, key);
+                Assert.assertArrayEquals(expected, actual);
+
+                jdk.decryptBlocks(actual, 0, actual, 0, blocks, key);
+                Assert.assertArrayEquals(plaintext, actual);
+            }
+        }
+    }
+
+    /**
+     * Test that a batch mixing runs of one key shorter and longer than {@link JdkEngine#MIN_RUN} matches the reference
+     * engine in both directions.
+     */
+    @Test
+    public void testBatch() {
+        Random random = new Random(22);
+        int[] runs = { 1, 3, JdkEngine.MIN_RUN, 1, JdkEngine.MIN_RUN - 1, 40, 2 };
+        int blocks = 0;
+        for (int run : runs) {
+            blocks += run;
+        }
+        Key[] keys = new Key[blocks + 1];
+        int k = 1;
+        for (int run : runs) {
+            byte[] seed = new byte[16 + 8 * (run % 3)];
+            random.nextBytes(seed);
+            Key key = Key.getKey(seed);
+            for (int i = 0; i < run; i++) {
+                keys[k++] = key;
+            }
+        }
+        byte[] plaintext = new byte[16 * blocks];
+        random.nextBytes(plaintext);
+
+        BlockEngine jdk = new JdkEngine();
+        byte[] expected = new byte[plaintext.length];
+        byte[] actual = new byte[plaintext.length];
+        new ReferenceEngine().encryptBatch(plaintext, 0, expected, 0, blocks, keys, 1);
+        jdk.encryptBatch(plaintext, 0, actual, 0, blocks, keys, 1);
+        Assert.assertArrayEquals(expected, actual);
+        jdk.decryptBatch(actual, 0, actual, 0, blocks, keys, 1);
+        Assert.assertArrayEquals(plaintext, actual);
+    }
+
+    /**
+     * Test that direct buffers are transformed in place.
+     */
+    @Test
+    public void testDirectBuffer() {
+        Key key = Key.getKey(new byte[16]);
+        byte[] plaintext = new byte[16 * 300];
+        new Random(20).nextBytes(plaintext);
+        byte[] expected = new byte[plaintext.length];
+        new ReferenceEngine().encryptBlocks(plaintext, 0, expected, 0, 300, key);
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(plaintext.length);
+        buffer.put(plaintext).flip();
+        new JdkEngine().encryptBlocks(buffer, 0, buffer, 0, 300, key);
+        byte[] actual = new byte[plaintext.length];
+        buffer.get(actual);
+        Assert.assertArrayEquals(expected, actual);
+    }
+
+    /**
+     * Test that the engine still uses the JDK's cipher when this library's provider is installed ahead of it, including
+     * one whose ciphers are backed by this engine, which would otherwise call itself until the stack overflows.
+     */
+    @Test
+    public void testProviderInstalledFirst() throws GeneralSecurityException {
+        byte[] plaintext = new byte[16 * 5];
+        new Random(21).nextBytes(plaintext);
+        Key key = Key.getKey(new byte[16]);
+        byte[] expected = new byte[plaintext.length];
+        new ReferenceEngine().encryptBlocks(plaintext, 0, expected, 0, 5, key);
+
+        for (Backend backend : new Backend[] { Backend.JDK, Backend.TABLE }) {
+            Security.insertProviderAt(new AesProvider(backend), 1);
+            try {
+                Assert.assertEquals(AesProvider.NAME, Cipher.getInstance("AES/ECB/NoPadding").getProvider().getName());
+                byte[] actual = new byte[plaintext.length];
+                new JdkEngine().encryptBlocks(plaintext, 0, actual, 0, 5, key);
+                Assert.assertArrayEquals(expected, actual);
+
+                Cipher cipher = Cipher.getInstance("AES/ECB/NoPadding");
+                cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(new byte[16], "AES"));
+                Assert.assertArrayEquals(expected, cipher.doFinal(plaintext));
+            } finally {
+                Security.removeProvider(AesProvider.NAME);
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package aes.engines.table;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import aes.Key;
+import aes.engines.BlockEngine;
+import aes.engines.reference.ReferenceEngine;
+
+/**
+ * Cross-checks the table engine against the reference engine using keys of 128, 192, and 256 bits.
+ */
+public class TableEngineTest {
+    private static final int BLOCKS = 64;
+
+    /**
+     * Test that both engines produce the same ciphertext and plaintext for a 128 bit key.
+     */
+    @Test
+    public void test128BitMatchesReference() {
+        crossCheck(16);
+    }
+
+    /**
+     * Test that both engines produce the same ciphertext and plaintext for a 192 bit key.
+     */
+    @Test
+    public void test192BitMatchesReference() {
+        crossCheck(24);
+    }
+
+    /**
+     * Test that both engines produce the same ciphertext and plaintext for a 256 bit key.
+     */
+    @Test
+    public void test256BitMatchesReference() {
+        crossCheck(32);
+    }
+
+    private static void crossCheck(int keyLength) {
+        Random random = new Random(keyLength);
+        byte[] seed = new byte[keyLength];
+        byte[] plaintext = new byte[16 * BLOCKS];
+        random.nextBytes(seed);
+        random.nextBytes(plaintext);
+        Key key = Key.getKey(seed);
+
+        BlockEngine reference = new ReferenceEngine();
+        BlockEngine table = new TableEngine();
+
+        byte[] expected = new byte[plaintext.length];
+        byte[] actual = new byte[plaintext.length];
+        reference.encryptBlocks(plaintext, 0, expected, 0, BLOCKS, key);
+        table.encryptBlocks(plaintext, 0, actual, 0, BLOCKS, key);
+        Assert.assertArrayEquals(expected, actual);
+
+        table.decryptBlocks(actual, 0, actual, 0, BLOCKS, key);
+        Assert.assertArrayEquals(plaintext, actual);
+    }
+}
@@ -0,0 +1,61 @@
+package aes.engines.vector;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import aes.AesFactory;
+import aes.Key;
+import aes.engines.Backend;
+import aes.engines.BlockEngine;
+import aes.engines.reference.ReferenceEngine;
+import aes.modes.BlockCipherMode;
+import aes.modes.ecb.AesEcb;
+
+/**
+ * Cross-checks the vector engine against the reference engine using keys of 128, 192, and 256 bits.
+ */
+public class VectorEngineTest {
+
+    /**
+     * Test that both engines produce the same ciphertext and plaintext, including blocks that do not fill a vector.
+     */
+    @Test
+    public void testMatchesReference() {
+        BlockEngine reference = new ReferenceEngine();
+        BlockEngine vector = new VectorEngine();
+        for (int keyLength = 16; keyLength <= 32; keyLength += 8) {
+            Random random = new Random(keyLength);
+            byte[] seed = new byte[keyLength];
+            random.nextBytes(seed);
+            Key key = Key.getKey(seed);
+
+            for (int blocks = 1; blocks <= 9; blocks++) {
+                byte[] plaintext = new byte[16 * blocks];
+                random.nextBytes(plaintext);
+                byte[] expected = new byte[plaintext.length];
+                byte[] actual = new byte[plaintext.length];
+                reference.encryptBlocks(plaintext, 0, expected, 0, blocks, key);
+                vector.encryptBlocks(plaintext, 0, actual, 0, blocks, key);
+                Assert.assertArrayEquals(expected, actual);
+
+                vector.decryptBlocks(actual, 0, actual, 0, blocks, key);
+                Assert.assertArrayEquals(plaintext, actual);
+            }
+        }
+    }
+
+    /**
+     * Test that ECB through the vector backend matches ECB through the table backend.
+     */
+    @Test
+    public void testMatchesEcb() {
+        Assert.assertTrue(AesFactory.getEngine(Backend.VECTOR) instanceof VectorEngine);
+        AesEcb table = (AesEcb) AesFactory.getCipher(BlockCipherMode.ECB, Backend.TABLE);
+        AesEcb vector = (AesEcb) AesFactory.getCipher(BlockCipherMode.ECB, Backend.VECTOR);
+        byte[] message = new byte[1000];
+        new Random(21).nextBytes(message);
+        Key key = Key.getKey(new byte[16]);
+        Assert.assertArrayEquals(table.encrypt(message, key), vector.encrypt(message, key));
+    }
+}
@@ -0,0 +1,138 @@
+package aes.io;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import aes.AesFactory;
+import aes.AuthenticationException;
+import aes.Key;
+import aes.modes.BlockCipherMode;
+import aes.modes.Padding;
+import aes.modes.cbc.AesCbc;
+import aes.modes.gcm.AesGcm;
+
+/**
+ * Tests for the streams that encrypt and decrypt with a {@link aes.modes.CipherOperation}.
+ */
+public class CipherStreamTest {
+    private static final byte[] KEY = new byte[32];
+    private static final byte[] IV = new byte[16];
+
+    /**
+     * Test that encrypting through an output stream and decrypting through an input stream gives back the message.
+     */
+    @Test
+    public void testCbcRoundTrip() throws IOException {
+        AesCbc cbc = (AesCbc) AesFactory.getCipher(BlockCipherMode.CBC);
+        Key key = Key.getKey(KEY);
+        byte[] message = new byte[200003];
+        new Random(16).nextBytes(message);
+
+        ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+        try (OutputStream out = new CipherOutputStream(encrypted, cbc.newEncryption(key, IV, Padding.PKCS7))) {
+            out.write(message, 0, 5);
+            out.write(message[5]);
+            out.write(message, 6, message.length - 6);
+        }
+        Assert.assertEquals(message.length + 16 - message.length % 16, encrypted.size());
+
+        InputStream in = new CipherInputStream(new ByteArrayInputStream(encrypted.toByteArray()), cbc.newDecryption(key, IV, Padding.PKCS7), 1000);
+        Assert.assertArrayEquals(message, readAll(in));
+    }
+
+    /**
+     * Test that a GCM tag is appended by the output stream and checked by the input stream.
+     */
+    @Test
+    public void testGcmRoundTrip() throws IOException {
+        AesGcm gcm = (AesGcm) AesFactory.getCipher(BlockCipherMode.GCM);
+        Key key = Key.getKey(KEY);
+        byte[] nonce = new byte[12];
+        byte[] message = new byte[5000];
+        new Random(17).nextBytes(message);
+
+        ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+        try (OutputStream out = new CipherOutputStream(encrypted, gcm.newEncryption(key, nonce))) {
+            out.write(message);
+        }
+        Assert.assertArrayEquals(gcm.encrypt(message, key, nonce, new byte[0]), encrypted.toByteArray());
+
+        InputStream in = new CipherInputStream(new ByteArrayInputStream(encrypted.toByteArray()), gcm.newDecryption(key, nonce), 333);
+        Assert.assertArrayEquals(message, readAll(in));
+    }
+
+    /**
+     * Test that a large write reaches the underlying stream in pieces no larger than the chunk size plus a block, and
+     * gives the same ciphertext as a single call.
+     */
+    @Test
+    public void testLargeWriteInChunks() throws IOException {
+        AesCbc cbc = (AesCbc) AesFactory.getCipher(BlockCipherMode.CBC);
+        Key key = Key.getKey(KEY);
+        byte[] message = new byte[200003];
+        new Random(18).nextBytes(message);
+
+        int[] largest = new int[1];
+        ByteArrayOutputStream encrypted = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(byte[] b, int off, int len) {
+                largest[0] = Math.max(largest[0], len);
+                super.write(b, off, len);
+            }
+        };
+        try (OutputStream out = new CipherOutputStream(encrypted, cbc.newEncryption(key, IV, Padding.PKCS7), 4096)) {
+            out.write(message);
+        }
+        Assert.assertTrue(largest[0] <= 4096 + 16);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        try (OutputStream out = new CipherOutputStream(expected, cbc.newEncryption(key, IV, Padding.PKCS7))) {
+            out.write(message);
+        }
+        Assert.assertArrayEquals(expected.toByteArray(), encrypted.toByteArray());
+    }
+
+    /**
+     * Test that skipping across chunk boundaries lands on the right byte, still checks the GCM tag at the end, and
+     * stops at end of stream.
+     */
+    @Test
+    public void testSkip() throws IOException {
+        AesGcm gcm = (AesGcm) AesFactory.getCipher(BlockCipherMode.GCM);
+        Key key = Key.getKey(KEY);
+        byte[] nonce = new byte[12];
+        byte[] message = new byte[5000];
+        new Random(19).nextBytes(message);
+        byte[] encrypted = gcm.encrypt(message, key, nonce, new byte[0]);
+
+        InputStream in = new CipherInputStream(new ByteArrayInputStream(encrypted), gcm.newDecryption(key, nonce), 333);
+        Assert.assertEquals(1000, in.skip(1000));
+        Assert.assertEquals(message[1000] & 0xff, in.read());
+        Assert.assertEquals(message.length - 1001, in.skip(Long.MAX_VALUE));
+        Assert.assertEquals(-1, in.read());
+
+        encrypted[encrypted.length - 1] ^= 1;
+        InputStream tampered =
+                new CipherInputStream(new ByteArrayInputStream(encrypted), gcm.newDecryption(key, nonce), 333);
+        try {
+            tampered.skip(Long.MAX_VALUE);
+            Assert.fail("Skipped past a modified tag");
+        } catch (AuthenticationException e) {
+            // expected
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        for (int n; (n = in.read(buffer)) >= 0;) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,65 @@
+package aes.io;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import aes.AesFactory;
+import aes.Key;
+import aes.modes.BlockCipherMode;
+import aes.modes.cbc.AesCbc;
+import aes.modes.ctr.AesCtr;
+import aes.modes.ecb.AesEcb;
+
+/**
+ * Tests for encrypting and decrypting files through memory-mapped windows.
+ */
+public class MappedFileCipherTest {
+    private static final Key KEY = Key.getKey(new byte[24]);
+    private static final byte[] IV = new byte[16];
+
+    /**
+     * Test that every mode matches the in-memory methods across several windows, to a separate file and in place.
+     */
+    @Test
+    public void testMatchesInMemory() throws IOException {
+        byte[] message = new byte[10 * 4096 + 5];
+        new Random(18).nextBytes(message);
+        AesEcb ecb = (AesEcb) AesFactory.getCipher(BlockCipherMode.ECB);
+        AesCtr ctr = (AesCtr) AesFactory.getCipher(BlockCipherMode.CTR);
+        AesCbc cbc = (AesCbc) AesFactory.getCipher(BlockCipherMode.CBC);
+
+        ForkJoinPool pool = new ForkJoinPool(3);
+        Path source = Files.createTempFile("aes", ".in");
+        Path target = Files.createTempFile("aes", ".out");
+        try {
+            for (MappedFileCipher files : new MappedFileCipher[] { new MappedFileCipher(4096, null), new MappedFileCipher(4096, pool) }) {
+                Files.write(source, message);
+                Assert.assertEquals(ecb.getEncryptOutputSize(message.length), files.encrypt(ecb, KEY, source, target));
+                Assert.assertArrayEquals(ecb.encrypt(message, KEY), Files.readAllBytes(target));
+                files.decrypt(ecb, KEY, target, target);
+                Assert.assertArrayEquals(message, Arrays.copyOf(Files.readAllBytes(target), message.length));
+
+                files.crypt(ctr, KEY, IV, source, source);
+                Assert.assertArrayEquals(ctr.encrypt(message, KEY, IV), Files.readAllBytes(source));
+                files.crypt(ctr, KEY, IV, source, target);
+                Assert.assertArrayEquals(message, Files.readAllBytes(target));
+
+                byte[] encrypted = cbc.encrypt(message, KEY, IV);
+                files.encrypt(cbc, KEY, IV, target, target);
+                Assert.assertArrayEquals(encrypted, Files.readAllBytes(target));
+                files.decrypt(cbc, KEY, IV, target, source);
+                Assert.assertArrayEquals(cbc.decrypt(encrypted, KEY, IV), Files.readAllBytes(source));
+            }
+        } finally {
+            pool.shutdown();
+            Files.delete(source);
+            Files.delete(target);
+        }
+    }
+}
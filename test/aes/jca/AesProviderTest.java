@@ -0,0 +1,168 @@
+package aes.jca;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import aes.engines.Backend;
+
+/**
+ * Tests for {@link AesProvider}, comparing its ciphers with the JDK's.
+ */
+public class AesProviderTest {
+    private static final String[] TRANSFORMATIONS = {
+        "AES", "AES/ECB/NoPadding", "AES/ECB/PKCS5Padding", "AES/CBC/NoPadding", "AES/CBC/PKCS5Padding", "AES/CTR/NoPadding"
+    };
+
+    private final Random random = new Random(19);
+
+    /**
+     * Test that every transformation encrypts as the JDK does for every key size and backend, and decrypts back.
+     */
+    @Test
+    public void testMatchesJdk() throws GeneralSecurityException {
+        for (Backend backend : Backend.values()) {
+            AesProvider provider = new AesProvider(backend);
+            for (String transformation : TRANSFORMATIONS) {
+                for (int keySize : new int[] { 16, 24, 32 }) {
+                    SecretKeySpec key = new SecretKeySpec(bytes(keySize), "AES");
+                    byte[] message = bytes(transformation.contains("NoPadding") && !transformation.contains("CTR") ? 160 : 151);
+                    IvParameterSpec iv = transformation.contains("CBC") || transformation.contains("CTR") ? new IvParameterSpec(bytes(16)) : null;
+
+                    Cipher expected = Cipher.getInstance(transformation);
+                    expected.init(Cipher.ENCRYPT_MODE, key, iv);
+                    Cipher actual = Cipher.getInstance(transformation, provider);
+                    actual.init(Cipher.ENCRYPT_MODE, key, iv);
+                    byte[] ciphertext = actual.doFinal(message);
+                    Assert.assertArrayEquals(transformation, expected.doFinal(message), ciphertext);
+
+                    actual.init(Cipher.DECRYPT_MODE, key, iv);
+                    Assert.assertArrayEquals(transformation, message, actual.doFinal(ciphertext));
+                }
+            }
+        }
+    }
+
+    /**
+     * Test that feeding a message in uneven pieces, and through direct buffers, gives the same result as one call.
+     */
+    @Test
+    public void testPiecewiseAndDirectBuffers() throws GeneralSecurityException {
+        SecretKeySpec key = new SecretKeySpec(bytes(32), "AES");
+        IvParameterSpec iv = new IvParameterSpec(bytes(16));
+        byte[] message = bytes(1000);
+        for (String transformation : new String[] { "AES/CBC/PKCS5Padding", "AES/CTR/NoPadding" }) {
+            Cipher cipher = Cipher.getInstance(transformation, new AesProvider());
+            cipher.init(Cipher.ENCRYPT_MODE, key, iv);
+            byte[] expected = cipher.doFinal(message);
+
+            byte[] pieces = new byte[cipher.getOutputSize(message.length)];
+            int n = cipher.update(message, 0, 7, pieces, 0);
+            n += cipher.update(message, 7, 500, pieces, n);
+            n += cipher.doFinal(message, 507, message.length - 507, pieces, n);
+            Assert.assertArrayEquals(transformation, expected, Arrays.copyOf(pieces, n));
+
+            ByteBuffer src = ByteBuffer.allocateDirect(message.length);
+            src.put(message).flip();
+            ByteBuffer dst = ByteBuffer.allocateDirect(cipher.getOutputSize(message.length));
+            cipher.update(src.limit(333), dst);
+            cipher.doFinal(src.limit(message.length), dst);
+            byte[] direct = new byte[dst.flip().remaining()];
+            dst.get(direct);
+            Assert.assertArrayEquals(transformation, expected, direct);
+        }
+    }
+
+    /**
+     * Test that GCM with associated data matches the JDK and that a tampered tag is rejected.
+     */
+    @Test
+    public void testGcm() throws GeneralSecurityException {
+        SecretKeySpec key = new SecretKeySpec(bytes(16), "AES");
+        byte[] aad = bytes(20);
+        byte[] message = bytes(77);
+        for (int tagBits : new int[] { 128, 96 }) {
+            GCMParameterSpec spec = new GCMParameterSpec(tagBits, bytes(12));
+
+            Cipher expected = Cipher.getInstance("AES/GCM/NoPadding");
+            expected.init(Cipher.ENCRYPT_MODE, key, spec);
+            expected.updateAAD(aad);
+            Cipher actual = Cipher.getInstance("AES/GCM/NoPadding", new AesProvider());
+            actual.init(Cipher.ENCRYPT_MODE, key, spec);
+            actual.updateAAD(aad);
+            byte[] ciphertext = actual.doFinal(message);
+            Assert.assertArrayEquals(expected.doFinal(message), ciphertext);
+
+            actual.init(Cipher.DECRYPT_MODE, key, spec);
+            actual.updateAAD(aad);
+            byte[] plaintext = actual.update(ciphertext, 0, 30);
+            Assert.assertTrue(plaintext == null || plaintext.length == 0);
+            Assert.assertArrayEquals(message, actual.doFinal(ciphertext, 30, ciphertext.length - 30));
+
+            ciphertext[ciphertext.length - 1] ^= 1;
+            actual.init(Cipher.DECRYPT_MODE, key, spec);
+            actual.updateAAD(aad);
+            try {
+                actual.doFinal(ciphertext);
+                Assert.fail("Tampered ciphertext was accepted");
+            } catch (AEADBadTagException e) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * Test that GCM encryption refuses to run twice with the same IV.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testGcmRequiresNewIv() throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding", new AesProvider());
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(bytes(16), "AES"), new GCMParameterSpec(128, bytes(12)));
+        cipher.doFinal(bytes(10));
+        cipher.doFinal(bytes(10));
+    }
+
+    /**
+     * Test that bad padding and partial blocks raise the exceptions the JCA specifies.
+     */
+    @Test
+    public void testInvalidInput() throws GeneralSecurityException {
+        SecretKeySpec key = new SecretKeySpec(bytes(16), "AES");
+        Cipher cipher = Cipher.getInstance("AES/ECB/NoPadding", new AesProvider());
+        cipher.init(Cipher.ENCRYPT_MODE, key);
+        try {
+            cipher.doFinal(bytes(17));
+            Assert.fail("Partial block was accepted");
+        } catch (IllegalBlockSizeException e) {
+            // expected
+        }
+
+        // a final plaintext byte of zero is never valid PKCS#7 padding
+        byte[] unpadded = cipher.doFinal(new byte[32]);
+        cipher = Cipher.getInstance("AES/ECB/PKCS5Padding", new AesProvider());
+        cipher.init(Cipher.DECRYPT_MODE, key);
+        try {
+            cipher.doFinal(unpadded);
+            Assert.fail("Bad padding was accepted");
+        } catch (BadPaddingException e) {
+            // expected
+        }
+    }
+
+    private byte[] bytes(int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+}
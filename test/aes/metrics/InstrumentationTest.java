@@ -0,0 +1,155 @@
+package aes.metrics;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import aes.AesFactory;
+import aes.Key;
+import aes.engines.Backend;
+import aes.modes.BlockCipherMode;
+import aes.modes.cbc.AesCbc;
+import aes.modes.gcm.AesGcm;
+
+/**
+ * Tests for reporting cipher calls and key expansions to listeners.
+ */
+public class InstrumentationTest {
+    private final List<String> calls = new ArrayList<String>();
+
+    private final CipherListener recorder = new CipherListener() {
+        @Override
+        public void cipherCompleted(BlockCipherMode mode, Backend backend, boolean encrypt, long bytes, long nanos) {
+            calls.add(mode + "/" + backend + "/" + (encrypt ? "encrypt" : "decrypt") + "/" + bytes);
+        }
+
+        @Override
+        public void keyExpanded(int keyLength, long nanos) {
+            calls.add("key/" + keyLength);
+        }
+    };
+
+    /**
+     * Leaves instrumentation disabled for the tests that follow.
+     */
+    @After
+    public void removeListeners() {
+        Instrumentation.removeListener(recorder);
+    }
+
+    /**
+     * Test that each call is reported once, with its mode, backend and input length, and nothing while disabled.
+     */
+    @Test
+    public void testListener() {
+        AesCbc cbc = (AesCbc) AesFactory.getCipher(BlockCipherMode.CBC, Backend.BITSLICED);
+        Key key = Key.getKey(new byte[24]);
+        cbc.encrypt(new byte[5], key);
+        Assert.assertTrue(calls.isEmpty());
+        Assert.assertEquals(Instrumentation.DISABLED, Instrumentation.start());
+
+        Instrumentation.addListener(recorder);
+        Instrumentation.addListener(recorder);
+        byte[] ciphertext = cbc.encrypt(new byte[40], new byte[16]);
+        cbc.decrypt(ByteBuffer.wrap(ciphertext), ByteBuffer.allocateDirect(64), key);
+        cbc.encrypt(new byte[3], key, new byte[16]);
+
+        AesGcm gcm = (AesGcm) AesFactory.getCipher(BlockCipherMode.GCM, Backend.TABLE);
+        gcm.encrypt(ByteBuffer.wrap(new byte[7]), ByteBuffer.allocate(64), key);
+
+        List<String> expected = new ArrayList<String>();
+        expected.add("key/16");
+        expected.add("CBC/BITSLICED/encrypt/40");
+        expected.add("CBC/BITSLICED/decrypt/64");
+        expected.add("CBC/BITSLICED/encrypt/3");
+        expected.add("GCM/TABLE/encrypt/7");
+        Assert.assertEquals(expected, calls);
+
+        Instrumentation.removeListener(recorder);
+        Assert.assertFalse(Instrumentation.isEnabled());
+    }
+
+    /**
+     * Test that the statistics count calls, bytes, blocks and key expansions and are readable over JMX.
+     */
+    @Test
+    public void testStatistics() throws Exception {
+        CipherStatistics statistics = CipherStatistics.register();
+        try {
+            AesCbc cbc = (AesCbc) AesFactory.getCipher(BlockCipherMode.CBC, Backend.TABLE);
+            Key key = Key.getKey(new byte[16]);
+            byte[] ciphertext = cbc.encrypt(new byte[33], key);
+            cbc.decrypt(ciphertext, key);
+
+            Assert.assertEquals(1, statistics.getEncryptCount());
+            Assert.assertEquals(1, statistics.getDecryptCount());
+            Assert.assertEquals(33, statistics.getBytesEncrypted());
+            Assert.assertEquals(64, statistics.getBytesDecrypted());
+            Assert.assertEquals(3 + 4, statistics.getBlocks());
+            Assert.assertEquals(1, statistics.getKeyExpansions());
+            Assert.assertEquals(Long.valueOf(2), statistics.getCountsByModeAndBackend().get("CBC/TABLE"));
+
+            long histogramTotal = 0;
+            for (long count : statistics.getLatencyHistogram()) {
+                histogramTotal += count;
+            }
+            Assert.assertEquals(2, histogramTotal);
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            Assert.assertEquals(33L, server.getAttribute(new ObjectName(CipherStatistics.OBJECT_NAME), "BytesEncrypted"));
+
+            statistics.reset();
+            Assert.assertEquals(0, statistics.getBytesEncrypted());
+        } finally {
+            CipherStatistics.unregister(statistics);
+        }
+        Assert.assertFalse(Instrumentation.isEnabled());
+    }
+
+    /**
+     * Test that the JFR listener records events once they are enabled.
+     */
+    @Test
+    public void testJfr() throws IOException {
+        JfrListener listener = new JfrListener();
+        Instrumentation.addListener(listener);
+        Path file = Files.createTempFile("aes", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(JfrListener.CIPHER_EVENT);
+            recording.enable(JfrListener.KEY_EXPANSION_EVENT);
+            recording.start();
+            AesFactory.getCipher(BlockCipherMode.ECB, Backend.TABLE).encrypt(new byte[100], new byte[32]);
+            recording.stop();
+            recording.dump(file);
+
+            List<String> events = new ArrayList<String>();
+            for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+                String name = event.getEventType().getName();
+                if (name.equals(JfrListener.CIPHER_EVENT)) {
+                    events.add(event.getString("mode") + "/" + event.getLong("bytes") + "/" + event.getLong("blocks"));
+                } else if (name.equals(JfrListener.KEY_EXPANSION_EVENT)) {
+                    events.add("key/" + event.getInt("keyBits"));
+                }
+            }
+            Assert.assertTrue(events.contains("key/256"));
+            Assert.assertTrue(events.contains("ECB/100/7"));
+        } finally {
+            Instrumentation.removeListener(listener);
+            Files.deleteIfExists(file);
+        }
+    }
+}
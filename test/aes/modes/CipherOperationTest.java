@@ -0,0 +1,148 @@
+package aes.modes;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import aes.AesFactory;
+import aes.Key;
+import aes.modes.cbc.AesCbc;
+import aes.modes.ctr.AesCtr;
+import aes.modes.ecb.AesEcb;
+
+/**
+ * Tests for encrypting and decrypting messages supplied in pieces.
+ */
+public class CipherOperationTest {
+    private static final byte[] KEY = new byte[16];
+    private static final byte[] IV = new byte[16];
+
+    static {
+        for (int i = 0; i < 16; i++) {
+            KEY[i] = (byte) i;
+            IV[i] = (byte) (0xf0 + i);
+        }
+    }
+
+    /**
+     * Test that PKCS#7 padded ECB and CBC match the JDK for every length across a few blocks.
+     */
+    @Test
+    public void testPkcs7MatchesJdk() throws Exception {
+        AesEcb ecb = (AesEcb) AesFactory.getCipher(BlockCipherMode.ECB);
+        AesCbc cbc = (AesCbc) AesFactory.getCipher(BlockCipherMode.CBC);
+        Key key = Key.getKey(KEY);
+        javax.crypto.Cipher jdkEcb = javax.crypto.Cipher.getInstance("AES/ECB/PKCS5Padding");
+        jdkEcb.init(javax.crypto.Cipher.ENCRYPT_MODE, new SecretKeySpec(KEY, "AES"));
+        javax.crypto.Cipher jdkCbc = javax.crypto.Cipher.getInstance("AES/CBC/PKCS5Padding");
+        jdkCbc.init(javax.crypto.Cipher.ENCRYPT_MODE, new SecretKeySpec(KEY, "AES"), new IvParameterSpec(IV));
+
+        Random random = new Random(12);
+        for (int len = 0; len <= 50; len++) {
+            byte[] message = new byte[len];
+            random.nextBytes(message);
+
+            byte[] expected = jdkEcb.doFinal(message);
+            Assert.assertArrayEquals(expected, transform(ecb.newEncryption(key, Padding.PKCS7), message, 7));
+            Assert.assertArrayEquals(message, transform(ecb.newDecryption(key, Padding.PKCS7), expected, 5));
+
+            expected = jdkCbc.doFinal(message);
+            Assert.assertArrayEquals(expected, transform(cbc.newEncryption(key, IV, Padding.PKCS7), message, 3));
+            Assert.assertArrayEquals(message, transform(cbc.newDecryption(key, IV, Padding.PKCS7), expected, 17));
+        }
+    }
+
+    /**
+     * Test that zero padding in pieces matches the one-shot methods.
+     */
+    @Test
+    public void testZeroPaddingMatchesOneShot() {
+        AesEcb ecb = (AesEcb) AesFactory.getCipher(BlockCipherMode.ECB);
+        AesCbc cbc = (AesCbc) AesFactory.getCipher(BlockCipherMode.CBC);
+        Key key = Key.getKey(KEY);
+        byte[] message = new byte[1000];
+        new Random(13).nextBytes(message);
+
+        Assert.assertArrayEquals(ecb.encrypt(message, key), transform(ecb.newEncryption(key, Padding.ZERO), message, 33));
+        byte[] encrypted = cbc.encrypt(message, key, IV);
+        Assert.assertArrayEquals(encrypted, transform(cbc.newEncryption(key, IV, Padding.ZERO), message, 100));
+        Assert.assertArrayEquals(cbc.decrypt(encrypted, key, IV), transform(cbc.newDecryption(key, IV, Padding.ZERO), encrypted, 31));
+    }
+
+    /**
+     * Test that CTR in pieces matches the one-shot method.
+     */
+    @Test
+    public void testCtrPieces() {
+        AesCtr ctr = (AesCtr) AesFactory.getCipher(BlockCipherMode.CTR);
+        Key key = Key.getKey(KEY);
+        byte[] message = new byte[777];
+        new Random(14).nextBytes(message);
+
+        byte[] encrypted = ctr.encrypt(message, key, IV);
+        Assert.assertArrayEquals(encrypted, transform(ctr.newEncryption(key, IV), message, 9));
+        Assert.assertArrayEquals(message, transform(ctr.newDecryption(key, IV), encrypted, 50));
+    }
+
+    /**
+     * Test that pieces can be transformed in place, including while a partial block is carried over.
+     */
+    @Test
+    public void testInPlace() {
+        AesEcb ecb = (AesEcb) AesFactory.getCipher(BlockCipherMode.ECB);
+        Key key = Key.getKey(KEY);
+        byte[] message = new byte[96];
+        new Random(15).nextBytes(message);
+        byte[] expected = ecb.encrypt(message, key);
+
+        byte[] buffer = message.clone();
+        CipherOperation operation = ecb.newEncryption(key, Padding.NONE);
+        int n = operation.update(buffer, 0, 10, buffer, 0);
+        n += operation.update(buffer, 10, 50, buffer, n);
+        n += operation.doFinal(buffer, 60, 36, buffer, n);
+        Assert.assertEquals(96, n);
+        Assert.assertArrayEquals(expected, buffer);
+    }
+
+    /**
+     * Test that messages that cannot be unpadded are rejected, and that only invalid padding is reported as a
+     * {@link PaddingException}.
+     */
+    @Test
+    public void testInvalidPadding() {
+        AesEcb ecb = (AesEcb) AesFactory.getCipher(BlockCipherMode.ECB);
+        Key key = Key.getKey(KEY);
+        byte[] block = ecb.encrypt(new byte[16], key);
+        try {
+            transform(ecb.newDecryption(key, Padding.PKCS7), block, 16);
+            Assert.fail("A block of zeros was accepted as padding");
+        } catch (PaddingException e) {
+            // expected
+        }
+        try {
+            transform(ecb.newEncryption(key, Padding.NONE), new byte[17], 16);
+            Assert.fail("A partial block was accepted without padding");
+        } catch (IllegalArgumentException e) {
+            Assert.assertFalse(e instanceof PaddingException);
+        }
+    }
+
+    /**
+     * Feeds input to an operation in pieces of the given size.
+     */
+    private static byte[] transform(CipherOperation operation, byte[] input, int piece) {
+        byte[] output = new byte[input.length + 32];
+        int n = 0;
+        int off = 0;
+        for (; input.length - off > piece; off += piece) {
+            Assert.assertTrue(operation.getUpdateOutputSize(piece) <= output.length - n);
+            n += operation.update(input, off, piece, output, n);
+        }
+        n += operation.doFinal(input, off, input.length - off, output, n);
+        return Arrays.copyOf(output, n);
+    }
+}
@@ -0,0 +1,72 @@
+package aes.modes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import aes.AesFactory;
+import aes.Cipher;
+import aes.Key;
+import aes.engines.Backend;
+
+/**
+ * Stress tests for sharing one cipher and one {@link Key} between many threads.
+ */
+public class ThreadSafetyTest {
+    private static final int THREADS = 8;
+    private static final int ITERATIONS = 300;
+
+    /**
+     * Test that threads encrypting and decrypting concurrently with a shared cipher and key always get the results a
+     * single thread gets.
+     */
+    @Test
+    public void testSharedCipherAndKey() throws Exception {
+        byte[] raw = new byte[32];
+        new Random(19).nextBytes(raw);
+        Key key = Key.getKey(raw);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (BlockCipherMode mode : BlockCipherMode.values()) {
+                for (Backend backend : Backend.values()) {
+                    Cipher cipher = AesFactory.getCipher(mode, backend);
+                    stress(executor, cipher, key, mode + "/" + backend);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Starts every thread at once, each with its own messages, and checks every round trip.
+     */
+    private static void stress(ExecutorService executor, Cipher cipher, Key key, String name) throws Exception {
+        CyclicBarrier start = new CyclicBarrier(THREADS);
+        List<Future<Void>> results = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            Random random = new Random(t);
+            results.add(executor.submit((Callable<Void>) () -> {
+                start.await();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    byte[] message = new byte[16 * (1 + random.nextInt(8))];
+                    random.nextBytes(message);
+                    byte[] decrypted = cipher.decrypt(cipher.encrypt(message, key), key);
+                    Assert.assertArrayEquals(name, message, decrypted);
+                }
+                return null;
+            }));
+        }
+        for (Future<Void> result : results) {
+            result.get();
+        }
+    }
+}
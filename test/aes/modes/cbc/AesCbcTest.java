@@ -0,0 +1,98 @@
+package aes.modes.cbc;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import aes.AesFactory;
+import aes.Cipher;
+import aes.Key;
+import aes.engines.Backend;
+import aes.modes.BlockCipherMode;
+import aes.modes.Parallelism;
+import utils.StringHelper;
+
+/**
+ * Integration tests for AES CBC encryption and decryption.
+ */
+public class AesCbcTest {
+    private static final byte[] KEY = StringHelper.hexStringToByteArray("2b7e151628aed2a6abf7158809cf4f3c");
+    private static final byte[] IV = StringHelper.hexStringToByteArray("000102030405060708090a0b0c0d0e0f");
+    private static final byte[] PLAINTEXT = StringHelper.hexStringToByteArray("6bc1bee22e409f96e93d7e117393172aae2d8a571e03ac9c9eb76fac45af8e51"
+            + "30c81c46a35ce411e5fbc1191a0a52eff69f2445df4f9b17ad2b417be66c3710");
+    private static final byte[] CIPHERTEXT = StringHelper.hexStringToByteArray("7649abac8119b246cee98e9b12e9197d5086cb9b507219ee95db113a917678b2"
+            + "73bed6b8e3c1743b7116e69e222295163ff1caa1681fac09120eca307586e1a7");
+
+    /**
+     * Test CBC encryption with the NIST SP 800-38A F.2.1 vector.
+     */
+    @Test
+    public void testEncrypt() {
+        AesCbc cipher = (AesCbc) AesFactory.getCipher(BlockCipherMode.CBC);
+        Assert.assertArrayEquals(CIPHERTEXT, cipher.encrypt(PLAINTEXT, Key.getKey(KEY), IV));
+    }
+
+    /**
+     * Test CBC decryption with the NIST SP 800-38A F.2.2 vector.
+     */
+    @Test
+    public void testDecrypt() {
+        AesCbc cipher = (AesCbc) AesFactory.getCipher(BlockCipherMode.CBC);
+        Assert.assertArrayEquals(PLAINTEXT, cipher.decrypt(CIPHERTEXT, Key.getKey(KEY), IV));
+    }
+
+    /**
+     * Test that parallel decryption, in place and into a separate array, matches sequential decryption.
+     */
+    @Test
+    public void testParallelDecrypt() {
+        Random random = new Random(10);
+        byte[] plaintext = new byte[16 * 700];
+        random.nextBytes(plaintext);
+        Key key = Key.getKey(KEY);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Cipher sequential = AesFactory.getCipher(BlockCipherMode.CBC);
+            Cipher parallel = AesFactory.getCipher(BlockCipherMode.CBC, Backend.TABLE, null, new Parallelism(pool, 0, 256));
+            byte[] ciphertext = sequential.encrypt(plaintext, key);
+            Assert.assertArrayEquals(plaintext, parallel.decrypt(ciphertext, key));
+
+            byte[] buffer = ciphertext.clone();
+            Assert.assertEquals(plaintext.length, parallel.decrypt(buffer, 0, buffer.length, buffer, 0, key));
+            Assert.assertArrayEquals(plaintext, Arrays.copyOf(buffer, plaintext.length));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Test that the prefixed initialization vector round trips through arrays and direct buffers.
+     */
+    @Test
+    public void testRoundTrip() {
+        byte[] plaintext = Arrays.copyOf(PLAINTEXT, 50);
+        Key key = Key.getKey(KEY);
+        Cipher cipher = AesFactory.getCipher(BlockCipherMode.CBC);
+
+        byte[] ciphertext = cipher.encrypt(plaintext, key);
+        Assert.assertEquals(AesCbc.IV_LENGTH + 64, ciphertext.length);
+        Assert.assertArrayEquals(Arrays.copyOf(plaintext, 64), cipher.decrypt(ciphertext, key));
+
+        byte[] buffer = Arrays.copyOf(plaintext, ciphertext.length);
+        cipher.encrypt(buffer, 0, plaintext.length, buffer, 0, key);
+        Assert.assertArrayEquals(Arrays.copyOf(plaintext, 64), cipher.decrypt(buffer, key));
+
+        ByteBuffer src = ByteBuffer.allocateDirect(ciphertext.length);
+        src.put(ciphertext).flip();
+        ByteBuffer dst = ByteBuffer.allocateDirect(64);
+        Assert.assertEquals(64, cipher.decrypt(src, dst, key));
+        byte[] decrypted = new byte[64];
+        dst.flip();
+        dst.get(decrypted);
+        Assert.assertArrayEquals(Arrays.copyOf(plaintext, 64), decrypted);
+    }
+}
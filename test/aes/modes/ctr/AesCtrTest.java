@@ -0,0 +1,111 @@
+package aes.modes.ctr;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import aes.AesFactory;
+import aes.Cipher;
+import aes.Key;
+import aes.engines.Backend;
+import aes.modes.BlockCipherMode;
+import aes.modes.Parallelism;
+import utils.StringHelper;
+
+/**
+ * Integration tests for AES CTR encryption and decryption.
+ */
+public class AesCtrTest {
+    private static final byte[] KEY = StringHelper.hexStringToByteArray("2b7e151628aed2a6abf7158809cf4f3c");
+    private static final byte[] IV = StringHelper.hexStringToByteArray("f0f1f2f3f4f5f6f7f8f9fafbfcfdfeff");
+    private static final byte[] PLAINTEXT = StringHelper.hexStringToByteArray("6bc1bee22e409f96e93d7e117393172aae2d8a571e03ac9c9eb76fac45af8e51"
+            + "30c81c46a35ce411e5fbc1191a0a52eff69f2445df4f9b17ad2b417be66c3710");
+    private static final byte[] CIPHERTEXT = StringHelper.hexStringToByteArray("874d6191b620e3261bef6864990db6ce9806f66b7970fdff8617187bb9fffdff"
+            + "5ae4df3edbd5d35e5b4f09020db03eab1e031dda2fbe03d1792170a0f3009cee");
+
+    /**
+     * Test CTR encryption with the NIST SP 800-38A F.5.1 vector.
+     */
+    @Test
+    public void testEncrypt() {
+        AesCtr cipher = (AesCtr) AesFactory.getCipher(BlockCipherMode.CTR);
+        Assert.assertArrayEquals(CIPHERTEXT, cipher.encrypt(PLAINTEXT, Key.getKey(KEY), IV));
+    }
+
+    /**
+     * Test CTR decryption with the NIST SP 800-38A F.5.2 vector.
+     */
+    @Test
+    public void testDecrypt() {
+        AesCtr cipher = (AesCtr) AesFactory.getCipher(BlockCipherMode.CTR);
+        Assert.assertArrayEquals(PLAINTEXT, cipher.decrypt(CIPHERTEXT, Key.getKey(KEY), IV));
+    }
+
+    /**
+     * Test that decryption can start at any byte offset of the ciphertext.
+     */
+    @Test
+    public void testSeek() {
+        AesCtr cipher = (AesCtr) AesFactory.getCipher(BlockCipherMode.CTR);
+        Key key = Key.getKey(KEY);
+        for (int position = 0; position < CIPHERTEXT.length; position += 7) {
+            int len = Math.min(20, CIPHERTEXT.length - position);
+            byte[] decrypted = new byte[len];
+            cipher.crypt(CIPHERTEXT, position, len, decrypted, 0, key, IV, position);
+            Assert.assertArrayEquals(Arrays.copyOfRange(PLAINTEXT, position, position + len), decrypted);
+        }
+    }
+
+    /**
+     * Test that a 32-bit counter wraps without carrying into the nonce.
+     */
+    @Test
+    public void testCounterWidth() {
+        byte[] iv = StringHelper.hexStringToByteArray("000102030405060708090a0bffffffff");
+        byte[] wrapped = StringHelper.hexStringToByteArray("000102030405060708090a0b00000000");
+        Key key = Key.getKey(KEY);
+
+        AesCtr cipher = new AesCtr(AesFactory.getEngine(Backend.TABLE), null, Parallelism.SEQUENTIAL, 32);
+        byte[] ciphertext = cipher.encrypt(new byte[32], key, iv);
+        byte[] secondBlock = cipher.encrypt(new byte[16], key, wrapped);
+        Assert.assertArrayEquals(secondBlock, Arrays.copyOfRange(ciphertext, 16, 32));
+    }
+
+    /**
+     * Test that the prefixed initialization vector round trips through arrays and buffers, in parallel and in place.
+     */
+    @Test
+    public void testRoundTrip() {
+        Random random = new Random(9);
+        byte[] plaintext = new byte[10000];
+        random.nextBytes(plaintext);
+        Key key = Key.getKey(KEY);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Cipher cipher = AesFactory.getCipher(BlockCipherMode.CTR, Backend.TABLE, null, new Parallelism(pool, 0, 512));
+            byte[] ciphertext = cipher.encrypt(plaintext, key);
+            Assert.assertEquals(plaintext.length + AesCtr.IV_LENGTH, ciphertext.length);
+            Assert.assertArrayEquals(plaintext, cipher.decrypt(ciphertext, key));
+
+            byte[] buffer = Arrays.copyOf(plaintext, ciphertext.length);
+            cipher.encrypt(buffer, 0, plaintext.length, buffer, 0, key);
+            Assert.assertEquals(plaintext.length, cipher.decrypt(buffer, 0, buffer.length, buffer, 0, key));
+            Assert.assertArrayEquals(plaintext, Arrays.copyOf(buffer, plaintext.length));
+
+            ByteBuffer src = ByteBuffer.allocateDirect(ciphertext.length);
+            src.put(ciphertext).flip();
+            ByteBuffer dst = ByteBuffer.allocateDirect(plaintext.length);
+            cipher.decrypt(src, dst, key);
+            byte[] decrypted = new byte[plaintext.length];
+            dst.flip();
+            dst.get(decrypted);
+            Assert.assertArrayEquals(plaintext, decrypted);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
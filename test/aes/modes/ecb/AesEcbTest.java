@@ -1,9 +1,18 @@
 package aes.modes.ecb;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
 import org.junit.Assert;
 import org.junit.Test;
 
 import aes.AesFactory;
+import aes.Cipher;
+import aes.Key;
+import aes.engines.Backend;
 import aes.modes.BlockCipherMode;
+import aes.modes.Parallelism;
 
 /**
  * Integration tests for AES ECB encryption and decryption using keys of 128, 192, and 256 bits.
@@ -24,7 +33,7 @@ public class AesEcbTest {
         byte[] expectedCiphertext = new byte[] { (byte) 0x69, (byte) 0xc4, (byte) 0xe0, (byte) 0xd8, (byte) 0x6a, (byte) 0x7b, (byte) 0x04, (byte) 0x30,
                 (byte) 0xd8, (byte) 0xcd, (byte) 0xb7, (byte) 0x80, (byte) 0x70, (byte) 0xb4, (byte) 0xc5, (byte) 0x5a };
 
-        byte[] ciphertext = AesFactory.getCipher(BlockCipherMode.ECB).encrypt(plaintext, key);
+        byte[] ciphertext = AesFactory.getCipher(BlockCipherMode.ECB, Backend.TABLE).encrypt(plaintext, key);
         Assert.assertArrayEquals(expectedCiphertext, ciphertext);
     }
 
@@ -43,7 +52,7 @@ public class AesEcbTest {
         byte[] expectedCiphertext = new byte[] { (byte) 0xdd, (byte) 0xa9, (byte) 0x7c, (byte) 0xa4, (byte) 0x86, (byte) 0x4c, (byte) 0xdf, (byte) 0xe0,
                 (byte) 0x6e, (byte) 0xaf, (byte) 0x70, (byte) 0xa0, (byte) 0xec, (byte) 0x0d, (byte) 0x71, (byte) 0x91 };
 
-        byte[] ciphertext = AesFactory.getCipher(BlockCipherMode.ECB).encrypt(plaintext, key);
+        byte[] ciphertext = AesFactory.getCipher(BlockCipherMode.ECB, Backend.TABLE).encrypt(plaintext, key);
         Assert.assertArrayEquals(expectedCiphertext, ciphertext);
     }
 
@@ -62,7 +71,7 @@ public class AesEcbTest {
         byte[] expectedCiphertext = new byte[] { (byte) 0x8e, (byte) 0xa2, (byte) 0xb7, (byte) 0xca, (byte) 0x51, (byte) 0x67, (byte) 0x45, (byte) 0xbf,
                 (byte) 0xea, (byte) 0xfc, (byte) 0x49, (byte) 0x90, (byte) 0x4b, (byte) 0x49, (byte) 0x60, (byte) 0x89 };
 
-        byte[] ciphertext = AesFactory.getCipher(BlockCipherMode.ECB).encrypt(plaintext, key);
+        byte[] ciphertext = AesFactory.getCipher(BlockCipherMode.ECB, Backend.TABLE).encrypt(plaintext, key);
         Assert.assertArrayEquals(expectedCiphertext, ciphertext);
     }
 
@@ -80,7 +89,7 @@ public class AesEcbTest {
         byte[] expectedPlaintext = new byte[] { (byte) 0x00, (byte) 0x11, (byte) 0x22, (byte) 0x33, (byte) 0x44, (byte) 0x55, (byte) 0x66, (byte) 0x77, (byte) 0x88,
                 (byte) 0x99, (byte) 0xaa, (byte) 0xbb, (byte) 0xcc, (byte) 0xdd, (byte) 0xee, (byte) 0xff };
 
-        byte[] plaintext = AesFactory.getCipher(BlockCipherMode.ECB).decrypt(ciphertext, key);
+        byte[] plaintext = AesFactory.getCipher(BlockCipherMode.ECB, Backend.TABLE).decrypt(ciphertext, key);
         Assert.assertArrayEquals(expectedPlaintext, plaintext);
     }
 
@@ -99,7 +108,7 @@ public class AesEcbTest {
         byte[] expectedPlaintext = new byte[] { (byte) 0x00, (byte) 0x11, (byte) 0x22, (byte) 0x33, (byte) 0x44, (byte) 0x55, (byte) 0x66, (byte) 0x77, (byte) 0x88,
                 (byte) 0x99, (byte) 0xaa, (byte) 0xbb, (byte) 0xcc, (byte) 0xdd, (byte) 0xee, (byte) 0xff };
 
-        byte[] plaintext = AesFactory.getCipher(BlockCipherMode.ECB).decrypt(ciphertext, key);
+        byte[] plaintext = AesFactory.getCipher(BlockCipherMode.ECB, Backend.TABLE).decrypt(ciphertext, key);
         Assert.assertArrayEquals(expectedPlaintext, plaintext);
     }
 
@@ -118,7 +127,155 @@ public class AesEcbTest {
         byte[] expectedPlaintext = new byte[] { (byte) 0x00, (byte) 0x11, (byte) 0x22, (byte) 0x33, (byte) 0x44, (byte) 0x55, (byte) 0x66, (byte) 0x77, (byte) 0x88,
                 (byte) 0x99, (byte) 0xaa, (byte) 0xbb, (byte) 0xcc, (byte) 0xdd, (byte) 0xee, (byte) 0xff };
 
-        byte[] plaintext = AesFactory.getCipher(BlockCipherMode.ECB).decrypt(ciphertext, key);
+        byte[] plaintext = AesFactory.getCipher(BlockCipherMode.ECB, Backend.TABLE).decrypt(ciphertext, key);
         Assert.assertArrayEquals(expectedPlaintext, plaintext);
     }
+
+    /**
+     * Test that a key expanded once can be reused for many messages and gives the same results as the raw key.
+     */
+    @Test
+    public void testExpandedKeyReuse() {
+        byte[] seed = new byte[] { (byte) 0x00, (byte) 0x01, (byte) 0x02, (byte) 0x03, (byte) 0x04, (byte) 0x05, (byte) 0x06, (byte) 0x07, (byte) 0x08, (byte) 0x09,
+                (byte) 0x0a, (byte) 0x0b, (byte) 0x0c, (byte) 0x0d, (byte) 0x0e, (byte) 0x0f };
+
+        byte[] plaintext = new byte[] { (byte) 0x00, (byte) 0x11, (byte) 0x22, (byte) 0x33, (byte) 0x44, (byte) 0x55, (byte) 0x66, (byte) 0x77, (byte) 0x88,
+                (byte) 0x99, (byte) 0xaa, (byte) 0xbb, (byte) 0xcc, (byte) 0xdd, (byte) 0xee, (byte) 0xff };
+
+        byte[] expectedCiphertext = new byte[] { (byte) 0x69, (byte) 0xc4, (byte) 0xe0, (byte) 0xd8, (byte) 0x6a, (byte) 0x7b, (byte) 0x04, (byte) 0x30,
+                (byte) 0xd8, (byte) 0xcd, (byte) 0xb7, (byte) 0x80, (byte) 0x70, (byte) 0xb4, (byte) 0xc5, (byte) 0x5a };
+
+        Cipher cipher = AesFactory.getCipher(BlockCipherMode.ECB, Backend.TABLE);
+        Key key = Key.getKey(seed);
+        for (int i = 0; i < 3; i++) {
+            byte[] ciphertext = cipher.encrypt(plaintext, key);
+            Assert.assertArrayEquals(expectedCiphertext, ciphertext);
+            Assert.assertArrayEquals(plaintext, cipher.decrypt(ciphertext, key));
+        }
+    }
+
+    /**
+     * Test that encrypting and decrypting in place at an offset matches encrypting into a new array.
+     */
+    @Test
+    public void testInPlaceWithOffset() {
+        byte[] seed = new byte[32];
+        byte[] plaintext = new byte[100];
+        for (int i = 0; i < plaintext.length; i++) {
+            plaintext[i] = (byte) i;
+        }
+
+        Cipher cipher = AesFactory.getCipher(BlockCipherMode.ECB, Backend.TABLE);
+        Key key = Key.getKey(seed);
+        byte[] expectedCiphertext = cipher.encrypt(plaintext, key);
+
+        byte[] buffer = new byte[7 + cipher.getEncryptOutputSize(plaintext.length)];
+        System.arraycopy(plaintext, 0, buffer, 7, plaintext.length);
+        Assert.assertEquals(expectedCiphertext.length, cipher.encrypt(buffer, 7, plaintext.length, buffer, 7, key));
+        Assert.assertArrayEquals(expectedCiphertext, Arrays.copyOfRange(buffer, 7, buffer.length));
+
+        Assert.assertEquals(expectedCiphertext.length, cipher.decrypt(buffer, 7, expectedCiphertext.length, buffer, 7, key));
+        Assert.assertArrayEquals(plaintext, Arrays.copyOfRange(buffer, 7, 7 + plaintext.length));
+    }
+
+    /**
+     * Test that encrypting and decrypting direct buffers matches the array methods and advances both buffers.
+     */
+    @Test
+    public void testDirectBuffers() {
+        byte[] seed = new byte[24];
+        byte[] plaintext = new byte[100];
+        for (int i = 0; i < plaintext.length; i++) {
+            plaintext[i] = (byte) i;
+        }
+        Key key = Key.getKey(seed);
+
+        for (Backend backend : Backend.values()) {
+            Cipher cipher = AesFactory.getCipher(BlockCipherMode.ECB, backend);
+            byte[] expectedCiphertext = cipher.encrypt(plaintext, key);
+
+            ByteBuffer src = ByteBuffer.allocateDirect(plaintext.length);
+            src.put(plaintext).flip();
+            ByteBuffer dst = ByteBuffer.allocateDirect(cipher.getEncryptOutputSize(plaintext.length));
+            Assert.assertEquals(expectedCiphertext.length, cipher.encrypt(src, dst, key));
+            Assert.assertFalse(src.hasRemaining());
+            Assert.assertFalse(dst.hasRemaining());
+
+            byte[] ciphertext = new byte[expectedCiphertext.length];
+            dst.flip();
+            dst.duplicate().get(ciphertext);
+            Assert.assertArrayEquals(expectedCiphertext, ciphertext);
+
+            // decrypt in place
+            cipher.decrypt(dst, dst.duplicate(), key);
+            byte[] decrypted = new byte[plaintext.length];
+            dst.flip();
+            dst.get(decrypted);
+            Assert.assertArrayEquals(plaintext, decrypted);
+        }
+    }
+
+    /**
+     * Test that splitting a message across threads produces the same bytes as the sequential path.
+     */
+    @Test
+    public void testParallelMatchesSequential() {
+        Random random = new Random(8);
+        byte[] seed = new byte[16];
+        byte[] plaintext = new byte[16 * 1000 + 5];
+        random.nextBytes(seed);
+        random.nextBytes(plaintext);
+        Key key = Key.getKey(seed);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Cipher sequential = AesFactory.getCipher(BlockCipherMode.ECB, Backend.TABLE);
+            Cipher parallel = AesFactory.getCipher(BlockCipherMode.ECB, Backend.TABLE, null, new Parallelism(pool, 0, 256));
+
+            byte[] expectedCiphertext = sequential.encrypt(plaintext, key);
+            byte[] ciphertext = parallel.encrypt(plaintext, key);
+            Assert.assertArrayEquals(expectedCiphertext, ciphertext);
+            Assert.assertArrayEquals(sequential.decrypt(ciphertext, key), parallel.decrypt(ciphertext, key));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Test that a batch matches encrypting each block as its own message, for every backend and split across threads.
+     */
+    @Test
+    public void testBatch() {
+        Random random = new Random(22);
+        Key[] keys = new Key[45];
+        for (int i = 0; i < keys.length; i++) {
+            byte[] seed = new byte[16];
+            random.nextBytes(seed);
+            keys[i] = Key.getKey(seed);
+        }
+        byte[] plaintext = new byte[3 + 16 * keys.length];
+        random.nextBytes(plaintext);
+        AesEcb single = (AesEcb) AesFactory.getCipher(BlockCipherMode.ECB, Backend.REFERENCE);
+        byte[] expected = new byte[16 * keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            single.encrypt(plaintext, 3 + 16 * i, 16, expected, 16 * i, keys[i]);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (Backend backend : Backend.values()) {
+                for (Parallelism parallelism : new Parallelism[] { Parallelism.SEQUENTIAL, new Parallelism(pool, 0, 64) }) {
+                    AesEcb ecb = (AesEcb) AesFactory.getCipher(BlockCipherMode.ECB, backend, null, parallelism);
+                    byte[] actual = new byte[expected.length];
+                    ecb.encryptBatch(keys, plaintext, 3, actual, 0, keys.length);
+                    Assert.assertArrayEquals(backend.toString(), expected, actual);
+
+                    ecb.decryptBatch(keys, actual, 0, actual, 0, keys.length);
+                    Assert.assertArrayEquals(backend.toString(), Arrays.copyOfRange(plaintext, 3, plaintext.length), actual);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
 }
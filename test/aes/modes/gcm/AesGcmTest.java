@@ -0,0 +1,218 @@
+package aes.modes.gcm;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import aes.AesFactory;
+import aes.AuthenticationException;
+import aes.Key;
+import aes.engines.Backend;
+import aes.modes.BlockCipherMode;
+import aes.modes.Parallelism;
+import utils.StringHelper;
+
+/**
+ * Integration tests for AES GCM authenticated encryption and decryption.
+ */
+public class AesGcmTest {
+    private static final byte[] KEY = StringHelper.hexStringToByteArray("feffe9928665731c6d6a8f9467308308");
+    private static final byte[] IV = StringHelper.hexStringToByteArray("cafebabefacedbaddecaf888");
+    private static final byte[] PLAINTEXT = StringHelper.hexStringToByteArray("d9313225f88406e5a55909c5aff5269a86a7a9531534f7da2e4c303d8a318a72"
+            + "1c3c0c95956809532fcf0e2449a6b525b16aedf5aa0de657ba637b391aafd255");
+    private static final byte[] CIPHERTEXT = StringHelper.hexStringToByteArray("42831ec2217774244b7221b784d0d49ce3aa212f2c02a4e035c17e2329aca12e"
+            + "21d514b25466931c7d8f6a5aac84aa051ba30b396a0aac973d58e091473f5985");
+    private static final byte[] AAD = StringHelper.hexStringToByteArray("feedfacedeadbeeffeedfacedeadbeefabaddad2");
+
+    /**
+     * Test GCM encryption of an empty message and of a zero block under the zero key.
+     */
+    @Test
+    public void testZeroKey() {
+        AesGcm cipher = (AesGcm) AesFactory.getCipher(BlockCipherMode.GCM);
+        Key key = Key.getKey(new byte[16]);
+        byte[] iv = new byte[12];
+        Assert.assertArrayEquals(StringHelper.hexStringToByteArray("58e2fccefa7e3061367f1d57a4e7455a"), cipher.encrypt(new byte[0], key, iv, new byte[0]));
+        Assert.assertArrayEquals(StringHelper.hexStringToByteArray("0388dace60b6a392f328c2b971b2fe78ab6e47d42cec13bdf53a67b21257bddf"),
+                cipher.encrypt(new byte[16], key, iv, new byte[0]));
+    }
+
+    /**
+     * Test GCM encryption and decryption of a multi-block message without associated data.
+     */
+    @Test
+    public void testEncryptDecrypt() {
+        AesGcm cipher = (AesGcm) AesFactory.getCipher(BlockCipherMode.GCM);
+        byte[] expected = concat(CIPHERTEXT, StringHelper.hexStringToByteArray("4d5c2af327cd64a62cf35abd2ba6fab4"));
+        Assert.assertArrayEquals(expected, cipher.encrypt(PLAINTEXT, Key.getKey(KEY), IV, new byte[0]));
+        Assert.assertArrayEquals(PLAINTEXT, cipher.decrypt(expected, Key.getKey(KEY), IV, new byte[0]));
+    }
+
+    /**
+     * Test GCM with associated data and a message that ends in a partial block.
+     */
+    @Test
+    public void testAssociatedData() {
+        AesGcm cipher = (AesGcm) AesFactory.getCipher(BlockCipherMode.GCM);
+        byte[] plaintext = Arrays.copyOf(PLAINTEXT, 60);
+        byte[] expected = concat(Arrays.copyOf(CIPHERTEXT, 60), StringHelper.hexStringToByteArray("5bc94fbc3221a5db94fae95ae7121a47"));
+        Assert.assertArrayEquals(expected, cipher.encrypt(plaintext, Key.getKey(KEY), IV, AAD));
+        Assert.assertArrayEquals(plaintext, cipher.decrypt(expected, Key.getKey(KEY), IV, AAD));
+    }
+
+    /**
+     * Test GCM with an 8-byte IV, which is hashed to form the initial counter block.
+     */
+    @Test
+    public void testShortIv() {
+        AesGcm cipher = (AesGcm) AesFactory.getCipher(BlockCipherMode.GCM);
+        byte[] iv = StringHelper.hexStringToByteArray("cafebabefacedbad");
+        byte[] expected = StringHelper.hexStringToByteArray("61353b4c2806934a777ff51fa22a4755699b2a714fcdc6f83766e5f97b6c7423"
+                + "73806900e49f24b22b097544d4896b424989b5e1ebac0f07c23f4598" + "3612d2e79e3b0785561be14aaca2fccb");
+        Assert.assertArrayEquals(expected, cipher.encrypt(Arrays.copyOf(PLAINTEXT, 60), Key.getKey(KEY), iv, AAD));
+    }
+
+    /**
+     * Test that feeding the associated data and message in uneven pieces gives the same result as one call.
+     */
+    @Test
+    public void testStreaming() {
+        AesGcm cipher = (AesGcm) AesFactory.getCipher(BlockCipherMode.GCM);
+        Key key = Key.getKey(KEY);
+        byte[] expected = cipher.encrypt(PLAINTEXT, key, IV, AAD);
+
+        GcmOperation encryption = cipher.newEncryption(key, IV);
+        encryption.updateAAD(AAD, 0, 7);
+        encryption.updateAAD(AAD, 7, AAD.length - 7);
+        byte[] encrypted = new byte[expected.length];
+        int n = encryption.update(PLAINTEXT, 0, 5, encrypted, 0);
+        n += encryption.update(PLAINTEXT, 5, 30, encrypted, n);
+        n += encryption.doFinal(PLAINTEXT, 35, PLAINTEXT.length - 35, encrypted, n);
+        Assert.assertEquals(expected.length, n);
+        Assert.assertArrayEquals(expected, encrypted);
+
+        GcmOperation decryption = cipher.newDecryption(key, IV);
+        decryption.updateAAD(AAD, 0, AAD.length);
+        byte[] decrypted = new byte[PLAINTEXT.length];
+        n = decryption.update(encrypted, 0, 21, decrypted, 0);
+        n += decryption.update(encrypted, 21, 40, decrypted, n);
+        n += decryption.doFinal(encrypted, 61, encrypted.length - 61, decrypted, n);
+        Assert.assertEquals(PLAINTEXT.length, n);
+        Assert.assertArrayEquals(PLAINTEXT, decrypted);
+    }
+
+    /**
+     * Test that a modified ciphertext, tag or associated data is rejected.
+     */
+    @Test
+    public void testTamper() {
+        AesGcm cipher = (AesGcm) AesFactory.getCipher(BlockCipherMode.GCM);
+        Key key = Key.getKey(KEY);
+        byte[] encrypted = cipher.encrypt(PLAINTEXT, key, IV, AAD);
+        for (int i : new int[] { 0, 40, encrypted.length - 1 }) {
+            byte[] modified = encrypted.clone();
+            modified[i] ^= 1;
+            try {
+                cipher.decrypt(modified, key, IV, AAD);
+                Assert.fail("Modified byte " + i + " was accepted");
+            } catch (AuthenticationException e) {
+                // expected
+            }
+        }
+        try {
+            cipher.decrypt(encrypted, key, IV, new byte[0]);
+            Assert.fail("Missing associated data was accepted");
+        } catch (AuthenticationException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Test the nonce-prefixed round trip through arrays, in place, and through direct buffers.
+     */
+    @Test
+    public void testPrefixedRoundTrip() {
+        AesGcm cipher = (AesGcm) AesFactory.getCipher(BlockCipherMode.GCM);
+        Key key = Key.getKey(KEY);
+        byte[] plaintext = new byte[1000];
+        new Random(11).nextBytes(plaintext);
+
+        byte[] encrypted = cipher.encrypt(plaintext, key);
+        Assert.assertEquals(cipher.getEncryptOutputSize(plaintext.length), encrypted.length);
+        Assert.assertArrayEquals(plaintext, cipher.decrypt(encrypted, key));
+
+        byte[] buffer = Arrays.copyOf(plaintext, cipher.getEncryptOutputSize(plaintext.length));
+        int n = cipher.encrypt(buffer, 0, plaintext.length, buffer, 0, key);
+        n = cipher.decrypt(buffer, 0, n, buffer, 0, key);
+        Assert.assertArrayEquals(plaintext, Arrays.copyOf(buffer, n));
+
+        ByteBuffer src = ByteBuffer.allocateDirect(plaintext.length);
+        src.put(plaintext).flip();
+        ByteBuffer dst = ByteBuffer.allocateDirect(cipher.getEncryptOutputSize(plaintext.length));
+        cipher.encrypt(src, dst, key);
+        dst.flip();
+        ByteBuffer decrypted = ByteBuffer.allocate(plaintext.length);
+        cipher.decrypt(dst, decrypted, key);
+        Assert.assertArrayEquals(plaintext, decrypted.array());
+    }
+
+    /**
+     * Test the nonce-prefixed round trip with associated data, and that other associated data is rejected.
+     */
+    @Test
+    public void testPrefixedAssociatedData() {
+        AesGcm cipher = (AesGcm) AesFactory.getCipher(BlockCipherMode.GCM);
+        Key key = Key.getKey(KEY);
+        byte[] encrypted = new byte[cipher.getEncryptOutputSize(PLAINTEXT.length)];
+        int n = cipher.encrypt(PLAINTEXT, 0, PLAINTEXT.length, encrypted, 0, key, AAD);
+        Assert.assertEquals(encrypted.length, n);
+
+        byte[] decrypted = new byte[PLAINTEXT.length];
+        Assert.assertEquals(PLAINTEXT.length, cipher.decrypt(encrypted, 0, n, decrypted, 0, key, AAD));
+        Assert.assertArrayEquals(PLAINTEXT, decrypted);
+        Assert.assertArrayEquals(PLAINTEXT, cipher.decrypt(cipher.encrypt(PLAINTEXT, key), key));
+
+        byte[] other = AAD.clone();
+        other[0] ^= 1;
+        for (byte[] aad : new byte[][] { other, new byte[0] }) {
+            try {
+                cipher.decrypt(encrypted, 0, n, new byte[PLAINTEXT.length], 0, key, aad);
+                Assert.fail("Other associated data was accepted");
+            } catch (AuthenticationException e) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * Test that the nonce-prefixed round trip works in place when the keystream is split across threads.
+     */
+    @Test
+    public void testParallelInPlace() {
+        byte[] plaintext = new byte[10000];
+        new Random(12).nextBytes(plaintext);
+        Key key = Key.getKey(KEY);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            AesGcm cipher = (AesGcm) AesFactory.getCipher(BlockCipherMode.GCM, Backend.TABLE, null, new Parallelism(pool, 0, 64));
+            for (int i = 0; i < 100; i++) {
+                byte[] buffer = Arrays.copyOf(plaintext, cipher.getEncryptOutputSize(plaintext.length));
+                int n = cipher.encrypt(buffer, 0, plaintext.length, buffer, 0, key);
+                Assert.assertEquals(plaintext.length, cipher.decrypt(buffer, 0, n, buffer, 0, key));
+                Assert.assertArrayEquals(plaintext, Arrays.copyOf(buffer, plaintext.length));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+}
@@ -0,0 +1,280 @@
+package aes.tools;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import aes.AuthenticationException;
+import aes.Key;
+import aes.engines.Backend;
+import aes.modes.BlockCipherMode;
+
+/**
+ * Tests for encrypting and decrypting directory trees through the reader, worker and writer pipeline.
+ */
+public class PipelineTest {
+    private static final Key KEY = Key.getKey(new byte[32]);
+    private static final int[] SIZES = { 0, 1, 15, 16, 1000, 4096, 4097, 70000 };
+
+    private Path root;
+
+    /**
+     * Creates a tree of files of uneven sizes, one of them in a subdirectory.
+     */
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("aes-pipeline");
+        Random random = new Random(25);
+        for (int size : SIZES) {
+            byte[] content = new byte[size];
+            random.nextBytes(content);
+            Path dir = size % 2 == 0 ? root.resolve("plain") : root.resolve("plain").resolve("nested");
+            Files.createDirectories(dir);
+            Files.write(dir.resolve("file" + size), content);
+        }
+    }
+
+    /**
+     * Deletes the tree.
+     */
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(root)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    /**
+     * Test that every mode restores every file, with segments small enough to split files and a queue shallow enough
+     * that the readers wait for the writers.
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+        for (BlockCipherMode mode : BlockCipherMode.values()) {
+            Pipeline pipeline = new Pipeline(mode, Backend.TABLE, KEY, 2, 3, 2, 4096, 3);
+            Pipeline.Report encrypted = pipeline.encrypt(root.resolve("plain"), root.resolve("enc"), true);
+            Assert.assertEquals(SIZES.length, encrypted.getFiles());
+            Pipeline.Report decrypted = pipeline.decrypt(root.resolve("enc"), root.resolve("dec"));
+            Assert.assertEquals(encrypted.getBytes(), decrypted.getBytes());
+
+            for (int size : SIZES) {
+                String name = (size % 2 == 0 ? "" : "nested/") + "file" + size;
+                byte[] plaintext = Files.readAllBytes(root.resolve("plain").resolve(name));
+                Assert.assertEquals(size, plaintext.length);
+                Assert.assertArrayEquals(mode + " " + name, plaintext, Files.readAllBytes(root.resolve("dec").resolve(name)));
+            }
+        }
+    }
+
+    /**
+     * Test that decryption rejects a file encrypted in another mode and a GCM record that has been modified, and that it
+     * leaves no partial file behind.
+     */
+    @Test
+    public void testRejectsInvalidFiles() throws IOException {
+        Path source = root.resolve("plain").resolve("file70000");
+        Path encrypted = root.resolve("file.enc");
+        Path decrypted = root.resolve("file.dec");
+        Pipeline gcm = new Pipeline(BlockCipherMode.GCM, Backend.TABLE, KEY, 1, 2, 1, 4096, 0);
+        gcm.encrypt(source, encrypted, false);
+
+        try {
+            new Pipeline(BlockCipherMode.CTR, Backend.TABLE, KEY).decrypt(encrypted, decrypted);
+            Assert.fail("Decrypted a GCM file in CTR mode");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().contains("GCM"));
+        }
+
+        byte[] bytes = Files.readAllBytes(encrypted);
+        bytes[bytes.length - 100] ^= 1;
+        Files.write(encrypted, bytes);
+        try {
+            gcm.decrypt(encrypted, decrypted);
+            Assert.fail("Decrypted a modified record");
+        } catch (AuthenticationException e) {
+            Assert.assertFalse(Files.exists(decrypted));
+        }
+    }
+
+    /**
+     * Test that a CBC record that is not a whole number of blocks is reported as an invalid record of its file, and that
+     * the command line reports it as a failed run.
+     */
+    @Test
+    public void testRejectsMalformedRecord() throws IOException {
+        Path encrypted = root.resolve("file.enc");
+        Pipeline cbc = new Pipeline(BlockCipherMode.CBC, Backend.TABLE, KEY, 1, 2, 1, 4096, 0);
+        cbc.encrypt(root.resolve("plain").resolve("file1000"), encrypted, false);
+        byte[] bytes = Files.readAllBytes(encrypted);
+        byte[] cut = Arrays.copyOf(bytes, bytes.length - 1);
+        ByteBuffer.wrap(cut).putInt(Pipeline.FILE_HEADER_LENGTH + 4, bytes.length - 1 - Pipeline.FILE_HEADER_LENGTH
+                - Pipeline.RECORD_HEADER_LENGTH);
+        Files.write(encrypted, cut);
+
+        try {
+            cbc.decrypt(encrypted, root.resolve("file.dec"));
+            Assert.fail("Decrypted a partial block");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("Invalid record 0"));
+        }
+
+        Path keyFile = root.resolve("key.hex");
+        Files.write(keyFile, "0000000000000000000000000000000000000000000000000000000000000000\n"
+                .getBytes(StandardCharsets.US_ASCII));
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        Assert.assertEquals(1, BulkCipher.run(new String[] { "decrypt", "--key-file", keyFile.toString(), "--mode", "CBC",
+                "--backend", "TABLE", encrypted.toString(), root.resolve("file.dec").toString() },
+                new PrintStream(new ByteArrayOutputStream(), true), new PrintStream(err, true)));
+        Assert.assertTrue(err.toString().startsWith("Failed: "));
+    }
+
+    /**
+     * Test that a run is refused before anything is written when the target is the source, lies inside the source
+     * tree, or reaches a source through a symbolic link, and that the source is left intact.
+     */
+    @Test
+    public void testRejectsTargetOverSource() throws IOException {
+        Path plain = root.resolve("plain");
+        Path file = plain.resolve("file70000");
+        byte[] content = Files.readAllBytes(file);
+        Pipeline pipeline = new Pipeline(BlockCipherMode.CTR, Backend.TABLE, KEY, 1, 2, 1, 4096, 0);
+
+        Path fileLink = Files.createSymbolicLink(root.resolve("file-link"), file);
+        Path dirLink = Files.createSymbolicLink(root.resolve("dir-link"), plain);
+        for (Path[] run : new Path[][] { { file, file }, { file, fileLink }, { plain, plain },
+                { plain, plain.resolve("enc") }, { plain, dirLink.resolve("enc") }, { dirLink, plain } }) {
+            try {
+                pipeline.encrypt(run[0], run[1], false);
+                Assert.fail("Encrypted " + run[0] + " into " + run[1]);
+            } catch (IOException e) {
+                Assert.assertArrayEquals(content, Files.readAllBytes(file));
+            }
+        }
+        Assert.assertFalse(Files.exists(plain.resolve("enc")));
+    }
+
+    /**
+     * Test that GCM decryption rejects a file with a record dropped, two records swapped, the last record cut off, a
+     * record taken from another encryption of the same file, or a record cut short, and leaves no partial file behind.
+     */
+    @Test
+    public void testRejectsRearrangedRecords() throws IOException {
+        Path source = root.resolve("plain").resolve("file70000");
+        Path encrypted = root.resolve("file.enc");
+        Pipeline gcm = new Pipeline(BlockCipherMode.GCM, Backend.TABLE, KEY, 1, 2, 1, 4096, 0);
+        gcm.encrypt(source, encrypted, false);
+        byte[] bytes = Files.readAllBytes(encrypted);
+        byte[] header = Arrays.copyOf(bytes, Pipeline.FILE_HEADER_LENGTH);
+        List<byte[]> records = records(bytes);
+        Assert.assertEquals(18, records.size());
+        gcm.encrypt(source, encrypted, false);
+        List<byte[]> other = records(Files.readAllBytes(encrypted));
+
+        List<byte[]> dropped = new ArrayList<byte[]>(records);
+        dropped.remove(3);
+        assertRejected(gcm, header, dropped, AuthenticationException.class);
+
+        List<byte[]> swapped = new ArrayList<byte[]>(records);
+        Collections.swap(swapped, 3, 4);
+        assertRejected(gcm, header, swapped, AuthenticationException.class);
+
+        List<byte[]> truncated = new ArrayList<byte[]>(records);
+        truncated.remove(truncated.size() - 1);
+        assertRejected(gcm, header, truncated, AuthenticationException.class);
+
+        List<byte[]> spliced = new ArrayList<byte[]>(records);
+        spliced.set(5, other.get(5));
+        assertRejected(gcm, header, spliced, AuthenticationException.class);
+
+        List<byte[]> cut = new ArrayList<byte[]>(records);
+        byte[] last = cut.remove(cut.size() - 1);
+        cut.add(Arrays.copyOf(last, last.length - 1));
+        assertRejected(gcm, header, cut, IOException.class);
+
+        assertRejected(gcm, header, Collections.<byte[]> emptyList(), IOException.class);
+    }
+
+    /**
+     * Splits an encrypted file into its records, each with its record header.
+     */
+    private static List<byte[]> records(byte[] file) {
+        List<byte[]> records = new ArrayList<byte[]>();
+        ByteBuffer buffer = ByteBuffer.wrap(file);
+        buffer.position(Pipeline.FILE_HEADER_LENGTH);
+        while (buffer.hasRemaining()) {
+            byte[] record = new byte[Pipeline.RECORD_HEADER_LENGTH + buffer.getInt(buffer.position() + 4)];
+            buffer.get(record);
+            records.add(record);
+        }
+        return records;
+    }
+
+    /**
+     * Writes a file from a header and records and checks that decrypting it fails and leaves no output behind.
+     */
+    private void assertRejected(Pipeline pipeline, byte[] header, List<byte[]> records,
+            Class<? extends Exception> expected) throws IOException {
+        Path encrypted = root.resolve("modified.enc");
+        Path decrypted = root.resolve("modified.dec");
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        file.write(header);
+        for (byte[] record : records) {
+            file.write(record);
+        }
+        Files.write(encrypted, file.toByteArray());
+        try {
+            pipeline.decrypt(encrypted, decrypted);
+            Assert.fail("Decrypted a file with " + records.size() + " rearranged records");
+        } catch (IOException | AuthenticationException e) {
+            Assert.assertTrue(e.toString(), expected.isInstance(e));
+            Assert.assertFalse(Files.exists(decrypted));
+        }
+    }
+
+    /**
+     * Test that the command line encrypts and decrypts with a key file, reports throughput and rejects bad arguments.
+     */
+    @Test
+    public void testCommandLine() throws IOException {
+        Path keyFile = root.resolve("key.hex");
+        Files.write(keyFile, "000102030405060708090A0B0C0D0E0F\n".getBytes(StandardCharsets.US_ASCII));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        PrintStream o = new PrintStream(out, true);
+        PrintStream e = new PrintStream(err, true);
+
+        String plain = root.resolve("plain").toString();
+        String enc = root.resolve("enc").toString();
+        String dec = root.resolve("dec").toString();
+        Assert.assertEquals(0, BulkCipher.run(new String[] { "encrypt", "--key-file", keyFile.toString(), "--mode", "cbc",
+                "--backend", "TABLE", "--threads", "2", "--check", plain, enc }, o, e));
+        Assert.assertEquals(0, BulkCipher.run(new String[] { "decrypt", "--key-file", keyFile.toString(), "--mode", "CBC",
+                "--backend", "TABLE", enc, dec }, o, e));
+        Assert.assertTrue(out.toString().contains("MB/s"));
+        Assert.assertArrayEquals(Files.readAllBytes(root.resolve("plain").resolve("file4096")),
+                Files.readAllBytes(root.resolve("dec").resolve("file4096")));
+
+        Assert.assertEquals(2, BulkCipher.run(new String[] { "encrypt", plain, enc }, o, e));
+        Assert.assertEquals(2, BulkCipher.run(new String[] { "decrypt", "--key-file", keyFile.toString(), "--check", enc,
+                dec }, o, e));
+        Assert.assertEquals(2, BulkCipher.run(new String[] { "encrypt", "--key-file", keyFile.toString(), "--mode", "XTS",
+                plain, enc }, o, e));
+        Assert.assertEquals(1, BulkCipher.run(new String[] { "decrypt", "--key-file", keyFile.toString(), plain, dec }, o,
+                e));
+    }
+}
@@ -0,0 +1,77 @@
+package utils;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the arithmetic in GF(2^8), checked against multiplication by shifting and reducing.
+ */
+public class FunctionsTest {
+
+    /**
+     * Test that multiplication matches shift-and-reduce for every pair of bytes.
+     */
+    @Test
+    public void testMul() {
+        for (int a = 0; a < 256; a++) {
+            for (int b = 0; b < 256; b++) {
+                Assert.assertEquals(a + " * " + b, slowMul(a, b), Functions.mul((byte) a, (byte) b));
+            }
+        }
+    }
+
+    /**
+     * Test that the constant multiplications of MixColumns and InvMixColumns match general multiplication.
+     */
+    @Test
+    public void testConstantMul() {
+        for (int x = 0; x < 256; x++) {
+            byte b = (byte) x;
+            Assert.assertEquals(slowMul(0x02, x), Functions.mul2(b));
+            Assert.assertEquals(slowMul(0x03, x), Functions.mul3(b));
+            Assert.assertEquals(slowMul(0x09, x), Functions.mul9(b));
+            Assert.assertEquals(slowMul(0x0b, x), Functions.mul11(b));
+            Assert.assertEquals(slowMul(0x0d, x), Functions.mul13(b));
+            Assert.assertEquals(slowMul(0x0e, x), Functions.mul14(b));
+            Assert.assertEquals(slowMul(0x02, x), Functions.xtime(b));
+        }
+    }
+
+    /**
+     * Test that every non-zero byte times its inverse is 1, and that 0 maps to 0.
+     */
+    @Test
+    public void testMultInverse() {
+        Assert.assertEquals(0, Functions.getMultInverse(0));
+        for (int x = 1; x < 256; x++) {
+            Assert.assertEquals(1, Functions.mul((byte) x, Functions.getMultInverse(x)));
+        }
+        // FIPS-197 section 4.2: {53} and {ca} are inverses
+        Assert.assertEquals((byte) 0xca, Functions.getMultInverse(0x53));
+    }
+
+    /**
+     * Test that the highest set bit is found among the low n bits only.
+     */
+    @Test
+    public void testFindHighestBitSet() {
+        Assert.assertEquals(0, Functions.findHighestBitSet(0, 9));
+        Assert.assertEquals(0, Functions.findHighestBitSet(1, 9));
+        Assert.assertEquals(8, Functions.findHighestBitSet(0x11b, 9));
+        Assert.assertEquals(4, Functions.findHighestBitSet(0x11b, 8));
+        Assert.assertEquals(31, Functions.findHighestBitSet(-1, 32));
+    }
+
+    private static byte slowMul(int a, int b) {
+        int product = 0;
+        for (int i = 0; i < 8; i++) {
+            if ((a & (1 << i)) != 0) {
+                product ^= b;
+            }
+            b <<= 1;
+            if ((b & 0x100) != 0) {
+                b ^= 0x11b;
+            }
+        }
+        return (byte) product;
+    }
+}
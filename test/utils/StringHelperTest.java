@@ -0,0 +1,112 @@
+package utils;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the hex codec.
+ */
+public class StringHelperTest {
+
+    /**
+     * Test that every byte value encodes as two upper case digits and decodes back, in either case.
+     */
+    @Test
+    public void testRoundTrip() {
+        byte[] bytes = new byte[256];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+        String hex = StringHelper.bytesToHex(bytes);
+        Assert.assertTrue(hex.startsWith("000102"));
+        Assert.assertTrue(hex.contains("7E7F8081"));
+        Assert.assertTrue(hex.endsWith("FDFEFF"));
+        Assert.assertArrayEquals(bytes, StringHelper.hexStringToByteArray(hex));
+        Assert.assertArrayEquals(bytes, StringHelper.hexStringToByteArray(hex.toLowerCase()));
+    }
+
+    /**
+     * Test that the array and buffer forms write into the caller's targets at the given offsets.
+     */
+    @Test
+    public void testTargets() {
+        byte[] bytes = { (byte) 0xde, (byte) 0xad, (byte) 0xbe, (byte) 0xef };
+        char[] chars = new char[10];
+        Assert.assertEquals(6, StringHelper.encodeHex(bytes, 1, 3, chars, 2));
+        Assert.assertEquals("ADBEEF", new String(chars, 2, 6));
+
+        byte[] ascii = new byte[8];
+        StringHelper.encodeHex(bytes, 0, 4, ascii, 0);
+        Assert.assertEquals("DEADBEEF", new String(ascii, StandardCharsets.US_ASCII));
+        // decode in place
+        Assert.assertEquals(4, StringHelper.decodeHex(ascii, 0, 8, ascii, 0));
+        Assert.assertArrayEquals(bytes, Arrays.copyOf(ascii, 4));
+
+        ByteBuffer src = ByteBuffer.wrap(bytes);
+        ByteBuffer hex = ByteBuffer.allocateDirect(8);
+        Assert.assertEquals(8, StringHelper.encodeHex(src, hex));
+        hex.flip();
+        ByteBuffer decoded = ByteBuffer.allocateDirect(4);
+        Assert.assertEquals(4, StringHelper.decodeHex(hex, decoded));
+        Assert.assertFalse(hex.hasRemaining());
+        decoded.flip();
+        Assert.assertEquals(ByteBuffer.wrap(bytes), decoded);
+    }
+
+    /**
+     * Test that odd lengths and characters that are not hex digits, including non-ASCII digits, are rejected.
+     */
+    @Test
+    public void testValidation() {
+        for (String invalid : new String[] { "ABC", "0G", "g0", " 0", "0\u0660", "\uff10\uff10" }) {
+            try {
+                StringHelper.hexStringToByteArray(invalid);
+                Assert.fail("Accepted " + invalid);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+
+        ByteBuffer src = ByteBuffer.wrap("00zz".getBytes(StandardCharsets.US_ASCII));
+        try {
+            StringHelper.decodeHex(src, ByteBuffer.allocate(2));
+            Assert.fail("Accepted zz");
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals(0, src.position());
+        }
+    }
+
+    /**
+     * Test that the stream forms convert a payload larger than their buffers, including reads that split a pair.
+     */
+    @Test
+    public void testStreams() throws IOException {
+        byte[] payload = new byte[100003];
+        new Random(24).nextBytes(payload);
+
+        StringWriter hex = new StringWriter();
+        Assert.assertEquals(payload.length, StringHelper.encodeHex(new ByteArrayInputStream(payload), hex));
+        Assert.assertEquals(StringHelper.bytesToHex(payload), hex.toString());
+
+        // a reader that returns an odd number of chars per read
+        Reader reader = new StringReader(hex.toString()) {
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                return super.read(cbuf, off, Math.min(len, 777));
+            }
+        };
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        Assert.assertEquals(payload.length, StringHelper.decodeHex(reader, decoded));
+        Assert.assertArrayEquals(payload, decoded.toByteArray());
+    }
+}